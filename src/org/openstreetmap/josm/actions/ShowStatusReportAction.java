@@ -36,6 +36,7 @@ import org.openstreetmap.josm.data.Preferences;
 import org.openstreetmap.josm.data.Version;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.DatasetConsistencyTest;
+import org.openstreetmap.josm.data.osm.TagArrayPool;
 import org.openstreetmap.josm.data.preferences.sources.MapPaintPrefHelper;
 import org.openstreetmap.josm.data.preferences.sources.PresetPrefHelper;
 import org.openstreetmap.josm.data.preferences.sources.SourcePrefHelper;
@@ -99,6 +100,7 @@ public final class ShowStatusReportAction extends JosmAction {
                 Runtime.getRuntime().totalMemory() / 1024 / 1024,
                 Runtime.getRuntime().maxMemory() / 1024 / 1024,
                 Runtime.getRuntime().freeMemory() / 1024 / 1024);
+        text.format("Tag arrays: %s%n", TagArrayPool.getStatistics());
         text.format("Java version: %s, %s, %s%n",
                 runtimeVersion != null ? runtimeVersion : getSystemProperty("java.version"),
                 getSystemProperty("java.vendor"),
@@ -67,6 +67,24 @@ public abstract class AbstractNodesCommand<C extends Collection<Node>> extends C
         return ImageProvider.get(OsmPrimitiveType.WAY);
     }
 
+    /**
+     * Returns the way to modify.
+     * @return the way to modify
+     * @since 18609
+     */
+    public Way getWay() {
+        return way;
+    }
+
+    /**
+     * Returns the collection of nodes for this command.
+     * @return the collection of nodes for this command
+     * @since 18609
+     */
+    public C getNodes() {
+        return cmdNodes;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(super.hashCode(), way, cmdNodes);
@@ -69,6 +69,7 @@ public class AddPrimitivesCommand extends Command {
         DataSet ds = getAffectedDataSet();
         if (createdPrimitives == null) { // first time execution
             List<OsmPrimitive> newPrimitives = new ArrayList<>(data.size());
+            List<OsmPrimitive> toAdd = new ArrayList<>(data.size());
             preExistingData = new ArrayList<>();
 
             for (PrimitiveData pd : data) {
@@ -83,10 +84,11 @@ public class AddPrimitivesCommand extends Command {
                     primitive.load(pd);
                 }
                 if (created) {
-                    ds.addPrimitive(primitive);
+                    toAdd.add(primitive);
                 }
                 newPrimitives.add(primitive);
             }
+            ds.addPrimitives(toAdd);
 
             // Then load ways and relations
             for (int i = 0; i < newPrimitives.size(); i++) {
@@ -98,6 +100,7 @@ public class AddPrimitivesCommand extends Command {
         } else { // redo
             // When redoing this command, we have to add the same objects, otherwise
             // a subsequent command (e.g. MoveCommand) cannot be redone.
+            List<OsmPrimitive> toAdd = new ArrayList<>(createdPrimitives.size());
             for (OsmPrimitive osm : createdPrimitives) {
                 if (preExistingData.stream().anyMatch(pd -> pd.getPrimitiveId().equals(osm.getPrimitiveId()))) {
                     Optional<PrimitiveData> o = data.stream()
@@ -106,9 +109,10 @@ public class AddPrimitivesCommand extends Command {
                         osm.load(o.get());
                     }
                 } else {
-                    ds.addPrimitive(osm);
+                    toAdd.add(osm);
                 }
             }
+            ds.addPrimitives(toAdd);
         }
         if (toSelect != null) {
             ds.setSelected(toSelect.stream().map(ds::getPrimitiveById).collect(Collectors.toList()));
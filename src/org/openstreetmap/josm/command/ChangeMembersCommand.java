@@ -4,6 +4,7 @@ package org.openstreetmap.josm.command;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -66,6 +67,24 @@ public class ChangeMembersCommand extends Command {
         modified.add(relation);
     }
 
+    /**
+     * Returns the relation to modify.
+     * @return the relation to modify
+     * @since 18609
+     */
+    public Relation getRelation() {
+        return relation;
+    }
+
+    /**
+     * Returns the new member list.
+     * @return the new member list
+     * @since 18609
+     */
+    public List<RelationMember> getMembers() {
+        return Collections.unmodifiableList(cmdMembers);
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(super.hashCode(), relation, cmdMembers);
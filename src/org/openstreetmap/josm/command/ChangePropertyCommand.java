@@ -268,6 +268,15 @@ public class ChangePropertyCommand extends Command {
         return objects.size();
     }
 
+    /**
+     * Returns the objects that will effectively be modified, before the command is executed.
+     * @return the objects that will effectively be modified
+     * @since 18609
+     */
+    public Collection<OsmPrimitive> getObjects() {
+        return Collections.unmodifiableList(objects);
+    }
+
     /**
      * Returns the tags to set (key/value pairs).
      * @return the tags to set (key/value pairs)
@@ -138,6 +138,33 @@ public class ChangePropertyKeyCommand extends Command {
         return text;
     }
 
+    /**
+     * Returns the objects subject to change replacement.
+     * @return the objects subject to change replacement
+     * @since 18609
+     */
+    public Collection<? extends OsmPrimitive> getObjects() {
+        return Collections.unmodifiableList(objects);
+    }
+
+    /**
+     * Returns the key to replace.
+     * @return the key to replace
+     * @since 18609
+     */
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the new key.
+     * @return the new key
+     * @since 18609
+     */
+    public String getNewKey() {
+        return newKey;
+    }
+
     @Override
     public Icon getDescriptionIcon() {
         return ImageProvider.get("dialogs", "propertiesdialog", ImageProvider.ImageSizes.SMALLICON);
@@ -0,0 +1,675 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.command;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.swing.Icon;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * A compact replacement of an executed command in the undo history.
+ * <p>
+ * Instead of full copies of the primitives, it only stores the tags and the coordinates, way nodes or relation members
+ * changed by the original command, along with the modified flag of the primitives. Undo and redo swap the stored
+ * values with the current ones, so that the state needed by the next redo or undo is stored afterwards.
+ * The state can be {@link #spill spilled} to an {@link UndoLog}, and is read back when needed. The primitives are
+ * always referred to by reference, not by id, since the ids of the new primitives change when they are uploaded:
+ * the spilled state refers to a table of the primitives, kept in memory.
+ * <p>
+ * Only the commands whose changes are fully known can be compacted, see {@link #compact(Command)}.
+ * @since 18611
+ */
+public final class CompactCommand extends Command {
+
+    /** Estimated memory used by the commands, see {@link #estimateSize(Command)} */
+    private static final int COMMAND_SIZE = 64;
+    private static final int STATE_SIZE = 48;
+    private static final int PRIMITIVE_DATA_SIZE = 120;
+    private static final int TAG_SIZE = 16;
+    private static final int COOR_SIZE = 32;
+    private static final int REFERENCE_SIZE = 8;
+    private static final int NODE_REF_SIZE = 24;
+    private static final int MEMBER_SIZE = 40;
+
+    /**
+     * The changed state of a primitive, to be restored by the next undo or redo.
+     */
+    private static final class PrimitiveState {
+        final OsmPrimitive primitive;
+        boolean modified;
+        /** The changed keys, or {@code null} if the tags have not been changed */
+        final String[] keys;
+        /** The values of the changed keys, {@code null} for absent keys */
+        final String[] values;
+        final boolean geometryChanged;
+        /** The coordinates ({@link LatLon}), nodes ({@code Node[]}) or members ({@code RelationMember[]}) */
+        Object geometry;
+
+        PrimitiveState(OsmPrimitive primitive, boolean modified, String[] keys, String[] values, boolean geometryChanged, Object geometry) {
+            this.primitive = primitive;
+            this.modified = modified;
+            this.keys = keys;
+            this.values = values;
+            this.geometryChanged = geometryChanged;
+            this.geometry = geometry;
+        }
+
+        void swap() {
+            if (keys != null) {
+                Map<String, String> tags = primitive.getKeys();
+                for (int i = 0; i < keys.length; i++) {
+                    String current = values[i] == null ? tags.remove(keys[i]) : tags.put(keys[i], values[i]);
+                    values[i] = current;
+                }
+                primitive.setKeys(tags);
+            }
+            if (geometryChanged) {
+                Object current = getGeometry(primitive);
+                setGeometry(primitive, geometry);
+                geometry = current;
+            }
+            boolean current = primitive.isModified();
+            primitive.setModified(modified);
+            modified = current;
+        }
+
+        long estimateSize() {
+            long size = STATE_SIZE;
+            if (keys != null) {
+                size += (long) TAG_SIZE * keys.length;
+            }
+            if (geometry instanceof LatLon) {
+                size += COOR_SIZE;
+            } else if (geometry instanceof Node[]) {
+                size += (long) REFERENCE_SIZE * ((Node[]) geometry).length;
+            } else if (geometry instanceof RelationMember[]) {
+                size += (long) MEMBER_SIZE * ((RelationMember[]) geometry).length;
+            }
+            return size;
+        }
+
+        void write(DataOutputStream out, References references) throws IOException {
+            out.writeInt(references.indexOf(primitive));
+            out.writeBoolean(modified);
+            out.writeInt(keys == null ? -1 : keys.length);
+            if (keys != null) {
+                for (int i = 0; i < keys.length; i++) {
+                    writeString(out, keys[i]);
+                    out.writeBoolean(values[i] != null);
+                    if (values[i] != null) {
+                        writeString(out, values[i]);
+                    }
+                }
+            }
+            out.writeBoolean(geometryChanged);
+            if (geometryChanged) {
+                if (primitive instanceof Node) {
+                    LatLon coor = (LatLon) geometry;
+                    out.writeBoolean(coor != null);
+                    if (coor != null) {
+                        out.writeDouble(coor.lat());
+                        out.writeDouble(coor.lon());
+                    }
+                } else if (primitive instanceof Way) {
+                    Node[] nodes = (Node[]) geometry;
+                    out.writeInt(nodes.length);
+                    for (Node node : nodes) {
+                        out.writeInt(references.indexOf(node));
+                    }
+                } else {
+                    RelationMember[] members = (RelationMember[]) geometry;
+                    out.writeInt(members.length);
+                    for (RelationMember member : members) {
+                        out.writeInt(references.indexOf(member.getMember()));
+                        writeString(out, member.getRole());
+                    }
+                }
+            }
+        }
+
+        static PrimitiveState read(DataInputStream in, OsmPrimitive[] references) throws IOException {
+            OsmPrimitive primitive = references[in.readInt()];
+            boolean modified = in.readBoolean();
+            int keyCount = in.readInt();
+            String[] keys = null;
+            String[] values = null;
+            if (keyCount >= 0) {
+                keys = new String[keyCount];
+                values = new String[keyCount];
+                for (int i = 0; i < keyCount; i++) {
+                    keys[i] = readString(in);
+                    values[i] = in.readBoolean() ? readString(in) : null;
+                }
+            }
+            boolean geometryChanged = in.readBoolean();
+            Object geometry = null;
+            if (geometryChanged) {
+                if (primitive instanceof Node) {
+                    geometry = in.readBoolean() ? new LatLon(in.readDouble(), in.readDouble()) : null;
+                } else if (primitive instanceof Way) {
+                    Node[] nodes = new Node[in.readInt()];
+                    for (int i = 0; i < nodes.length; i++) {
+                        nodes[i] = (Node) references[in.readInt()];
+                    }
+                    geometry = nodes;
+                } else {
+                    RelationMember[] members = new RelationMember[in.readInt()];
+                    for (int i = 0; i < members.length; i++) {
+                        OsmPrimitive member = references[in.readInt()];
+                        members[i] = new RelationMember(readString(in), member);
+                    }
+                    geometry = members;
+                }
+            }
+            return new PrimitiveState(primitive, modified, keys, values, geometryChanged, geometry);
+        }
+    }
+
+    /**
+     * The table of the primitives referred to by a spilled state.
+     */
+    private static final class References {
+        private final Map<OsmPrimitive, Integer> indexes = new IdentityHashMap<>();
+        private final List<OsmPrimitive> primitives = new ArrayList<>();
+
+        int indexOf(OsmPrimitive primitive) {
+            return indexes.computeIfAbsent(primitive, p -> {
+                primitives.add(p);
+                return primitives.size() - 1;
+            });
+        }
+
+        OsmPrimitive[] toArray() {
+            return primitives.toArray(new OsmPrimitive[0]);
+        }
+    }
+
+    private final String description;
+    private final Icon icon;
+    private final List<CompactCommand> children;
+    /** The state to restore on the next undo or redo, {@code null} while spilled to the log */
+    private PrimitiveState[] states;
+    private long statesSize;
+    private UndoLog log;
+    /** The primitives referred to by the state spilled to the log */
+    private OsmPrimitive[] references;
+    private long offset;
+    private int length;
+
+    private CompactCommand(Command command, List<CompactCommand> children, PrimitiveState[] states) {
+        super(command.getAffectedDataSet());
+        this.description = command.getDescriptionText();
+        this.icon = command.getDescriptionIcon();
+        this.children = children;
+        setStates(states);
+    }
+
+    /**
+     * Creates the compact replacement of an executed command.
+     * <p>
+     * The supported commands are {@link ChangePropertyCommand}, {@link ChangePropertyKeyCommand}, {@link ChangeNodesCommand},
+     * {@link RemoveNodesCommand}, {@link ChangeMembersCommand}, {@link ChangeCommand} (unless it changes other attributes than
+     * tags and geometry), {@link MoveCommand}, {@link RotateCommand}, {@link ScaleCommand} and {@link SequenceCommand}s of them.
+     * Subclasses are not supported, as they may have other effects.
+     * @param command the command, which must be in the executed state (i.e. on the undo stack)
+     * @return the compact command, or {@code null} if the command cannot be compacted
+     */
+    public static CompactCommand compact(Command command) {
+        if (command instanceof CompactCommand) {
+            return (CompactCommand) command;
+        }
+        Class<?> type = command.getClass();
+        List<CompactCommand> children = Collections.emptyList();
+        List<PrimitiveState> states = new ArrayList<>();
+        if (type == SequenceCommand.class) {
+            SequenceCommand sequence = (SequenceCommand) command;
+            if (!sequence.isSequenceComplete()) {
+                return null;
+            }
+            children = new ArrayList<>();
+            for (PseudoCommand child : sequence.getChildren()) {
+                CompactCommand compact = compact((Command) child);
+                if (compact == null) {
+                    return null;
+                }
+                children.add(compact);
+            }
+        } else if (type == ChangePropertyCommand.class) {
+            ChangePropertyCommand change = (ChangePropertyCommand) command;
+            for (OsmPrimitive osm : change.getObjects()) {
+                if (!addState(states, change, osm, change.getTags().keySet(), false)) {
+                    return null;
+                }
+            }
+        } else if (type == ChangePropertyKeyCommand.class) {
+            ChangePropertyKeyCommand change = (ChangePropertyKeyCommand) command;
+            Set<String> keys = new HashSet<>(Arrays.asList(change.getKey(), change.getNewKey()));
+            for (OsmPrimitive osm : change.getObjects()) {
+                if (!addState(states, change, osm, keys, false)) {
+                    return null;
+                }
+            }
+        } else if (type == ChangeNodesCommand.class || type == RemoveNodesCommand.class) {
+            if (!addState(states, command, ((AbstractNodesCommand<?>) command).getWay(), null, true)) {
+                return null;
+            }
+        } else if (type == ChangeMembersCommand.class) {
+            if (!addState(states, command, ((ChangeMembersCommand) command).getRelation(), null, true)) {
+                return null;
+            }
+        } else if (type == ChangeCommand.class) {
+            if (!addChangeState(states, (ChangeCommand) command)) {
+                return null;
+            }
+        } else if (type == MoveCommand.class) {
+            MoveCommand move = (MoveCommand) command;
+            Iterator<OldNodeState> it = move.getOldStates().iterator();
+            for (Node n : move.getParticipatingPrimitives()) {
+                OldNodeState os = it.next();
+                states.add(new PrimitiveState(n, os.isModified(), null, null, true, os.getLatLon()));
+            }
+        } else if (type == RotateCommand.class || type == ScaleCommand.class) {
+            TransformNodesCommand transform = (TransformNodesCommand) command;
+            for (Node n : transform.nodes) {
+                OldNodeState os = transform.oldStates.get(n);
+                states.add(new PrimitiveState(n, os.isModified(), null, null, true, os.getLatLon()));
+            }
+        } else {
+            return null;
+        }
+        return new CompactCommand(command, children, states.toArray(new PrimitiveState[0]));
+    }
+
+    private static boolean addState(List<PrimitiveState> states, Command command, OsmPrimitive osm, Collection<String> keys,
+            boolean geometryChanged) {
+        PrimitiveData orig = command.getOrig(osm);
+        if (orig == null) {
+            return false;
+        }
+        PrimitiveState state = createState(osm, orig, keys, geometryChanged);
+        if (state == null) {
+            return false;
+        }
+        states.add(state);
+        return true;
+    }
+
+    private static boolean addChangeState(List<PrimitiveState> states, ChangeCommand change) {
+        OsmPrimitive osm = change.getOsmPrimitive();
+        PrimitiveData orig = change.getOrig(osm);
+        if (orig == null) {
+            return false;
+        }
+        PrimitiveData target = change.getNewOsmPrimitive().save();
+        if (orig.getType() != target.getType()
+                || orig.getUniqueId() != target.getUniqueId()
+                || orig.getVersion() != target.getVersion()
+                || orig.getChangesetId() != target.getChangesetId()
+                || orig.getRawTimestamp() != target.getRawTimestamp()
+                || !Objects.equals(orig.getUser(), target.getUser())
+                || orig.isVisible() != target.isVisible()
+                || orig.isDeleted() != target.isDeleted()
+                || orig.isIncomplete() != target.isIncomplete()) {
+            return false;
+        }
+        Set<String> keys = new HashSet<>(orig.keySet());
+        keys.addAll(target.keySet());
+        keys.removeIf(key -> Objects.equals(orig.get(key), target.get(key)));
+        boolean geometryChanged = !Objects.deepEquals(getSavedGeometry(orig), getSavedGeometry(target));
+        PrimitiveState state = createState(osm, orig, keys.isEmpty() ? null : keys, geometryChanged);
+        if (state == null) {
+            return false;
+        }
+        states.add(state);
+        return true;
+    }
+
+    /**
+     * Creates the state to restore a primitive to its saved data.
+     * @param osm the primitive
+     * @param orig the saved data of the primitive
+     * @param keys the changed keys, or {@code null}
+     * @param geometryChanged if the geometry has been changed
+     * @return the state, or {@code null} if the nodes or members of the saved data are not found by their ids anymore
+     */
+    private static PrimitiveState createState(OsmPrimitive osm, PrimitiveData orig, Collection<String> keys, boolean geometryChanged) {
+        Object geometry = null;
+        if (geometryChanged) {
+            geometry = getGeometry(orig, osm.getDataSet());
+            if (geometry == null && !(orig instanceof NodeData)) {
+                return null;
+            }
+        }
+        String[] keyArray = null;
+        String[] values = null;
+        if (keys != null) {
+            keyArray = keys.toArray(new String[0]);
+            values = new String[keyArray.length];
+            for (int i = 0; i < keyArray.length; i++) {
+                values[i] = orig.get(keyArray[i]);
+            }
+        }
+        return new PrimitiveState(osm, orig.isModified(), keyArray, values, geometryChanged, geometry);
+    }
+
+    /**
+     * Returns the geometry of saved data, with the ids of the nodes or members, to compare it.
+     * @param data the saved data
+     * @return the coordinates, node ids or member data
+     */
+    private static Object getSavedGeometry(PrimitiveData data) {
+        if (data instanceof NodeData) {
+            return ((NodeData) data).getCoor();
+        } else if (data instanceof WayData) {
+            return ((WayData) data).getNodeIds().stream().mapToLong(Long::longValue).toArray();
+        } else {
+            return ((RelationData) data).getMembers().toArray(new RelationMemberData[0]);
+        }
+    }
+
+    /**
+     * Returns the geometry of saved data, with the nodes or members of the data set. The ids of the saved data are
+     * looked up when the command is compacted, before they can be changed by an upload.
+     * @param data the saved data
+     * @param ds the data set
+     * @return the coordinates, nodes or members, or {@code null} if a node or member is not found
+     */
+    private static Object getGeometry(PrimitiveData data, DataSet ds) {
+        if (data instanceof NodeData) {
+            return ((NodeData) data).getCoor();
+        } else if (data instanceof WayData) {
+            List<Long> nodeIds = ((WayData) data).getNodeIds();
+            Node[] nodes = new Node[nodeIds.size()];
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = ds.getNode(nodeIds.get(i));
+                if (nodes[i] == null) {
+                    return null;
+                }
+            }
+            return nodes;
+        } else {
+            List<RelationMemberData> memberData = ((RelationData) data).getMembers();
+            RelationMember[] members = new RelationMember[memberData.size()];
+            for (int i = 0; i < members.length; i++) {
+                OsmPrimitive member = ds.getPrimitiveById(memberData.get(i));
+                if (member == null) {
+                    return null;
+                }
+                members[i] = new RelationMember(memberData.get(i).getRole(), member);
+            }
+            return members;
+        }
+    }
+
+    private static Object getGeometry(OsmPrimitive osm) {
+        if (osm instanceof Node) {
+            return ((Node) osm).getCoor();
+        } else if (osm instanceof Way) {
+            return ((Way) osm).getNodes().toArray(new Node[0]);
+        } else {
+            return ((Relation) osm).getMembers().toArray(new RelationMember[0]);
+        }
+    }
+
+    private static void setGeometry(OsmPrimitive osm, Object geometry) {
+        DataSet ds = osm.getDataSet();
+        if (osm instanceof Node) {
+            ((Node) osm).setCoor((LatLon) geometry);
+        } else if (osm instanceof Way) {
+            Node[] nodes = (Node[]) geometry;
+            for (Node node : nodes) {
+                if (node.getDataSet() != ds) {
+                    throw new AssertionError("Data consistency problem - way with missing node detected");
+                }
+            }
+            ((Way) osm).setNodes(Arrays.asList(nodes));
+        } else {
+            RelationMember[] members = (RelationMember[]) geometry;
+            for (RelationMember member : members) {
+                if (member.getMember().getDataSet() != ds) {
+                    throw new AssertionError("Data consistency problem - relation with missing member detected");
+                }
+            }
+            ((Relation) osm).setMembers(Arrays.asList(members));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the estimated memory used by a command of the undo history.
+     * @param command the command
+     * @return the estimated size of the command, in bytes
+     */
+    public static long estimateSize(Command command) {
+        if (command instanceof CompactCommand) {
+            return ((CompactCommand) command).getEstimatedSize();
+        }
+        long size = COMMAND_SIZE;
+        for (OsmPrimitive osm : command.getParticipatingPrimitives()) {
+            size += PRIMITIVE_DATA_SIZE + (long) TAG_SIZE * osm.getNumKeys();
+            if (osm instanceof Way) {
+                size += (long) NODE_REF_SIZE * ((Way) osm).getNodesCount();
+            } else if (osm instanceof Relation) {
+                size += (long) MEMBER_SIZE * ((Relation) osm).getMembersCount();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Returns the estimated memory used by this command.
+     * @return the estimated size of this command, in bytes
+     */
+    public long getEstimatedSize() {
+        long size = COMMAND_SIZE + statesSize;
+        if (references != null) {
+            size += (long) REFERENCE_SIZE * references.length;
+        }
+        for (CompactCommand child : children) {
+            size += child.getEstimatedSize();
+        }
+        return size;
+    }
+
+    private void setStates(PrimitiveState[] states) {
+        this.states = states;
+        statesSize = 0;
+        if (states != null) {
+            for (PrimitiveState state : states) {
+                statesSize += state.estimateSize();
+            }
+        }
+    }
+
+    /**
+     * Determines if the state of this command, or of one of its children, has been spilled to the log.
+     * @return {@code true} if the state has been spilled to the log
+     */
+    public boolean isSpilled() {
+        return log != null || children.stream().anyMatch(CompactCommand::isSpilled);
+    }
+
+    /**
+     * Writes the state of this command and its children to the log, and removes it from memory.
+     * @param undoLog the log
+     * @throws IOException if the state cannot be written
+     */
+    public void spill(UndoLog undoLog) throws IOException {
+        for (CompactCommand child : children) {
+            child.spill(undoLog);
+        }
+        if (states != null && states.length > 0) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            References table = new References();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                out.writeInt(states.length);
+                for (PrimitiveState state : states) {
+                    state.write(out, table);
+                }
+            }
+            byte[] data = bytes.toByteArray();
+            offset = undoLog.append(data);
+            length = data.length;
+            log = undoLog;
+            references = table.toArray();
+            setStates(null);
+        }
+    }
+
+    /**
+     * Releases the spilled state of this command and its children. Must be called when the command is removed
+     * from the undo history.
+     */
+    public void release() {
+        for (CompactCommand child : children) {
+            child.release();
+        }
+        if (log != null) {
+            log.release(length);
+            log = null;
+            references = null;
+        }
+    }
+
+    private PrimitiveState[] readStates() throws IOException {
+        if (states != null) {
+            return states;
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(log.read(offset, length)))) {
+            PrimitiveState[] result = new PrimitiveState[in.readInt()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = PrimitiveState.read(in, references);
+            }
+            return result;
+        }
+    }
+
+    private void swap() {
+        if (states == null) {
+            try {
+                PrimitiveState[] read = readStates();
+                log.release(length);
+                log = null;
+                references = null;
+                setStates(read);
+            } catch (IOException e) {
+                throw new JosmRuntimeException(e);
+            }
+        }
+        for (PrimitiveState state : states) {
+            if (state.primitive.getDataSet() != null) {
+                state.swap();
+            }
+        }
+    }
+
+    @Override
+    public boolean executeCommand() {
+        getAffectedDataSet().update(() -> {
+            for (CompactCommand child : children) {
+                child.executeCommand();
+            }
+            swap();
+        });
+        return true;
+    }
+
+    @Override
+    public void undoCommand() {
+        getAffectedDataSet().update(() -> {
+            swap();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                children.get(i).undoCommand();
+            }
+        });
+    }
+
+    @Override
+    public void fillModifiedData(Collection<OsmPrimitive> modified, Collection<OsmPrimitive> deleted, Collection<OsmPrimitive> added) {
+        modified.addAll(getParticipatingPrimitives());
+    }
+
+    @Override
+    public Collection<? extends OsmPrimitive> getParticipatingPrimitives() {
+        Collection<OsmPrimitive> prims = new LinkedHashSet<>();
+        for (CompactCommand child : children) {
+            prims.addAll(child.getParticipatingPrimitives());
+        }
+        try {
+            for (PrimitiveState state : readStates()) {
+                prims.add(state.primitive);
+            }
+        } catch (IOException e) {
+            Logging.warn(e);
+        }
+        return prims;
+    }
+
+    @Override
+    public String getDescriptionText() {
+        return description;
+    }
+
+    @Override
+    public Icon getDescriptionIcon() {
+        return icon;
+    }
+
+    @Override
+    public Collection<PseudoCommand> getChildren() {
+        return children.isEmpty() ? null : Collections.<PseudoCommand>unmodifiableList(children);
+    }
+
+    // Compact commands are only equal to themselves, as their state changes with each undo and redo
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        return this == obj;
+    }
+}
@@ -298,6 +298,14 @@ public class MoveCommand extends Command {
         return nodes;
     }
 
+    /**
+     * Returns the state of the nodes before the move, in the order of {@link #getParticipatingPrimitives()}.
+     * @return the old state of the nodes
+     */
+    List<OldNodeState> getOldStates() {
+        return Collections.unmodifiableList(oldState);
+    }
+
     /**
      * Gets the current move offset.
      * @return The current move offset.
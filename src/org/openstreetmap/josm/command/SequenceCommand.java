@@ -188,6 +188,15 @@ public class SequenceCommand extends Command {
         return name;
     }
 
+    /**
+     * Determines if the sequence execution continues after one of its commands fails.
+     * @return {@code true} if the sequence execution continues after one of its commands fails
+     * @since 18609
+     */
+    public final boolean isContinueOnError() {
+        return continueOnError;
+    }
+
     @Override
     public Icon getDescriptionIcon() {
         return ImageProvider.get("data", "sequence");
@@ -215,6 +224,14 @@ public class SequenceCommand extends Command {
         this.sequenceComplete = sequenceComplete;
     }
 
+    /**
+     * Determines if the whole sequence has been executed, i.e. if undo has something to do.
+     * @return {@code true} if the whole sequence has been executed
+     */
+    final boolean isSequenceComplete() {
+        return sequenceComplete;
+    }
+
     @Override
     public int hashCode() {
         return Objects.hash(super.hashCode(), Arrays.hashCode(sequence), sequenceComplete, name, continueOnError);
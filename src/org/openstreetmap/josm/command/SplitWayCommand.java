@@ -754,7 +754,7 @@ public class SplitWayCommand extends SequenceCommand {
         // add one command for each complex case with relations
         final DataSet ds = way.getDataSet();
         for (Relation r : analysis.getRelationAnalyses().stream().map(RelationAnalysis::getRelation).collect(Collectors.toSet())) {
-            Relation orig = (Relation) ds.getPrimitiveById(r);
+            Relation orig = ds.getRelation(r.getUniqueId());
             analysis.getCommands().add(new ChangeMembersCommand(orig, new ArrayList<>(r.getMembers())));
             r.setMembers(null); // see #19885
         }
@@ -0,0 +1,117 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.command;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * A temporary file storing the state of {@link CompactCommand}s which have been spilled out of memory.
+ * <p>
+ * Records are appended to the file, and released once they have been read back or their command has been discarded.
+ * The file is truncated as soon as all records have been released, and deleted when the log is closed.
+ * @since 18611
+ */
+public class UndoLog implements Closeable {
+
+    private Path path;
+    private FileChannel channel;
+    private long size;
+    private long liveBytes;
+
+    /**
+     * Appends a record to the log.
+     * @param data the record
+     * @return the offset of the record in the log
+     * @throws IOException if the record cannot be written
+     */
+    public synchronized long append(byte[] data) throws IOException {
+        if (channel == null) {
+            File dir = Utils.getJosmTempDir();
+            path = dir != null ? Files.createTempFile(dir.toPath(), "undo_", ".log") : Files.createTempFile("josm_undo_", ".log");
+            path.toFile().deleteOnExit();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            size = 0;
+        }
+        long offset = size;
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        size += data.length;
+        liveBytes += data.length;
+        return offset;
+    }
+
+    /**
+     * Reads a record from the log. The record stays in the log until {@link #release released}.
+     * @param offset the offset of the record, as returned by {@link #append}
+     * @param length the length of the record
+     * @return the record
+     * @throws IOException if the record cannot be read
+     */
+    public synchronized byte[] read(long offset, int length) throws IOException {
+        if (channel == null || offset + length > size) {
+            throw new IOException("Invalid undo log record: " + offset + '+' + length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of undo log " + path);
+            }
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Releases a record which is no longer needed.
+     * @param length the length of the record
+     */
+    public synchronized void release(int length) {
+        liveBytes -= length;
+        if (liveBytes <= 0 && channel != null) {
+            liveBytes = 0;
+            try {
+                channel.truncate(0);
+                size = 0;
+            } catch (IOException e) {
+                Logging.warn(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes of the records which have not been released.
+     * @return the number of bytes of the records which have not been released
+     */
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Closes and deletes the log. It can be used again afterwards, all previous records are lost.
+     */
+    @Override
+    public synchronized void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                Logging.warn(e);
+            }
+            channel = null;
+            path = null;
+        }
+        size = 0;
+        liveBytes = 0;
+    }
+}
@@ -1,26 +1,44 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.data;
 
+import java.io.IOException;
 import java.util.Collections;
 import java.util.EventObject;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
 import java.util.Objects;
+import java.util.function.Predicate;
 
 import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.command.CompactCommand;
+import org.openstreetmap.josm.command.UndoLog;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmDataManager;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
 import org.openstreetmap.josm.gui.util.GuiHelper;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.MemoryManager;
 
 /**
  * This is the global undo/redo handler for all {@link DataSet}s.
  * <p>
  * If you want to change a data set, you can use {@link #add(Command)} to execute a command on it and make that command undoable.
+ * <p>
+ * The estimated size of the commands is kept within a memory budget, given by {@link #MEMORY_BUDGET} and limited to half of
+ * the memory available in the {@link MemoryManager}: once it is exceeded, the oldest commands are replaced by
+ * {@link CompactCommand}s, whose state is then spilled to an {@link UndoLog} if needed.
+ * They can still be undone and redone as usual.
  */
 public final class UndoRedoHandler {
 
+    /** Preferred memory budget of the undo history, in MiB */
+    public static final IntegerProperty MEMORY_BUDGET = new IntegerProperty("undo.memory-budget", 128);
+
     /**
      * All commands that were made on the dataset
      *
@@ -36,6 +54,10 @@ public final class UndoRedoHandler {
      */
     private final LinkedList<Command> redoCommands = new LinkedList<>();
 
+    /** Estimated size of the commands which are not compact, see {@link CompactCommand#estimateSize} */
+    private final Map<Command, Long> commandSizes = new IdentityHashMap<>();
+    private final UndoLog undoLog = new UndoLog();
+
     private final LinkedList<CommandQueueListener> listenerCommands = new LinkedList<>();
     private final LinkedList<CommandQueuePreciseListener> preciseListenerCommands = new LinkedList<>();
 
@@ -300,13 +322,16 @@ public final class UndoRedoHandler {
             c.executeCommand();
         }
         commands.add(c);
+        commandSizes.put(c, CompactCommand.estimateSize(c));
         // Limit the number of commands in the undo list.
         // Currently you have to undo the commands one by one. If
         // this changes, a higher default value may be reasonable.
         if (commands.size() > Config.getPref().getInt("undo.max", 1000)) {
-            commands.removeFirst();
+            discard(commands.removeFirst());
         }
+        redoCommands.forEach(this::discard);
         redoCommands.clear();
+        enforceMemoryBudget();
     }
 
     /**
@@ -395,6 +420,7 @@ public final class UndoRedoHandler {
                     ds.endUpdate();
                 }
             }
+            enforceMemoryBudget();
             fireCommandsChanged();
         });
     }
@@ -444,6 +470,8 @@ public final class UndoRedoHandler {
     public void clean() {
         redoCommands.clear();
         commands.clear();
+        commandSizes.clear();
+        undoLog.close();
         fireEvent(new CommandQueueCleanedEvent(this, null));
         fireCommandsChanged();
     }
@@ -457,14 +485,79 @@ public final class UndoRedoHandler {
         if (dataSet == null)
             return;
         boolean changed = false;
-        changed |= commands.removeIf(c -> c.getAffectedDataSet() == dataSet);
-        changed |= redoCommands.removeIf(c -> c.getAffectedDataSet() == dataSet);
+        Predicate<Command> affected = c -> c.getAffectedDataSet() == dataSet;
+        changed |= removeIf(commands, affected);
+        changed |= removeIf(redoCommands, affected);
         if (changed) {
             fireEvent(new CommandQueueCleanedEvent(this, dataSet));
             fireCommandsChanged();
         }
     }
 
+    private boolean removeIf(List<Command> list, Predicate<Command> filter) {
+        return list.removeIf(c -> {
+            if (filter.test(c)) {
+                discard(c);
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void discard(Command c) {
+        commandSizes.remove(c);
+        if (c instanceof CompactCommand) {
+            ((CompactCommand) c).release();
+        }
+    }
+
+    private static long getMemoryBudget() {
+        return Math.max(0, Math.min(MEMORY_BUDGET.get() * 1024L * 1024L, MemoryManager.getInstance().getAvailableMemory() / 2));
+    }
+
+    private long getEstimatedSize(Command c) {
+        return c instanceof CompactCommand ? ((CompactCommand) c).getEstimatedSize() : commandSizes.getOrDefault(c, 0L);
+    }
+
+    /**
+     * Replaces the oldest commands by compact ones, then spills the oldest compact commands to the undo log,
+     * until the estimated size of the undo and redo commands fits in the memory budget.
+     * The last command is kept as it is, since it may still be updated (see {@code MoveCommand#moveAgain}).
+     */
+    private void enforceMemoryBudget() {
+        long budget = getMemoryBudget();
+        long used = 0;
+        for (Command c : commands) {
+            used += getEstimatedSize(c);
+        }
+        for (Command c : redoCommands) {
+            used += getEstimatedSize(c);
+        }
+        for (ListIterator<Command> it = commands.listIterator(); used > budget && it.nextIndex() < commands.size() - 1;) {
+            Command c = it.next();
+            CompactCommand compact = c instanceof CompactCommand ? null : CompactCommand.compact(c);
+            if (compact != null) {
+                used += compact.getEstimatedSize() - getEstimatedSize(c);
+                commandSizes.remove(c);
+                it.set(compact);
+            }
+        }
+        for (ListIterator<Command> it = commands.listIterator(); used > budget && it.nextIndex() < commands.size() - 1;) {
+            Command c = it.next();
+            if (c instanceof CompactCommand) {
+                CompactCommand compact = (CompactCommand) c;
+                long size = compact.getEstimatedSize();
+                try {
+                    compact.spill(undoLog);
+                } catch (IOException e) {
+                    Logging.warn("Unable to write undo log", e);
+                    return;
+                }
+                used += compact.getEstimatedSize() - size;
+            }
+        }
+    }
+
     /**
      * Removes a command queue listener.
      * @param l The command queue listener to remove
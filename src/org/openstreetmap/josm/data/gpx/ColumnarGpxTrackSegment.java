@@ -0,0 +1,629 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.gpx;
+
+import java.awt.Color;
+import java.time.Instant;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.ILatLon;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.projection.Projecting;
+
+/**
+ * A gpx track segment storing its points in primitive arrays, for very large tracks.
+ * <p>
+ * The coordinates, times and elevations of the points are stored in columns. The {@link WayPoint} objects are
+ * flyweight views, created when the points are accessed and not kept: their attributes are backed by the segment,
+ * and their drawing state and projected coordinates are copied from the segment. The drawing state is changed with
+ * {@link #setCustomColoring}, {@link #setDrawLine} and {@link #setDir}. The points with other attributes or with
+ * extensions are kept as they are.
+ * @since 18604
+ */
+public class ColumnarGpxTrackSegment extends WithAttributes implements IGpxTrackSegment {
+
+    /** Marks a point without time, or whose time is kept in its attributes */
+    private static final long NO_TIME = Long.MIN_VALUE;
+    /** The bit of {@link #lineStates} telling that the line before the point is drawn, the lower bits hold the direction */
+    private static final byte DRAW_LINE = 0x8;
+
+    private final double[] lats;
+    private final double[] lons;
+    private final long[] times;
+    private final String[] elevations;
+    /** The sorted indexes of the points kept as they are */
+    private final int[] keptIndexes;
+    private final WayPoint[] keptPoints;
+    /** The other attributes of the points which are not kept, by index */
+    private final Map<Integer, Map<String, Object>> otherAttributes = new HashMap<>();
+    private final List<WayPoint> wayPointsView;
+    private final Bounds bounds;
+    private final double length;
+
+    /** The drawing state of the points which are not kept, allocated when first set */
+    private Color[] colors;
+    private byte[] lineStates;
+    private volatile ProjectedColumns projected;
+
+    private ColumnarGpxTrackSegment(Builder builder) {
+        int size = builder.size;
+        lats = Arrays.copyOf(builder.lats, size);
+        lons = Arrays.copyOf(builder.lons, size);
+        times = Arrays.copyOf(builder.times, size);
+        elevations = Arrays.copyOf(builder.elevations, size);
+        keptIndexes = new int[builder.keptPoints.size()];
+        keptPoints = new WayPoint[keptIndexes.length];
+        int k = 0;
+        for (Map.Entry<Integer, WayPoint> e : builder.keptPoints.entrySet()) {
+            keptIndexes[k] = e.getKey();
+            keptPoints[k++] = e.getValue();
+        }
+        wayPointsView = Collections.unmodifiableList(new WayPointList());
+        bounds = calculateBounds();
+        length = calculateLength();
+    }
+
+    private Bounds calculateBounds() {
+        Bounds result = null;
+        for (int i = 0; i < lats.length; i++) {
+            if (result == null) {
+                result = new Bounds(lats[i], lons[i], true);
+            } else {
+                result.extend(lats[i], lons[i]);
+            }
+        }
+        return result;
+    }
+
+    private double calculateLength() {
+        double result = 0.0; // in meters
+        ILatLon last = null;
+        for (int i = 0; i < lats.length; i++) {
+            ILatLon tpt = new LatLon(lats[i], lons[i]);
+            if (last != null) {
+                double d = last.greatCircleDistance(tpt);
+                if (!Double.isNaN(d) && !Double.isInfinite(d)) {
+                    result += d;
+                }
+            }
+            last = tpt;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of points.
+     * @return the number of points
+     */
+    public int size() {
+        return lats.length;
+    }
+
+    private WayPoint getKeptPoint(int index) {
+        int k = Arrays.binarySearch(keptIndexes, index);
+        return k >= 0 ? keptPoints[k] : null;
+    }
+
+    /**
+     * Returns the point at the given index. Unless the point is kept as it is, a new view of the point is returned.
+     * Its attributes are backed by this segment, but its drawing state is not.
+     * @param index the index of the point
+     * @return the point
+     */
+    public WayPoint getWayPoint(int index) {
+        WayPoint wpt = getKeptPoint(index);
+        if (wpt == null) {
+            wpt = new WayPoint(lats[index], lons[index], new PointAttributes(index));
+            wpt.customColoring = getCustomColoring(index);
+            wpt.drawLine = isDrawLine(index);
+            wpt.dir = getDir(index);
+        }
+        return wpt;
+    }
+
+    /**
+     * Returns the point at the given index, like {@link #getWayPoint(int)}, with the projected coordinates cached by this segment.
+     * @param index the index of the point
+     * @param projecting the projection
+     * @return the point
+     */
+    public WayPoint getWayPoint(int index, Projecting projecting) {
+        WayPoint wpt = getWayPoint(index);
+        if (getKeptPoint(index) == null) {
+            wpt.setEastNorthCache(getEastNorth(index, projecting), projecting.getCacheKey());
+        }
+        return wpt;
+    }
+
+    /**
+     * Returns the latitude of the point at the given index.
+     * @param index the index of the point
+     * @return the latitude
+     */
+    public double lat(int index) {
+        return lats[index];
+    }
+
+    /**
+     * Returns the longitude of the point at the given index.
+     * @param index the index of the point
+     * @return the longitude
+     */
+    public double lon(int index) {
+        return lons[index];
+    }
+
+    /**
+     * Returns the time of the point at the given index, as {@link WayPoint#getTimeInMillis()} without creating the point.
+     * @param index the index of the point
+     * @return the time in milliseconds since the epoch, or 0 if the point has no time
+     */
+    public long getTimeInMillis(int index) {
+        if (times[index] != NO_TIME) {
+            return times[index];
+        }
+        Object time = get(index, PT_TIME);
+        return time instanceof Instant ? ((Instant) time).toEpochMilli() : 0;
+    }
+
+    /**
+     * Returns an attribute of the point at the given index, without creating the point.
+     * @param index the index of the point
+     * @param key the attribute key
+     * @return the attribute value, or {@code null}
+     */
+    public Object get(int index, String key) {
+        WayPoint wpt = getKeptPoint(index);
+        if (wpt != null) {
+            return wpt.get(key);
+        } else if (PT_TIME.equals(key) && times[index] != NO_TIME) {
+            return Instant.ofEpochMilli(times[index]);
+        } else if (PT_ELE.equals(key) && elevations[index] != null) {
+            return elevations[index];
+        }
+        Map<String, Object> others = otherAttributes.get(index);
+        return others != null ? others.get(key) : null;
+    }
+
+    /**
+     * Determines if some point has a time.
+     * @return {@code true} if some point has a time
+     */
+    public boolean hasTimes() {
+        for (long time : times) {
+            if (time != NO_TIME) {
+                return true;
+            }
+        }
+        for (WayPoint wpt : keptPoints) {
+            if (wpt.get(PT_TIME) != null) {
+                return true;
+            }
+        }
+        return otherAttributes.values().stream().anyMatch(others -> others.get(PT_TIME) != null);
+    }
+
+    /**
+     * Returns the color of the line before the point at the given index.
+     * @param index the index of the point
+     * @return the color, or {@code null}
+     * @see WayPoint#customColoring
+     */
+    public Color getCustomColoring(int index) {
+        WayPoint wpt = getKeptPoint(index);
+        if (wpt != null) {
+            return wpt.customColoring;
+        }
+        return colors != null ? colors[index] : null;
+    }
+
+    /**
+     * Sets the color of the line before the point at the given index.
+     * @param index the index of the point
+     * @param color the color, or {@code null}
+     * @see WayPoint#customColoring
+     */
+    public void setCustomColoring(int index, Color color) {
+        WayPoint wpt = getKeptPoint(index);
+        if (wpt != null) {
+            wpt.customColoring = color;
+        } else if (colors != null || color != null) {
+            if (colors == null) {
+                colors = new Color[lats.length];
+            }
+            colors[index] = color;
+        }
+    }
+
+    /**
+     * Determines if the line before the point at the given index is drawn.
+     * @param index the index of the point
+     * @return {@code true} if the line is drawn
+     * @see WayPoint#drawLine
+     */
+    public boolean isDrawLine(int index) {
+        WayPoint wpt = getKeptPoint(index);
+        if (wpt != null) {
+            return wpt.drawLine;
+        }
+        return lineStates != null && (lineStates[index] & DRAW_LINE) != 0;
+    }
+
+    /**
+     * Sets if the line before the point at the given index is drawn.
+     * @param index the index of the point
+     * @param drawLine {@code true} if the line is drawn
+     * @see WayPoint#drawLine
+     */
+    public void setDrawLine(int index, boolean drawLine) {
+        WayPoint wpt = getKeptPoint(index);
+        if (wpt != null) {
+            wpt.drawLine = drawLine;
+        } else if (lineStates != null || drawLine) {
+            if (lineStates == null) {
+                lineStates = new byte[lats.length];
+            }
+            lineStates[index] = (byte) (drawLine ? lineStates[index] | DRAW_LINE : lineStates[index] & ~DRAW_LINE);
+        }
+    }
+
+    /**
+     * Returns the direction of the line before the point at the given index.
+     * @param index the index of the point
+     * @return the direction, from 0 to 7
+     * @see WayPoint#dir
+     */
+    public int getDir(int index) {
+        WayPoint wpt = getKeptPoint(index);
+        if (wpt != null) {
+            return wpt.dir;
+        }
+        return lineStates != null ? lineStates[index] & (DRAW_LINE - 1) : 0;
+    }
+
+    /**
+     * Sets the direction of the line before the point at the given index.
+     * @param index the index of the point
+     * @param dir the direction, from 0 to 7
+     * @see WayPoint#dir
+     */
+    public void setDir(int index, int dir) {
+        WayPoint wpt = getKeptPoint(index);
+        if (wpt != null) {
+            wpt.dir = dir;
+        } else if (lineStates != null || dir != 0) {
+            if (lineStates == null) {
+                lineStates = new byte[lats.length];
+            }
+            lineStates[index] = (byte) ((lineStates[index] & DRAW_LINE) | (dir & (DRAW_LINE - 1)));
+        }
+    }
+
+    /**
+     * Returns the projected coordinates of the point at the given index, cached by this segment.
+     * @param index the index of the point
+     * @param projecting the projection
+     * @return the projected coordinates
+     */
+    public EastNorth getEastNorth(int index, Projecting projecting) {
+        WayPoint wpt = getKeptPoint(index);
+        if (wpt != null) {
+            return wpt.getEastNorth(projecting);
+        }
+        Object cacheKey = projecting.getCacheKey();
+        ProjectedColumns columns = projected;
+        if (columns == null || !Objects.equals(cacheKey, columns.cacheKey)) {
+            columns = new ProjectedColumns(cacheKey, lats.length);
+            projected = columns;
+        }
+        if (Double.isNaN(columns.east[index]) || Double.isNaN(columns.north[index])) {
+            EastNorth en = projecting.latlon2eastNorth(new LatLon(lats[index], lons[index]));
+            columns.east[index] = en.east();
+            columns.north[index] = en.north();
+            return en;
+        }
+        return new EastNorth(columns.east[index], columns.north[index]);
+    }
+
+    /**
+     * Invalidates the cache of projected coordinates, of all points.
+     * @see WayPoint#invalidateEastNorthCache()
+     */
+    public void invalidateEastNorthCache() {
+        projected = null;
+        for (WayPoint wpt : keptPoints) {
+            wpt.invalidateEastNorthCache();
+        }
+    }
+
+    @Override
+    public Bounds getBounds() {
+        return bounds == null ? null : new Bounds(bounds);
+    }
+
+    @Override
+    public Collection<WayPoint> getWayPoints() {
+        return wayPointsView;
+    }
+
+    @Override
+    public double length() {
+        return length;
+    }
+
+    @Override
+    public int getUpdateCount() {
+        return 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(super.hashCode(), Arrays.hashCode(lats), Arrays.hashCode(lons), Arrays.hashCode(times),
+                Arrays.hashCode(elevations), Arrays.hashCode(keptIndexes), Arrays.hashCode(keptPoints), otherAttributes);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null || !super.equals(obj) || getClass() != obj.getClass())
+            return false;
+        ColumnarGpxTrackSegment other = (ColumnarGpxTrackSegment) obj;
+        return Arrays.equals(lats, other.lats)
+                && Arrays.equals(lons, other.lons)
+                && Arrays.equals(times, other.times)
+                && Arrays.equals(elevations, other.elevations)
+                && Arrays.equals(keptIndexes, other.keptIndexes)
+                && Arrays.equals(keptPoints, other.keptPoints)
+                && otherAttributes.equals(other.otherAttributes);
+    }
+
+    /**
+     * The projected coordinates of the points, for one projection.
+     */
+    private static final class ProjectedColumns {
+        private final Object cacheKey;
+        private final double[] east;
+        private final double[] north;
+
+        ProjectedColumns(Object cacheKey, int size) {
+            this.cacheKey = cacheKey;
+            east = new double[size];
+            north = new double[size];
+            Arrays.fill(east, Double.NaN);
+            Arrays.fill(north, Double.NaN);
+        }
+    }
+
+    private final class WayPointList extends AbstractList<WayPoint> implements RandomAccess {
+        @Override
+        public WayPoint get(int index) {
+            return getWayPoint(index);
+        }
+
+        @Override
+        public int size() {
+            return lats.length;
+        }
+    }
+
+    /**
+     * The attributes of a point, with the time and elevation stored in the columns, and the other attributes in the segment.
+     */
+    private final class PointAttributes extends AbstractMap<String, Object> {
+        private final int index;
+
+        PointAttributes(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (PT_TIME.equals(key) && times[index] != NO_TIME) {
+                return Instant.ofEpochMilli(times[index]);
+            } else if (PT_ELE.equals(key) && elevations[index] != null) {
+                return elevations[index];
+            }
+            Map<String, Object> others = otherAttributes.get(index);
+            return others != null ? others.get(key) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            Map<String, Object> others = otherAttributes.get(index);
+            return (PT_TIME.equals(key) && times[index] != NO_TIME) || (PT_ELE.equals(key) && elevations[index] != null)
+                    || (others != null && others.containsKey(key));
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            Object old = remove(key);
+            if (PT_TIME.equals(key) && isColumnTime(value)) {
+                times[index] = ((Instant) value).toEpochMilli();
+            } else if (PT_ELE.equals(key) && value instanceof String) {
+                elevations[index] = (String) value;
+            } else {
+                otherAttributes.computeIfAbsent(index, i -> new HashMap<>(0)).put(key, value);
+            }
+            return old;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            Object old = get(key);
+            if (PT_TIME.equals(key)) {
+                times[index] = NO_TIME;
+            } else if (PT_ELE.equals(key)) {
+                elevations[index] = null;
+            }
+            Map<String, Object> others = otherAttributes.get(index);
+            if (others != null) {
+                others.remove(key);
+                if (others.isEmpty()) {
+                    otherAttributes.remove(index);
+                }
+            }
+            return old;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    List<Entry<String, Object>> entries = new ArrayList<>();
+                    if (times[index] != NO_TIME) {
+                        entries.add(new PointEntry(PT_TIME, get(PT_TIME)));
+                    }
+                    if (elevations[index] != null) {
+                        entries.add(new PointEntry(PT_ELE, elevations[index]));
+                    }
+                    Map<String, Object> others = otherAttributes.get(index);
+                    if (others != null) {
+                        others.forEach((k, v) -> entries.add(new PointEntry(k, v)));
+                    }
+                    Iterator<Entry<String, Object>> it = entries.iterator();
+                    return new Iterator<Entry<String, Object>>() {
+                        private Entry<String, Object> last;
+
+                        @Override
+                        public boolean hasNext() {
+                            return it.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            last = it.next();
+                            return last;
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (last == null)
+                                throw new IllegalStateException();
+                            PointAttributes.this.remove(last.getKey());
+                            last = null;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    Map<String, Object> others = otherAttributes.get(index);
+                    return (times[index] != NO_TIME ? 1 : 0) + (elevations[index] != null ? 1 : 0) + (others != null ? others.size() : 0);
+                }
+            };
+        }
+
+        private final class PointEntry extends SimpleEntry<String, Object> {
+            private static final long serialVersionUID = 1L;
+
+            PointEntry(String key, Object value) {
+                super(key, value);
+            }
+
+            @Override
+            public Object setValue(Object value) {
+                put(getKey(), value);
+                return super.setValue(value);
+            }
+        }
+    }
+
+    private static boolean isColumnTime(Object value) {
+        return value instanceof Instant && ((Instant) value).getNano() % 1_000_000 == 0
+                && ((Instant) value).toEpochMilli() != NO_TIME;
+    }
+
+    /**
+     * Builds a {@link ColumnarGpxTrackSegment} one point at a time.
+     */
+    public static class Builder {
+        private double[] lats = new double[1024];
+        private double[] lons = new double[1024];
+        private long[] times = new long[1024];
+        private String[] elevations = new String[1024];
+        private final Map<Integer, WayPoint> keptPoints = new TreeMap<>();
+        private int size;
+        /** Elevation values, to share the equal strings */
+        private final Map<String, String> elevationValues = new HashMap<>();
+
+        /**
+         * Adds a point. Its time and elevation are stored in columns if it has no other attribute nor extension,
+         * otherwise the point itself is kept.
+         * @param wpt the point
+         * @return this
+         */
+        public Builder add(WayPoint wpt) {
+            if (size == lats.length) {
+                int capacity = size + (size >> 1);
+                lats = Arrays.copyOf(lats, capacity);
+                lons = Arrays.copyOf(lons, capacity);
+                times = Arrays.copyOf(times, capacity);
+                elevations = Arrays.copyOf(elevations, capacity);
+            }
+            lats[size] = wpt.lat();
+            lons[size] = wpt.lon();
+            times[size] = NO_TIME;
+            elevations[size] = null;
+            if (isColumnPoint(wpt)) {
+                Object time = wpt.attr.get(PT_TIME);
+                if (time != null) {
+                    times[size] = ((Instant) time).toEpochMilli();
+                }
+                Object ele = wpt.attr.get(PT_ELE);
+                if (ele != null) {
+                    elevations[size] = elevationValues.computeIfAbsent((String) ele, e -> e);
+                }
+            } else {
+                keptPoints.put(size, wpt);
+            }
+            size++;
+            return this;
+        }
+
+        private static boolean isColumnPoint(WayPoint wpt) {
+            if (wpt.hasExtensions() && !wpt.getExtensions().isEmpty()) {
+                return false;
+            }
+            for (Map.Entry<String, Object> e : wpt.attr.entrySet()) {
+                if (!(PT_TIME.equals(e.getKey()) && isColumnTime(e.getValue()))
+                        && !(PT_ELE.equals(e.getKey()) && e.getValue() instanceof String)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the number of points added so far.
+         * @return the number of points
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Builds the segment.
+         * @return the segment with the added points
+         */
+        public ColumnarGpxTrackSegment build() {
+            return new ColumnarGpxTrackSegment(this);
+        }
+    }
+}
@@ -21,6 +21,8 @@ import java.util.Optional;
 import java.util.OptionalLong;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
 import org.openstreetmap.josm.data.Bounds;
@@ -768,14 +770,26 @@ public class GpxData extends WithAttributes implements Data, IGpxLayerPrefs {
      */
     public static Optional<Interval> getMinMaxTimeForTrack(IGpxTrack trk) {
         final LongSummaryStatistics statistics = trk.getSegments().stream()
-                .flatMap(seg -> seg.getWayPoints().stream())
-                .mapToLong(WayPoint::getTimeInMillis)
+                .flatMapToLong(GpxData::getTimesInMillis)
                 .summaryStatistics();
         return statistics.getCount() == 0 || (statistics.getMin() == 0 && statistics.getMax() == 0)
                 ? Optional.empty()
                 : Optional.of(new Interval(Instant.ofEpochMilli(statistics.getMin()), Instant.ofEpochMilli(statistics.getMax())));
     }
 
+    /**
+     * Returns the timestamps of the points of a track segment, without creating the points of a {@link ColumnarGpxTrackSegment}.
+     * @param seg track segment
+     * @return the timestamps in milliseconds, 0 for the points without time
+     */
+    private static LongStream getTimesInMillis(IGpxTrackSegment seg) {
+        if (seg instanceof ColumnarGpxTrackSegment) {
+            ColumnarGpxTrackSegment columns = (ColumnarGpxTrackSegment) seg;
+            return IntStream.range(0, columns.size()).mapToLong(columns::getTimeInMillis);
+        }
+        return seg.getWayPoints().stream().mapToLong(WayPoint::getTimeInMillis);
+    }
+
     /**
     * Returns minimum and maximum timestamps for all tracks
     * Warning: there are lot of track with broken timestamps,
@@ -787,8 +801,7 @@ public class GpxData extends WithAttributes implements Data, IGpxLayerPrefs {
         long now = System.currentTimeMillis();
         final LongSummaryStatistics statistics = tracks.stream()
                 .flatMap(trk -> trk.getSegments().stream())
-                .flatMap(seg -> seg.getWayPoints().stream())
-                .mapToLong(WayPoint::getTimeInMillis)
+                .flatMapToLong(GpxData::getTimesInMillis)
                 .filter(t -> t > 0 && t <= now)
                 .summaryStatistics();
         return statistics.getCount() == 0
@@ -933,7 +946,15 @@ public class GpxData extends WithAttributes implements Data, IGpxLayerPrefs {
      */
     public synchronized void resetEastNorthCache() {
         privateWaypoints.forEach(WayPoint::invalidateEastNorthCache);
-        getTrackPoints().forEach(WayPoint::invalidateEastNorthCache);
+        for (IGpxTrack trk : getTracks()) {
+            for (IGpxTrackSegment seg : trk.getSegments()) {
+                if (seg instanceof ColumnarGpxTrackSegment) {
+                    ((ColumnarGpxTrackSegment) seg).invalidateEastNorthCache();
+                } else {
+                    seg.getWayPoints().forEach(WayPoint::invalidateEastNorthCache);
+                }
+            }
+        }
         for (GpxRoute route: getRoutes()) {
             if (route.routePoints == null) {
                 continue;
@@ -13,6 +13,7 @@ import java.util.Objects;
  */
 public class Line implements Collection<WayPoint> {
     private final Collection<WayPoint> waypoints;
+    private final IGpxTrackSegment trackSegment;
     private final boolean unordered;
     private final Color color;
 
@@ -24,9 +25,7 @@ public class Line implements Collection<WayPoint> {
      * @since 15496
      */
     public Line(Collection<WayPoint> waypoints, Map<String, Object> attributes, Color color) {
-        this.color = color;
-        this.waypoints = Objects.requireNonNull(waypoints);
-        unordered = attributes.isEmpty() && waypoints.stream().allMatch(x -> x.get(GpxConstants.PT_TIME) == null);
+        this(waypoints, null, attributes, color);
     }
 
     /**
@@ -37,7 +36,18 @@ public class Line implements Collection<WayPoint> {
      * @since 15496
      */
     public Line(IGpxTrackSegment trackSegment, Map<String, Object> trackAttributes, Color color) {
-        this(trackSegment.getWayPoints(), trackAttributes, color);
+        this(trackSegment.getWayPoints(), trackSegment, trackAttributes, color);
+    }
+
+    private Line(Collection<WayPoint> waypoints, IGpxTrackSegment trackSegment, Map<String, Object> attributes, Color color) {
+        this.color = color;
+        this.waypoints = Objects.requireNonNull(waypoints);
+        this.trackSegment = trackSegment;
+        if (trackSegment instanceof ColumnarGpxTrackSegment) {
+            unordered = attributes.isEmpty() && !((ColumnarGpxTrackSegment) trackSegment).hasTimes();
+        } else {
+            unordered = attributes.isEmpty() && waypoints.stream().allMatch(x -> x.get(GpxConstants.PT_TIME) == null);
+        }
     }
 
     /**
@@ -56,6 +66,15 @@ public class Line implements Collection<WayPoint> {
         return unordered;
     }
 
+    /**
+     * Returns the track segment of this line.
+     * @return the track segment, or {@code null} if this line is not built from a track segment
+     * @since 18615
+     */
+    public IGpxTrackSegment getTrackSegment() {
+        return trackSegment;
+    }
+
     /**
      * Returns the track/route color
      * @return the color
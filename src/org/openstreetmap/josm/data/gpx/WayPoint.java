@@ -7,6 +7,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 
 import org.openstreetmap.josm.data.coor.EastNorth;
@@ -85,6 +86,29 @@ public class WayPoint extends WithAttributes implements Comparable<WayPoint>, Te
         lon = ll.lon();
     }
 
+    /**
+     * Constructs a new {@code WayPoint} backed by the given attributes, for the points of a {@link ColumnarGpxTrackSegment}.
+     * @param lat latitude
+     * @param lon longitude
+     * @param attr the attributes
+     */
+    WayPoint(double lat, double lon, Map<String, Object> attr) {
+        this.attr = attr;
+        this.lat = lat;
+        this.lon = lon;
+    }
+
+    /**
+     * Fills the internal cache of east/north coordinates, with coordinates projected by the segment of this point.
+     * @param eastNorth the projected coordinates
+     * @param cacheKey the cache key of the projection
+     */
+    void setEastNorthCache(EastNorth eastNorth, Object cacheKey) {
+        this.east = eastNorth.east();
+        this.north = eastNorth.north();
+        this.eastNorthCacheKey = cacheKey;
+    }
+
     /**
      * Invalidate the internal cache of east/north coordinates.
      */
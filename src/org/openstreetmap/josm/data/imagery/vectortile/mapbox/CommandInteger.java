@@ -49,6 +49,15 @@ public class CommandInteger {
         this.parameters[added++] = parameterInteger.shortValue();
     }
 
+    /**
+     * Add a parameter, without boxing it
+     * @param parameter The parameter to add (converted to {@code short}).
+     * @since 18594
+     */
+    public void addParameter(long parameter) {
+        this.parameters[added++] = (short) parameter;
+    }
+
     /**
      * Get the operations for the command
      * @return The operations
@@ -8,6 +8,7 @@ import java.awt.geom.Area;
 import java.awt.geom.Ellipse2D;
 import java.awt.geom.Path2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
@@ -74,8 +75,10 @@ public class Geometry {
         // Area is used to determine the inner/outer of a polygon
         final int maxArraySize = commands.stream().filter(command -> command.getType() != Command.ClosePath)
                 .mapToInt(command -> command.getOperations().length).sum();
-        final List<Integer> xArray = new ArrayList<>(maxArraySize);
-        final List<Integer> yArray = new ArrayList<>(maxArraySize);
+        // Every point takes two operations. Using primitive arrays avoids boxing each coordinate.
+        final int[] xArray = new int[maxArraySize / 2];
+        final int[] yArray = new int[maxArraySize / 2];
+        int points = 0;
         for (CommandInteger command : commands) {
             final short[] operations = command.getOperations();
             // Technically, there is no reason why there can be multiple MoveTo operations in one command, but that is undefined behavior
@@ -85,15 +88,15 @@ public class Geometry {
                 // Avoid fairly expensive Arrays.copyOf calls
                 line = new Path2D.Float(Path2D.WIND_NON_ZERO, commands.size());
                 line.moveTo(x, y);
-                xArray.add(x);
-                yArray.add(y);
+                xArray[points] = x;
+                yArray[points++] = y;
                 shapes.add(line);
             } else if (command.getType() == Command.LineTo && operations.length % 2 == 0 && line != null) {
                 for (int i = 0; i < operations.length / 2; i++) {
                     x += operations[2 * i];
                     y += operations[2 * i + 1];
-                    xArray.add(x);
-                    yArray.add(y);
+                    xArray[points] = x;
+                    yArray[points++] = y;
                     line.lineTo(x, y);
                 }
                 // ClosePath should only be used with Polygon geometry
@@ -105,8 +108,8 @@ public class Geometry {
                     shapes.add(area);
                 }
 
-                final double areaAreaSq = calculateSurveyorsArea(xArray.stream().mapToInt(i -> i).toArray(),
-                        yArray.stream().mapToInt(i -> i).toArray());
+                final double areaAreaSq = calculateSurveyorsArea(Arrays.copyOf(xArray, points),
+                        Arrays.copyOf(yArray, points));
                 Area nArea = new Area(line);
                 // SonarLint thinks that this is never > 0. It can be.
                 if (areaAreaSq > 0) {
@@ -116,8 +119,7 @@ public class Geometry {
                 } else {
                     throw new IllegalArgumentException(tr("{0} cannot have zero area", geometryType));
                 }
-                xArray.clear();
-                yArray.clear();
+                points = 0;
             } else {
                 throw new IllegalArgumentException(tr("{0} with {1} arguments is not understood", geometryType, operations.length));
             }
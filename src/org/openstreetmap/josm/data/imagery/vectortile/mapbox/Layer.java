@@ -3,17 +3,13 @@ package org.openstreetmap.josm.data.imagery.vectortile.mapbox;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.openstreetmap.josm.data.protobuf.ProtobufParser;
@@ -26,47 +22,6 @@ import org.openstreetmap.josm.tools.Destroyable;
  * @since 17862
  */
 public final class Layer implements Destroyable {
-    private static final class ValueFields<T> {
-        static final ValueFields<String> STRING = new ValueFields<>(1, ProtobufRecord::asString);
-        static final ValueFields<Float> FLOAT = new ValueFields<>(2, ProtobufRecord::asFloat);
-        static final ValueFields<Double> DOUBLE = new ValueFields<>(3, ProtobufRecord::asDouble);
-        static final ValueFields<Number> INT64 = new ValueFields<>(4, ProtobufRecord::asUnsignedVarInt);
-        // This may have issues if there are actual uint_values (i.e., more than {@link Long#MAX_VALUE})
-        static final ValueFields<Number> UINT64 = new ValueFields<>(5, ProtobufRecord::asUnsignedVarInt);
-        static final ValueFields<Number> SINT64 = new ValueFields<>(6, ProtobufRecord::asSignedVarInt);
-        static final ValueFields<Boolean> BOOL = new ValueFields<>(7, r -> r.asUnsignedVarInt().longValue() != 0);
-
-        /**
-         * A collection of methods to map a record to a type
-         */
-        public static final Collection<ValueFields<?>> MAPPERS =
-          Collections.unmodifiableList(Arrays.asList(STRING, FLOAT, DOUBLE, INT64, UINT64, SINT64, BOOL));
-
-        private final byte field;
-        private final Function<ProtobufRecord, T> conversion;
-        private ValueFields(int field, Function<ProtobufRecord, T> conversion) {
-            this.field = (byte) field;
-            this.conversion = conversion;
-        }
-
-        /**
-         * Get the field identifier for the value
-         * @return The identifier
-         */
-        public byte getField() {
-            return this.field;
-        }
-
-        /**
-         * Convert a protobuf record to a value
-         * @param protobufRecord The record to convert
-         * @return the converted value
-         */
-        public T convertValue(ProtobufRecord protobufRecord) {
-            return this.conversion.apply(protobufRecord);
-        }
-    }
-
     /** The field value for a layer (in {@link ProtobufRecord#getField}) */
     public static final byte LAYER_FIELD = 3;
     private static final byte VERSION_FIELD = 15;
@@ -93,91 +48,165 @@ public final class Layer implements Destroyable {
     /** The actual features of this layer in this tile */
     private final List<Feature> featureCollection;
 
+    /**
+     * The fields of a layer message which are decoded before the features, since the features need the keys and values.
+     */
+    private static final class Header {
+        byte version = DEFAULT_VERSION;
+        String name;
+        int extent = DEFAULT_EXTENT;
+        /** The undecoded features, as slices of the tile */
+        final List<ByteBuffer> features = new ArrayList<>();
+
+        void setVersion(long value) {
+            this.version = (byte) value;
+            // Per spec, we cannot continue past this until we have checked the version number
+            if (this.version != 1 && this.version != 2) {
+                throw new IllegalArgumentException(tr("We do not understand version {0} of the vector tile specification", this.version));
+            }
+        }
+    }
+
     /**
      * Create a layer from a collection of records
      * @param records The records to convert to a layer
      * @throws IOException - if an IO error occurs
      */
     public Layer(Collection<ProtobufRecord> records) throws IOException {
-        // Do the unique required fields first
-        Map<Integer, List<ProtobufRecord>> sorted = new HashMap<>(records.size());
-        byte tVersion = DEFAULT_VERSION;
-        String tName = null;
-        int tExtent = DEFAULT_EXTENT;
-        final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(4);
+        Header header = new Header();
         for (ProtobufRecord protobufRecord : records) {
             if (protobufRecord.getField() == VERSION_FIELD) {
-                tVersion = protobufRecord.asUnsignedVarInt().byteValue();
-                // Per spec, we cannot continue past this until we have checked the version number
-                if (tVersion != 1 && tVersion != 2) {
-                    throw new IllegalArgumentException(tr("We do not understand version {0} of the vector tile specification", tVersion));
-                }
+                header.setVersion(protobufRecord.asLong());
             } else if (protobufRecord.getField() == NAME_FIELD) {
-                tName = protobufRecord.asString();
+                header.name = protobufRecord.asString();
             } else if (protobufRecord.getField() == EXTENT_FIELD) {
-                tExtent = protobufRecord.asUnsignedVarInt().intValue();
+                header.extent = (int) protobufRecord.asLong();
             } else if (protobufRecord.getField() == KEY_FIELD) {
                 this.keyList.add(protobufRecord.asString());
             } else if (protobufRecord.getField() == VALUE_FIELD) {
-                parseValueRecord(byteArrayOutputStream, protobufRecord);
-            } else {
-                sorted.computeIfAbsent(protobufRecord.getField(), i -> new ArrayList<>(records.size())).add(protobufRecord);
+                this.parseValue(protobufRecord.getBuffer());
+            } else if (protobufRecord.getField() == FEATURE_FIELD) {
+                header.features.add(protobufRecord.getBuffer());
             }
         }
-        this.version = tVersion;
-        if (tName == null) {
-            throw new IllegalArgumentException(tr("Vector tile layers must have a layer name"));
-        }
-        this.name = tName;
-        this.extent = tExtent;
-
-        this.featureCollection = new ArrayList<>(sorted.getOrDefault((int) FEATURE_FIELD, Collections.emptyList()).size());
-        for (ProtobufRecord protobufRecord : sorted.getOrDefault((int) FEATURE_FIELD, Collections.emptyList())) {
-            this.featureCollection.add(new Feature(this, protobufRecord));
-        }
+        this.version = header.version;
+        this.name = checkName(header.name);
+        this.extent = header.extent;
+        this.featureCollection = this.parseFeatures(header.features);
         // Cleanup bytes (for memory)
         for (ProtobufRecord protobufRecord : records) {
             protobufRecord.close();
         }
     }
 
-    private void parseValueRecord(ByteArrayOutputStream byteArrayOutputStream, ProtobufRecord protobufRecord)
-            throws IOException {
-        try (ProtobufParser parser = new ProtobufParser(protobufRecord.getBytes())) {
-            ProtobufRecord protobufRecord2 = new ProtobufRecord(byteArrayOutputStream, parser);
-            int field = protobufRecord2.getField();
-            int valueListSize = this.valueList.size();
-            for (Layer.ValueFields<?> mapper : ValueFields.MAPPERS) {
-                if (mapper.getField() == field) {
-                    this.valueList.add(mapper.convertValue(protobufRecord2));
-                    break;
-                }
-            }
-            if (valueListSize == this.valueList.size()) {
-                throw new IllegalArgumentException(tr("Unknown field in vector tile layer value ({0})", field));
-            }
-        }
+    /**
+     * Create a new layer
+     * @param bytes The bytes that the layer comes from
+     * @throws IOException - if an IO error occurs
+     */
+    public Layer(byte[] bytes) throws IOException {
+        this(ByteBuffer.wrap(bytes));
     }
 
     /**
-     * Get all the records from a array of bytes
-     * @param bytes The byte information
-     * @return All the protobuf records
-     * @throws IOException If there was an error reading the bytes (unlikely)
+     * Create a new layer. The fields are decoded directly from the buffer, without copying them.
+     * @param bytes The layer message, from its position to its limit. The buffer is not modified.
+     * @throws IOException - if an IO error occurs
+     * @since 18594
      */
-    private static Collection<ProtobufRecord> getAllRecords(byte[] bytes) throws IOException {
-        try (ProtobufParser parser = new ProtobufParser(bytes)) {
-            return parser.allRecords();
-        }
+    public Layer(ByteBuffer bytes) throws IOException {
+        Header header = new Header();
+        new ProtobufParser(bytes).visit(parser -> {
+            switch (parser.getField()) {
+            case VERSION_FIELD:
+                header.setVersion(parser.readVarint64());
+                break;
+            case NAME_FIELD:
+                header.name = parser.readString();
+                break;
+            case EXTENT_FIELD:
+                header.extent = parser.readVarint32();
+                break;
+            case KEY_FIELD:
+                this.keyList.add(parser.readString());
+                break;
+            case VALUE_FIELD:
+                this.parseValue(parser.readLengthDelimited());
+                break;
+            case FEATURE_FIELD:
+                header.features.add(parser.readLengthDelimited());
+                break;
+            default: // unknown fields are skipped
+            }
+        });
+        this.version = header.version;
+        this.name = checkName(header.name);
+        this.extent = header.extent;
+        this.featureCollection = this.parseFeatures(header.features);
     }
 
     /**
-     * Create a new layer
-     * @param bytes The bytes that the layer comes from
+     * Get the name of a layer, without decoding the other fields
+     * @param bytes The layer message, from its position to its limit. The buffer is not modified.
+     * @return The layer name, or {@code null} if the layer has no name
      * @throws IOException - if an IO error occurs
+     * @since 18594
      */
-    public Layer(byte[] bytes) throws IOException {
-        this(getAllRecords(bytes));
+    public static String getName(ByteBuffer bytes) throws IOException {
+        String[] layerName = new String[1];
+        new ProtobufParser(bytes).visit(parser -> {
+            if (parser.getField() == NAME_FIELD) {
+                layerName[0] = parser.readString();
+            }
+        });
+        return layerName[0];
+    }
+
+    private static String checkName(String name) {
+        if (name == null) {
+            throw new IllegalArgumentException(tr("Vector tile layers must have a layer name"));
+        }
+        return name;
+    }
+
+    private List<Feature> parseFeatures(List<ByteBuffer> features) throws IOException {
+        List<Feature> result = new ArrayList<>(features.size());
+        for (ByteBuffer feature : features) {
+            result.add(new Feature(this, feature));
+        }
+        return result;
+    }
+
+    private void parseValue(ByteBuffer bytes) throws IOException {
+        int valueListSize = this.valueList.size();
+        ProtobufParser parser = new ProtobufParser(bytes);
+        if (parser.nextField()) {
+            switch (parser.getField()) {
+            case 1: // string
+                this.valueList.add(parser.readString());
+                break;
+            case 2: // float
+                this.valueList.add(parser.readFloat());
+                break;
+            case 3: // double
+                this.valueList.add(parser.readDouble());
+                break;
+            case 4: // int64
+            case 5: // uint64. This may have issues if there are actual uint_values (i.e., more than {@link Long#MAX_VALUE})
+                this.valueList.add(ProtobufParser.convertLong(parser.readVarint64()));
+                break;
+            case 6: // sint64
+                this.valueList.add(ProtobufParser.convertLong(parser.readZigZag()));
+                break;
+            case 7: // bool
+                this.valueList.add(parser.readVarint64() != 0);
+                break;
+            default: // unknown, see below
+            }
+        }
+        if (valueListSize == this.valueList.size()) {
+            throw new IllegalArgumentException(tr("Unknown field in vector tile layer value ({0})", parser.getField()));
+        }
     }
 
     /**
@@ -4,6 +4,7 @@ package org.openstreetmap.josm.data.imagery.vectortile.mapbox;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -16,7 +17,6 @@ import org.openstreetmap.josm.data.IQuadBucketType;
 import org.openstreetmap.josm.data.imagery.vectortile.VectorTile;
 import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.protobuf.ProtobufParser;
-import org.openstreetmap.josm.data.protobuf.ProtobufRecord;
 import org.openstreetmap.josm.data.vector.VectorDataStore;
 import org.openstreetmap.josm.tools.ListenerList;
 import org.openstreetmap.josm.tools.Logging;
@@ -34,6 +34,7 @@ public class MVTTile extends Tile implements VectorTile, IQuadBucketType {
     static final BufferedImage CLEAR_LOADED = new BufferedImage(1, 1, BufferedImage.TYPE_4BYTE_ABGR);
     private BBox bbox;
     private VectorDataStore vectorDataStore;
+    private LayerShower layerShower;
 
     /**
      * Create a new Tile
@@ -50,22 +51,22 @@ public class MVTTile extends Tile implements VectorTile, IQuadBucketType {
     public void loadImage(final InputStream inputStream) throws IOException {
         if (this.image == null || this.image == Tile.LOADING_IMAGE || this.image == Tile.ERROR_IMAGE) {
             this.initLoading();
-            ProtobufParser parser = new ProtobufParser(inputStream);
-            Collection<ProtobufRecord> protobufRecords = parser.allRecords();
-            this.layers = new ArrayList<>(protobufRecords.size());
-            for (ProtobufRecord protoBufRecord : protobufRecords) {
-                if (protoBufRecord.getField() == Layer.LAYER_FIELD) {
-                    try (ProtobufParser tParser = new ProtobufParser(protoBufRecord.getBytes())) {
-                        this.layers.add(new Layer(tParser.allRecords()));
+            final List<Layer> tileLayers = new ArrayList<>();
+            final LayerShower shower = this.layerShower;
+            // The layers are decoded directly from the tile bytes, and hidden layers are never decoded
+            new ProtobufParser(inputStream).visit(parser -> {
+                if (parser.getField() == Layer.LAYER_FIELD) {
+                    ByteBuffer bytes = parser.readLengthDelimited();
+                    try {
+                        if (shower == null || shower.showLayer(Layer.getName(bytes))) {
+                            tileLayers.add(new Layer(bytes));
+                        }
                     } catch (IOException e) {
                         Logging.error(e);
-                    } finally {
-                        // Cleanup bytes
-                        protoBufRecord.close();
                     }
                 }
-            }
-            this.layers = new ArrayList<>(this.layers);
+            });
+            this.layers = tileLayers;
 
             this.extent = layers.stream().filter(Objects::nonNull).mapToInt(Layer::getExtent).max().orElse(Layer.DEFAULT_EXTENT);
             if (this.getData() != null) {
@@ -80,6 +81,15 @@ public class MVTTile extends Tile implements VectorTile, IQuadBucketType {
         }
     }
 
+    /**
+     * Set the object deciding which layers of the tile are decoded. Layers which are not shown are skipped.
+     * @param layerShower The layer shower, or {@code null} to decode all layers
+     * @since 18594
+     */
+    public void setLayerShower(LayerShower layerShower) {
+        this.layerShower = layerShower;
+    }
+
     @Override
     public Collection<Layer> getLayers() {
         return this.layers;
@@ -151,5 +161,16 @@ public class MVTTile extends Tile implements VectorTile, IQuadBucketType {
          * @return A list of layer names
          */
         List<String> layersToShow();
+
+        /**
+         * Check if a layer should be shown
+         *
+         * @param name The layer name
+         * @return {@code true} if the layer should be decoded
+         * @since 18594
+         */
+        default boolean showLayer(String name) {
+            return layersToShow().contains(name);
+        }
     }
 }
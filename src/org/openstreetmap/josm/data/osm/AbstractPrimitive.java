@@ -488,6 +488,9 @@ public abstract class AbstractPrimitive implements IPrimitive, IFilterablePrimit
     /**
      * The key/value list for this primitive.
      * <p>
+     * The array may be shared with other primitives having the same tags, see {@link TagArrayPool}. It must never be
+     * modified in place.
+     * <p>
      * Note that the keys field is synchronized using RCU.
      * Writes to it are not synchronized by this object, the writers have to synchronize writes themselves.
      * <p>
@@ -552,7 +555,7 @@ public abstract class AbstractPrimitive implements IPrimitive, IFilterablePrimit
             newKeys[index++] = Objects.requireNonNull(entry.getKey());
             newKeys[index++] = Objects.requireNonNull(entry.getValue());
         }
-        this.keys = newKeys;
+        this.keys = TagArrayPool.canonicalize(newKeys);
         keysChangedImpl(originalKeys);
     }
 
@@ -569,7 +572,7 @@ public abstract class AbstractPrimitive implements IPrimitive, IFilterablePrimit
             if (arr.length == 0) {
                 this.keys = null;
             } else {
-                this.keys = arr;
+                this.keys = TagArrayPool.canonicalize(arr);
             }
         }
         keysChangedImpl(originalKeys);
@@ -622,8 +625,8 @@ public abstract class AbstractPrimitive implements IPrimitive, IFilterablePrimit
         if (tags == null || tags.isEmpty()) {
             return;
         }
-        // Defensive copy of keys
-        String[] newKeys = keys;
+        // Defensive copy of keys, the array may be shared with other primitives
+        String[] newKeys = keys != null ? keys.clone() : null;
         Map<String, String> originalKeys = getKeys();
         List<Map.Entry<String, String>> tagsToAdd = new ArrayList<>(tags.size());
         for (Map.Entry<String, String> tag : tags.entrySet()) {
@@ -644,8 +647,8 @@ public abstract class AbstractPrimitive implements IPrimitive, IFilterablePrimit
                 newKeys[index++] = tag.getKey();
                 newKeys[index++] = tag.getValue();
             }
-            keys = newKeys;
         }
+        keys = newKeys;
         keysChangedImpl(originalKeys);
     }
 
@@ -4,11 +4,13 @@ package org.openstreetmap.josm.data.osm;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.awt.geom.Area;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -61,6 +63,7 @@ import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.ListenerList;
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.LongObjectHashMap;
 import org.openstreetmap.josm.tools.SubclassFilteredCollection;
 
 /**
@@ -122,13 +125,17 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     private final QuadBucketPrimitiveStore<Node, Way, Relation> store = new QuadBucketPrimitiveStore<>();
 
     private final Storage<OsmPrimitive> allPrimitives = new Storage<>(new Storage.PrimitiveIdHash(), true);
-    private final Map<PrimitiveId, OsmPrimitive> primitivesMap = allPrimitives
-            .foreignKey(new Storage.PrimitiveIdHash());
+    /** The primitives by unique id, one map per type, so that lookups need neither a boxed key nor an id object */
+    private final LongObjectHashMap<Node> nodesById = new LongObjectHashMap<>();
+    private final LongObjectHashMap<Way> waysById = new LongObjectHashMap<>();
+    private final LongObjectHashMap<Relation> relationsById = new LongObjectHashMap<>();
     private final CopyOnWriteArrayList<DataSetListener> listeners = new CopyOnWriteArrayList<>();
+    private final NodeEastNorthCache eastNorthCache = new NodeEastNorthCache();
 
     // provide means to highlight map elements that are not osm primitives
     private Collection<WaySegment> highlightedVirtualNodes = new LinkedList<>();
     private Collection<WaySegment> highlightedWaySegments = new LinkedList<>();
+    private final Set<OsmPrimitive> highlightedPrimitives = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
     private final ListenerList<HighlightUpdateListener> highlightUpdateListeners = ListenerList.create();
 
     // Number of open calls to beginUpdate
@@ -141,6 +148,12 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     private UploadPolicy uploadPolicy = UploadPolicy.NORMAL;
     /** Flag used to know if the dataset should not be editable */
     private final AtomicBoolean isReadOnly = new AtomicBoolean(false);
+    /** Flag used to know if the dataset is an immutable snapshot of another one */
+    private boolean isSnapshot;
+    /** Incremented at each change of the data, to know if the last snapshot is still up to date */
+    private volatile int changeCount;
+    /** The last snapshot of this dataset */
+    private volatile WeakReference<DataSet> lastSnapshot;
 
     private final ReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -242,10 +255,11 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
      */
     public Map<OsmPrimitive, OsmPrimitive> clonePrimitives(Iterable<Node> nodes, Iterable<Way> ways, Iterable<Relation> relations) {
         Map<OsmPrimitive, OsmPrimitive> primMap = new HashMap<>();
+        List<OsmPrimitive> newPrimitives = new ArrayList<>();
         for (Node n : nodes) {
             Node newNode = new Node(n);
             primMap.put(n, newNode);
-            addPrimitive(newNode);
+            newPrimitives.add(newNode);
         }
         for (Way w : ways) {
             Way newWay = new Way(w, false, false);
@@ -254,15 +268,16 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
                     .map(n -> (Node) primMap.get(n))
                     .collect(Collectors.toList());
             newWay.setNodes(newNodes);
-            addPrimitive(newWay);
+            newPrimitives.add(newWay);
         }
         // Because relations can have other relations as members we first clone all relations
         // and then get the cloned members
         for (Relation r : relations) {
             Relation newRelation = new Relation(r, false, false);
             primMap.put(r, newRelation);
-            addPrimitive(newRelation);
+            newPrimitives.add(newRelation);
         }
+        addPrimitives(newPrimitives);
         for (Relation r : relations) {
             ((Relation) primMap.get(r)).setMembers(r.getMembers().stream()
                     .map(rm -> new RelationMember(rm.getRole(), primMap.get(rm.getMember())))
@@ -294,6 +309,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         if (changed) {
             cachedDataSourceArea = null;
             cachedDataSourceBounds = null;
+            changeCount++;
         }
         dataSourceListeners.fireEvent(d -> d.dataSourceChange(addedEvent));
         return changed;
@@ -344,6 +360,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     public void setVersion(String version) {
         checkModifiable();
         this.version = version;
+        changeCount++;
     }
 
     @Override
@@ -354,6 +371,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     @Override
     public void setDownloadPolicy(DownloadPolicy downloadPolicy) {
         this.downloadPolicy = Objects.requireNonNull(downloadPolicy);
+        changeCount++;
     }
 
     @Override
@@ -364,6 +382,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     @Override
     public void setUploadPolicy(UploadPolicy uploadPolicy) {
         this.uploadPolicy = Objects.requireNonNull(uploadPolicy);
+        changeCount++;
     }
 
     /**
@@ -515,6 +534,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
                         null, primitive);
 
             allPrimitives.add(primitive);
+            addToIndex(primitive);
             primitive.setDataset(this);
             primitive.updatePosition(); // Set cached bbox for way and relation (required for reindexWay and reindexRelation to work properly)
             store.addPrimitive(primitive);
@@ -522,6 +542,61 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         });
     }
 
+    /**
+     * Adds many primitives to the dataset at once.
+     * <p>
+     * This is faster than adding them one by one with {@link #addPrimitive}: the spatial index is filled at once, and
+     * a single {@link PrimitivesAddedEvent} is fired. The nodes are added first, then the ways, then the relations.
+     * As with {@link #addPrimitive}, the children of the ways and relations must be in the dataset or in the given
+     * primitives, and the member relations must come before the relations referring to them.
+     *
+     * @param primitives the primitives to add
+     * @throws IllegalStateException if the dataset is read-only
+     * @throws DataIntegrityProblemException if a primitive is already included in the dataset, or given twice
+     * @see DataSetBulkInsert
+     * @since 18610
+     */
+    public void addPrimitives(Collection<? extends OsmPrimitive> primitives) {
+        Objects.requireNonNull(primitives, "primitives");
+        checkModifiable();
+        if (primitives.isEmpty())
+            return;
+        List<OsmPrimitive> sorted = new ArrayList<>(primitives.size());
+        for (OsmPrimitiveType type : OsmPrimitiveType.dataValues()) {
+            for (OsmPrimitive primitive : primitives) {
+                if (primitive.getType() == type) {
+                    sorted.add(primitive);
+                }
+            }
+        }
+        update(() -> {
+            // Check everything before modifying anything, including primitives with the same id in the batch
+            LongObjectHashMap<OsmPrimitive> batch = new LongObjectHashMap<>(sorted.size());
+            OsmPrimitiveType batchType = null;
+            for (OsmPrimitive primitive : sorted) {
+                if (primitive.getType() != batchType) {
+                    batch.clear();
+                    batchType = primitive.getType();
+                }
+                if (getPrimitiveById(primitive) != null || batch.put(primitive.getUniqueId(), primitive) != null)
+                    throw new DataIntegrityProblemException(
+                            tr("Unable to add primitive {0} to the dataset because it is already included", primitive.toString()),
+                            null, primitive);
+            }
+            for (OsmPrimitive primitive : sorted) {
+                if (!allPrimitives.add(primitive))
+                    throw new DataIntegrityProblemException(
+                            tr("Unable to add primitive {0} to the dataset because it is already included", primitive.toString()),
+                            null, primitive);
+                addToIndex(primitive);
+                primitive.setDataset(this);
+                primitive.updatePosition();
+            }
+            store.addPrimitives(sorted);
+            firePrimitivesAdded(sorted, false);
+        });
+    }
+
     /**
      * Adds recursively a primitive, and all its children, to the dataset.
      *
@@ -571,9 +646,30 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         }
         store.removePrimitive(primitive);
         allPrimitives.remove(primitive);
+        removeFromIndex(primitive);
         primitive.setDataset(null);
     }
 
+    private void addToIndex(OsmPrimitive primitive) {
+        if (primitive instanceof Node) {
+            nodesById.put(primitive.getUniqueId(), (Node) primitive);
+        } else if (primitive instanceof Way) {
+            waysById.put(primitive.getUniqueId(), (Way) primitive);
+        } else if (primitive instanceof Relation) {
+            relationsById.put(primitive.getUniqueId(), (Relation) primitive);
+        }
+    }
+
+    private void removeFromIndex(OsmPrimitive primitive) {
+        if (primitive instanceof Node) {
+            nodesById.remove(primitive.getUniqueId());
+        } else if (primitive instanceof Way) {
+            waysById.remove(primitive.getUniqueId());
+        } else if (primitive instanceof Relation) {
+            relationsById.remove(primitive.getUniqueId());
+        }
+    }
+
     void removePrimitive(OsmPrimitive primitive) {
         checkModifiable();
         update(() -> {
@@ -626,6 +722,20 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         return Collections.unmodifiableCollection(highlightedWaySegments);
     }
 
+    /**
+     * Returns the primitives of this data set that are currently highlighted.
+     * @return a copy of the highlighted primitives
+     * @see OsmPrimitive#setHighlighted(boolean)
+     * @since 18613
+     */
+    public Collection<OsmPrimitive> getHighlightedPrimitives() {
+        synchronized (highlightedPrimitives) {
+            // primitives removed from the data set are not unhighlighted
+            highlightedPrimitives.removeIf(osm -> !osm.isHighlighted() || osm.getDataSet() != this);
+            return new ArrayList<>(highlightedPrimitives);
+        }
+    }
+
     @Override
     public void addHighlightUpdateListener(HighlightUpdateListener listener) {
         highlightUpdateListeners.addListener(listener);
@@ -801,7 +911,51 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
 
     @Override
     public OsmPrimitive getPrimitiveById(PrimitiveId primitiveId) {
-        return primitiveId != null ? primitivesMap.get(primitiveId) : null;
+        return primitiveId != null ? getPrimitiveById(primitiveId.getUniqueId(), primitiveId.getType()) : null;
+    }
+
+    @Override
+    public OsmPrimitive getPrimitiveById(long id, OsmPrimitiveType type) {
+        switch (type) {
+        case NODE:
+            return nodesById.get(id);
+        case WAY:
+            return waysById.get(id);
+        case RELATION:
+            return relationsById.get(id);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Returns the node with the given id from the data set.
+     * @param id uniqueId of the node. Might be &lt; 0 for newly created nodes
+     * @return the node, or {@code null} if no such node exists
+     * @since 18607
+     */
+    public Node getNode(long id) {
+        return nodesById.get(id);
+    }
+
+    /**
+     * Returns the way with the given id from the data set.
+     * @param id uniqueId of the way. Might be &lt; 0 for newly created ways
+     * @return the way, or {@code null} if no such way exists
+     * @since 18607
+     */
+    public Way getWay(long id) {
+        return waysById.get(id);
+    }
+
+    /**
+     * Returns the relation with the given id from the data set.
+     * @param id uniqueId of the relation. Might be &lt; 0 for newly created relations
+     * @return the relation, or {@code null} if no such relation exists
+     * @since 18607
+     */
+    public Relation getRelation(long id) {
+        return relationsById.get(id);
     }
 
     /**
@@ -1055,6 +1209,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     private void fireEvent(AbstractDatasetChangedEvent event) {
         if (updateCount == 0)
             throw new AssertionError("dataset events can be fired only when dataset is locked");
+        changeCount++;
         if (cachedEvents.size() < MAX_EVENTS) {
             cachedEvents.add(event);
         }
@@ -1102,6 +1257,15 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         fireEvent(new FilterChangedEvent(this));
     }
 
+    void fireHighlightingChanged(OsmPrimitive primitive, boolean highlighted) {
+        if (highlighted) {
+            highlightedPrimitives.add(primitive);
+        } else {
+            highlightedPrimitives.remove(primitive);
+        }
+        fireHighlightingChanged();
+    }
+
     void fireHighlightingChanged() {
         HighlightUpdateListener.HighlightUpdateEvent e = new HighlightUpdateListener.HighlightUpdateEvent(this);
         highlightUpdateListeners.fireEvent(l -> l.highlightUpdated(e));
@@ -1115,7 +1279,44 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     public void invalidateEastNorthCache() {
         if (ProjectionRegistry.getProjection() == null)
             return; // sanity check
-        update(() -> getNodes().forEach(Node::invalidateEastNorthCache));
+        eastNorthCache.invalidate();
+    }
+
+    /**
+     * Computes in parallel the projected east/north coordinates of all nodes, for the current projection.
+     * @since 18605
+     */
+    public void rebuildEastNorthCache() {
+        Projection projection = ProjectionRegistry.getProjection();
+        if (projection == null)
+            return; // sanity check
+        Lock readLock = getReadLock();
+        readLock.lock();
+        try {
+            eastNorthCache.rebuild(getNodes(), projection);
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Builds the spatial index of the nodes and ways at once, in parallel, when it is a packed R-tree.
+     * Otherwise the first search after loading data would do it.
+     * @see QuadBucketPrimitiveStore#PACKED_RTREE
+     * @since 18608
+     */
+    public void buildSpatialIndex() {
+        Lock readLock = getReadLock();
+        readLock.lock();
+        try {
+            store.buildIndex();
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    NodeEastNorthCache getEastNorthCache() {
+        return eastNorthCache;
     }
 
     /**
@@ -1154,6 +1355,10 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
             }
             store.clear();
             allPrimitives.clear();
+            nodesById.clear();
+            waysById.clear();
+            relationsById.clear();
+            eastNorthCache.clear();
             conflicts.get().clear();
         });
     }
@@ -1236,7 +1441,12 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
     /* --------------------------------------------------------------------------------- */
     @Override
     public void projectionChanged(Projection oldValue, Projection newValue) {
-        invalidateEastNorthCache();
+        if (eastNorthCache.isEmpty()) {
+            invalidateEastNorthCache();
+        } else {
+            // the projected coordinates were in use, they will all be needed again
+            rebuildEastNorthCache();
+        }
     }
 
     @Override
@@ -1273,6 +1483,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         if (!isReadOnly.compareAndSet(false, true)) {
             Logging.warn("Trying to set readOnly flag on a readOnly dataset ", getName());
         }
+        changeCount++;
     }
 
     @Override
@@ -1280,6 +1491,7 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
         if (!isReadOnly.compareAndSet(true, false)) {
             Logging.warn("Trying to unset readOnly flag on a non-readOnly dataset ", getName());
         }
+        changeCount++;
     }
 
     @Override
@@ -1292,11 +1504,54 @@ public final class DataSet implements OsmData<OsmPrimitive, Node, Way, Relation>
      * @throws IllegalStateException if the dataset is read-only
      */
     private void checkModifiable() {
-        if (isLocked()) {
+        if (isLocked() || isSnapshot) {
             throw new IllegalStateException("DataSet is read-only");
         }
     }
 
+    /**
+     * Returns an immutable copy of this dataset, for background tasks reading all the data.
+     * <p>
+     * The copy is taken under the read lock, which is then released: the task can read the snapshot for as long as it
+     * needs without blocking the edits, and sees a consistent state of the data. The primitives of the snapshot have
+     * the same ids as the ones of this dataset, they can be found back with {@link #getPrimitiveById}.
+     * <p>
+     * The last snapshot is returned again as long as the data did not change and the snapshot is still referenced.
+     * @return an immutable copy of this dataset
+     * @see #isSnapshot()
+     * @since 18609
+     */
+    public DataSet snapshot() {
+        Lock readLock = getReadLock();
+        readLock.lock();
+        try {
+            WeakReference<DataSet> last = lastSnapshot;
+            DataSet snapshot = last != null ? last.get() : null;
+            // a snapshot has the change count of the dataset it was taken from
+            if (snapshot == null || snapshot.changeCount != changeCount) {
+                snapshot = new DataSet(this);
+                snapshot.setName(getName());
+                snapshot.changeCount = changeCount;
+                snapshot.isSnapshot = true;
+                lastSnapshot = new WeakReference<>(snapshot);
+            }
+            return snapshot;
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Determines if this dataset is an immutable snapshot of another one.
+     * Unlike a {@linkplain #isLocked() locked} dataset, which is a state of a layer kept when saving it, a snapshot
+     * is not meant to be unlocked nor shown as a layer.
+     * @return {@code true} if this dataset was created by {@link #snapshot()}
+     * @since 18609
+     */
+    public boolean isSnapshot() {
+        return isSnapshot;
+    }
+
     /**
      * Returns an optional remark about this data set (used by Overpass API).
      * @return a remark about this data set, or {@code null}
@@ -0,0 +1,83 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Collects the primitives to add to a dataset, to add them all at once with {@link DataSet#addPrimitives}.
+ * <p>
+ * This is meant for readers, merges and paste operations creating many primitives: instead of updating the indexes
+ * of the dataset and queuing an event for each primitive, the spatial index is filled at once on {@link #commit()}
+ * and a single {@link org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent} is fired.
+ * Until then, the added primitives are not part of the dataset.
+ * <pre>
+ * DataSetBulkInsert insert = new DataSetBulkInsert(ds);
+ * for (...) {
+ *     insert.add(primitive);
+ * }
+ * insert.commit();
+ * </pre>
+ * @since 18610
+ */
+public class DataSetBulkInsert {
+
+    private final DataSet dataSet;
+    private final List<OsmPrimitive> primitives = new ArrayList<>();
+
+    /**
+     * Constructs a new {@code DataSetBulkInsert}.
+     * @param dataSet the dataset to add the primitives to
+     */
+    public DataSetBulkInsert(DataSet dataSet) {
+        this.dataSet = Objects.requireNonNull(dataSet, "dataSet");
+    }
+
+    /**
+     * Returns the dataset the primitives are added to.
+     * @return the dataset the primitives are added to
+     */
+    public DataSet getDataSet() {
+        return dataSet;
+    }
+
+    /**
+     * Adds a primitive to the next commit.
+     * @param primitive the primitive
+     */
+    public void add(OsmPrimitive primitive) {
+        primitives.add(Objects.requireNonNull(primitive, "primitive"));
+    }
+
+    /**
+     * Adds primitives to the next commit.
+     * @param primitives the primitives
+     */
+    public void addAll(Collection<? extends OsmPrimitive> primitives) {
+        this.primitives.addAll(primitives);
+    }
+
+    /**
+     * Returns the number of primitives waiting for the next commit.
+     * @return the number of primitives waiting for the next commit
+     */
+    public int size() {
+        return primitives.size();
+    }
+
+    /**
+     * Adds the collected primitives to the dataset. The session can be used again afterwards.
+     * @throws IllegalStateException if the dataset is read-only
+     * @throws DataIntegrityProblemException if a primitive is already included in the dataset
+     * @see DataSet#addPrimitives
+     */
+    public void commit() {
+        try {
+            dataSet.addPrimitives(primitives);
+        } finally {
+            primitives.clear();
+        }
+    }
+}
@@ -46,6 +46,8 @@ public class DataSetMerger {
      */
     private final Set<PrimitiveId> objectsWithChildrenToMerge;
     private final Set<OsmPrimitive> objectsToDelete;
+    /** the primitives created in the target dataset, added at once before fixing the references */
+    private final DataSetBulkInsert newPrimitives;
 
     /**
      * constructor
@@ -64,6 +66,7 @@ public class DataSetMerger {
         mergedMap = new HashMap<>();
         objectsWithChildrenToMerge = new HashSet<>();
         objectsToDelete = new HashSet<>();
+        newPrimitives = new DataSetBulkInsert(targetDataSet);
     }
 
     /**
@@ -121,7 +124,7 @@ public class DataSetMerger {
         default: throw new AssertionError();
         }
         target.mergeFrom(source);
-        targetDataSet.addPrimitive(target);
+        newPrimitives.add(target);
         mergedMap.put(source.getPrimitiveId(), target.getPrimitiveId());
         objectsWithChildrenToMerge.add(source.getPrimitiveId());
     }
@@ -150,9 +153,10 @@ public class DataSetMerger {
 
     /**
      * Postprocess the dataset and fix all merged references to point to the actual
-     * data.
+     * data. The new primitives are added to the dataset first.
      */
     public void fixReferences() {
+        newPrimitives.commit();
         for (Way w : sourceDataSet.getWays()) {
             if (!conflicts.hasConflictForTheir(w) && objectsWithChildrenToMerge.contains(w.getPrimitiveId())) {
                 mergeNodeList(w);
@@ -178,7 +182,7 @@ public class DataSetMerger {
             flag = false;
             for (Iterator<OsmPrimitive> it = objectsToDelete.iterator(); it.hasNext();) {
                 OsmPrimitive target = it.next();
-                OsmPrimitive source = sourceDataSet.getPrimitiveById(target.getPrimitiveId());
+                OsmPrimitive source = sourceDataSet.getPrimitiveById(target.getUniqueId(), target.getType());
                 if (source == null)
                     throw new JosmRuntimeException(
                             tr("Object of type {0} with id {1} was marked to be deleted, but it''s missing in the source dataset",
@@ -215,7 +219,7 @@ public class DataSetMerger {
             }
             for (OsmPrimitive osm: objectsToDelete) {
                 osm.setDeleted(true);
-                osm.mergeFrom(sourceDataSet.getPrimitiveById(osm.getPrimitiveId()));
+                osm.mergeFrom(sourceDataSet.getPrimitiveById(osm.getUniqueId(), osm.getType()));
             }
         }
     }
@@ -332,7 +336,7 @@ public class DataSetMerger {
             // or, if source has a referrer that is not in the target dataset there is a conflict
             // If target dataset refers to the deleted primitive, conflict will be added in fixReferences method
             for (OsmPrimitive referrer: source.getReferrers()) {
-                if (targetDataSet.getPrimitiveById(referrer.getPrimitiveId()) == null) {
+                if (targetDataSet.getPrimitiveById(referrer.getUniqueId(), referrer.getType()) == null) {
                     addConflict(new Conflict<>(target, source, true));
                     target.setDeleted(false);
                     break;
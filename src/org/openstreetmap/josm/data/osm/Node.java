@@ -3,16 +3,17 @@ package org.openstreetmap.josm.data.osm;
 
 import java.awt.geom.Area;
 import java.util.List;
-import java.util.Objects;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.CachedLatLon;
 import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.visitor.OsmPrimitiveVisitor;
 import org.openstreetmap.josm.data.osm.visitor.PrimitiveVisitor;
 import org.openstreetmap.josm.data.projection.Projecting;
+import org.openstreetmap.josm.data.projection.Projection;
 import org.openstreetmap.josm.data.projection.ProjectionRegistry;
 
 /**
@@ -24,21 +25,38 @@ public final class Node extends OsmPrimitive implements INode {
 
     static final UniqueIdGenerator idGenerator = new UniqueIdGenerator();
 
+    /** Scale of the compact coordinates, the precision of the OSM API */
+    private static final double COOR_SCALE = 1e7;
+    /** Value of {@link #latE7} when the coordinates are unknown or stored in {@link #coor} */
+    private static final int NOT_COMPACT = Integer.MIN_VALUE;
+
     /*
-     * We "inline" lat/lon rather than using a LatLon-object => reduces memory footprint
+     * We "inline" lat/lon rather than using a LatLon-object => reduces memory footprint.
+     * The coordinates are stored as fixed-point numbers when this is lossless, which is the case of all the
+     * coordinates downloaded from the OSM API.
+     */
+    private int latE7 = NOT_COMPACT;
+    private int lonE7 = NOT_COMPACT;
+    /**
+     * The coordinates when they are not compact, or when the node is not in a dataset and its projected coordinates
+     * are cached. {@code null} otherwise.
      */
-    private double lat = Double.NaN;
-    private double lon = Double.NaN;
+    private CachedLatLon coor;
 
-    /*
-     * the cached projected coordinates
+    /**
+     * The coordinates of a node without dataset, computed from the projected coordinates given to {@link #setEastNorth}.
      */
-    private double east = Double.NaN;
-    private double north = Double.NaN;
+    private static final class ProjectedLatLon extends CachedLatLon {
+        private static final long serialVersionUID = 1L;
+
+        ProjectedLatLon(EastNorth eastNorth) {
+            super(eastNorth);
+        }
+    }
     /**
-     * The cache key to use for {@link #east} and {@link #north}.
+     * The index of the cached projected coordinates in the dataset, see {@link NodeEastNorthCache}, or -1.
      */
-    private Object eastNorthCacheKey;
+    int eastNorthIndex = -1;
 
     @Override
     public void setCoor(LatLon coor) {
@@ -72,33 +90,45 @@ public final class Node extends OsmPrimitive implements INode {
         if (!isLatLonKnown()) {
             return null;
         } else {
-            return new LatLon(lat, lon);
+            return new LatLon(lat(), lon());
         }
     }
 
     @Override
     public double lat() {
-        return lat;
+        CachedLatLon c = coor;
+        if (c != null) {
+            return c.lat();
+        }
+        int value = latE7;
+        return value == NOT_COMPACT ? Double.NaN : value / COOR_SCALE;
     }
 
     @Override
     public double lon() {
-        return lon;
+        CachedLatLon c = coor;
+        if (c != null) {
+            return c.lon();
+        }
+        int value = lonE7;
+        return value == NOT_COMPACT ? Double.NaN : value / COOR_SCALE;
     }
 
     @Override
     public EastNorth getEastNorth(Projecting projection) {
         if (!isLatLonKnown()) return null;
 
-        if (Double.isNaN(east) || Double.isNaN(north) || !Objects.equals(projection.getCacheKey(), eastNorthCacheKey)) {
-            // projected coordinates haven't been calculated yet,
-            // so fill the cache of the projected node coordinates
-            EastNorth en = projection.latlon2eastNorth(this);
-            this.east = en.east();
-            this.north = en.north();
-            this.eastNorthCacheKey = projection.getCacheKey();
+        DataSet ds = getDataSet();
+        if (ds != null && eastNorthIndex >= 0) {
+            return ds.getEastNorthCache().get(this, projection);
         }
-        return new EastNorth(east, north);
+        CachedLatLon c = coor;
+        if (c == null) {
+            // keep the projected coordinates of a node without dataset along its coordinates
+            c = new CachedLatLon(lat(), lon());
+            coor = c;
+        }
+        return c.getEastNorth(projection);
     }
 
     /**
@@ -107,20 +137,27 @@ public final class Node extends OsmPrimitive implements INode {
      * @param eastNorth east/north
      */
     void setCoorInternal(LatLon coor, EastNorth eastNorth) {
+        DataSet ds = getDataSet();
         if (coor != null) {
-            this.lat = coor.lat();
-            this.lon = coor.lon();
-            invalidateEastNorthCache();
+            setLatLon(coor.lat(), coor.lon());
+            if (ds != null) {
+                ds.getEastNorthCache().invalidate(this);
+            }
         } else if (eastNorth != null) {
-            LatLon ll = ProjectionRegistry.getProjection().eastNorth2latlon(eastNorth);
-            this.lat = ll.lat();
-            this.lon = ll.lon();
-            this.east = eastNorth.east();
-            this.north = eastNorth.north();
-            this.eastNorthCacheKey = ProjectionRegistry.getProjection().getCacheKey();
+            Projection projection = ProjectionRegistry.getProjection();
+            if (ds != null && eastNorthIndex >= 0) {
+                LatLon ll = projection.eastNorth2latlon(eastNorth);
+                setLatLon(ll.lat(), ll.lon());
+                ds.getEastNorthCache().put(this, eastNorth, projection);
+            } else {
+                this.coor = new ProjectedLatLon(eastNorth);
+                this.latE7 = NOT_COMPACT;
+                this.lonE7 = NOT_COMPACT;
+            }
         } else {
-            this.lat = Double.NaN;
-            this.lon = Double.NaN;
+            this.coor = null;
+            this.latE7 = NOT_COMPACT;
+            this.lonE7 = NOT_COMPACT;
             invalidateEastNorthCache();
             if (isVisible()) {
                 setIncomplete(true);
@@ -128,6 +165,39 @@ public final class Node extends OsmPrimitive implements INode {
         }
     }
 
+    /**
+     * Sets the coordinates, as fixed-point numbers if it is lossless.
+     * @param lat the latitude
+     * @param lon the longitude
+     */
+    private void setLatLon(double lat, double lon) {
+        int compactLat = toFixedPoint(lat);
+        int compactLon = toFixedPoint(lon);
+        if (compactLat != NOT_COMPACT && compactLon != NOT_COMPACT) {
+            this.latE7 = compactLat;
+            this.lonE7 = compactLon;
+            this.coor = null;
+        } else {
+            this.coor = new CachedLatLon(lat, lon);
+            this.latE7 = NOT_COMPACT;
+            this.lonE7 = NOT_COMPACT;
+        }
+    }
+
+    /**
+     * Converts a coordinate to a fixed-point number, if it is lossless.
+     * @param value the coordinate
+     * @return the coordinate in 1e-7 degrees, or {@link #NOT_COMPACT} if it cannot be converted without loss
+     */
+    private static int toFixedPoint(double value) {
+        long fixed = Math.round(value * COOR_SCALE);
+        if (fixed > NOT_COMPACT && fixed <= Integer.MAX_VALUE
+                && Double.doubleToRawLongBits(fixed / COOR_SCALE) == Double.doubleToRawLongBits(value)) {
+            return (int) fixed;
+        }
+        return NOT_COMPACT;
+    }
+
     Node(long id, boolean allowNegative) {
         super(id, allowNegative);
     }
@@ -200,7 +270,27 @@ public final class Node extends OsmPrimitive implements INode {
 
     @Override
     void setDataset(DataSet dataSet) {
+        DataSet old = getDataSet();
         super.setDataset(dataSet);
+        if (old != dataSet) {
+            if (old != null) {
+                old.getEastNorthCache().remove(this);
+            }
+            if (dataSet != null) {
+                dataSet.getEastNorthCache().add(this);
+                CachedLatLon c = coor;
+                if (c instanceof ProjectedLatLon) {
+                    // keep the projected coordinates given to setEastNorth
+                    Projection projection = ProjectionRegistry.getProjection();
+                    if (projection != null) {
+                        dataSet.getEastNorthCache().put(this, c.getEastNorth(projection), projection);
+                    }
+                }
+                if (c != null) {
+                    setLatLon(c.lat(), c.lon());
+                }
+            }
+        }
         if (!isIncomplete() && isVisible() && !isLatLonKnown())
             throw new DataIntegrityProblemException("Complete node with null coordinates: " + toString());
     }
@@ -279,7 +369,7 @@ public final class Node extends OsmPrimitive implements INode {
 
     @Override
     public String toString() {
-        String coorDesc = isLatLonKnown() ? "lat="+lat+",lon="+lon : "";
+        String coorDesc = isLatLonKnown() ? "lat="+lat()+",lon="+lon() : "";
         return "{Node id=" + getUniqueId() + " version=" + getVersion() + ' ' + getFlagsAsString() + ' ' + coorDesc+'}';
     }
 
@@ -305,12 +395,12 @@ public final class Node extends OsmPrimitive implements INode {
 
     @Override
     public BBox getBBox() {
-        return new BBox(lon, lat);
+        return new BBox(lon(), lat());
     }
 
     @Override
     protected void addToBBox(BBox box, Set<PrimitiveId> visited) {
-        box.add(lon, lat);
+        box.add(lon(), lat());
     }
 
     @Override
@@ -335,9 +425,14 @@ public final class Node extends OsmPrimitive implements INode {
      * next time.
      */
     public void invalidateEastNorthCache() {
-        this.east = Double.NaN;
-        this.north = Double.NaN;
-        this.eastNorthCacheKey = null;
+        DataSet ds = getDataSet();
+        if (ds != null) {
+            ds.getEastNorthCache().invalidate(this);
+        }
+        CachedLatLon c = coor;
+        if (c != null) {
+            setLatLon(c.lat(), c.lon());
+        }
     }
 
     @Override
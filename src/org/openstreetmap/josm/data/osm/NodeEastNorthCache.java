@@ -0,0 +1,218 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.IntStream;
+
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.projection.Projecting;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+
+/**
+ * The projected coordinates of the nodes of a dataset, stored in columns.
+ * <p>
+ * Each node of the dataset gets an index in the columns when it is added, freed when it is removed. The coordinates are
+ * cached for the current projection of {@link ProjectionRegistry} only, they are computed without caching for the other
+ * projections. The columns can be dropped with {@link #invalidate()}, and filled in parallel with {@link #rebuild}.
+ * <p>
+ * Like the per-node cache it replaces, the cache is read and filled without locking. The invalidation of a node locks,
+ * so that it is not lost when the columns are copied into larger ones.
+ * @since 18605
+ */
+final class NodeEastNorthCache {
+
+    /** The projected coordinates for one projection, {@code NaN} if not computed yet */
+    private static final class Columns {
+        final Object cacheKey;
+        final double[] east;
+        final double[] north;
+
+        Columns(Object cacheKey, int capacity) {
+            this.cacheKey = cacheKey;
+            this.east = new double[capacity];
+            this.north = new double[capacity];
+            Arrays.fill(east, Double.NaN);
+            Arrays.fill(north, Double.NaN);
+        }
+
+        Columns(Columns columns, int capacity) {
+            this.cacheKey = columns.cacheKey;
+            this.east = Arrays.copyOf(columns.east, capacity);
+            this.north = Arrays.copyOf(columns.north, capacity);
+            Arrays.fill(east, columns.east.length, capacity, Double.NaN);
+            Arrays.fill(north, columns.north.length, capacity, Double.NaN);
+        }
+    }
+
+    private volatile Columns columns;
+    /** Number of allocated indexes, including the free ones */
+    private int size;
+    private int[] freeIndexes = new int[16];
+    private int freeCount;
+
+    /**
+     * Allocates an index for a node added to the dataset.
+     * @param node the node
+     */
+    synchronized void add(Node node) {
+        int index = freeCount > 0 ? freeIndexes[--freeCount] : size++;
+        node.eastNorthIndex = index;
+    }
+
+    /**
+     * Frees the index of a node removed from the dataset.
+     * @param node the node
+     */
+    synchronized void remove(Node node) {
+        int index = node.eastNorthIndex;
+        if (index < 0)
+            return;
+        invalidate(node);
+        node.eastNorthIndex = -1;
+        if (freeCount == freeIndexes.length) {
+            freeIndexes = Arrays.copyOf(freeIndexes, freeCount * 2);
+        }
+        freeIndexes[freeCount++] = index;
+    }
+
+    /**
+     * Returns the projected coordinates of a node of the dataset, computed if needed.
+     * @param node the node, with known coordinates
+     * @param projecting the projection
+     * @return the projected coordinates
+     */
+    EastNorth get(Node node, Projecting projecting) {
+        int index = node.eastNorthIndex;
+        Columns c = getColumns(projecting.getCacheKey(), index);
+        if (c == null) {
+            return projecting.latlon2eastNorth(node);
+        }
+        double east = c.east[index];
+        double north = c.north[index];
+        if (Double.isNaN(east) || Double.isNaN(north)) {
+            EastNorth en = projecting.latlon2eastNorth(node);
+            c.east[index] = en.east();
+            c.north[index] = en.north();
+            return en;
+        }
+        return new EastNorth(east, north);
+    }
+
+    /**
+     * Stores the projected coordinates of a node of the dataset.
+     * @param node the node
+     * @param eastNorth the projected coordinates
+     * @param projection the projection of the coordinates
+     */
+    void put(Node node, EastNorth eastNorth, Projection projection) {
+        int index = node.eastNorthIndex;
+        Columns c = getColumns(projection.getCacheKey(), index);
+        if (c != null) {
+            c.east[index] = eastNorth.east();
+            c.north[index] = eastNorth.north();
+        }
+    }
+
+    /**
+     * Returns the columns for the given projection, making sure they have room for the given index.
+     * @param cacheKey the cache key of the projection
+     * @param index the index
+     * @return the columns, or {@code null} if the coordinates of this projection are not cached
+     */
+    private Columns getColumns(Object cacheKey, int index) {
+        Columns c = columns;
+        if (c != null && c.cacheKey.equals(cacheKey) && index < c.east.length) {
+            return c;
+        }
+        return index < 0 ? null : updateColumns(cacheKey, index);
+    }
+
+    private synchronized Columns updateColumns(Object cacheKey, int index) {
+        Columns c = columns;
+        if (c == null || !c.cacheKey.equals(cacheKey)) {
+            Projection projection = ProjectionRegistry.getProjection();
+            if (projection == null || !cacheKey.equals(projection.getCacheKey())) {
+                return null;
+            }
+            c = new Columns(cacheKey, Math.max(size, index + 1));
+        } else if (index >= c.east.length) {
+            c = new Columns(c, Math.max(size, index + 1 + (c.east.length >> 1)));
+        } else {
+            return c;
+        }
+        columns = c;
+        return c;
+    }
+
+    /**
+     * Invalidates the cached projected coordinates of a node.
+     * @param node the node
+     */
+    synchronized void invalidate(Node node) {
+        int index = node.eastNorthIndex;
+        Columns c = columns;
+        if (c != null && index >= 0 && index < c.east.length) {
+            c.east[index] = Double.NaN;
+            c.north[index] = Double.NaN;
+        }
+    }
+
+    /**
+     * Drops all the cached projected coordinates.
+     */
+    void invalidate() {
+        columns = null;
+    }
+
+    /**
+     * Determines if projected coordinates are cached.
+     * @return {@code true} if projected coordinates are cached
+     */
+    boolean isEmpty() {
+        return columns == null;
+    }
+
+    /**
+     * Drops all the cached projected coordinates, and computes them in parallel for the given projection.
+     * The coordinates of the nodes must not change meanwhile.
+     * @param nodes the nodes of the dataset
+     * @param projection the projection, whose coordinates are not cached unless it is the current one
+     */
+    void rebuild(Collection<Node> nodes, Projection projection) {
+        Node[] array = nodes.toArray(new Node[0]);
+        Columns c;
+        synchronized (this) {
+            columns = null;
+            Projection current = ProjectionRegistry.getProjection();
+            if (current == null || !projection.getCacheKey().equals(current.getCacheKey())) {
+                return;
+            }
+            c = new Columns(projection.getCacheKey(), size);
+        }
+        IntStream.range(0, array.length).parallel().forEach(i -> {
+            Node node = array[i];
+            int index = node.eastNorthIndex;
+            if (index >= 0 && index < c.east.length && node.isLatLonKnown()) {
+                EastNorth en = projection.latlon2eastNorth(node);
+                c.east[index] = en.east();
+                c.north[index] = en.north();
+            }
+        });
+        synchronized (this) {
+            if (columns == null) {
+                columns = c;
+            }
+        }
+    }
+
+    /**
+     * Frees all the indexes and drops the cached coordinates, once all nodes are removed from the dataset.
+     */
+    synchronized void clear() {
+        columns = null;
+        size = 0;
+        freeCount = 0;
+    }
+}
@@ -202,7 +202,7 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Template
      * Throws exception if primitive is in a read-only dataset
      */
     protected final void checkDatasetNotReadOnly() {
-        if (dataSet != null && dataSet.isLocked())
+        if (dataSet != null && (dataSet.isLocked() || dataSet.isSnapshot()))
             throw new DataIntegrityProblemException("Primitive cannot be modified in read-only dataset: " + toString());
     }
 
@@ -487,7 +487,7 @@ public abstract class OsmPrimitive extends AbstractPrimitive implements Template
         if (isHighlighted() != highlighted) {
             updateFlags(FLAG_HIGHLIGHTED, highlighted);
             if (dataSet != null) {
-                dataSet.fireHighlightingChanged();
+                dataSet.fireHighlightingChanged(this, highlighted);
             }
         }
     }
@@ -0,0 +1,413 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+import org.openstreetmap.josm.data.IQuadBucketType;
+
+/**
+ * A spatial index packed in arrays, an alternative to {@link QuadBuckets} for large datasets.
+ * <p>
+ * The objects are sorted along a Hilbert curve and grouped by {@value #NODE_CAPACITY}, each level of the tree storing
+ * the bounding boxes of the groups of the level below. The tree is built at once, in parallel. The objects added later
+ * are kept in a list searched linearly, until there are enough of them to build the tree again. The removed objects
+ * are cleared from the tree, which is built again once half of them are removed.
+ * <p>
+ * Like for {@link QuadBuckets}, the bbox of the objects has to stay the same. In case of coordinate change, the object
+ * must be removed and re-added.
+ * <p>
+ * The tree may be built when searching, so concurrent searches are supported as long as the collection is not
+ * modified meanwhile.
+ * @param <T> type of object extending {@link IQuadBucketType}.
+ * @since 18608
+ */
+public class PackedRTree<T extends IQuadBucketType> extends AbstractCollection<T> implements SpatialIndex<T> {
+
+    /** Number of children of a tree node */
+    private static final int NODE_CAPACITY = 16;
+    /** Number of objects added after building the tree, which never trigger building it again */
+    private static final int MIN_PENDING = 256;
+    /** Number of bits of the Hilbert curve coordinates */
+    private static final int HILBERT_BITS = 15;
+
+    /**
+     * A built tree, with the objects added since.
+     * @param <T> type of object
+     */
+    private static final class Tree<T> {
+        /** The objects, in tree order. {@code null} once removed */
+        final Object[] items;
+        /** The bounding boxes of the objects: min lon, min lat, max lon, max lat */
+        final double[] itemBoxes;
+        /** The bounding boxes of the tree nodes, from the ones grouping the objects to the root */
+        final double[][] levels;
+        /** The objects added since the tree was built */
+        final List<T> pending = new ArrayList<>();
+        /** The number of objects removed from {@link #items} */
+        int removed;
+
+        Tree(Object[] items, double[] itemBoxes, double[][] levels) {
+            this.items = items;
+            this.itemBoxes = itemBoxes;
+            this.levels = levels;
+        }
+
+        boolean needsRebuild() {
+            return pending.size() > Math.max(MIN_PENDING, (items.length - removed) / 8) || removed > items.length / 2;
+        }
+    }
+
+    private volatile Tree<T> tree;
+    private Collection<T> invalidBBoxPrimitives;
+    private int size;
+
+    /**
+     * Constructs a new, empty {@code PackedRTree}.
+     */
+    public PackedRTree() {
+        clear();
+    }
+
+    @Override
+    public final void clear() {
+        tree = new Tree<>(new Object[0], new double[0], new double[0][]);
+        invalidBBoxPrimitives = new LinkedHashSet<>();
+        size = 0;
+    }
+
+    @Override
+    public boolean add(T t) {
+        if (t.getBBox().isValid()) {
+            tree.pending.add(t);
+        } else {
+            invalidBBoxPrimitives.add(t);
+        }
+        size++;
+        return true;
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        boolean removed;
+        BBox bbox = ((IQuadBucketType) o).getBBox();
+        if (!bbox.isValid()) {
+            removed = invalidBBoxPrimitives.remove(o);
+        } else {
+            Tree<T> t = tree;
+            int index = find(t, o, bbox);
+            if (index >= 0) {
+                t.items[index] = null;
+                t.removed++;
+                removed = true;
+            } else {
+                removed = t.pending.remove(o);
+            }
+        }
+        if (removed) {
+            size--;
+        }
+        return removed;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof IQuadBucketType))
+            return false;
+        BBox bbox = ((IQuadBucketType) o).getBBox();
+        if (!bbox.isValid()) {
+            return invalidBBoxPrimitives.contains(o);
+        }
+        Tree<T> t = tree;
+        return find(t, o, bbox) >= 0 || t.pending.contains(o);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return new PackedRTreeIterator(tree);
+    }
+
+    /**
+     * Builds the tree with all the objects, if objects were added or removed since it was last built.
+     * Searching builds the tree when needed, this allows to do it in advance, after loading data.
+     */
+    public void pack() {
+        Tree<T> t = tree;
+        if (!t.pending.isEmpty() || t.removed > 0) {
+            rebuild(t);
+        }
+    }
+
+    /**
+     * Search the tree for objects in the bbox (or crossing the bbox if they are ways)
+     * @param searchBbox the bbox
+     * @return List of objects within the bbox (or crossing the bbox if they are ways). Can be empty, but not null.
+     */
+    @Override
+    public List<T> search(BBox searchBbox) {
+        List<T> ret = new ArrayList<>();
+        if (searchBbox == null || !searchBbox.isValid()) {
+            return ret;
+        }
+        Tree<T> t = tree;
+        if (t.needsRebuild()) {
+            t = rebuild(t);
+        }
+        double minLon = searchBbox.getMinLon();
+        double minLat = searchBbox.getMinLat();
+        double maxLon = searchBbox.getMaxLon();
+        double maxLat = searchBbox.getMaxLat();
+        if (t.levels.length > 0) {
+            search(t, t.levels.length - 1, 0, minLon, minLat, maxLon, maxLat, ret);
+        }
+        for (T p : t.pending) {
+            if (searchBbox.intersects(p.getBBox())) {
+                ret.add(p);
+            }
+        }
+        return ret;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> void search(Tree<T> t, int level, int node, double minLon, double minLat, double maxLon, double maxLat,
+            List<T> ret) {
+        double[] boxes = level >= 0 ? t.levels[level] : t.itemBoxes;
+        int count = boxes.length / 4;
+        for (int i = node * NODE_CAPACITY, end = Math.min(count, i + NODE_CAPACITY); i < end; i++) {
+            int b = 4 * i;
+            if (boxes[b] <= maxLon && boxes[b + 2] >= minLon && boxes[b + 1] <= maxLat && boxes[b + 3] >= minLat) {
+                if (level >= 0) {
+                    search(t, level - 1, i, minLon, minLat, maxLon, maxLat, ret);
+                } else if (t.items[i] != null) {
+                    ret.add((T) t.items[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds an object in the tree, not including the pending objects.
+     * @param t the tree
+     * @param o the object
+     * @param bbox the bbox of the object
+     * @return the index of the object in {@link Tree#items}, or {@code -1}
+     */
+    private static int find(Tree<?> t, Object o, BBox bbox) {
+        if (t.levels.length == 0)
+            return -1;
+        return find(t, t.levels.length - 1, 0, o, bbox.getMinLon(), bbox.getMinLat(), bbox.getMaxLon(), bbox.getMaxLat());
+    }
+
+    private static int find(Tree<?> t, int level, int node, Object o, double minLon, double minLat, double maxLon, double maxLat) {
+        double[] boxes = level >= 0 ? t.levels[level] : t.itemBoxes;
+        int count = boxes.length / 4;
+        for (int i = node * NODE_CAPACITY, end = Math.min(count, i + NODE_CAPACITY); i < end; i++) {
+            int b = 4 * i;
+            if (boxes[b] <= minLon && boxes[b + 2] >= maxLon && boxes[b + 1] <= minLat && boxes[b + 3] >= maxLat) {
+                if (level >= 0) {
+                    int found = find(t, level - 1, i, o, minLon, minLat, maxLon, maxLat);
+                    if (found >= 0) {
+                        return found;
+                    }
+                } else if (o.equals(t.items[i])) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Builds the tree again, with the remaining objects and the pending ones.
+     * @param current the current tree
+     * @return the new tree
+     */
+    private synchronized Tree<T> rebuild(Tree<T> current) {
+        if (tree != current) {
+            // built meanwhile by a concurrent search
+            return tree;
+        }
+        Object[] all = new Object[current.items.length - current.removed + current.pending.size()];
+        int n = 0;
+        for (Object item : current.items) {
+            if (item != null) {
+                all[n++] = item;
+            }
+        }
+        for (T p : current.pending) {
+            all[n++] = p;
+        }
+        Tree<T> t = build(all);
+        tree = t;
+        return t;
+    }
+
+    private static <T> Tree<T> build(Object[] objects) {
+        int n = objects.length;
+        double[] boxes = new double[4 * n];
+        long[] keys = new long[n];
+        double scale = (1 << HILBERT_BITS) - 1;
+        IntStream.range(0, n).parallel().forEach(i -> {
+            BBox bbox = ((IQuadBucketType) objects[i]).getBBox();
+            int b = 4 * i;
+            boxes[b] = bbox.getMinLon();
+            boxes[b + 1] = bbox.getMinLat();
+            boxes[b + 2] = bbox.getMaxLon();
+            boxes[b + 3] = bbox.getMaxLat();
+            int x = (int) (clamp((boxes[b] + boxes[b + 2]) / 2 + 180, 360) / 360 * scale);
+            int y = (int) (clamp((boxes[b + 1] + boxes[b + 3]) / 2 + 90, 180) / 180 * scale);
+            keys[i] = ((long) hilbert(x, y) << 32) | i;
+        });
+        Arrays.parallelSort(keys);
+
+        Object[] items = new Object[n];
+        double[] itemBoxes = new double[4 * n];
+        IntStream.range(0, n).parallel().forEach(i -> {
+            int j = (int) keys[i];
+            items[i] = objects[j];
+            System.arraycopy(boxes, 4 * j, itemBoxes, 4 * i, 4);
+        });
+
+        List<double[]> levels = new ArrayList<>();
+        double[] below = itemBoxes;
+        while (below.length > 4 || levels.isEmpty() && n > 0) {
+            double[] children = below;
+            int childCount = children.length / 4;
+            double[] level = new double[4 * ((childCount + NODE_CAPACITY - 1) / NODE_CAPACITY)];
+            IntStream.range(0, level.length / 4).parallel().forEach(node -> {
+                double minLon = Double.POSITIVE_INFINITY;
+                double minLat = Double.POSITIVE_INFINITY;
+                double maxLon = Double.NEGATIVE_INFINITY;
+                double maxLat = Double.NEGATIVE_INFINITY;
+                for (int i = node * NODE_CAPACITY, end = Math.min(childCount, i + NODE_CAPACITY); i < end; i++) {
+                    minLon = Math.min(minLon, children[4 * i]);
+                    minLat = Math.min(minLat, children[4 * i + 1]);
+                    maxLon = Math.max(maxLon, children[4 * i + 2]);
+                    maxLat = Math.max(maxLat, children[4 * i + 3]);
+                }
+                level[4 * node] = minLon;
+                level[4 * node + 1] = minLat;
+                level[4 * node + 2] = maxLon;
+                level[4 * node + 3] = maxLat;
+            });
+            levels.add(level);
+            below = level;
+        }
+        return new Tree<>(items, itemBoxes, levels.toArray(new double[0][]));
+    }
+
+    private static double clamp(double value, double max) {
+        return Math.max(0, Math.min(max, value));
+    }
+
+    /**
+     * Returns the position of a point along the Hilbert curve.
+     * @param x the x coordinate, between 0 and 2<sup>{@value #HILBERT_BITS}</sup>-1
+     * @param y the y coordinate, between 0 and 2<sup>{@value #HILBERT_BITS}</sup>-1
+     * @return the position along the curve
+     */
+    static int hilbert(int x, int y) {
+        int d = 0;
+        for (int s = 1 << (HILBERT_BITS - 1); s > 0; s >>= 1) {
+            int rx = (x & s) != 0 ? 1 : 0;
+            int ry = (y & s) != 0 ? 1 : 0;
+            d += s * s * ((3 * rx) ^ ry);
+            // rotate the quadrant
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - (x & (s - 1));
+                    y = s - 1 - (y & (s - 1));
+                }
+                int tmp = x;
+                x = y;
+                y = tmp;
+            }
+        }
+        return d;
+    }
+
+    /**
+     * Iterates over the objects of the tree, then the pending ones, then the ones with an invalid bbox.
+     */
+    private final class PackedRTreeIterator implements Iterator<T> {
+        private final Tree<T> t;
+        private int index = -1;
+        private int nextIndex = -1;
+        private Iterator<T> others;
+        private Iterator<T> last;
+        private boolean othersArePending;
+
+        PackedRTreeIterator(Tree<T> t) {
+            this.t = t;
+            advance();
+        }
+
+        private void advance() {
+            do {
+                nextIndex++;
+            } while (nextIndex < t.items.length && t.items[nextIndex] == null);
+            if (nextIndex >= t.items.length && others == null) {
+                others = t.pending.iterator();
+                othersArePending = true;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (nextIndex < t.items.length)
+                return true;
+            if (othersArePending && !others.hasNext()) {
+                others = invalidBBoxPrimitives.iterator();
+                othersArePending = false;
+            }
+            return others.hasNext();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            if (nextIndex < t.items.length) {
+                index = nextIndex;
+                advance();
+                return (T) t.items[index];
+            }
+            index = -1;
+            last = others;
+            return others.next();
+        }
+
+        @Override
+        public void remove() {
+            if (index >= 0) {
+                t.items[index] = null;
+                t.removed++;
+                index = -1;
+            } else if (last != null) {
+                last.remove();
+                last = null;
+            } else {
+                throw new IllegalStateException();
+            }
+            size--;
+        }
+    }
+}
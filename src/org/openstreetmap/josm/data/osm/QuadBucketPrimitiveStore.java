@@ -7,11 +7,16 @@ import java.util.List;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import org.openstreetmap.josm.data.IQuadBucketType;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.JosmRuntimeException;
 
 /**
  * Stores primitives in quad buckets. This can be used to hold a collection of primitives, e.g. in a {@link DataSet}
  *
+ * The nodes and ways can be stored in a {@link PackedRTree} instead, see {@link #PACKED_RTREE}.
+ *
  * This class does not do any synchronization.
  * @author Michael Zangl
  * @param <N> type representing OSM nodes
@@ -20,24 +25,57 @@ import org.openstreetmap.josm.tools.JosmRuntimeException;
  * @since 12048
  */
 public class QuadBucketPrimitiveStore<N extends INode, W extends IWay<N>, R extends IRelation<?>> {
+    /**
+     * Determines if the nodes and ways of the new stores are indexed in a {@link PackedRTree} rather than in
+     * {@link QuadBuckets}. The packed tree is faster to build after loading large data and faster to search.
+     * @since 18608
+     */
+    public static final BooleanProperty PACKED_RTREE = new BooleanProperty("osm.spatial-index.packed-rtree", false);
+
+    /** Number of primitives added at once above which the packed R-trees are built again right away */
+    private static final int PACK_THRESHOLD = 1024;
+
     /**
      * All nodes goes here, even when included in other data (ways etc). This enables the instant
      * conversion of the whole DataSet by iterating over this data structure.
      */
-    private final QuadBuckets<N> nodes = new QuadBuckets<>();
+    private final SpatialIndex<N> nodes;
 
     /**
      * All ways (Streets etc.) in the DataSet.
      *
      * The way nodes are stored only in the way list.
      */
-    private final QuadBuckets<W> ways = new QuadBuckets<>();
+    private final SpatialIndex<W> ways;
 
     /**
      * All relations/relationships
      */
     private final Collection<R> relations = new ArrayList<>();
 
+    /**
+     * Constructs a new {@code QuadBucketPrimitiveStore}, using the spatial index given by {@link #PACKED_RTREE}.
+     */
+    public QuadBucketPrimitiveStore() {
+        this(Config.getPref() != null && PACKED_RTREE.get());
+    }
+
+    /**
+     * Constructs a new {@code QuadBucketPrimitiveStore}.
+     * @param packedRTree if {@code true}, the nodes and ways are indexed in a {@link PackedRTree},
+     * otherwise in {@link QuadBuckets}
+     * @since 18608
+     */
+    public QuadBucketPrimitiveStore(boolean packedRTree) {
+        if (packedRTree) {
+            nodes = new PackedRTree<>();
+            ways = new PackedRTree<>();
+        } else {
+            nodes = new QuadBuckets<>();
+            ways = new QuadBuckets<>();
+        }
+    }
+
     /**
      * Searches for nodes in the given bounding box.
      * @param bbox the bounding box
@@ -115,6 +153,41 @@ public class QuadBucketPrimitiveStore<N extends INode, W extends IWay<N>, R exte
         }
     }
 
+    /**
+     * Adds many primitives to this quad bucket store at once.
+     * The {@link PackedRTree} indexes are built again once, instead of growing a list of pending primitives.
+     *
+     * @param primitives the primitives
+     * @since 18610
+     */
+    @SuppressWarnings("unchecked")
+    public void addPrimitives(Collection<? extends IPrimitive> primitives) {
+        List<N> newNodes = new ArrayList<>();
+        List<W> newWays = new ArrayList<>();
+        for (IPrimitive primitive : primitives) {
+            if (primitive instanceof INode) {
+                newNodes.add((N) primitive);
+            } else if (primitive instanceof IWay) {
+                newWays.add((W) primitive);
+            } else if (primitive instanceof IRelation) {
+                relations.add((R) primitive);
+            } else {
+                throw new JosmRuntimeException("failed to add primitive: "+primitive);
+            }
+        }
+        addAll(nodes, newNodes);
+        addAll(ways, newWays);
+    }
+
+    private static <T extends IQuadBucketType> void addAll(SpatialIndex<T> index, List<T> primitives) {
+        if (primitives.isEmpty())
+            return;
+        index.addAll(primitives);
+        if (index instanceof PackedRTree && primitives.size() >= PACK_THRESHOLD) {
+            ((PackedRTree<T>) index).pack();
+        }
+    }
+
     protected void removePrimitive(IPrimitive primitive) {
         boolean success = false;
         if (primitive instanceof INode) {
@@ -189,6 +262,20 @@ public class QuadBucketPrimitiveStore<N extends INode, W extends IWay<N>, R exte
         }
     }
 
+    /**
+     * Builds the spatial index of the nodes and ways at once, if it is a {@link PackedRTree}.
+     * Does nothing for {@link QuadBuckets}, which are always up to date.
+     * @since 18608
+     */
+    public void buildIndex() {
+        if (nodes instanceof PackedRTree) {
+            ((PackedRTree<N>) nodes).pack();
+        }
+        if (ways instanceof PackedRTree) {
+            ((PackedRTree<W>) ways).pack();
+        }
+    }
+
     /**
      * Removes all primitives from the this store.
      */
@@ -0,0 +1,25 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.openstreetmap.josm.data.IQuadBucketType;
+
+/**
+ * A collection of objects which can be searched by bounding box.
+ * <p>
+ * Implemented by {@link QuadBuckets}, which supports incremental updates, and by {@link PackedRTree}, which is faster
+ * to build and search for bulk loaded data.
+ * @param <T> type of object extending {@link IQuadBucketType}.
+ * @since 18608
+ */
+public interface SpatialIndex<T extends IQuadBucketType> extends Collection<T> {
+
+    /**
+     * Search the index for objects in the bbox (or crossing the bbox if they are ways)
+     * @param searchBbox the bbox
+     * @return List of objects within the bbox (or crossing the bbox if they are ways). Can be empty, but not null.
+     */
+    List<T> search(BBox searchBbox);
+}
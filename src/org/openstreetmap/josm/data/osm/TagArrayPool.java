@@ -0,0 +1,251 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A global pool of key/value arrays, to share the equal tags of many primitives.
+ * <p>
+ * The arrays given to {@link AbstractPrimitive#setKeys} are replaced by an equal array of the pool, with the same keys
+ * and values in the same order. The arrays of the pool must never be modified: the primitives copy their keys on
+ * write. They are weakly referenced, and dropped once no primitive uses them.
+ * <p>
+ * Most tag arrays are unique, for instance the ones with a name or an address. To not spend a pool entry on each of
+ * them, an array is only added to the pool when an array with the same hash code was seen before.
+ * @since 18606
+ */
+public final class TagArrayPool {
+
+    /** Largest number of tags of the pooled arrays, larger ones are unlikely to be shared */
+    private static final int MAX_TAGS = 16;
+    /** Number of independently locked segments */
+    private static final int SEGMENTS = 16;
+    /** Estimated size of a pool entry, in bytes */
+    private static final int ENTRY_SIZE = 44;
+    /** Number of bits of the hash codes of the arrays seen once */
+    private static final int SEEN_BITS = 20;
+
+    private static final Segment[] POOL = new Segment[SEGMENTS];
+    private static final LongAdder REQUESTS = new LongAdder();
+    private static final LongAdder SHARED = new LongAdder();
+    private static final LongAdder SAVED_BYTES = new LongAdder();
+    /** The hash codes of the arrays seen once */
+    private static final AtomicLongArray SEEN = new AtomicLongArray((1 << SEEN_BITS) / 64);
+    private static final AtomicInteger SEEN_COUNT = new AtomicInteger();
+
+    static {
+        for (int i = 0; i < SEGMENTS; i++) {
+            POOL[i] = new Segment();
+        }
+    }
+
+    private TagArrayPool() {
+        // Hide default constructor for utilities classes
+    }
+
+    /**
+     * Returns the pooled array equal to the given one, adding it to the pool if needed.
+     * @param tags the key/value array, which must not be modified afterwards. Can be {@code null}
+     * @return an equal array, which must not be modified
+     */
+    static String[] canonicalize(String[] tags) {
+        if (tags == null || tags.length == 0 || tags.length > 2 * MAX_TAGS) {
+            return tags;
+        }
+        int hash = Arrays.hashCode(tags);
+        String[] pooled = POOL[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)].canonicalize(tags, hash);
+        REQUESTS.increment();
+        if (pooled != tags) {
+            SHARED.increment();
+            SAVED_BYTES.add(16 + 4L * tags.length);
+        }
+        return pooled;
+    }
+
+    /**
+     * Records that an array with the given hash code was seen.
+     * @param hash the hash code of the array
+     * @return {@code true} if an array with the same hash code was seen before
+     */
+    private static boolean markSeen(int hash) {
+        int bit = (hash * 0x9E3779B9) >>> (32 - SEEN_BITS);
+        long mask = 1L << bit;
+        long previous = SEEN.getAndAccumulate(bit >>> 6, mask, (a, b) -> a | b);
+        if ((previous & mask) != 0) {
+            return true;
+        }
+        if (SEEN_COUNT.incrementAndGet() > (1 << SEEN_BITS) / 2) {
+            // start again once half of the bits are set, the pool would otherwise admit most arrays
+            SEEN_COUNT.set(0);
+            for (int i = 0; i < SEEN.length(); i++) {
+                SEEN.set(i, 0);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the statistics of the pool.
+     * @return the statistics of the pool
+     */
+    public static Statistics getStatistics() {
+        int size = 0;
+        for (Segment segment : POOL) {
+            size += segment.size();
+        }
+        return new Statistics(size, REQUESTS.sum(), SHARED.sum(), SAVED_BYTES.sum());
+    }
+
+    /**
+     * A weakly referenced pool entry.
+     */
+    private static final class Entry extends WeakReference<String[]> {
+        final int hash;
+        Entry next;
+
+        Entry(String[] tags, int hash, Entry next, ReferenceQueue<String[]> queue) {
+            super(tags, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    /**
+     * A hash table of weakly referenced arrays, with chaining.
+     */
+    private static final class Segment {
+        private final ReferenceQueue<String[]> queue = new ReferenceQueue<>();
+        private Entry[] table = new Entry[64];
+        private int size;
+
+        synchronized String[] canonicalize(String[] tags, int hash) {
+            expungeStaleEntries();
+            int index = hash & (table.length - 1);
+            for (Entry e = table[index]; e != null; e = e.next) {
+                if (e.hash == hash) {
+                    String[] pooled = e.get();
+                    if (pooled != null && Arrays.equals(pooled, tags)) {
+                        return pooled;
+                    }
+                }
+            }
+            if (!markSeen(hash)) {
+                return tags;
+            }
+            table[index] = new Entry(tags, hash, table[index], queue);
+            if (++size > table.length * 3 / 4) {
+                resize();
+            }
+            return tags;
+        }
+
+        synchronized int size() {
+            expungeStaleEntries();
+            return size;
+        }
+
+        private void resize() {
+            Entry[] newTable = new Entry[table.length * 2];
+            for (Entry e : table) {
+                while (e != null) {
+                    Entry next = e.next;
+                    int index = e.hash & (newTable.length - 1);
+                    e.next = newTable[index];
+                    newTable[index] = e;
+                    e = next;
+                }
+            }
+            table = newTable;
+        }
+
+        private void expungeStaleEntries() {
+            for (Object stale; (stale = queue.poll()) != null;) {
+                Entry entry = (Entry) stale;
+                int index = entry.hash & (table.length - 1);
+                Entry prev = null;
+                for (Entry e = table[index]; e != null; prev = e, e = e.next) {
+                    if (e == entry) {
+                        if (prev == null) {
+                            table[index] = e.next;
+                        } else {
+                            prev.next = e.next;
+                        }
+                        size--;
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The memory statistics of the pool.
+     */
+    public static final class Statistics {
+        private final int size;
+        private final long requests;
+        private final long shared;
+        private final long savedBytes;
+
+        Statistics(int size, long requests, long shared, long savedBytes) {
+            this.size = size;
+            this.requests = requests;
+            this.shared = shared;
+            this.savedBytes = savedBytes;
+        }
+
+        /**
+         * Returns the number of distinct arrays in the pool.
+         * @return the number of distinct arrays in the pool
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Returns the number of arrays given to the pool so far.
+         * @return the number of arrays given to the pool so far
+         */
+        public long getRequests() {
+            return requests;
+        }
+
+        /**
+         * Returns the number of arrays given to the pool so far, that were replaced by an equal array of the pool.
+         * @return the number of shared arrays
+         */
+        public long getShared() {
+            return shared;
+        }
+
+        /**
+         * Returns the estimated size of the arrays replaced by an equal array of the pool so far, in bytes.
+         * @return the estimated size of the shared arrays, in bytes
+         */
+        public long getSavedBytes() {
+            return savedBytes;
+        }
+
+        /**
+         * Returns the estimated size of the pool itself, not including the arrays, in bytes.
+         * This includes the fixed size of the hash codes of the arrays seen once.
+         * @return the estimated size of the pool, in bytes
+         */
+        public long getOverheadBytes() {
+            return (long) size * ENTRY_SIZE + (1 << SEEN_BITS) / 8;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d distinct tag arrays, %d of %d shared (%.1f%%), %d KB saved, %d KB overhead",
+                    size, shared, requests, requests == 0 ? 0.0 : 100.0 * shared / requests,
+                    savedBytes / 1024, getOverheadBytes() / 1024);
+        }
+    }
+}
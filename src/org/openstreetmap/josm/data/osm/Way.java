@@ -274,7 +274,7 @@ public final class Way extends OsmPrimitive implements IWay<Node> {
 
             List<Node> newNodes = new ArrayList<>(nodeIds.size());
             for (Long nodeId : nodeIds) {
-                Node node = (Node) getDataSet().getPrimitiveById(nodeId, OsmPrimitiveType.NODE);
+                Node node = getDataSet().getNode(nodeId);
                 if (node != null) {
                     newNodes.add(node);
                 } else {
@@ -4,7 +4,6 @@ package org.openstreetmap.josm.data.osm.visitor.paint;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.RecursiveTask;
 
 import org.openstreetmap.josm.data.osm.INode;
@@ -16,6 +15,7 @@ import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer.StyleReco
 import org.openstreetmap.josm.gui.NavigatableComponent;
 import org.openstreetmap.josm.gui.mappaint.ElemStyles;
 import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.mappaint.Range;
 import org.openstreetmap.josm.gui.mappaint.StyleElementList;
 import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
 import org.openstreetmap.josm.gui.mappaint.styleelement.AreaElement;
@@ -25,6 +25,7 @@ import org.openstreetmap.josm.gui.mappaint.styleelement.StyleElement;
 import org.openstreetmap.josm.gui.mappaint.styleelement.TextElement;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.JosmRuntimeException;
+import org.openstreetmap.josm.tools.Pair;
 import org.openstreetmap.josm.tools.bugreport.BugReport;
 
 /**
@@ -47,6 +48,9 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
     private final boolean drawMultipolygon;
     private final boolean drawRestriction;
 
+    private double rangeLower;
+    private double rangeUpper = Double.POSITIVE_INFINITY;
+
     /**
      * Constructs a new {@code ComputeStyleListWorker}.
      * @param circum distance on the map in meters that 100 screen pixels represent
@@ -92,14 +96,18 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
         if (input.size() <= directExecutionTaskSize) {
             return computeDirectly();
         } else {
-            final Collection<ForkJoinTask<List<StyleRecord>>> tasks = new ArrayList<>();
+            final Collection<ComputeStyleListWorker> tasks = new ArrayList<>();
             for (int fromIndex = 0; fromIndex < input.size(); fromIndex += directExecutionTaskSize) {
                 final int toIndex = Math.min(fromIndex + directExecutionTaskSize, input.size());
-                tasks.add(new ComputeStyleListWorker(circum, nc, input.subList(fromIndex, toIndex),
-                        new ArrayList<>(directExecutionTaskSize), directExecutionTaskSize, styles).fork());
+                ComputeStyleListWorker task = new ComputeStyleListWorker(circum, nc, input.subList(fromIndex, toIndex),
+                        new ArrayList<>(directExecutionTaskSize), directExecutionTaskSize, styles);
+                task.fork();
+                tasks.add(task);
             }
-            for (ForkJoinTask<List<StyleRecord>> task : tasks) {
+            for (ComputeStyleListWorker task : tasks) {
                 output.addAll(task.join());
+                rangeLower = Math.max(rangeLower, task.rangeLower);
+                rangeUpper = Math.min(rangeUpper, task.rangeUpper);
             }
             return output;
         }
@@ -133,6 +141,23 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
         }
     }
 
+    /**
+     * Returns the scale range in which the computed style records stay valid, i.e. the intersection of the ranges of the
+     * cached styles of all processed primitives. Only meaningful once the computation is done.
+     * @return the scale range in which the computed style records stay valid
+     * @since 18612
+     */
+    Range getRange() {
+        return new Range(rangeLower, rangeUpper);
+    }
+
+    private StyleElementList getStyles(IPrimitive osm) {
+        Pair<StyleElementList, Range> p = styles.getStyleCacheWithRange(osm, circum, nc);
+        rangeLower = Math.max(rangeLower, p.b.getLower());
+        rangeUpper = Math.min(rangeUpper, p.b.getUpper());
+        return p.a;
+    }
+
     @Override
     public void visit(INode n) {
         add(n, StyledMapRenderer.computeFlags(n, false));
@@ -155,7 +180,7 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
      * @since 13810 (signature)
      */
     public void add(INode osm, int flags) {
-        StyleElementList sl = styles.get(osm, circum, nc);
+        StyleElementList sl = getStyles(osm);
         for (StyleElement s : sl) {
             output.add(new StyleRecord(s, osm, flags));
         }
@@ -168,7 +193,7 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
      * @since 13810 (signature)
      */
     public void add(IWay<?> osm, int flags) {
-        StyleElementList sl = styles.get(osm, circum, nc);
+        StyleElementList sl = getStyles(osm);
         for (StyleElement s : sl) {
             if ((drawArea && (flags & StyledMapRenderer.FLAG_DISABLED) == 0) || !(s instanceof AreaElement)) {
                 output.add(new StyleRecord(s, osm, flags));
@@ -183,7 +208,7 @@ public class ComputeStyleListWorker extends RecursiveTask<List<StyleRecord>> imp
      * @since 13810 (signature)
      */
     public void add(IRelation<?> osm, int flags) {
-        StyleElementList sl = styles.get(osm, circum, nc);
+        StyleElementList sl = getStyles(osm);
         for (StyleElement s : sl) {
             if (drawAreaElement(flags, s) ||
                (drawMultipolygon && drawArea && s instanceof TextElement) ||
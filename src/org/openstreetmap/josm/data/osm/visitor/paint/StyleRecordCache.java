@@ -0,0 +1,355 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSelectionListener;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.osm.event.FilterChangedEvent;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer.StyleRecord;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.gui.mappaint.ElemStyles;
+import org.openstreetmap.josm.gui.mappaint.Range;
+import org.openstreetmap.josm.spi.preferences.Config;
+
+/**
+ * Keeps the sorted {@link StyleRecord}s computed by {@link StyledMapRenderer} between repaints.
+ * <p>
+ * The world is divided into a grid of square tiles (in lat/lon), about a quarter to a half of the viewport wide.
+ * For each tile, the style records of all primitives intersecting it are computed and sorted once, together with
+ * the scale range in which they stay valid. On repaint, the records of the tiles covering the viewport are reused
+ * as long as the scale is in their range, and only the missing tiles are computed. Tiles are invalidated when
+ * primitives intersecting them are changed or (de)selected, and the whole cache of a dataset is dropped when the
+ * filters, the map paint styles or the relevant preferences change.
+ * <p>
+ * Since the records are computed per tile, a primitive spanning several tiles has records in each of them: when
+ * merging, a record is only taken from the tile containing the lower left corner of its primitive (clamped to the
+ * viewport), so that it is painted once. As the bounding box is the current one, records left in a tile after their
+ * primitive moved away are ignored as well.
+ * @since 18612
+ */
+public final class StyleRecordCache implements DataSetListener, DataSelectionListener {
+
+    /**
+     * Whether the style records are kept between repaints.
+     */
+    public static final BooleanProperty PROP_ENABLED = new BooleanProperty("mappaint.style-record-cache", true);
+
+    private static final StyleRecordCache INSTANCE = new StyleRecordCache();
+
+    /** Maximum number of tiles kept for a dataset */
+    private static final int MAX_TILES = 64;
+    /** Maximum grid level, so that tile coordinates fit in an int */
+    private static final int MAX_LEVEL = 30;
+
+    private final Map<DataSet, TileCache> cache = new ConcurrentHashMap<>();
+
+    private StyleRecordCache() {
+        // Hide default constructor for singleton
+    }
+
+    /**
+     * Replies the unique instance.
+     * @return the unique instance
+     */
+    public static StyleRecordCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The sorted style records of a tile.
+     */
+    private static final class Tile {
+        private final StyleRecord[] records;
+        private final BBox bbox;
+        private final Range range;
+
+        Tile(StyleRecord[] records, BBox bbox, Range range) {
+            this.records = records;
+            this.bbox = bbox;
+            this.range = range;
+        }
+    }
+
+    /**
+     * The tiles of a dataset, for a given grid level and rendering configuration.
+     */
+    private static final class TileCache {
+        private final Map<Long, Tile> tiles = new LinkedHashMap<Long, Tile>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+                return size() > MAX_TILES;
+            }
+        };
+        private int level = -1;
+        private double tileSize;
+        private List<Object> configuration = Collections.emptyList();
+
+        private int tileX(double lon) {
+            return clamp(Math.floor((lon + 180) / tileSize));
+        }
+
+        private int tileY(double lat) {
+            return clamp(Math.floor((lat + 90) / tileSize));
+        }
+
+        private int clamp(double tile) {
+            return (int) Math.max(0, Math.min((1 << level) - 1, tile));
+        }
+
+        private BBox tileBBox(int x, int y) {
+            // slightly enlarged, so that rounding never leaves a primitive out of the tile computed by tileX/tileY
+            double margin = tileSize * 1e-6;
+            return new BBox(x * tileSize - 180 - margin, y * tileSize - 90 - margin,
+                    (x + 1) * tileSize - 180 + margin, (y + 1) * tileSize - 90 + margin);
+        }
+
+        private void invalidate(BBox bbox) {
+            if (bbox != null && bbox.isValid()) {
+                tiles.values().removeIf(tile -> tile.bbox.intersects(bbox));
+            }
+        }
+
+        synchronized void invalidate(Collection<? extends OsmPrimitive> primitives) {
+            Set<OsmPrimitive> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            List<OsmPrimitive> todo = new ArrayList<>(primitives);
+            while (!todo.isEmpty() && !tiles.isEmpty()) {
+                OsmPrimitive osm = todo.remove(todo.size() - 1);
+                if (visited.add(osm)) {
+                    invalidate(osm.getBBox());
+                    if (osm.getDataSet() != null) {
+                        // the style and the bounding box of the parents may depend on their children
+                        todo.addAll(osm.getReferrers());
+                    }
+                }
+            }
+        }
+
+        synchronized void clear() {
+            tiles.clear();
+        }
+
+        synchronized StyleRecord[] getStyleRecords(StyledMapRenderer renderer, DataSet ds, BBox bbox) {
+            double circum = renderer.getCircum();
+            ElemStyles styles = renderer.getStyles();
+            // same settings as ComputeStyleListWorker
+            boolean drawArea = circum <= Config.getPref().getInt("mappaint.fillareas", 10_000_000);
+            List<Object> config = Arrays.asList(styles, ds.getMappaintCacheIndex(), drawArea,
+                    drawArea && Config.getPref().getBoolean("mappaint.multipolygon", true),
+                    Config.getPref().getBoolean("mappaint.restriction", true));
+            if (!config.equals(configuration)) {
+                tiles.clear();
+                configuration = config;
+            }
+            double size = Math.max(bbox.getWidth(), bbox.getHeight());
+            int wantedLevel = Math.max(0, Math.min(MAX_LEVEL, (int) Math.ceil(Math.log(720 / size) / Math.log(2))));
+            if (level != wantedLevel && (level < 0 || tileSize < size / 4 || tileSize > size / 2)) {
+                tiles.clear();
+                level = wantedLevel;
+                tileSize = 360d / (1L << level);
+            }
+
+            int minX = tileX(bbox.getMinLon());
+            int minY = tileY(bbox.getMinLat());
+            int maxX = tileX(bbox.getMaxLon());
+            int maxY = tileY(bbox.getMaxLat());
+            List<StyleRecord[]> runs = new ArrayList<>();
+            List<StyleRecord> run = new ArrayList<>();
+            for (int x = minX; x <= maxX; x++) {
+                for (int y = minY; y <= maxY; y++) {
+                    Long key = ((long) x << 32) | (y & 0xffffffffL);
+                    Tile tile = tiles.get(key);
+                    if (tile == null || !tile.range.contains(circum)) {
+                        tile = computeTile(renderer, ds, tileBBox(x, y));
+                        tiles.put(key, tile);
+                    }
+                    for (StyleRecord record : tile.records) {
+                        IPrimitive osm = record.getPrimitive();
+                        BBox box = osm.getBBox();
+                        if (bbox.intersects(box) && osm.isDrawable()
+                                && Math.max(tileX(box.getMinLon()), minX) == x && Math.max(tileY(box.getMinLat()), minY) == y) {
+                            run.add(record);
+                        }
+                    }
+                    runs.add(run.toArray(new StyleRecord[0]));
+                    run.clear();
+                }
+            }
+            return merge(runs);
+        }
+
+        /**
+         * Merges the sorted records of the tiles, two by two.
+         * @param runs the sorted records of each tile
+         * @return all records, sorted
+         */
+        private static StyleRecord[] merge(List<StyleRecord[]> runs) {
+            while (runs.size() > 1) {
+                List<StyleRecord[]> merged = new ArrayList<>((runs.size() + 1) / 2);
+                for (int i = 0; i + 1 < runs.size(); i += 2) {
+                    merged.add(merge(runs.get(i), runs.get(i + 1)));
+                }
+                if (runs.size() % 2 != 0) {
+                    merged.add(runs.get(runs.size() - 1));
+                }
+                runs = merged;
+            }
+            return runs.isEmpty() ? new StyleRecord[0] : runs.get(0);
+        }
+
+        private static StyleRecord[] merge(StyleRecord[] a, StyleRecord[] b) {
+            StyleRecord[] result = new StyleRecord[a.length + b.length];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < a.length && j < b.length) {
+                result[k++] = b[j].compareTo(a[i]) < 0 ? b[j++] : a[i++];
+            }
+            System.arraycopy(a, i, result, k, a.length - i);
+            System.arraycopy(b, j, result, k + a.length - i, b.length - j);
+            return result;
+        }
+
+        private static Tile computeTile(StyledMapRenderer renderer, DataSet ds, BBox bbox) {
+            List<StyleRecord> records = new ArrayList<>();
+            Range range = renderer.computeStyleRecords(ds, bbox, records);
+            StyleRecord[] sorted = records.toArray(new StyleRecord[0]);
+            Arrays.parallelSort(sorted, null);
+            return new Tile(sorted, bbox, range);
+        }
+    }
+
+    /**
+     * Returns the sorted style records to paint the given area.
+     * @param renderer the renderer, giving the scale and the styles
+     * @param ds the dataset to render
+     * @param bbox the area to render
+     * @return the sorted style records
+     */
+    StyleRecord[] getStyleRecords(StyledMapRenderer renderer, DataSet ds, BBox bbox) {
+        return cache.computeIfAbsent(ds, k -> new TileCache()).getStyleRecords(renderer, ds, bbox);
+    }
+
+    /**
+     * Clears the cache for the given dataset.
+     * @param ds the data set
+     */
+    public void clear(DataSet ds) {
+        TileCache tiles = cache.remove(ds);
+        if (tiles != null) {
+            tiles.clear();
+        }
+    }
+
+    /**
+     * Clears the whole cache.
+     */
+    public void clear() {
+        cache.clear();
+    }
+
+    private void invalidate(DataSet ds, Collection<? extends OsmPrimitive> primitives) {
+        TileCache tiles = cache.get(ds);
+        if (tiles != null) {
+            tiles.invalidate(primitives);
+        }
+    }
+
+    private void invalidate(AbstractDatasetChangedEvent event) {
+        invalidate(event.getDataset(), event.getPrimitives());
+    }
+
+    @Override
+    public void primitivesAdded(PrimitivesAddedEvent event) {
+        invalidate(event);
+    }
+
+    @Override
+    public void primitivesRemoved(PrimitivesRemovedEvent event) {
+        invalidate(event);
+    }
+
+    @Override
+    public void tagsChanged(TagsChangedEvent event) {
+        invalidate(event);
+    }
+
+    @Override
+    public void nodeMoved(NodeMovedEvent event) {
+        invalidate(event);
+    }
+
+    @Override
+    public void wayNodesChanged(WayNodesChangedEvent event) {
+        invalidate(event);
+    }
+
+    @Override
+    public void relationMembersChanged(RelationMembersChangedEvent event) {
+        invalidate(event);
+    }
+
+    @Override
+    public void otherDatasetChange(AbstractDatasetChangedEvent event) {
+        if (event instanceof FilterChangedEvent) {
+            clear(event.getDataset());
+        } else {
+            // modified flag, changeset id, ...: may be used by the styles
+            invalidate(event);
+        }
+    }
+
+    @Override
+    public void dataChanged(DataChangedEvent event) {
+        // getPrimitives() can return all the data set primitives for this event
+        clear(event.getDataset());
+    }
+
+    @Override
+    public void selectionChanged(SelectionChangeEvent event) {
+        DataSet ds = event.getSource();
+        TileCache tiles = cache.get(ds);
+        if (tiles != null) {
+            // selected primitives and their members get other flags and styles
+            Collection<OsmPrimitive> changed = new ArrayList<>(event.getAdded());
+            changed.addAll(event.getRemoved());
+            tiles.invalidate(changed);
+        }
+    }
+
+    /**
+     * Returns the number of tiles currently cached for the given dataset.
+     * @param ds the dataset
+     * @return the number of cached tiles
+     */
+    int getTileCount(DataSet ds) {
+        TileCache tiles = cache.get(ds);
+        if (tiles == null) {
+            return 0;
+        }
+        synchronized (tiles) {
+            return tiles.tiles.size();
+        }
+    }
+}
@@ -28,6 +28,7 @@ import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -37,8 +38,10 @@ import java.util.Optional;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import javax.swing.AbstractButton;
@@ -47,6 +50,7 @@ import javax.swing.FocusManager;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.INode;
 import org.openstreetmap.josm.data.osm.IPrimitive;
 import org.openstreetmap.josm.data.osm.IRelation;
@@ -70,6 +74,7 @@ import org.openstreetmap.josm.gui.draw.MapViewPath;
 import org.openstreetmap.josm.gui.draw.MapViewPositionAndRotation;
 import org.openstreetmap.josm.gui.mappaint.ElemStyles;
 import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.mappaint.Range;
 import org.openstreetmap.josm.gui.mappaint.styleelement.BoxTextElement;
 import org.openstreetmap.josm.gui.mappaint.styleelement.BoxTextElement.HorizontalTextAlignment;
 import org.openstreetmap.josm.gui.mappaint.styleelement.BoxTextElement.VerticalTextAlignment;
@@ -98,6 +103,13 @@ import org.openstreetmap.josm.tools.bugreport.BugReport;
  */
 public class StyledMapRenderer extends AbstractMapRenderer {
 
+    /**
+     * Lock held while painting, and by the other threads computing the styles of primitives displayed in the map view.
+     * The style cache of a primitive must not be computed in two threads at once, see {@link #computeStyleRecords}.
+     * @since 18615
+     */
+    public static final Lock STYLE_CACHE_LOCK = new ReentrantLock();
+
     private static final ForkJoinPool THREAD_POOL = newForkJoinPool();
 
     private static ForkJoinPool newForkJoinPool() {
@@ -218,6 +230,15 @@ public class StyledMapRenderer extends AbstractMapRenderer {
             return style;
         }
 
+        /**
+         * Get the primitive painted by this style element.
+         * @return The primitive
+         * @since 18612
+         */
+        public IPrimitive getPrimitive() {
+            return osm;
+        }
+
         /**
          * Paints the primitive with the style.
          * @param paintSettings The settings to use.
@@ -365,6 +386,9 @@ public class StyledMapRenderer extends AbstractMapRenderer {
 
     private Supplier<RenderBenchmarkCollector> benchmarkFactory = RenderBenchmarkCollector.defaultBenchmarkSupplier();
 
+    private StyleRecordCache styleRecordCache;
+    private Predicate<? super IPrimitive> primitiveFilter;
+
     /**
      * Constructs a new {@code StyledMapRenderer}.
      *
@@ -1638,12 +1662,34 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         RenderBenchmarkCollector benchmark = benchmarkFactory.get();
         BBox bbox = bounds.toBBox();
         getSettings(renderVirtualNodes);
+        runWithReadLock(data, () -> paintWithLock(data, renderVirtualNodes, benchmark, bbox));
+    }
+
+    /**
+     * Renders only the given primitives, on top of what has already been painted.
+     * This is used to draw the selected and highlighted primitives over a cached rendering of the other ones.
+     * @param data the data the primitives belong to
+     * @param primitives the primitives to render. Only the ones intersecting {@code bounds} are painted
+     * @param renderVirtualNodes whether virtual nodes should be rendered
+     * @param bounds the bounds of the painted area
+     * @since 18613
+     */
+    public void renderPrimitives(final OsmData<?, ?, ?, ?> data, Collection<? extends IPrimitive> primitives,
+            boolean renderVirtualNodes, Bounds bounds) {
+        BBox bbox = bounds.toBBox();
+        getSettings(renderVirtualNodes);
+        runWithReadLock(data, () -> paintPrimitivesWithLock(data, primitives, bbox));
+    }
+
+    private static void runWithReadLock(OsmData<?, ?, ?, ?> data, Runnable paint) {
         try {
             Lock readLock = data.getReadLock();
             if (readLock.tryLock(1, TimeUnit.SECONDS)) {
+                STYLE_CACHE_LOCK.lock();
                 try {
-                    paintWithLock(data, renderVirtualNodes, benchmark, bbox);
+                    paint.run();
                 } finally {
+                    STYLE_CACHE_LOCK.unlock();
                     readLock.unlock();
                 }
             } else {
@@ -1654,6 +1700,28 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         }
     }
 
+    private void paintPrimitivesWithLock(OsmData<?, ?, ?, ?> data, Collection<? extends IPrimitive> primitives, BBox bbox) {
+        highlightWaySegments = data.getHighlightedWaySegments();
+        // relations first, see computeStyleRecords
+        List<IPrimitive> input = new ArrayList<>(primitives.size());
+        for (IPrimitive osm : primitives) {
+            if (osm instanceof IRelation && bbox.intersects(osm.getBBox())) {
+                input.add(osm);
+            }
+        }
+        for (IPrimitive osm : primitives) {
+            if (!(osm instanceof IRelation) && bbox.intersects(osm.getBBox())) {
+                input.add(osm);
+            }
+        }
+        List<StyleRecord> records = new ComputeStyleListWorker(circum, nc, input, new ArrayList<>(), 0, styles).computeDirectly();
+        Collections.sort(records);
+        for (StyleRecord record : records) {
+            paintRecord(record);
+        }
+        drawVirtualNodes(data, bbox);
+    }
+
     private void paintWithLock(final OsmData<?, ?, ?, ?> data, boolean renderVirtualNodes, RenderBenchmarkCollector benchmark,
             BBox bbox) {
         try {
@@ -1661,39 +1729,33 @@ public class StyledMapRenderer extends AbstractMapRenderer {
 
             benchmark.renderStart(circum);
 
-            List<? extends INode> nodes = data.searchNodes(bbox);
-            List<? extends IWay<?>> ways = data.searchWays(bbox);
-            List<? extends IRelation<?>> relations = data.searchRelations(bbox);
-
-            final List<StyleRecord> allStyleElems = new ArrayList<>(nodes.size()+ways.size()+relations.size());
-
-            // Need to process all relations first.
-            // Reason: Make sure, ElemStyles.getStyleCacheWithRange is not called for the same primitive in parallel threads.
-            // (Could be synchronized, but try to avoid this for performance reasons.)
-            if (THREAD_POOL != null) {
-                THREAD_POOL.invoke(new ComputeStyleListWorker(circum, nc, relations, allStyleElems,
-                        Math.max(20, relations.size() / THREAD_POOL.getParallelism() / 3), styles));
-                THREAD_POOL.invoke(new ComputeStyleListWorker(circum, nc, new CompositeList<>(nodes, ways), allStyleElems,
-                        Math.max(100, (nodes.size() + ways.size()) / THREAD_POOL.getParallelism() / 3), styles));
+            final StyleRecord[] sorted;
+            if (styleRecordCache != null && data instanceof DataSet) {
+                sorted = styleRecordCache.getStyleRecords(this, (DataSet) data, bbox);
+                if (!benchmark.renderSort()) {
+                    return;
+                }
             } else {
-                new ComputeStyleListWorker(circum, nc, relations, allStyleElems, 0, styles).computeDirectly();
-                new ComputeStyleListWorker(circum, nc, new CompositeList<>(nodes, ways), allStyleElems, 0, styles).computeDirectly();
-            }
+                final List<StyleRecord> allStyleElems = new ArrayList<>();
+                computeStyleRecords(data, bbox, allStyleElems);
 
-            if (!benchmark.renderSort()) {
-                return;
-            }
+                if (!benchmark.renderSort()) {
+                    return;
+                }
 
-            // We use parallel sort here. This is only available for arrays.
-            StyleRecord[] sorted = allStyleElems.toArray(new StyleRecord[0]);
-            Arrays.parallelSort(sorted, null);
+                // We use parallel sort here. This is only available for arrays.
+                sorted = allStyleElems.toArray(new StyleRecord[0]);
+                Arrays.parallelSort(sorted, null);
+            }
 
-            if (!benchmark.renderDraw(allStyleElems)) {
+            if (!benchmark.renderDraw(Arrays.asList(sorted))) {
                 return;
             }
 
             for (StyleRecord record : sorted) {
-                paintRecord(record);
+                if (primitiveFilter == null || primitiveFilter.test(record.getPrimitive())) {
+                    paintRecord(record);
+                }
             }
 
             drawVirtualNodes(data, bbox);
@@ -1709,6 +1771,69 @@ public class StyledMapRenderer extends AbstractMapRenderer {
         }
     }
 
+    /**
+     * Computes the style records of the drawable primitives in the given area, in no particular order.
+     * @param data the data to render
+     * @param bbox the area to render
+     * @param output the list to which the style records are added
+     * @return the scale range in which the computed style records stay valid
+     */
+    Range computeStyleRecords(OsmData<?, ?, ?, ?> data, BBox bbox, List<StyleRecord> output) {
+        List<? extends INode> nodes = data.searchNodes(bbox);
+        List<? extends IWay<?>> ways = data.searchWays(bbox);
+        List<? extends IRelation<?>> relations = data.searchRelations(bbox);
+
+        ComputeStyleListWorker relationWorker;
+        ComputeStyleListWorker otherWorker;
+        // Need to process all relations first.
+        // Reason: Make sure, ElemStyles.getStyleCacheWithRange is not called for the same primitive in parallel threads.
+        // (Could be synchronized, but try to avoid this for performance reasons.)
+        if (THREAD_POOL != null) {
+            relationWorker = new ComputeStyleListWorker(circum, nc, relations, output,
+                    Math.max(20, relations.size() / THREAD_POOL.getParallelism() / 3), styles);
+            THREAD_POOL.invoke(relationWorker);
+            otherWorker = new ComputeStyleListWorker(circum, nc, new CompositeList<>(nodes, ways), output,
+                    Math.max(100, (nodes.size() + ways.size()) / THREAD_POOL.getParallelism() / 3), styles);
+            THREAD_POOL.invoke(otherWorker);
+        } else {
+            relationWorker = new ComputeStyleListWorker(circum, nc, relations, output, 0, styles);
+            relationWorker.computeDirectly();
+            otherWorker = new ComputeStyleListWorker(circum, nc, new CompositeList<>(nodes, ways), output, 0, styles);
+            otherWorker.computeDirectly();
+        }
+        Range a = relationWorker.getRange();
+        Range b = otherWorker.getRange();
+        return new Range(Math.max(a.getLower(), b.getLower()), Math.min(a.getUpper(), b.getUpper()));
+    }
+
+    /**
+     * Returns the {@link ElemStyles} instance used by this renderer.
+     * @return the {@code ElemStyles} instance used by this renderer
+     */
+    ElemStyles getStyles() {
+        return styles;
+    }
+
+    /**
+     * Sets the cache used to keep the sorted style records between repaints.
+     * Only used when rendering a {@link DataSet}.
+     * @param styleRecordCache the cache, or {@code null} to compute the style records on each repaint
+     * @since 18612
+     */
+    public void setStyleRecordCache(StyleRecordCache styleRecordCache) {
+        this.styleRecordCache = styleRecordCache;
+    }
+
+    /**
+     * Sets a filter deciding which primitives are painted by {@link #render}.
+     * The filter is called for each style element of the visible primitives, in painting order.
+     * @param primitiveFilter the filter, or {@code null} to paint all primitives
+     * @since 18613
+     */
+    public void setPrimitiveFilter(Predicate<? super IPrimitive> primitiveFilter) {
+        this.primitiveFilter = primitiveFilter;
+    }
+
     private void paintRecord(StyleRecord record) {
         try {
             record.paintPrimitive(paintSettings, this);
@@ -16,7 +16,6 @@ import java.util.Set;
 import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
-import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
@@ -406,12 +405,12 @@ public class Multipolygon {
                     Logging.warn("DataSet not found while resetting nodes in Multipolygon. " +
                             "This should not happen, you may report it to JOSM developers.");
                 } else if (wayIds.size() == 1) {
-                    Way w = (Way) ds.getPrimitiveById(wayIds.iterator().next(), OsmPrimitiveType.WAY);
+                    Way w = ds.getWay(wayIds.iterator().next());
                     nodes.addAll(w.getNodes());
                 } else if (!wayIds.isEmpty()) {
                     List<Way> waysToJoin = new ArrayList<>();
                     for (Long wayId : wayIds) {
-                        Way w = (Way) ds.getPrimitiveById(wayId, OsmPrimitiveType.WAY);
+                        Way w = ds.getWay(wayId);
                         if (w != null && !w.isEmpty()) { // fix #7173 (empty ways on purge)
                             waysToJoin.add(w);
                         }
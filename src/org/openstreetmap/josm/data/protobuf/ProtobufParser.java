@@ -1,18 +1,39 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.data.protobuf;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
 
 /**
  * A basic Protobuf parser
+ * <p>
+ * The parser is a cursor over a {@link ByteBuffer}, which may be a heap buffer or a memory mapped file. The fields are
+ * read with {@link #nextField()}, then with the {@code read*} method matching their type:
+ * <pre>
+ * while (parser.nextField()) {
+ *     switch (parser.getField()) {
+ *     case 1: id = parser.readVarint64(); break;
+ *     case 2: name = parser.readString(); break;
+ *     default: parser.skipField();
+ *     }
+ * }
+ * </pre>
+ * These methods do not allocate: numbers are returned as primitives, length delimited fields as slices of the
+ * underlying buffer, and packed fields are iterated in place. The fields can also be visited with
+ * {@link #visit(ProtobufVisitor)}. {@link ProtobufRecord} is a convenience adapter on top of this cursor.
  *
  * @author Taylor Smock
  * @since 17862
@@ -30,6 +51,10 @@ public class ProtobufParser implements AutoCloseable {
      * Used to get the most significant byte
      */
     static final byte MOST_SIGNIFICANT_BYTE = (byte) (1 << 7);
+    /**
+     * The maximum number of bytes of a var int
+     */
+    static final int MAX_VAR_INT_SIZE = 10;
     /**
      * Convert a byte array to a number (little endian)
      *
@@ -89,7 +114,10 @@ public class ProtobufParser implements AutoCloseable {
         return convertLong((value << 1) ^ (value >> shift));
     }
 
-    private final InputStream inputStream;
+    private InputStream inputStream;
+    private ByteBuffer buffer;
+    private int field;
+    private WireType wireType = WireType.UNKNOWN;
 
     /**
      * Create a new parser
@@ -97,20 +125,35 @@ public class ProtobufParser implements AutoCloseable {
      * @param bytes The bytes to parse
      */
     public ProtobufParser(byte[] bytes) {
-        this(new ByteArrayInputStream(bytes));
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Create a new parser reading the remaining bytes of a buffer, from its position to its limit.
+     * The buffer itself is not modified.
+     *
+     * @param buffer The bytes to parse, for example a slice returned by {@link #readLengthDelimited()}
+     * @since 18593
+     */
+    public ProtobufParser(ByteBuffer buffer) {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
     }
 
     /**
      * Create a new parser
      *
-     * @param inputStream The InputStream (will be fully read at this time)
+     * @param inputStream The InputStream (will be fully read on first access)
      */
     public ProtobufParser(InputStream inputStream) {
-        if (inputStream.markSupported()) {
-            this.inputStream = inputStream;
-        } else {
-            this.inputStream = new BufferedInputStream(inputStream);
+        this.inputStream = inputStream;
+    }
+
+    private ByteBuffer buffer() throws IOException {
+        if (this.buffer == null) {
+            this.buffer = ByteBuffer.wrap(Utils.readBytesFromStream(this.inputStream)).order(ByteOrder.LITTLE_ENDIAN);
+            this.inputStream = null;
         }
+        return this.buffer;
     }
 
     /**
@@ -121,19 +164,20 @@ public class ProtobufParser implements AutoCloseable {
      */
     public Collection<ProtobufRecord> allRecords() throws IOException {
         Collection<ProtobufRecord> records = new ArrayList<>();
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(4);
         while (this.hasNext()) {
-            records.add(new ProtobufRecord(byteArrayOutputStream, this));
+            records.add(new ProtobufRecord(this));
         }
         return records;
     }
 
     @Override
     public void close() {
-        try {
-            this.inputStream.close();
-        } catch (IOException e) {
-            Logging.error(e);
+        if (this.inputStream != null) {
+            try {
+                this.inputStream.close();
+            } catch (IOException e) {
+                Logging.error(e);
+            }
         }
     }
 
@@ -144,32 +188,344 @@ public class ProtobufParser implements AutoCloseable {
      * @throws IOException - if an IO error occurs
      */
     public boolean hasNext() throws IOException {
-        return this.inputStream.available() > 0;
+        return this.buffer().hasRemaining();
     }
 
     /**
-     * Get the "next" WireType
+     * Get the "next" WireType, without moving the cursor
      *
      * @return {@link WireType} expected
      * @throws IOException - if an IO error occurs
      */
     public WireType next() throws IOException {
-        this.inputStream.mark(16);
+        ByteBuffer buf = this.buffer();
+        return buf.hasRemaining() ? getWireType(buf.get(buf.position()) & 7) : WireType.UNKNOWN;
+    }
+
+    /**
+     * Move to the next field. Its number and wire type are then available from {@link #getField()} and
+     * {@link #getWireType()}, and its value must be read with the matching {@code read*} method, or skipped with
+     * {@link #skipField()}.
+     *
+     * @return {@code true} if there is a next field, {@code false} at the end of the message
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public boolean nextField() throws IOException {
+        if (!this.hasNext()) {
+            return false;
+        }
+        long tag = this.readVarint64();
+        this.field = (int) (tag >>> 3);
+        this.wireType = getWireType((int) (tag & 7));
+        return true;
+    }
+
+    /**
+     * Visit all the remaining fields of the message. The fields whose value is not read by the visitor are skipped, so
+     * that only the needed fields are decoded.
+     *
+     * @param visitor The visitor
+     * @throws IOException - if an IO error occurs
+     * @since 18594
+     */
+    public void visit(ProtobufVisitor visitor) throws IOException {
+        while (this.nextField()) {
+            int position = this.buffer.position();
+            visitor.visitField(this);
+            if (this.buffer.position() == position) {
+                this.skipField();
+            }
+        }
+    }
+
+    /**
+     * Get the number of the current field, see {@link #nextField()}
+     *
+     * @return the field number
+     * @since 18593
+     */
+    public int getField() {
+        return this.field;
+    }
+
+    /**
+     * Get the wire type of the current field, see {@link #nextField()}
+     *
+     * @return the wire type
+     * @since 18593
+     */
+    public WireType getWireType() {
+        return this.wireType;
+    }
+
+    static WireType getWireType(int representation) {
+        for (WireType type : WireType.getAllValues()) {
+            if (type.getTypeRepresentation() == representation) {
+                return type;
+            }
+        }
+        return WireType.UNKNOWN;
+    }
+
+    /**
+     * Skip the value of the current field, see {@link #nextField()}
+     *
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public void skipField() throws IOException {
+        switch (this.wireType) {
+        case VARINT:
+            this.readVarint64();
+            break;
+        case SIXTY_FOUR_BIT:
+            this.skip(8);
+            break;
+        case THIRTY_TWO_BIT:
+            this.skip(4);
+            break;
+        case LENGTH_DELIMITED:
+            this.skip(this.readLength());
+            break;
+        default:
+            // Groups are not supported, unknown types have no value
+        }
+    }
+
+    private void skip(int length) throws IOException {
+        ByteBuffer buf = this.buffer();
+        if (length < 0 || length > buf.remaining()) {
+            throw new EOFException();
+        }
+        buf.position(buf.position() + length);
+    }
+
+    /**
+     * Read a var int ({@code int32}, {@code int64}, {@code uint32}, {@code uint64}, {@code bool}, {@code enum})
+     *
+     * @return The value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public long readVarint64() throws IOException {
+        return readVarint64(this.buffer());
+    }
+
+    /**
+     * Read a var int as an {@code int} ({@code int32}, {@code uint32}, {@code bool}, {@code enum})
+     *
+     * @return The value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public int readVarint32() throws IOException {
+        return (int) this.readVarint64();
+    }
+
+    /**
+     * Read a zig-zag encoded var int ({@code sint32}, {@code sint64})
+     *
+     * @return The decoded value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public long readZigZag() throws IOException {
+        return decodeZigZagLong(this.readVarint64());
+    }
+
+    /**
+     * Read 32 bits ({@code fixed32}, {@code sfixed32})
+     *
+     * @return The value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public int readFixed32() throws IOException {
         try {
-            return WireType.getAllValues()[this.inputStream.read() << 3];
-        } finally {
-            this.inputStream.reset();
+            return this.buffer().getInt();
+        } catch (BufferUnderflowException e) {
+            throw (IOException) new EOFException().initCause(e);
+        }
+    }
+
+    /**
+     * Read 64 bits ({@code fixed64}, {@code sfixed64})
+     *
+     * @return The value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public long readFixed64() throws IOException {
+        try {
+            return this.buffer().getLong();
+        } catch (BufferUnderflowException e) {
+            throw (IOException) new EOFException().initCause(e);
+        }
+    }
+
+    /**
+     * Read a {@code float}
+     *
+     * @return The value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public float readFloat() throws IOException {
+        return Float.intBitsToFloat(this.readFixed32());
+    }
+
+    /**
+     * Read a {@code double}
+     *
+     * @return The value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public double readDouble() throws IOException {
+        return Double.longBitsToDouble(this.readFixed64());
+    }
+
+    private int readLength() throws IOException {
+        long length = this.readVarint64();
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IOException("Invalid protobuf length: " + length);
         }
+        return (int) length;
+    }
+
+    /**
+     * Read a length delimited field ({@code string}, {@code bytes}, embedded message, packed repeated field)
+     *
+     * @return A slice of the underlying buffer, sharing its content. No bytes are copied.
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public ByteBuffer readLengthDelimited() throws IOException {
+        int length = this.readLength();
+        ByteBuffer buf = this.buffer();
+        if (length > buf.remaining()) {
+            throw new EOFException();
+        }
+        ByteBuffer slice = buf.slice();
+        slice.limit(length);
+        buf.position(buf.position() + length);
+        return slice.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Read a {@code string}
+     *
+     * @return The string (encoded as {@link StandardCharsets#UTF_8})
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public String readString() throws IOException {
+        return decodeString(this.readLengthDelimited());
+    }
+
+    /**
+     * Read a packed repeated field of var ints
+     *
+     * @return An iterator over the values, which does not allocate per value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public PackedIterator readPackedVarints() throws IOException {
+        return PackedIterator.create(this.readLengthDelimited(), PackedIterator.VARINT);
+    }
+
+    /**
+     * Read a packed repeated field of zig-zag encoded var ints ({@code sint32}, {@code sint64})
+     *
+     * @return An iterator over the decoded values, which does not allocate per value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public PackedIterator readPackedZigZags() throws IOException {
+        return PackedIterator.create(this.readLengthDelimited(), PackedIterator.ZIGZAG);
+    }
+
+    /**
+     * Read a packed repeated field of 32 bit values ({@code fixed32}, {@code sfixed32})
+     *
+     * @return An iterator over the values, which does not allocate per value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public PackedIterator readPackedFixed32() throws IOException {
+        return PackedIterator.create(this.readLengthDelimited(), PackedIterator.FIXED32);
+    }
+
+    /**
+     * Read a packed repeated field of 64 bit values ({@code fixed64}, {@code sfixed64})
+     *
+     * @return An iterator over the values, which does not allocate per value
+     * @throws IOException - if an IO error occurs
+     * @since 18593
+     */
+    public PackedIterator readPackedFixed64() throws IOException {
+        return PackedIterator.create(this.readLengthDelimited(), PackedIterator.FIXED64);
+    }
+
+    static long decodeZigZagLong(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Decode an UTF-8 string
+     *
+     * @param bytes The bytes of the string, from the position to the limit. The buffer is not modified.
+     * @return The interned string
+     * @since 18593
+     */
+    public static String decodeString(ByteBuffer bytes) {
+        if (bytes.hasArray()) {
+            return Utils.intern(new String(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(),
+                    StandardCharsets.UTF_8));
+        }
+        return Utils.intern(StandardCharsets.UTF_8.decode(bytes.duplicate()).toString());
+    }
+
+    static long readVarint64(ByteBuffer buf) throws IOException {
+        int end = Math.min(buf.limit(), buf.position() + MAX_VAR_INT_SIZE);
+        for (int i = buf.position(); i < end; i++) {
+            if ((buf.get(i) & MOST_SIGNIFICANT_BYTE) == 0) {
+                return decodeVarint64(buf);
+            }
+        }
+        if (end - buf.position() < MAX_VAR_INT_SIZE) {
+            throw new EOFException();
+        }
+        throw new IOException("Malformed protobuf var int");
+    }
+
+    /**
+     * Decode a var int, which must be terminated in the buffer
+     * @param buf The buffer
+     * @return The value
+     */
+    static long decodeVarint64(ByteBuffer buf) {
+        long result = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buf.get();
+            result |= (long) (b & ~MOST_SIGNIFICANT_BYTE) << shift;
+            shift += VAR_INT_BYTE_SIZE;
+        } while ((b & MOST_SIGNIFICANT_BYTE) != 0);
+        return result;
     }
 
     /**
      * Get the next byte
      *
-     * @return The next byte
+     * @return The next byte, or {@code -1} at the end of the data
      * @throws IOException - if an IO error occurs
      */
     public int nextByte() throws IOException {
-        return this.inputStream.read();
+        ByteBuffer buf = this.buffer();
+        return buf.hasRemaining() ? Byte.toUnsignedInt(buf.get()) : -1;
     }
 
     /**
@@ -197,14 +553,13 @@ public class ProtobufParser implements AutoCloseable {
     /**
      * Get the next delimited message ({@link WireType#LENGTH_DELIMITED})
      *
-     * @param byteArrayOutputStream A reusable stream to write bytes to. This can significantly reduce the allocations
-     *                              (150 MB to 95 MB in a test area).
+     * @param byteArrayOutputStream Not used anymore
      * @return The next length delimited message
      * @throws IOException - if an IO error occurs
+     * @see #readLengthDelimited()
      */
     public byte[] nextLengthDelimited(ByteArrayOutputStream byteArrayOutputStream) throws IOException {
-        int length = convertByteArray(this.nextVarInt(byteArrayOutputStream), VAR_INT_BYTE_SIZE).intValue();
-        return readNextBytes(length);
+        return readNextBytes(this.readLength());
     }
 
     /**
@@ -212,8 +567,10 @@ public class ProtobufParser implements AutoCloseable {
      *
      * @param byteArrayOutputStream A reusable stream to write bytes to. This can significantly reduce the allocations
      *                              (150 MB to 95 MB in a test area).
-     * @return The next var int ({@code int32}, {@code int64}, {@code uint32}, {@code uint64}, {@code bool}, {@code enum})
+     * @return The next var int ({@code int32}, {@code int64}, {@code uint32}, {@code uint64}, {@code bool}, {@code enum}),
+     * as 7 bits groups, see {@link #convertByteArray(byte[], byte)}
      * @throws IOException - if an IO error occurs
+     * @see #readVarint64()
      */
     public byte[] nextVarInt(ByteArrayOutputStream byteArrayOutputStream) throws IOException {
         // Using this reduces the allocations from 150 MB to 95 MB.
@@ -240,10 +597,114 @@ public class ProtobufParser implements AutoCloseable {
      * @throws IOException - if an IO error occurs
      */
     private byte[] readNextBytes(int size) throws IOException {
-        byte[] bytesRead = new byte[size];
-        for (int i = 0; i < bytesRead.length; i++) {
-            bytesRead[i] = (byte) this.nextByte();
+        ByteBuffer buf = this.buffer();
+        if (size > buf.remaining()) {
+            throw new EOFException();
         }
+        byte[] bytesRead = new byte[size];
+        buf.get(bytesRead);
         return bytesRead;
     }
+
+    /**
+     * An iterator over the values of a packed repeated field. The values are decoded on the fly, without boxing.
+     * @since 18593
+     */
+    public static final class PackedIterator implements PrimitiveIterator.OfLong {
+        private static final int VARINT = 0;
+        private static final int ZIGZAG = 1;
+        private static final int FIXED32 = 2;
+        private static final int FIXED64 = 3;
+
+        private final ByteBuffer bytes;
+        private final int kind;
+
+        private PackedIterator(ByteBuffer bytes, int kind) {
+            this.bytes = bytes;
+            this.kind = kind;
+        }
+
+        /**
+         * Create an iterator, after checking the packed values, so that they can be decoded without errors
+         */
+        private static PackedIterator create(ByteBuffer bytes, int kind) throws IOException {
+            switch (kind) {
+            case FIXED32:
+            case FIXED64:
+                if (bytes.remaining() % (kind == FIXED32 ? 4 : 8) != 0) {
+                    throw new EOFException();
+                }
+                break;
+            default:
+                int length = 0;
+                for (int i = bytes.position(); i < bytes.limit(); i++) {
+                    if ((bytes.get(i) & MOST_SIGNIFICANT_BYTE) == 0) {
+                        length = 0;
+                    } else if (++length == MAX_VAR_INT_SIZE) {
+                        throw new IOException("Malformed protobuf var int");
+                    }
+                }
+                if (length > 0) {
+                    throw new EOFException();
+                }
+            }
+            return new PackedIterator(bytes, kind);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.bytes.hasRemaining();
+        }
+
+        @Override
+        public long nextLong() {
+            try {
+                switch (this.kind) {
+                case ZIGZAG:
+                    return decodeZigZagLong(decodeVarint64(this.bytes));
+                case FIXED32:
+                    return this.bytes.getInt();
+                case FIXED64:
+                    return this.bytes.getLong();
+                default:
+                    return decodeVarint64(this.bytes);
+                }
+            } catch (BufferUnderflowException e) {
+                throw (NoSuchElementException) new NoSuchElementException().initCause(e);
+            }
+        }
+
+        /**
+         * Get the number of remaining values, without decoding them
+         * @return the number of remaining values
+         */
+        public int remaining() {
+            switch (this.kind) {
+            case FIXED32:
+                return this.bytes.remaining() / 4;
+            case FIXED64:
+                return this.bytes.remaining() / 8;
+            default:
+                int count = 0;
+                for (int i = this.bytes.position(); i < this.bytes.limit(); i++) {
+                    if ((this.bytes.get(i) & MOST_SIGNIFICANT_BYTE) == 0) {
+                        count++;
+                    }
+                }
+                return count;
+            }
+        }
+
+        /**
+         * Decode all the remaining values
+         * @return the remaining values
+         */
+        public long[] toArray() {
+            long[] values = new long[this.remaining()];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = this.nextLong();
+            }
+            return values;
+        }
+    }
 }
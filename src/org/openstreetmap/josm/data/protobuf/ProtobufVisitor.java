@@ -0,0 +1,22 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.protobuf;
+
+import java.io.IOException;
+
+/**
+ * A visitor of the fields of a protobuf message, see {@link ProtobufParser#visit(ProtobufVisitor)}.
+ *
+ * @since 18594
+ */
+@FunctionalInterface
+public interface ProtobufVisitor {
+    /**
+     * Visit a field. Its number and wire type are given by {@link ProtobufParser#getField()} and
+     * {@link ProtobufParser#getWireType()}. The value can be read with one of the {@code read*} methods of the parser;
+     * if it is not read, it is skipped without being decoded.
+     *
+     * @param parser The parser, positioned on the field value
+     * @throws IOException - if an IO error occurs
+     */
+    void visitField(ProtobufParser parser) throws IOException;
+}
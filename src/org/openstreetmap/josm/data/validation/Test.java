@@ -16,7 +16,9 @@ import javax.swing.JPanel;
 
 import org.openstreetmap.josm.command.Command;
 import org.openstreetmap.josm.command.DeleteCommand;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmDataManager;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.Way;
@@ -79,6 +81,9 @@ public class Test implements OsmPrimitiveVisitor {
 
     private boolean showElementCount;
 
+    /** the data set of the validated primitives, if not the active one */
+    private DataSet dataSet;
+
     /**
      * Constructor
      * @param name Name of the test
@@ -369,6 +374,26 @@ public class Test implements OsmPrimitiveVisitor {
      */
     public void clear() {
         errors.clear();
+        dataSet = null;
+    }
+
+    /**
+     * Sets the data set of the validated primitives, when it is not the active data set.
+     * For instance, a {@linkplain DataSet#snapshot() snapshot} of the active data set.
+     * @param dataSet the data set of the validated primitives, or {@code null} for the active data set
+     * @since 18609
+     */
+    public void setDataSet(DataSet dataSet) {
+        this.dataSet = dataSet;
+    }
+
+    /**
+     * Returns the data set of the validated primitives, for the tests that need to look at other primitives.
+     * @return the data set of the validated primitives, by default the active data set. Can be {@code null}
+     * @since 18609
+     */
+    protected DataSet getDataSet() {
+        return dataSet != null ? dataSet : OsmDataManager.getInstance().getActiveDataSet();
     }
 
     protected void setShowElements(boolean b) {
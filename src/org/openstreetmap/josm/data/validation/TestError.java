@@ -11,22 +11,33 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import org.openstreetmap.josm.command.ChangeMembersCommand;
+import org.openstreetmap.josm.command.ChangeNodesCommand;
+import org.openstreetmap.josm.command.ChangePropertyCommand;
+import org.openstreetmap.josm.command.ChangePropertyKeyCommand;
 import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.command.DeleteCommand;
+import org.openstreetmap.josm.command.PseudoCommand;
+import org.openstreetmap.josm.command.SequenceCommand;
 import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmUtils;
 import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.WaySegment;
 import org.openstreetmap.josm.data.validation.util.MultipleNameVisitor;
 import org.openstreetmap.josm.tools.AlphanumComparator;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
 import org.openstreetmap.josm.tools.I18n;
+import org.openstreetmap.josm.tools.Logging;
 
 /**
  * Validation error
@@ -54,6 +65,8 @@ public class TestError implements Comparable<TestError> {
     private boolean selected;
     /** Supplying a command to fix the error */
     private final Supplier<Command> fixingCommand;
+    /** Giving a command to fix the error, from the error */
+    private final Function<TestError, Command> fixingFunction;
 
     /**
      * A builder for a {@code TestError}.
@@ -69,6 +82,7 @@ public class TestError implements Comparable<TestError> {
         private Collection<? extends OsmPrimitive> primitives;
         private Collection<?> highlighted;
         private Supplier<Command> fixingCommand;
+        private Function<TestError, Command> fixingFunction;
 
         Builder(Test tester, Severity severity, int code) {
             this.tester = tester;
@@ -212,11 +226,28 @@ public class TestError implements Comparable<TestError> {
          * @return {@code this}
          */
         public Builder fix(Supplier<Command> fixingCommand) {
-            CheckParameterUtil.ensureThat(this.fixingCommand == null, "fixingCommand already set");
+            CheckParameterUtil.ensureThat(this.fixingCommand == null && this.fixingFunction == null, "fixingCommand already set");
             this.fixingCommand = fixingCommand;
             return this;
         }
 
+        /**
+         * Sets a function to obtain a command to fix the error, from the error to fix.
+         * <p>
+         * Unlike a {@linkplain #fix(Supplier) supplier}, the function must build the command for the primitives of the given error,
+         * not for the checked primitives. This way, the errors found in a {@linkplain DataSet#snapshot() snapshot} are fixed
+         * on the edited data set, from its current state.
+         *
+         * @param fixingFunction the fix function. Can be null
+         * @return {@code this}
+         * @since 18615
+         */
+        public Builder fixWith(Function<TestError, Command> fixingFunction) {
+            CheckParameterUtil.ensureThat(this.fixingCommand == null && this.fixingFunction == null, "fixingCommand already set");
+            this.fixingFunction = fixingFunction;
+            return this;
+        }
+
         /**
          * Returns a new test error with the specified values
          *
@@ -255,6 +286,7 @@ public class TestError implements Comparable<TestError> {
         this.highlighted = builder.highlighted;
         this.code = builder.code;
         this.fixingCommand = builder.fixingCommand;
+        this.fixingFunction = builder.fixingFunction;
     }
 
     /**
@@ -410,7 +442,7 @@ public class TestError implements Comparable<TestError> {
      * @return true if the error can be fixed
      */
     public boolean isFixable() {
-        return (fixingCommand != null || ((tester != null) && tester.isFixable(this)))
+        return (fixingCommand != null || fixingFunction != null || ((tester != null) && tester.isFixable(this)))
                 && OsmUtils.isOsmCollectionEditable(primitives);
     }
 
@@ -421,7 +453,7 @@ public class TestError implements Comparable<TestError> {
      */
     public Command getFix() {
         // obtain fix from the error
-        final Command fix = fixingCommand != null ? fixingCommand.get() : null;
+        final Command fix = fixingFunction != null ? fixingFunction.apply(this) : fixingCommand != null ? fixingCommand.get() : null;
         if (fix != null) {
             return fix;
         }
@@ -433,6 +465,120 @@ public class TestError implements Comparable<TestError> {
         return tester.fixError(this);
     }
 
+    /**
+     * Returns a copy of this error, with the primitives of the given data set having the same ids.
+     * This is used to map back the errors found in a {@linkplain DataSet#snapshot() snapshot} of the data set.
+     * @param ds the data set
+     * @return a copy of this error, or {@code null} if a primitive is missing in the data set
+     */
+    TestError forDataSet(DataSet ds) {
+        List<OsmPrimitive> newPrimitives = getPrimitives(primitives, ds);
+        if (newPrimitives == null)
+            return null;
+        List<Object> newHighlighted = new ArrayList<>(highlighted.size());
+        for (Object o : highlighted) {
+            Object h = getHighlighted(o, ds);
+            if (h == null)
+                return null;
+            newHighlighted.add(h);
+        }
+        Builder builder = new Builder(tester, severity, code);
+        builder.message = message;
+        builder.description = description;
+        builder.descriptionEn = descriptionEn;
+        builder.primitives = newPrimitives;
+        builder.highlighted = newHighlighted;
+        // the fix function is given the new error, with the primitives of the data set, when the error is fixed
+        builder.fixingFunction = fixingFunction;
+        if (fixingCommand != null) {
+            // a supplier refers to the checked primitives, so its command can only be mapped to the data set when the error is fixed
+            Supplier<Command> checkedFix = fixingCommand;
+            builder.fixingCommand = () -> getCommand(checkedFix.get(), ds);
+        }
+        TestError error = new TestError(builder);
+        error.setIgnored(ignored);
+        return error;
+    }
+
+    private static <T extends OsmPrimitive> T getPrimitive(T p, DataSet ds) {
+        @SuppressWarnings("unchecked")
+        T result = (T) ds.getPrimitiveById(p);
+        return result;
+    }
+
+    private static <T extends OsmPrimitive> List<T> getPrimitives(Collection<? extends T> primitives, DataSet ds) {
+        List<T> result = new ArrayList<>(primitives.size());
+        for (T p : primitives) {
+            T mapped = getPrimitive(p, ds);
+            if (mapped == null)
+                return null;
+            result.add(mapped);
+        }
+        return result;
+    }
+
+    private static Object getHighlighted(Object o, DataSet ds) {
+        if (o instanceof OsmPrimitive) {
+            return getPrimitive((OsmPrimitive) o, ds);
+        } else if (o instanceof WaySegment) {
+            WaySegment ws = (WaySegment) o;
+            Way w = getPrimitive(ws.getWay(), ds);
+            return w == null || ws.getUpperIndex() >= w.getNodesCount() ? null : new WaySegment(w, ws.getLowerIndex());
+        } else if (o instanceof List) {
+            @SuppressWarnings("unchecked")
+            List<Node> nodes = getPrimitives((List<Node>) o, ds);
+            return nodes;
+        }
+        // areas do not refer to primitives
+        return o;
+    }
+
+    private static Command getCommand(Command command, DataSet ds) {
+        if (command == null) {
+            return null;
+        } else if (command instanceof ChangePropertyCommand) {
+            ChangePropertyCommand c = (ChangePropertyCommand) command;
+            List<OsmPrimitive> objects = getPrimitives(c.getObjects(), ds);
+            return objects == null ? null : new ChangePropertyCommand(ds, objects, c.getTags());
+        } else if (command instanceof ChangePropertyKeyCommand) {
+            ChangePropertyKeyCommand c = (ChangePropertyKeyCommand) command;
+            List<OsmPrimitive> objects = getPrimitives(c.getObjects(), ds);
+            return objects == null ? null : new ChangePropertyKeyCommand(ds, objects, c.getKey(), c.getNewKey());
+        } else if (command instanceof ChangeNodesCommand) {
+            ChangeNodesCommand c = (ChangeNodesCommand) command;
+            Way w = getPrimitive(c.getWay(), ds);
+            List<Node> nodes = getPrimitives(c.getNodes(), ds);
+            return w == null || nodes == null ? null : new ChangeNodesCommand(ds, w, nodes);
+        } else if (command instanceof ChangeMembersCommand) {
+            ChangeMembersCommand c = (ChangeMembersCommand) command;
+            Relation r = getPrimitive(c.getRelation(), ds);
+            List<RelationMember> members = new ArrayList<>(c.getMembers().size());
+            for (RelationMember m : c.getMembers()) {
+                OsmPrimitive member = getPrimitive(m.getMember(), ds);
+                if (member == null)
+                    return null;
+                members.add(new RelationMember(m.getRole(), member));
+            }
+            return r == null ? null : new ChangeMembersCommand(ds, r, members);
+        } else if (command.getClass() == DeleteCommand.class) {
+            List<OsmPrimitive> objects = getPrimitives(command.getParticipatingPrimitives(), ds);
+            return objects == null ? null : new DeleteCommand(ds, objects);
+        } else if (command.getClass() == SequenceCommand.class) {
+            SequenceCommand c = (SequenceCommand) command;
+            List<Command> sequence = new ArrayList<>(c.getChildren().size());
+            for (PseudoCommand child : c.getChildren()) {
+                Command mapped = getCommand((Command) child, ds);
+                if (mapped == null)
+                    return null;
+                sequence.add(mapped);
+            }
+            return new SequenceCommand(ds, c.getName(), sequence, c.isContinueOnError());
+        }
+        Logging.warn("Unable to map validator fix {0} to data set {1}, the test should use TestError.Builder.fixWith",
+                command.getClass().getName(), ds.getName());
+        return null;
+    }
+
     /**
      * Sets the selection flag of this error
      * @param selected if this error is selected
@@ -6,9 +6,12 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
 
 import javax.swing.JOptionPane;
 
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.preferences.sources.ValidatorPrefHelper;
 import org.openstreetmap.josm.gui.MainApplication;
@@ -81,7 +84,17 @@ public class ValidationTask extends PleaseWaitRunnable {
         if (Utils.isEmpty(tests))
             return;
         errors = new ArrayList<>();
-        getProgressMonitor().setTicksCount(tests.size() * validatedPrimitives.size());
+        // validate a snapshot of the whole data, so that it can be edited meanwhile.
+        // A selection is validated in place, rather than copying the whole data for a few primitives
+        DataSet ds = formerValidatedPrimitives != null ? null
+                : validatedPrimitives.stream().map(OsmPrimitive::getDataSet).filter(Objects::nonNull).findFirst().orElse(null);
+        DataSet snapshot = ds != null ? ds.snapshot() : null;
+        Collection<OsmPrimitive> primitives = validatedPrimitives;
+        if (snapshot != null) {
+            primitives = validatedPrimitives.stream()
+                    .map(snapshot::getPrimitiveById).filter(Objects::nonNull).collect(Collectors.toList());
+        }
+        getProgressMonitor().setTicksCount(tests.size() * primitives.size());
         int testCounter = 0;
         for (Test test : tests) {
             if (canceled)
@@ -90,13 +103,18 @@ public class ValidationTask extends PleaseWaitRunnable {
             getProgressMonitor().setCustomText(tr("Test {0}/{1}: Starting {2}", testCounter, tests.size(), test.getName()));
             test.setBeforeUpload(false);
             test.setPartialSelection(formerValidatedPrimitives != null);
-            test.startTest(getProgressMonitor().createSubTaskMonitor(validatedPrimitives.size(), false));
-            test.visit(validatedPrimitives);
+            test.setDataSet(snapshot);
+            test.startTest(getProgressMonitor().createSubTaskMonitor(primitives.size(), false));
+            test.visit(primitives);
             test.endTest();
             errors.addAll(test.getErrors());
             test.clear();
         }
         tests = null;
+        if (snapshot != null) {
+            // map the errors back to the primitives of the edited data set
+            errors = errors.stream().map(e -> e.forDataSet(ds)).filter(Objects::nonNull).collect(Collectors.toList());
+        }
         if (Boolean.TRUE.equals(ValidatorPrefHelper.PREF_USE_IGNORE.get())) {
             getProgressMonitor().setCustomText("");
             getProgressMonitor().subTask(tr("Updating ignored errors ..."));
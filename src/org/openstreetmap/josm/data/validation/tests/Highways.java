@@ -144,7 +144,7 @@ public class Highways extends Test {
                         errors.add(TestError.builder(this, Severity.WARNING, WRONG_ROUNDABOUT_HIGHWAY)
                                 .message(tr("Incorrect roundabout (highway: {0} instead of {1})", value, s))
                                 .primitives(w)
-                                .fix(() -> new ChangePropertyCommand(w, HIGHWAY, s))
+                                .fixWith(e -> new ChangePropertyCommand(e.getPrimitives(), HIGHWAY, s))
                                 .build());
                     }
                     break;
@@ -278,7 +278,7 @@ public class Highways extends Test {
                         .message(tr("Unknown country code: {0}", country))
                         .primitives(p);
                 if ("UK".equals(country)) {
-                    errors.add(error.fix(() -> new ChangePropertyCommand(p, SOURCE_MAXSPEED, value.replace("UK:", "GB:"))).build());
+                    errors.add(error.fixWith(e -> new ChangePropertyCommand(e.getPrimitives(), SOURCE_MAXSPEED, value.replace("UK:", "GB:"))).build());
                 } else {
                     errors.add(error.build());
                 }
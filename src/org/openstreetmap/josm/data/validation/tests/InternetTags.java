@@ -6,7 +6,7 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.function.Supplier;
+import java.util.function.Function;
 
 import org.openstreetmap.josm.command.ChangePropertyCommand;
 import org.openstreetmap.josm.command.Command;
@@ -97,7 +97,7 @@ public class InternetTags extends Test.TagTest {
         String values = v != null ? v : p.get(k);
         for (String value : values.split(";", -1)) {
             if (!validator.isValid(value)) {
-                Supplier<Command> fix = null;
+                Function<TestError, Command> fix = null;
                 String errMsg = validator.getErrorMessage();
                 if (tr("URL contains an invalid protocol: {0}", (String) null).equals(errMsg)) {
                     // Special treatment to allow URLs without protocol. See UrlValidator#isValid
@@ -107,12 +107,12 @@ public class InternetTags extends Test.TagTest {
                         && value.contains("\\") && validator.isValid(value.replaceAll("\\\\", "/"))) {
                     // Special treatment to autofix URLs with backslashes. See UrlValidator#isValid
                     errMsg = tr("URL contains backslashes instead of slashes");
-                    fix = () -> new ChangePropertyCommand(p, k, value.replaceAll("\\\\", "/"));
+                    fix = e -> new ChangePropertyCommand(e.getPrimitives(), k, value.replaceAll("\\\\", "/"));
                 }
                 errors.add(TestError.builder(this, Severity.WARNING, code)
                             .message(validator.getValidatorName(), marktr("''{0}'': {1}"), k, errMsg)
                             .primitives(p)
-                            .fix(fix)
+                            .fixWith(fix)
                             .build());
             }
         }
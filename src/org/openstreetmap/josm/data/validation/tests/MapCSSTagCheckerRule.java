@@ -371,6 +371,18 @@ final class MapCSSTagCheckerRule implements Predicate<OsmPrimitive> {
         return getDescription(null);
     }
 
+    /**
+     * Returns the fix of an error, whose first primitive is the checked primitive, or the same primitive in another data set.
+     * @param error the error to fix
+     * @param p the checked primitive
+     * @param fix the fix of the checked primitive
+     * @return the fix of the first primitive of the error
+     */
+    private Command fixError(TestError error, OsmPrimitive p, Command fix) {
+        OsmPrimitive primitive = error.getPrimitives().iterator().next();
+        return primitive == p ? fix : fixPrimitive(primitive);
+    }
+
     /**
      * Constructs a {@link TestError} for the given primitive, or returns null if the primitive does not give rise to an error.
      *
@@ -391,7 +403,7 @@ final class MapCSSTagCheckerRule implements Predicate<OsmPrimitive> {
             TestError.Builder errorBuilder = TestError.builder(tester, getSeverity(), 3000)
                     .messageWithManuallyTranslatedDescription(description1, description2, selector);
             if (fix != null) {
-                errorBuilder.fix(() -> fix);
+                errorBuilder.fixWith(e -> fixError(e, p, fix));
             }
             if (env.child instanceof OsmPrimitive) {
                 res.add(errorBuilder.primitives(p, (OsmPrimitive) env.child).build());
@@ -401,7 +413,7 @@ final class MapCSSTagCheckerRule implements Predicate<OsmPrimitive> {
                         errorBuilder = TestError.builder(tester, getSeverity(), 3000)
                                 .messageWithManuallyTranslatedDescription(description1, description2, selector);
                         if (fix != null) {
-                            errorBuilder.fix(() -> fix);
+                            errorBuilder.fixWith(e -> fixError(e, p, fix));
                         }
                         // check if we have special information about highlighted objects */
                         boolean hiliteFound = false;
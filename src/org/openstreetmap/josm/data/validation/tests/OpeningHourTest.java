@@ -69,7 +69,7 @@ public class OpeningHourTest extends TagTest {
         if (p == null || prettifiedValue == null || prettifiedValue.equals(value)) {
             return error.build();
         } else {
-            return error.fix(() -> new ChangePropertyCommand(p, key, prettifiedValue)).build();
+            return error.fixWith(e -> new ChangePropertyCommand(e.getPrimitives(), key, prettifiedValue)).build();
         }
     }
 
@@ -802,7 +802,7 @@ public class TagChecker extends TagTest implements TaggingPresetListener {
             errors.add(TestError.builder(this, Severity.WARNING, LOW_CHAR_VALUE)
                     .message(tr("Tag value contains non-printing (usually invisible) character"), s, key)
                     .primitives(p)
-                    .fix(() -> new ChangePropertyCommand(p, key, removeUnwantedNonPrintingControlCharacters(value)))
+                    .fixWith(e -> new ChangePropertyCommand(e.getPrimitives(), key, removeUnwantedNonPrintingControlCharacters(value)))
                     .build());
             withErrors.put(p, "ICV");
         }
@@ -860,7 +860,7 @@ public class TagChecker extends TagTest implements TaggingPresetListener {
             errors.add(TestError.builder(this, Severity.WARNING, LOW_CHAR_KEY)
                     .message(tr("Tag key contains non-printing character"), s, key)
                     .primitives(p)
-                    .fix(() -> new ChangePropertyCommand(p, key, removeUnwantedNonPrintingControlCharacters(key)))
+                    .fixWith(e -> new ChangePropertyCommand(e.getPrimitives(), key, removeUnwantedNonPrintingControlCharacters(key)))
                     .build());
             withErrors.put(p, "ICK");
         }
@@ -923,7 +923,7 @@ public class TagChecker extends TagTest implements TaggingPresetListener {
             if (p.hasKey(fixedKey)) {
                 errors.add(error.build());
             } else {
-                errors.add(error.fix(() -> new ChangePropertyKeyCommand(p, key, proposedKey)).build());
+                errors.add(error.fixWith(e -> new ChangePropertyKeyCommand(e.getPrimitives(), key, proposedKey)).build());
             }
             withErrors.put(p, "WPK");
         } else if (includeOtherSeverity) {
@@ -1031,7 +1031,7 @@ public class TagChecker extends TagTest implements TaggingPresetListener {
         MergeSourceBuildingVisitor builder = new MergeSourceBuildingVisitor(p.getDataSet());
         p.accept(builder);
         DataSet clonedDs = builder.build();
-        OsmPrimitive clone = clonedDs.getPrimitiveById(p.getPrimitiveId());
+        OsmPrimitive clone = clonedDs.getPrimitiveById(p.getUniqueId(), p.getType());
 
         Iterator<String> iter = fixVals.iterator();
         while (iter.hasNext()) {
@@ -26,7 +26,6 @@ import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
-import org.openstreetmap.josm.data.osm.OsmDataManager;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmUtils;
 import org.openstreetmap.josm.data.osm.QuadBuckets;
@@ -258,7 +257,7 @@ public abstract class UnconnectedWays extends Test {
         if (this instanceof UnconnectedRailways)
             mindist = Config.getPref().getDouble(PREFIX + ".node_way_distance_railway", 1.0);
         minmiddledist = Config.getPref().getDouble(PREFIX + ".way_way_distance", 0.0);
-        ds = OsmDataManager.getInstance().getActiveDataSet();
+        ds = getDataSet();
         dsArea = ds == null ? null : ds.getDataSourceArea();
     }
 
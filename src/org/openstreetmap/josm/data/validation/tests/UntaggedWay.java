@@ -10,7 +10,6 @@ import java.util.Set;
 
 import org.openstreetmap.josm.command.Command;
 import org.openstreetmap.josm.data.osm.DataSet;
-import org.openstreetmap.josm.data.osm.OsmDataManager;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmUtils;
 import org.openstreetmap.josm.data.osm.Relation;
@@ -143,7 +142,7 @@ public class UntaggedWay extends Test {
     @Override
     public void startTest(ProgressMonitor monitor) {
         super.startTest(monitor);
-        DataSet ds = OsmDataManager.getInstance().getActiveDataSet();
+        DataSet ds = getDataSet();
         if (ds == null)
             return;
         waysUsedInRelations = new HashSet<>();
@@ -50,6 +50,7 @@ import org.openstreetmap.josm.data.osm.Relation;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.WaySegment;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
 import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.data.preferences.DoubleProperty;
 import org.openstreetmap.josm.data.preferences.IntegerProperty;
@@ -99,11 +100,13 @@ public class NavigatableComponent extends JComponent implements Helpful {
     public transient Predicate<OsmPrimitive> isSelectablePredicate = prim -> {
         if (!prim.isSelectable()) return false;
         // if it isn't displayed on screen, you cannot click on it
+        StyledMapRenderer.STYLE_CACHE_LOCK.lock();
         MapCSSStyleSource.STYLE_SOURCE_LOCK.readLock().lock();
         try {
             return !MapPaintStyles.getStyles().get(prim, getDist100Pixel(), this).isEmpty();
         } finally {
             MapCSSStyleSource.STYLE_SOURCE_LOCK.readLock().unlock();
+            StyledMapRenderer.STYLE_CACHE_LOCK.unlock();
         }
     };
 
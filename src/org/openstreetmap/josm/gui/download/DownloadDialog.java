@@ -100,6 +100,7 @@ public class DownloadDialog extends JDialog {
         // add default download sources
         addDownloadSource(new OSMDownloadSource());
         addDownloadSource(new OverpassDownloadSource());
+        addDownloadSource(new PbfDownloadSource());
     }
 
     protected final transient List<DownloadSelection> downloadSelections = new ArrayList<>();
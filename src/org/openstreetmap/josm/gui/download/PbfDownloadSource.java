@@ -0,0 +1,149 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.download;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.awt.GridBagLayout;
+import java.io.File;
+import java.util.concurrent.Future;
+
+import javax.swing.Icon;
+import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+
+import org.openstreetmap.josm.actions.downloadtasks.DownloadOsmTask;
+import org.openstreetmap.josm.actions.downloadtasks.DownloadParams;
+import org.openstreetmap.josm.actions.downloadtasks.PostDownloadHandler;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.preferences.StringProperty;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.io.importexport.PbfImporter;
+import org.openstreetmap.josm.gui.widgets.AbstractFileChooser;
+import org.openstreetmap.josm.gui.widgets.FileChooserManager;
+import org.openstreetmap.josm.gui.widgets.JosmTextField;
+import org.openstreetmap.josm.io.PbfBoundingBoxReader;
+import org.openstreetmap.josm.io.PbfIndex;
+import org.openstreetmap.josm.tools.GBC;
+import org.openstreetmap.josm.tools.ImageProvider;
+
+/**
+ * Download source reading the data within the selected area from a local OSM PBF file.
+ * <p>
+ * Only the file blocks overlapping the area are read, using a block index stored next to the file (see {@link PbfIndex}).
+ * The index is built the first time the file is used.
+ * @since 18591
+ */
+public class PbfDownloadSource implements DownloadSource<File> {
+
+    @Override
+    public AbstractDownloadSourcePanel<File> createPanel(DownloadDialog dialog) {
+        return new PbfDownloadSourcePanel(this);
+    }
+
+    @Override
+    public void doDownload(File data, DownloadSettings settings) {
+        Bounds bbox = settings.getDownloadBounds()
+                .orElseThrow(() -> new IllegalArgumentException("PBF file extracts require bounds"));
+        DownloadOsmTask task = new DownloadOsmTask();
+        task.setZoomAfterDownload(settings.zoomToData());
+        Future<?> future = task.download(new PbfBoundingBoxReader(data, bbox),
+                new DownloadParams().withNewLayer(settings.asNewLayer()), bbox, null);
+        MainApplication.worker.submit(new PostDownloadHandler(task, future));
+    }
+
+    @Override
+    public String getLabel() {
+        return tr("Extract from PBF file");
+    }
+
+    @Override
+    public boolean onlyExpert() {
+        return true;
+    }
+
+    /**
+     * The GUI representation of the PBF file download source.
+     */
+    public static class PbfDownloadSourcePanel extends AbstractDownloadSourcePanel<File> {
+
+        private static final String SIMPLE_NAME = "pbfdownloadpanel";
+        private static final StringProperty PBF_FILE = new StringProperty("download.pbf.file", "");
+
+        private final JosmTextField path = new JosmTextField(40);
+
+        /**
+         * Create a new {@link PbfDownloadSourcePanel}
+         * @param ds The download source to create the panel for
+         */
+        public PbfDownloadSourcePanel(PbfDownloadSource ds) {
+            super(ds);
+            setLayout(new GridBagLayout());
+            JButton browse = new JButton(tr("Browse..."));
+            browse.addActionListener(e -> {
+                AbstractFileChooser fc = new FileChooserManager(true, "download.pbf.lastDirectory")
+                        .createFileChooser(false, null, PbfImporter.FILE_FILTER, JFileChooser.FILES_ONLY)
+                        .openFileChooser(this);
+                if (fc != null && fc.getSelectedFile() != null) {
+                    path.setText(fc.getSelectedFile().getPath());
+                }
+            });
+            add(new JLabel(tr("PBF file:")), GBC.std().insets(5, 5, 5, 5));
+            add(path, GBC.std().fill(GBC.HORIZONTAL).insets(0, 5, 5, 5));
+            add(browse, GBC.eol().insets(0, 5, 5, 5));
+            add(new JLabel(tr("<html>Only the data within the selected area is read.<br>"
+                    + "A block index is created next to the file the first time it is used.</html>")),
+                    GBC.eol().fill(GBC.HORIZONTAL).insets(5, 5, 5, 5));
+            add(new JLabel(), GBC.eol().fill(GBC.BOTH));
+        }
+
+        @Override
+        public File getData() {
+            return new File(path.getText().trim());
+        }
+
+        @Override
+        public void rememberSettings() {
+            PBF_FILE.put(path.getText().trim());
+        }
+
+        @Override
+        public void restoreSettings() {
+            path.setText(PBF_FILE.get());
+        }
+
+        @Override
+        public boolean checkDownload(DownloadSettings settings) {
+            if (!settings.getDownloadBounds().isPresent()) {
+                JOptionPane.showMessageDialog(
+                        this.getParent(),
+                        tr("Please select a download area first."),
+                        tr("Error"),
+                        JOptionPane.ERROR_MESSAGE
+                );
+                return false;
+            }
+            if (!getData().isFile()) {
+                JOptionPane.showMessageDialog(
+                        this.getParent(),
+                        tr("Please select an existing PBF file."),
+                        tr("Error"),
+                        JOptionPane.ERROR_MESSAGE
+                );
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public Icon getIcon() {
+            return ImageProvider.get("open");
+        }
+
+        @Override
+        public String getSimpleName() {
+            return SIMPLE_NAME;
+        }
+    }
+}
@@ -17,12 +17,14 @@ import java.text.MessageFormat;
 import javax.swing.JOptionPane;
 
 import org.openstreetmap.josm.actions.ExtensionFileFilter;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.io.Compression;
 import org.openstreetmap.josm.io.OsmWriter;
 import org.openstreetmap.josm.io.OsmWriterFactory;
+import org.openstreetmap.josm.io.ParallelOsmWriter;
 import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Utils;
@@ -97,7 +99,13 @@ public class OsmExporter extends FileExporter {
                 Utils.copyFile(file, tmpFile);
             }
 
-            doSave(file, layer);
+            if (isAutosave) {
+                // write a snapshot of the data, to not block the edits meanwhile
+                doSave(file, layer.getDataSet().snapshot());
+            } else {
+                // still call the deprecated method, for the subclasses overriding it
+                doSave(file, layer);
+            }
             if ((isAutosave || !Config.getPref().getBoolean("save.keepbackup", false)) && tmpFile != null) {
                 Utils.deleteFile(tmpFile);
             }
@@ -127,18 +135,51 @@ public class OsmExporter extends FileExporter {
         }
     }
 
+    /**
+     * Writes the data of the given layer to the given file.
+     * <p>
+     * This method is only called for the explicit saves. The autosave writes a {@linkplain DataSet#snapshot() snapshot}
+     * of the layer data with {@link #doSave(File, DataSet)}, which is called by this method as well.
+     * @param file Output file
+     * @param layer the layer to save
+     * @throws IOException in case of IO errors
+     * @deprecated override {@link #doSave(File, DataSet)}, used by both the explicit saves and the autosave
+     */
+    @Deprecated
     protected void doSave(File file, OsmDataLayer layer) throws IOException {
+        doSave(file, layer.data);
+    }
+
+    /**
+     * Writes the given data to the given file, under the read lock of the data.
+     * @param file Output file
+     * @param data the data to write, a layer dataset or a {@linkplain DataSet#snapshot() snapshot} of it
+     * @throws IOException in case of IO errors
+     * @since 18609
+     */
+    protected void doSave(File file, DataSet data) throws IOException {
+        if (ParallelOsmWriter.isAvailable()) {
+            try (OutputStream out = getOutputStream(file)) {
+                data.getReadLock().lock();
+                try {
+                    new ParallelOsmWriter(false, data.getVersion()).write(data, out);
+                } finally {
+                    data.getReadLock().unlock();
+                }
+            }
+            return;
+        }
         // create outputstream and wrap it with gzip, xz or bzip, if necessary
         try (
             OutputStream out = getOutputStream(file);
             Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
-            OsmWriter w = OsmWriterFactory.createOsmWriter(new PrintWriter(writer), false, layer.data.getVersion())
+            OsmWriter w = OsmWriterFactory.createOsmWriter(new PrintWriter(writer), false, data.getVersion())
         ) {
-            layer.data.getReadLock().lock();
+            data.getReadLock().lock();
             try {
-                w.write(layer.data);
+                w.write(data);
             } finally {
-                layer.data.getReadLock().unlock();
+                data.getReadLock().unlock();
             }
         }
     }
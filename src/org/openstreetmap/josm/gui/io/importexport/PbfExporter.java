@@ -0,0 +1,40 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.io.importexport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.io.OsmWriterFactory;
+import org.openstreetmap.josm.io.PbfWriter;
+
+/**
+ * Exports data to an .osm.pbf file.
+ * @see PbfWriter
+ * @since 18592
+ */
+public class PbfExporter extends OsmExporter {
+
+    /**
+     * Constructs a new {@code PbfExporter}.
+     */
+    public PbfExporter() {
+        super(PbfImporter.FILE_FILTER);
+    }
+
+    @Override
+    protected void doSave(File file, DataSet data) throws IOException {
+        try (
+            OutputStream out = getOutputStream(file);
+            PbfWriter w = OsmWriterFactory.createPbfWriter(out, false)
+        ) {
+            data.getReadLock().lock();
+            try {
+                w.write(data);
+            } finally {
+                data.getReadLock().unlock();
+            }
+        }
+    }
+}
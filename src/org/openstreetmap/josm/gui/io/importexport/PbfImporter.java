@@ -0,0 +1,74 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.io.importexport;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.openstreetmap.josm.actions.ExtensionFileFilter;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.layer.PagedPbfLayer;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.IndexedPbfFile;
+import org.openstreetmap.josm.io.PbfReader;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * File importer that reads *.osm.pbf data files.
+ * @see <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>
+ * @since 18590
+ */
+public class PbfImporter extends OsmImporter {
+
+    /**
+     * The OSM PBF file filter (*.osm.pbf files).
+     */
+    public static final ExtensionFileFilter FILE_FILTER = new ExtensionFileFilter(
+            "osm.pbf", "osm.pbf", tr("OSM PBF Files") + " (*.osm.pbf)");
+
+    /**
+     * Size in MiB from which files are opened in a read-only {@link PagedPbfLayer} instead of being fully loaded.
+     * @since 18598
+     */
+    public static final IntegerProperty PAGED_THRESHOLD = new IntegerProperty("pbf.paged.threshold", 512);
+
+    /**
+     * Constructs a new {@code PbfImporter}.
+     */
+    public PbfImporter() {
+        super(FILE_FILTER);
+    }
+
+    @Override
+    public void importData(File file, ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
+        if (file.length() < PAGED_THRESHOLD.get() * 1024L * 1024L) {
+            super.importData(file, progressMonitor);
+            return;
+        }
+        progressMonitor.indeterminateSubTask(tr("Indexing {0}...", file.getName()));
+        IndexedPbfFile pbf = IndexedPbfFile.open(file);
+        PagedPbfLayer layer = null;
+        try {
+            layer = new PagedPbfLayer(pbf, file.getName());
+            MainApplication.getLayerManager().addLayer(layer);
+        } catch (RuntimeException | Error e) {
+            // The layer closes the file once destroyed
+            if (layer != null) {
+                layer.destroy();
+            } else {
+                Utils.close(pbf);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    protected DataSet parseDataSet(InputStream in, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return PbfReader.parseDataSet(in, progressMonitor);
+    }
+}
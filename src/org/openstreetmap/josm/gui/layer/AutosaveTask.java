@@ -46,6 +46,7 @@ import org.openstreetmap.josm.gui.MainApplication;
 import org.openstreetmap.josm.gui.Notification;
 import org.openstreetmap.josm.gui.io.importexport.NoteImporter;
 import org.openstreetmap.josm.gui.io.importexport.OsmImporter;
+import org.openstreetmap.josm.gui.io.importexport.PbfImporter;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerAddEvent;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerChangeListener;
 import org.openstreetmap.josm.gui.layer.LayerManager.LayerOrderChangeEvent;
@@ -395,7 +396,8 @@ public class AutosaveTask extends TimerTask implements LayerChangeListener, List
         List<File> result = new ArrayList<>();
         try {
             File[] files = autosaveDir.listFiles((FileFilter)
-                    pathname -> OsmImporter.FILE_FILTER.accept(pathname) || NoteImporter.FILE_FILTER.accept(pathname));
+                    pathname -> OsmImporter.FILE_FILTER.accept(pathname) || PbfImporter.FILE_FILTER.accept(pathname)
+                            || NoteImporter.FILE_FILTER.accept(pathname));
             if (files == null)
                 return result;
             for (File file: files) {
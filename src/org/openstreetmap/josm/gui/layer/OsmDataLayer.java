@@ -51,6 +51,7 @@ import javax.swing.JScrollPane;
 
 import org.openstreetmap.josm.actions.AutoScaleAction;
 import org.openstreetmap.josm.actions.ExpertToggleAction;
+import org.openstreetmap.josm.actions.ExtensionFileFilter;
 import org.openstreetmap.josm.actions.RenameLayerAction;
 import org.openstreetmap.josm.actions.ToggleUploadDiscouragedLayerAction;
 import org.openstreetmap.josm.data.APIDataSet;
@@ -92,6 +93,8 @@ import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
 import org.openstreetmap.josm.data.osm.visitor.OsmPrimitiveVisitor;
 import org.openstreetmap.josm.data.osm.visitor.paint.AbstractMapRenderer;
 import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyleRecordCache;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
 import org.openstreetmap.josm.data.osm.visitor.paint.relations.MultipolygonCache;
 import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.data.preferences.IntegerProperty;
@@ -115,9 +118,11 @@ import org.openstreetmap.josm.gui.io.UploadLayerTask;
 import org.openstreetmap.josm.gui.io.importexport.NoteExporter;
 import org.openstreetmap.josm.gui.io.importexport.OsmExporter;
 import org.openstreetmap.josm.gui.io.importexport.OsmImporter;
+import org.openstreetmap.josm.gui.io.importexport.PbfExporter;
 import org.openstreetmap.josm.gui.io.importexport.ValidatorErrorExporter;
 import org.openstreetmap.josm.gui.io.importexport.WMSLayerImporter;
 import org.openstreetmap.josm.gui.layer.markerlayer.MarkerLayer;
+import org.openstreetmap.josm.gui.mappaint.StyleCacheWarmer;
 import org.openstreetmap.josm.gui.preferences.display.DrawingPreference;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.gui.progress.swing.PleaseWaitProgressMonitor;
@@ -183,9 +188,18 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
      */
     public static final BooleanProperty PROPERTY_HIDE_LABELS_WHILE_DRAGGING = new BooleanProperty("mappaint.hide.labels.while.dragging", true);
 
+    /**
+     * Property to determine if the rendered data is kept in images between repaints.
+     * @since 18613
+     */
+    public static final BooleanProperty PROPERTY_RENDER_CACHE = new BooleanProperty("draw.data.render-cache", false);
+
     private static final NamedColorProperty PROPERTY_BACKGROUND_COLOR = new NamedColorProperty(marktr("background"), Color.BLACK);
     private static final NamedColorProperty PROPERTY_OUTSIDE_COLOR = new NamedColorProperty(marktr("outside downloaded area"), Color.YELLOW);
 
+    /** The images of the rendered data, if enabled */
+    private OsmDataLayerRenderCache renderCache;
+
     /** List of recent relations */
     private final Map<Relation, Void> recentRelations = new LruCache<>(PROPERTY_RECENT_RELATIONS_NUMBER.get());
 
@@ -439,6 +453,7 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
         this.setAssociatedFile(associatedFile);
         data.addDataSetListener(dataSetListenerAdapter);
         data.addDataSetListener(MultipolygonCache.getInstance());
+        data.addDataSetListener(StyleRecordCache.getInstance());
         data.addHighlightUpdateListener(this);
         data.addSelectionListener(this);
         if (name != null && name.startsWith(createLayerName("")) && Character.isDigit(
@@ -471,6 +486,11 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
         return new ImageProvider("layer", "osmdata_small");
     }
 
+    @Override
+    public void hookUpMapView() {
+        StyleCacheWarmer.getInstance().warmUp(this);
+    }
+
     @Override
     public Icon getIcon() {
         ImageProvider base = getBaseIconProvider().setMaxSize(ImageSizes.LAYER);
@@ -540,7 +560,20 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
         AbstractMapRenderer painter = MapRendererFactory.getInstance().createActiveRenderer(g, mv, inactive);
         painter.enableSlowOperations(mv.getMapMover() == null || !mv.getMapMover().movementInProgress()
                 || !PROPERTY_HIDE_LABELS_WHILE_DRAGGING.get());
-        painter.render(data, virtual, box);
+        if (painter instanceof StyledMapRenderer && StyleRecordCache.PROP_ENABLED.get()) {
+            ((StyledMapRenderer) painter).setStyleRecordCache(StyleRecordCache.getInstance());
+        }
+        if (painter instanceof StyledMapRenderer && PROPERTY_RENDER_CACHE.get()) {
+            if (renderCache == null) {
+                renderCache = new OsmDataLayerRenderCache(data, this::invalidate);
+            }
+            if (!renderCache.paint(g, mv, box, (StyledMapRenderer) painter, inactive, virtual)) {
+                painter.render(data, virtual, box);
+            }
+        } else {
+            disposeRenderCache();
+            painter.render(data, virtual, box);
+        }
         MainApplication.getMap().conflictDialog.paintConflicts(g, mv);
     }
 
@@ -1143,12 +1176,23 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
         data.removeHighlightUpdateListener(this);
         data.removeDataSetListener(dataSetListenerAdapter);
         data.removeDataSetListener(MultipolygonCache.getInstance());
+        data.removeDataSetListener(StyleRecordCache.getInstance());
+        StyleRecordCache.getInstance().clear(data);
+        StyleCacheWarmer.getInstance().cancel(data);
+        disposeRenderCache();
         data.clearSelection();
         validationErrors.clear();
         removeClipboardDataFor(this);
         recentRelations.clear();
     }
 
+    private void disposeRenderCache() {
+        if (renderCache != null) {
+            renderCache.dispose();
+            renderCache = null;
+        }
+    }
+
     protected static void removeClipboardDataFor(OsmDataLayer osm) {
         Transferable clipboardContents = ClipboardUtils.getClipboardContent();
         if (clipboardContents != null && clipboardContents.isDataFlavorSupported(OsmLayerTransferData.OSM_FLAVOR)) {
@@ -1172,6 +1216,10 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
 
     @Override
     public void selectionChanged(SelectionChangeEvent event) {
+        StyleRecordCache.getInstance().selectionChanged(event);
+        if (renderCache != null) {
+            renderCache.selectionChanged(event);
+        }
         invalidate();
     }
 
@@ -1347,7 +1395,11 @@ public class OsmDataLayer extends AbstractOsmDataLayer implements Listener, Data
 
     @Override
     public boolean autosave(File file) throws IOException {
-        new OsmExporter().exportData(file, this, true /* no backup with appended ~ */);
+        OsmExporter exporter = ExtensionFileFilter.getExporters().stream()
+                .filter(e -> e instanceof PbfExporter && e.acceptFile(file, this))
+                .map(OsmExporter.class::cast)
+                .findFirst().orElseGet(OsmExporter::new);
+        exporter.exportData(file, this, true /* no backup with appended ~ */);
         return true;
     }
 
@@ -0,0 +1,574 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.ProjectionBounds;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSelectionListener.SelectionChangeEvent;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.WaySegment;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListener;
+import org.openstreetmap.josm.data.osm.event.FilterChangedEvent;
+import org.openstreetmap.josm.data.osm.event.NodeMovedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesAddedEvent;
+import org.openstreetmap.josm.data.osm.event.PrimitivesRemovedEvent;
+import org.openstreetmap.josm.data.osm.event.RelationMembersChangedEvent;
+import org.openstreetmap.josm.data.osm.event.TagsChangedEvent;
+import org.openstreetmap.josm.data.osm.event.WayNodesChangedEvent;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.gui.MapViewState;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.mappaint.MapPaintStyles;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.spi.preferences.Config;
+import org.openstreetmap.josm.spi.preferences.PreferenceChangeEvent;
+import org.openstreetmap.josm.spi.preferences.PreferenceChangedListener;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Keeps the rendering of the data of an {@link OsmDataLayer} in images, so that repainting the map view after
+ * panning or a change only paints images and renders the changed parts again.
+ * <p>
+ * At each scale, the map is divided into square tiles of {@value #TILE_SIZE} pixels, aligned with the east/north
+ * origin like the map view itself. Missing and outdated tiles are rendered by a background thread, starting with the
+ * ones closest to the center of the view; meanwhile, the outdated image (or nothing) is shown. A tile is outdated when
+ * a primitive it shows, or a primitive intersecting it, changes. All tiles are outdated when the filters, the map
+ * paint styles or the drawing preferences change.
+ * <p>
+ * The selected and highlighted primitives are left out of the tiles, and painted over them on each repaint, so that
+ * selecting or hovering over primitives does not need to wait for tiles to be rendered again.
+ * <p>
+ * Since each tile is rendered on its own, labels placed along ways or inside areas may be positioned differently
+ * than when rendering the whole view, and labels extending more than {@value #MARGIN} pixels beyond their primitive
+ * can be cut at tile borders.
+ * @since 18613
+ */
+final class OsmDataLayerRenderCache implements DataSetListener, PreferenceChangedListener {
+
+    /** Size of the tiles, in pixels */
+    static final int TILE_SIZE = 256;
+    /** Number of pixels rendered around a tile, so that the styles painted beyond the bounds of their primitive are kept */
+    static final int MARGIN = 64;
+    /** Maximum number of pixels of all tiles (128 tiles or 32 MB without HiDPI scaling) */
+    private static final long MAX_PIXELS = 128L * TILE_SIZE * TILE_SIZE;
+
+    /**
+     * A tile, at a given scale, projection and HiDPI scaling.
+     */
+    private static final class Tile {
+        private final List<Object> level;
+        private final double scale;
+        private final Projection projection;
+        private final double pixelScale;
+        private final int x;
+        private final int y;
+        private BufferedImage image;
+        /** The primitives painted in the image */
+        private Set<IPrimitive> rendered = Collections.emptySet();
+        /** The primitives intersecting the tile but left out of the image, because they were selected or highlighted */
+        private Set<IPrimitive> excluded = Collections.emptySet();
+        private boolean dirty = true;
+        private int version;
+        private int lastPaint;
+
+        Tile(List<Object> level, int x, int y) {
+            this.level = level;
+            this.scale = (Double) level.get(0);
+            this.projection = (Projection) level.get(1);
+            this.pixelScale = (Double) level.get(2);
+            this.x = x;
+            this.y = y;
+        }
+
+        private int getImageSize() {
+            return (int) Math.ceil(TILE_SIZE * pixelScale);
+        }
+
+        private long getPixels() {
+            return (long) getImageSize() * getImageSize();
+        }
+
+        private EastNorth getTopLeft() {
+            return new EastNorth(x * TILE_SIZE * scale, (y + 1) * TILE_SIZE * scale);
+        }
+
+        private EastNorth getCenter() {
+            return new EastNorth((x + 0.5) * TILE_SIZE * scale, (y + 0.5) * TILE_SIZE * scale);
+        }
+
+        private boolean intersects(ProjectionBounds pb) {
+            double margin = MARGIN * scale;
+            return pb.maxEast >= x * TILE_SIZE * scale - margin && pb.minEast <= (x + 1) * TILE_SIZE * scale + margin
+                && pb.maxNorth >= y * TILE_SIZE * scale - margin && pb.minNorth <= (y + 1) * TILE_SIZE * scale + margin;
+        }
+
+        private boolean needsRendering() {
+            return image == null || dirty;
+        }
+
+        private void invalidate() {
+            dirty = true;
+            version++;
+        }
+    }
+
+    private final DataSet data;
+    private final Runnable repaint;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("osm-render-cache-%d", Thread.NORM_PRIORITY));
+
+    // the following fields are guarded by this
+    private final Map<List<Object>, Tile> tiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<List<Object>> unsupportedLevels = new HashSet<>();
+    private List<Object> configuration = Collections.emptyList();
+    /** The tiles to render, the most important first */
+    private List<Tile> wanted = Collections.emptyList();
+    private long pixels;
+    private int paintCount;
+    private boolean rendering;
+    private boolean disposed;
+
+    /**
+     * Constructs a new {@code OsmDataLayerRenderCache}.
+     * @param data the data to render
+     * @param repaint called when tiles have been rendered
+     */
+    OsmDataLayerRenderCache(DataSet data, Runnable repaint) {
+        this.data = data;
+        this.repaint = repaint;
+        data.addDataSetListener(this);
+        Config.getPref().addPreferenceChangeListener(this);
+    }
+
+    /**
+     * Paints the data from the cached tiles, then the selected and highlighted primitives over them.
+     * Tiles that are missing or outdated are scheduled for rendering.
+     * @param g the graphics to paint on
+     * @param nc the view
+     * @param box the bounds of the painted area
+     * @param painter the renderer used to paint the selected and highlighted primitives
+     * @param inactive whether the data is painted as inactive
+     * @param virtual whether virtual nodes are painted
+     * @return {@code false} if the cache cannot be used for this view and nothing has been painted.
+     * The data must then be rendered directly
+     */
+    boolean paint(Graphics2D g, NavigatableComponent nc, Bounds box, StyledMapRenderer painter, boolean inactive, boolean virtual) {
+        AffineTransform transform = g.getTransform();
+        if ((transform.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0) {
+            return false;
+        }
+        double scale = nc.getScale();
+        double pixelScale = transform.getScaleX();
+        MapViewState state = nc.getState();
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, nc.getWidth(), nc.getHeight());
+        }
+        EastNorth topLeft = state.getForView(clip.getMinX(), clip.getMinY()).getEastNorth();
+        EastNorth bottomRight = state.getForView(clip.getMaxX(), clip.getMaxY()).getEastNorth();
+        double tileSize = TILE_SIZE * scale;
+        double minX = Math.floor(topLeft.east() / tileSize);
+        double maxX = Math.floor(bottomRight.east() / tileSize);
+        double minY = Math.floor(bottomRight.north() / tileSize);
+        double maxY = Math.floor(topLeft.north() / tileSize);
+        List<Object> level = Arrays.asList(scale, ProjectionRegistry.getProjection(), pixelScale);
+        if (clip.isEmpty() || (maxX - minX + 1) * (maxY - minY + 1) * new Tile(level, 0, 0).getPixels() > MAX_PIXELS
+                || Math.max(Math.abs(minX), Math.abs(maxX)) >= Integer.MAX_VALUE
+                || Math.max(Math.abs(minY), Math.abs(maxY)) >= Integer.MAX_VALUE) {
+            return false;
+        }
+
+        Set<IPrimitive> overlay = getSelectedAndHighlighted();
+        List<Tile> visible = new ArrayList<>();
+        synchronized (this) {
+            if (disposed || unsupportedLevels.contains(level)) {
+                return false;
+            }
+            List<Object> config = Arrays.asList(inactive, MapPaintStyles.getStyles(), data.getMappaintCacheIndex(),
+                    g.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL));
+            if (!config.equals(configuration)) {
+                invalidateAll();
+                configuration = config;
+            }
+            paintCount++;
+            for (int x = (int) minX; x <= maxX; x++) {
+                for (int y = (int) minY; y <= maxY; y++) {
+                    List<Object> key = Arrays.asList(level.get(0), level.get(1), level.get(2), x, y);
+                    Tile tile = tiles.get(key);
+                    if (tile == null) {
+                        tile = new Tile(level, x, y);
+                        tiles.put(key, tile);
+                        pixels += tile.getPixels();
+                    }
+                    tile.lastPaint = paintCount;
+                    visible.add(tile);
+                }
+            }
+            evict();
+
+            Set<IPrimitive> excluded = newIdentitySet();
+            for (Tile tile : visible) {
+                for (IPrimitive osm : tile.excluded) {
+                    if (!overlay.contains(osm) && !tile.dirty) {
+                        // the primitive has been unselected or unhighlighted
+                        tile.invalidate();
+                    }
+                    excluded.add(osm);
+                }
+            }
+            // until the tiles are rendered again, the primitives left out of them are painted over them
+            overlay.addAll(excluded);
+
+            List<Tile> toRender = new ArrayList<>();
+            for (Tile tile : visible) {
+                if (tile.needsRendering()) {
+                    toRender.add(tile);
+                }
+            }
+            EastNorth center = state.getCenter().getEastNorth();
+            toRender.sort(Comparator.comparingDouble(tile -> tile.getCenter().distanceSq(center)));
+            wanted = toRender;
+            if (!rendering && !wanted.isEmpty()) {
+                rendering = true;
+                executor.execute(this::renderTiles);
+            }
+        }
+
+        for (Tile tile : visible) {
+            BufferedImage image;
+            synchronized (this) {
+                image = tile.image;
+            }
+            if (image != null) {
+                Point2D p = state.getPointFor(tile.getTopLeft()).getInView();
+                g.drawImage(image, (int) Math.round(p.getX()), (int) Math.round(p.getY()), TILE_SIZE, TILE_SIZE, null);
+            }
+        }
+        painter.renderPrimitives(data, overlay, virtual, box);
+        return true;
+    }
+
+    private static Set<IPrimitive> newIdentitySet() {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    private Set<IPrimitive> getSelectedAndHighlighted() {
+        Set<IPrimitive> result = newIdentitySet();
+        result.addAll(data.getAllSelected());
+        result.addAll(data.getHighlightedPrimitives());
+        for (WaySegment segment : data.getHighlightedWaySegments()) {
+            result.add(segment.getWay());
+        }
+        return result;
+    }
+
+    /**
+     * Removes the least recently painted tiles, as long as there are too many pixels.
+     * The tiles of the last repaint are kept.
+     */
+    private void evict() {
+        Iterator<Tile> it = tiles.values().iterator();
+        while (pixels > MAX_PIXELS && it.hasNext()) {
+            Tile tile = it.next();
+            if (tile.lastPaint == paintCount) {
+                break;
+            }
+            pixels -= tile.getPixels();
+            it.remove();
+        }
+    }
+
+    private synchronized Tile nextTile() {
+        for (Tile tile : wanted) {
+            if (tile.needsRendering() && tiles.containsValue(tile) && !unsupportedLevels.contains(tile.level)) {
+                return tile;
+            }
+        }
+        rendering = false;
+        return null;
+    }
+
+    private void renderTiles() {
+        NavigatableComponent nc = null;
+        for (Tile tile = nextTile(); tile != null; tile = nextTile()) {
+            if (nc == null) {
+                nc = createNavigatableComponent();
+            }
+            try {
+                renderTile(tile, nc);
+            } catch (RuntimeException e) {
+                Logging.error(e);
+                synchronized (this) {
+                    unsupportedLevels.add(tile.level);
+                }
+            }
+            GuiHelper.runInEDT(repaint);
+        }
+    }
+
+    private static NavigatableComponent createNavigatableComponent() {
+        return new NavigatableComponent() {
+            {
+                setBounds(0, 0, TILE_SIZE + 2 * MARGIN, TILE_SIZE + 2 * MARGIN);
+                updateLocationState();
+            }
+
+            @Override
+            protected boolean isVisibleOnScreen() {
+                return true;
+            }
+
+            @Override
+            public Point getLocationOnScreen() {
+                return new Point(0, 0);
+            }
+        };
+    }
+
+    private void renderTile(Tile tile, NavigatableComponent nc) {
+        int version;
+        boolean inactive;
+        Object strokeControl;
+        synchronized (this) {
+            version = tile.version;
+            inactive = Boolean.TRUE.equals(configuration.get(0));
+            strokeControl = configuration.get(3);
+        }
+        nc.zoomTo(tile.getCenter(), tile.scale, true);
+        Point2D origin = nc.getState().getPointFor(tile.getTopLeft()).getInView();
+        if (tile.projection != ProjectionRegistry.getProjection() || !Utils.equalsEpsilon(nc.getScale(), tile.scale)
+                || Math.abs(origin.getX() - MARGIN) > 0.01 || Math.abs(origin.getY() - MARGIN) > 0.01) {
+            // the view cannot be placed on the tile, e.g. the scale is snapped to imagery or out of the projection bounds
+            synchronized (this) {
+                unsupportedLevels.add(tile.level);
+            }
+            return;
+        }
+
+        BufferedImage image = new BufferedImage(tile.getImageSize(), tile.getImageSize(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        Set<IPrimitive> rendered = newIdentitySet();
+        Set<IPrimitive> excluded = newIdentitySet();
+        try {
+            g.scale(tile.pixelScale, tile.pixelScale);
+            g.translate(-MARGIN, -MARGIN);
+            g.setClip(MARGIN, MARGIN, TILE_SIZE, TILE_SIZE);
+            if (strokeControl != null) {
+                // same stroke control as the view
+                g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, strokeControl);
+            }
+            Set<IPrimitive> highlightedWays = newIdentitySet();
+            for (WaySegment segment : data.getHighlightedWaySegments()) {
+                highlightedWays.add(segment.getWay());
+            }
+            StyledMapRenderer renderer = new StyledMapRenderer(g, nc, inactive);
+            renderer.enableSlowOperations(true);
+            renderer.setPrimitiveFilter(osm -> {
+                if (osm.isSelected() || osm.isHighlighted() || highlightedWays.contains(osm)) {
+                    excluded.add(osm);
+                    return false;
+                }
+                rendered.add(osm);
+                return true;
+            });
+            // holds StyledMapRenderer.STYLE_CACHE_LOCK, so that the styles are not computed while the map view is painted
+            renderer.render(data, false, nc.getLatLonBounds(new Rectangle(0, 0, nc.getWidth(), nc.getHeight())));
+        } finally {
+            g.dispose();
+        }
+
+        synchronized (this) {
+            tile.image = image;
+            tile.rendered = rendered;
+            tile.excluded = excluded;
+            // keep the tile outdated if it has been invalidated while rendering
+            tile.dirty = tile.version != version;
+        }
+    }
+
+    /**
+     * Waits until the tiles scheduled for rendering have been rendered.
+     * @throws Exception if the rendering failed or has been interrupted
+     */
+    void waitForRendering() throws Exception {
+        Future<?> future;
+        do {
+            future = executor.submit(() -> { });
+            future.get();
+        } while (isRendering());
+    }
+
+    private synchronized boolean isRendering() {
+        return rendering;
+    }
+
+    /**
+     * Returns the number of cached tiles.
+     * @return the number of cached tiles
+     */
+    synchronized int getTileCount() {
+        return tiles.size();
+    }
+
+    /**
+     * Returns the number of cached tiles that need to be rendered (again).
+     * @return the number of cached tiles that need to be rendered
+     */
+    synchronized int getOutdatedTileCount() {
+        return (int) tiles.values().stream().filter(Tile::needsRendering).count();
+    }
+
+    /**
+     * Stops the rendering and releases the tiles. The cache cannot be used afterwards.
+     */
+    void dispose() {
+        data.removeDataSetListener(this);
+        Config.getPref().removePreferenceChangeListener(this);
+        executor.shutdownNow();
+        synchronized (this) {
+            disposed = true;
+            tiles.clear();
+            wanted = Collections.emptyList();
+            pixels = 0;
+        }
+    }
+
+    private synchronized void invalidateAll() {
+        for (Tile tile : tiles.values()) {
+            tile.invalidate();
+        }
+    }
+
+    private synchronized void invalidate(Collection<? extends OsmPrimitive> primitives) {
+        Set<OsmPrimitive> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<OsmPrimitive> todo = new ArrayList<>(primitives);
+        while (!todo.isEmpty() && !tiles.isEmpty()) {
+            OsmPrimitive osm = todo.remove(todo.size() - 1);
+            if (visited.add(osm)) {
+                invalidate(osm);
+                todo.addAll(osm.getReferrers());
+            }
+        }
+    }
+
+    private void invalidate(OsmPrimitive osm) {
+        ProjectionBounds pb = getEastNorthBounds(osm);
+        for (Tile tile : tiles.values()) {
+            // the tiles showing the primitive where it was, and the tiles where it is now
+            if (tile.rendered.contains(osm) || tile.excluded.contains(osm) || (pb != null && tile.intersects(pb))) {
+                tile.invalidate();
+            }
+        }
+    }
+
+    private static ProjectionBounds getEastNorthBounds(OsmPrimitive osm) {
+        if (osm instanceof Node) {
+            EastNorth en = ((Node) osm).getEastNorth();
+            return en != null ? new ProjectionBounds(en) : null;
+        }
+        BBox bbox = osm.getBBox();
+        if (!bbox.isValid()) {
+            return null;
+        }
+        ProjectionBounds pb = new ProjectionBounds();
+        ProjectionRegistry.getProjection().visitOutline(
+                new Bounds(bbox.getMinLat(), bbox.getMinLon(), bbox.getMaxLat(), bbox.getMaxLon()), pb::extend);
+        return pb;
+    }
+
+    /**
+     * Invalidates the tiles showing the primitives that have been selected or unselected.
+     * @param event the selection change event
+     */
+    void selectionChanged(SelectionChangeEvent event) {
+        // selected primitives and their members get other styles
+        Collection<OsmPrimitive> changed = new ArrayList<>(event.getAdded());
+        changed.addAll(event.getRemoved());
+        invalidate(changed);
+    }
+
+    @Override
+    public void primitivesAdded(PrimitivesAddedEvent event) {
+        invalidate(event.getPrimitives());
+    }
+
+    @Override
+    public void primitivesRemoved(PrimitivesRemovedEvent event) {
+        invalidate(event.getPrimitives());
+    }
+
+    @Override
+    public void tagsChanged(TagsChangedEvent event) {
+        invalidate(event.getPrimitives());
+    }
+
+    @Override
+    public void nodeMoved(NodeMovedEvent event) {
+        invalidate(event.getPrimitives());
+    }
+
+    @Override
+    public void wayNodesChanged(WayNodesChangedEvent event) {
+        invalidate(event.getPrimitives());
+    }
+
+    @Override
+    public void relationMembersChanged(RelationMembersChangedEvent event) {
+        invalidate(event.getPrimitives());
+    }
+
+    @Override
+    public void otherDatasetChange(AbstractDatasetChangedEvent event) {
+        if (event instanceof FilterChangedEvent) {
+            invalidateAll();
+        } else {
+            // modified flag, changeset id, ...: may be used by the styles
+            invalidate(event.getPrimitives());
+        }
+    }
+
+    @Override
+    public void dataChanged(DataChangedEvent event) {
+        invalidateAll();
+    }
+
+    @Override
+    public void preferenceChanged(PreferenceChangeEvent e) {
+        String key = e.getKey();
+        if (key.startsWith("mappaint.") || key.startsWith("draw.") || key.startsWith("color.")) {
+            invalidateAll();
+        }
+    }
+}
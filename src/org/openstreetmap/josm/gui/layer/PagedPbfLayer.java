@@ -0,0 +1,459 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+import static org.openstreetmap.josm.tools.I18n.trn;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DataSetMerger;
+import org.openstreetmap.josm.data.osm.DownloadPolicy;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.data.osm.UploadPolicy;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
+import org.openstreetmap.josm.data.preferences.DoubleProperty;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.gui.NavigatableComponent.ZoomChangeListener;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.IndexedPbfFile;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.LongObjectHashMap;
+import org.openstreetmap.josm.tools.MemoryManager;
+import org.openstreetmap.josm.tools.MemoryManager.MemoryHandle;
+import org.openstreetmap.josm.tools.MemoryManager.NotEnoughMemoryException;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * A read-only data layer showing the data of a large indexed PBF file around the current view.
+ * <p>
+ * The world is divided into square pages of {@link #PAGE_SIZE} degrees. The pages covering the view are read from the
+ * file in a background thread when the view moves, and merged into the layer dataset, so that rendering, search and
+ * validation work on the loaded data as usual. The least recently viewed pages are removed from the dataset once the
+ * estimated size of the loaded pages exceeds the memory budget allocated from the {@link MemoryManager}.
+ * The memory used by the layer thus does not depend on the size of the file.
+ * <p>
+ * The dataset is locked: the data cannot be edited, uploaded or saved, but it can be merged into another layer.
+ * @since 18598
+ */
+public class PagedPbfLayer extends OsmDataLayer implements ZoomChangeListener {
+
+    /** Size of the pages, in degrees */
+    public static final DoubleProperty PAGE_SIZE = new DoubleProperty("pbf.paged.page-size", 0.05);
+    /** Maximum number of pages covering the view: no data is loaded when zoomed out further */
+    public static final IntegerProperty MAX_VISIBLE_PAGES = new IntegerProperty("pbf.paged.max-visible-pages", 64);
+    /** Preferred memory budget of the loaded pages, in MiB */
+    public static final IntegerProperty MEMORY_BUDGET = new IntegerProperty("pbf.paged.memory-budget", 512);
+
+    /** Estimated memory used by the primitives, see {@link #estimateSize(DataSet)} */
+    private static final int NODE_SIZE = 120;
+    private static final int WAY_SIZE = 150;
+    private static final int RELATION_SIZE = 150;
+    private static final int REFERENCE_SIZE = 16;
+    private static final int TAG_SIZE = 16;
+    /** Estimated memory used by the layer to track each primitive of a page: its id and its page count */
+    private static final int INDEX_SIZE = 40;
+
+    /** The primitive types, in the order of the id arrays of the pages */
+    private static final OsmPrimitiveType[] TYPES = {OsmPrimitiveType.NODE, OsmPrimitiveType.WAY, OsmPrimitiveType.RELATION};
+
+    /**
+     * A page of data, read from the file.
+     */
+    private static final class Page {
+        final long key;
+        /** The unique ids of the primitives of the page by type, including the incomplete members of its relations */
+        final long[][] ids;
+        final long size;
+
+        Page(long key, DataSet data) {
+            this.key = key;
+            this.ids = new long[][] {uniqueIds(data.getNodes()), uniqueIds(data.getWays()), uniqueIds(data.getRelations())};
+            this.size = estimateSize(data);
+        }
+
+        private static long[] uniqueIds(Collection<? extends OsmPrimitive> primitives) {
+            return primitives.stream().mapToLong(OsmPrimitive::getUniqueId).toArray();
+        }
+    }
+
+    private final IndexedPbfFile pbf;
+    private final double pageSize;
+    private final long memoryBudget;
+    private final MemoryHandle<?> memory;
+    private final ExecutorService loader;
+
+    // The following fields are only used in the EDT
+    /** The loaded pages, least recently viewed first */
+    private final LinkedHashMap<Long, Page> pages = new LinkedHashMap<>(16, 0.75f, true);
+    /** Number of loaded pages containing each primitive of the dataset, by type and unique id */
+    private final List<LongObjectHashMap<Integer>> pageCounts = Arrays.asList(
+            new LongObjectHashMap<>(), new LongObjectHashMap<>(), new LongObjectHashMap<>());
+    /** Unused primitives which could not be removed yet, because still referred to */
+    private final Set<PrimitiveId> unused = new HashSet<>();
+    private final Set<Long> loading = new HashSet<>();
+    private long loadedSize;
+    private boolean zoomedOut;
+    /** Set in the EDT, read by the loader to skip the remaining pages */
+    private volatile boolean destroyed;
+
+    /** The pages covering the view */
+    private volatile Set<Long> visiblePages = Collections.emptySet();
+
+    /**
+     * Constructs a new {@code PagedPbfLayer}, with the memory budget given by {@link #MEMORY_BUDGET} if available.
+     * @param pbf the indexed PBF file, closed when the layer is destroyed
+     * @param name the layer name
+     */
+    public PagedPbfLayer(IndexedPbfFile pbf, String name) {
+        this(pbf, name, PAGE_SIZE.get(), MEMORY_BUDGET.get() * 1024L * 1024L);
+    }
+
+    /**
+     * Constructs a new {@code PagedPbfLayer}.
+     * @param pbf the indexed PBF file, closed when the layer is destroyed
+     * @param name the layer name
+     * @param pageSize size of the pages, in degrees
+     * @param preferredBudget the preferred memory budget of the loaded pages, reduced if not available
+     */
+    PagedPbfLayer(IndexedPbfFile pbf, String name, double pageSize, long preferredBudget) {
+        super(new DataSet(), name, null);
+        this.pbf = pbf;
+        this.pageSize = pageSize;
+        MemoryManager manager = MemoryManager.getInstance();
+        long budget = Math.max(0, Math.min(preferredBudget, manager.getAvailableMemory() / 2));
+        MemoryHandle<?> handle = null;
+        try {
+            handle = manager.allocateMemory("paged PBF layer", budget, Object::new);
+        } catch (NotEnoughMemoryException e) {
+            Logging.warn("Could not allocate memory for paged PBF layer, only the visible pages will be kept", e);
+            budget = 0;
+        }
+        this.memory = handle;
+        this.memoryBudget = budget;
+        this.loader = Executors.newSingleThreadExecutor(Utils.newThreadFactory("pbf-page-loader-%d", Thread.NORM_PRIORITY));
+        data.setUploadPolicy(UploadPolicy.BLOCKED);
+        data.setDownloadPolicy(DownloadPolicy.BLOCKED);
+        data.lock();
+    }
+
+    /**
+     * Returns the indexed PBF file.
+     * @return the indexed PBF file
+     */
+    public IndexedPbfFile getPbfFile() {
+        return pbf;
+    }
+
+    @Override
+    public LayerPainter attachToMapView(MapViewEvent event) {
+        MapView.addZoomChangeListener(this);
+        GuiHelper.runInEDT(this::zoomChanged);
+        return super.attachToMapView(event);
+    }
+
+    @Override
+    public void zoomChanged() {
+        if (MainApplication.isDisplayingMapView() && isVisible()) {
+            requestPages(MainApplication.getMap().mapView.getRealBounds());
+        }
+    }
+
+    private long getKey(int x, int y) {
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    private Bounds getPageBounds(long key) {
+        int x = (int) (key >> 32);
+        int y = (int) key;
+        return new Bounds(
+                Math.max(-90, y * pageSize), Math.max(-180, x * pageSize),
+                Math.min(90, (y + 1) * pageSize), Math.min(180, (x + 1) * pageSize));
+    }
+
+    /**
+     * Loads the pages covering the given view, in a background thread. Must be called in the EDT.
+     * @param view the bounds of the view
+     * @return the future completed once the missing pages have been loaded
+     */
+    Future<?> requestPages(Bounds view) {
+        int minX = (int) Math.floor(view.getMinLon() / pageSize);
+        int maxX = (int) Math.floor(view.getMaxLon() / pageSize);
+        int minY = (int) Math.floor(view.getMinLat() / pageSize);
+        int maxY = (int) Math.floor(view.getMaxLat() / pageSize);
+        boolean wasZoomedOut = zoomedOut;
+        zoomedOut = (long) (maxX - minX + 1) * (maxY - minY + 1) > MAX_VISIBLE_PAGES.get();
+        if (zoomedOut || destroyed) {
+            if (!wasZoomedOut) {
+                invalidate();
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        Set<Long> visible = new HashSet<>();
+        List<Long> missing = new ArrayList<>();
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                long key = getKey(x, y);
+                visible.add(key);
+                // Marks the page as recently viewed
+                if (pages.get(key) == null && loading.add(key)) {
+                    missing.add(key);
+                }
+            }
+        }
+        visiblePages = visible;
+        // Load the center of the view first
+        LatLon center = view.getCenter();
+        missing.sort(Comparator.comparingDouble(key -> getPageBounds(key).getCenter().distanceSq(center)));
+        return loader.submit(() -> {
+            for (long key : missing) {
+                if (destroyed) {
+                    return;
+                }
+                DataSet page = null;
+                if (visiblePages.contains(key)) {
+                    try {
+                        page = pbf.read(getPageBounds(key), NullProgressMonitor.INSTANCE);
+                    } catch (IllegalDataException e) {
+                        Logging.log(Logging.LEVEL_WARN, "Unable to read page " + getPageBounds(key) + " of " + pbf.getFile(), e);
+                    }
+                }
+                final DataSet loaded = page;
+                GuiHelper.runInEDTAndWait(() -> addPage(key, loaded));
+            }
+        });
+    }
+
+    /**
+     * Adds a loaded page to the dataset, then removes the least recently viewed pages if needed.
+     * @param key the page key
+     * @param page the page data, or {@code null} if the page has not been read
+     */
+    private void addPage(long key, DataSet page) {
+        loading.remove(key);
+        if (page == null || destroyed || pages.containsKey(key)) {
+            return;
+        }
+        Page p = new Page(key, page);
+        for (int t = 0; t < TYPES.length; t++) {
+            LongObjectHashMap<Integer> counts = pageCounts.get(t);
+            for (long id : p.ids[t]) {
+                Integer count = counts.get(id);
+                counts.put(id, count == null ? 1 : count + 1);
+                if (count == null && !unused.isEmpty()) {
+                    unused.remove(new SimplePrimitiveId(id, TYPES[t]));
+                }
+            }
+        }
+        pages.put(key, p);
+        loadedSize += p.size;
+        data.unlock();
+        try {
+            data.update(() -> {
+                new DataSetMerger(data, page).merge(null, false);
+                evictPages();
+            });
+        } finally {
+            data.lock();
+        }
+    }
+
+    /**
+     * Removes the least recently viewed pages, until the loaded pages fit in the memory budget.
+     * The visible pages are always kept.
+     */
+    private void evictPages() {
+        Iterator<Page> it = pages.values().iterator();
+        while (loadedSize > memoryBudget && it.hasNext()) {
+            Page page = it.next();
+            if (!visiblePages.contains(page.key)) {
+                it.remove();
+                loadedSize -= page.size;
+                for (int t = 0; t < TYPES.length; t++) {
+                    LongObjectHashMap<Integer> counts = pageCounts.get(t);
+                    for (long id : page.ids[t]) {
+                        int count = counts.get(id);
+                        if (count == 1) {
+                            counts.remove(id);
+                            unused.add(new SimplePrimitiveId(id, TYPES[t]));
+                        } else {
+                            counts.put(id, count - 1);
+                        }
+                    }
+                }
+            }
+        }
+        removeUnusedPrimitives();
+    }
+
+    /**
+     * Removes the primitives not contained in any loaded page. Relations are removed before ways, ways before nodes,
+     * and a primitive is only removed once its referrers have been removed.
+     */
+    private void removeUnusedPrimitives() {
+        List<OsmPrimitive> primitives = new ArrayList<>(unused.size());
+        for (PrimitiveId id : unused) {
+            OsmPrimitive p = data.getPrimitiveById(id);
+            if (p != null) {
+                primitives.add(p);
+            }
+        }
+        unused.clear();
+        primitives.sort(Comparator.comparing(OsmPrimitive::getType).reversed());
+        boolean removed = true;
+        while (removed && !primitives.isEmpty()) {
+            removed = false;
+            List<OsmPrimitive> referred = new ArrayList<>();
+            for (OsmPrimitive p : primitives) {
+                if (p.getReferrers().isEmpty()) {
+                    data.removePrimitive(p.getPrimitiveId());
+                    // Release the references to the remaining primitives
+                    if (p instanceof Way) {
+                        ((Way) p).setNodes(null);
+                    } else if (p instanceof Relation) {
+                        ((Relation) p).setMembers(null);
+                    }
+                    removed = true;
+                } else {
+                    referred.add(p);
+                }
+            }
+            primitives = referred;
+        }
+        for (OsmPrimitive p : primitives) {
+            unused.add(p.getPrimitiveId());
+        }
+    }
+
+    /**
+     * Estimates the memory used by the primitives of a page, and by the layer to track them.
+     * @param page the page data
+     * @return the estimated size in bytes
+     */
+    static long estimateSize(DataSet page) {
+        long size = (long) INDEX_SIZE * page.allPrimitives().size();
+        for (Node n : page.getNodes()) {
+            size += NODE_SIZE + (long) TAG_SIZE * n.getNumKeys();
+        }
+        for (Way w : page.getWays()) {
+            size += WAY_SIZE + (long) REFERENCE_SIZE * w.getNodesCount() + (long) TAG_SIZE * w.getNumKeys();
+        }
+        for (Relation r : page.getRelations()) {
+            size += RELATION_SIZE + (long) REFERENCE_SIZE * r.getMembersCount() + (long) TAG_SIZE * r.getNumKeys();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of loaded pages.
+     * @return the number of loaded pages
+     */
+    int getLoadedPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Returns the memory budget of the loaded pages.
+     * @return the memory budget, in bytes
+     */
+    long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    @Override
+    public void paint(Graphics2D g, MapView mv, Bounds box) {
+        super.paint(g, mv, box);
+        if (zoomedOut) {
+            Color oldColor = g.getColor();
+            g.setColor(Color.BLACK);
+            g.drawString(tr("Zoom in to load the data of {0}", pbf.getFile().getName()), 11, 121);
+            g.setColor(oldColor);
+        }
+    }
+
+    @Override
+    public void visitBoundingBox(BoundingXYVisitor v) {
+        Bounds bounds = pbf.getIndex().getBounds();
+        if (bounds != null) {
+            v.visit(bounds);
+        }
+    }
+
+    @Override
+    public String getToolTipText() {
+        return "<html>" + tr("Read-only view of {0}", Utils.escapeReservedCharactersHTML(pbf.getFile().getPath()))
+                + "<br>" + trn("{0} page loaded", "{0} pages loaded", pages.size(), pages.size()) + "</html>";
+    }
+
+    @Override
+    public boolean isMergable(Layer other) {
+        return false;
+    }
+
+    @Override
+    public boolean isSavable() {
+        return false;
+    }
+
+    @Override
+    public synchronized void destroy() {
+        destroyed = true;
+        MapView.removeZoomChangeListener(this);
+        // The loads in progress stop at the next page. The file is closed after them, in the loader thread, as they
+        // wait for the EDT and cannot be waited for here.
+        loader.execute(this::closeFile);
+        loader.shutdown();
+        super.destroy();
+        if (memory != null) {
+            memory.free();
+        }
+    }
+
+    private void closeFile() {
+        try {
+            pbf.close();
+        } catch (IOException e) {
+            Logging.warn(e);
+        }
+    }
+
+    /**
+     * Waits until the file is closed, after the layer has been destroyed.
+     * @param timeout the maximum time to wait
+     * @param unit the time unit of the timeout
+     * @return {@code true} if the file has been closed, {@code false} if the timeout elapsed before
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitClosed(long timeout, TimeUnit unit) throws InterruptedException {
+        return loader.awaitTermination(timeout, unit);
+    }
+}
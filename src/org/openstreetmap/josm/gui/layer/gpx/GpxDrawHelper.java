@@ -25,6 +25,7 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Objects;
@@ -35,14 +36,19 @@ import javax.swing.ImageIcon;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.SystemOfMeasurement;
 import org.openstreetmap.josm.data.SystemOfMeasurement.SoMChangeListener;
+import org.openstreetmap.josm.data.coor.ILatLon;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.gpx.ColumnarGpxTrackSegment;
 import org.openstreetmap.josm.data.gpx.GpxConstants;
 import org.openstreetmap.josm.data.gpx.GpxData;
 import org.openstreetmap.josm.data.gpx.GpxData.GpxDataChangeEvent;
 import org.openstreetmap.josm.data.gpx.GpxData.GpxDataChangeListener;
+import org.openstreetmap.josm.data.gpx.IGpxTrackSegment;
 import org.openstreetmap.josm.data.gpx.Line;
 import org.openstreetmap.josm.data.gpx.WayPoint;
 import org.openstreetmap.josm.data.preferences.NamedColorProperty;
+import org.openstreetmap.josm.data.projection.Projecting;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
 import org.openstreetmap.josm.gui.MapView;
 import org.openstreetmap.josm.gui.MapViewState;
 import org.openstreetmap.josm.gui.layer.GpxLayer;
@@ -416,6 +422,11 @@ public class GpxDrawHelper implements SoMChangeListener, MapViewPaintable.LayerP
 
         ensureTrackVisibilityLength();
         for (Line segment : getLinesIterable(layer.trackVisibility)) {
+            IGpxTrackSegment trackSegment = segment.getTrackSegment();
+            if (trackSegment instanceof ColumnarGpxTrackSegment) {
+                last = addVisiblePoints((ColumnarGpxTrackSegment) trackSegment, box, last, visibleSegments);
+                continue;
+            }
 
             for (WayPoint pt : segment) {
                 Bounds b = new Bounds(pt.getCoor());
@@ -441,6 +452,51 @@ public class GpxDrawHelper implements SoMChangeListener, MapViewPaintable.LayerP
         return visibleSegments;
     }
 
+    /**
+     * Adds the visible points of a columnar segment, like {@link #listVisibleSegments}, creating only the visible points.
+     * @param columns the columnar segment
+     * @param box the visible area
+     * @param last the last point of the previous lines, or {@code null}
+     * @param visibleSegments the visible points
+     * @return the last point of the segment, or {@code last} if the segment is empty
+     */
+    private static WayPoint addVisiblePoints(ColumnarGpxTrackSegment columns, Bounds box, WayPoint last,
+            LinkedList<WayPoint> visibleSegments) {
+        Projecting projecting = ProjectionRegistry.getProjection();
+        WayPoint lastAdded = visibleSegments.isEmpty() ? null : visibleSegments.getLast();
+        boolean lastVisible = last != null && lastAdded == last;
+        for (int i = 0; i < columns.size(); i++) {
+            boolean hasLast = i > 0 || last != null;
+            Bounds b = new Bounds(columns.lat(i), columns.lon(i), true);
+            if (hasLast && columns.isDrawLine(i)) {
+                if (i > 0) {
+                    b.extend(columns.lat(i - 1), columns.lon(i - 1));
+                } else {
+                    b.extend(last.lat(), last.lon());
+                }
+            }
+            if (b.intersects(box)) {
+                if (hasLast && !lastVisible) {
+                    WayPoint l = i > 0 ? columns.getWayPoint(i - 1, projecting) : last;
+                    if (l.drawLine) {
+                        l = new WayPoint(l);
+                        l.drawLine = false;
+                    }
+                    visibleSegments.add(l);
+                }
+                lastAdded = columns.getWayPoint(i, projecting);
+                visibleSegments.add(lastAdded);
+                lastVisible = true;
+            } else {
+                lastVisible = false;
+            }
+        }
+        if (columns.size() == 0) {
+            return last;
+        }
+        return lastVisible ? lastAdded : columns.getWayPoint(columns.size() - 1, projecting);
+    }
+
     protected Iterable<Line> getLinesIterable(final boolean[] trackVisibility) {
         return data.getLinesIterable(trackVisibility);
     }
@@ -552,25 +608,27 @@ public class GpxDrawHelper implements SoMChangeListener, MapViewPaintable.LayerP
     public void calculateColors() {
         double minval = +1e10;
         double maxval = -1e10;
-        WayPoint oldWp = null;
 
         if (colorModeDynamic) {
             if (colored == ColorMode.VELOCITY) {
                 final List<Double> velocities = new ArrayList<>();
+                final TrackPointCursor trkPnt = new TrackPointCursor();
                 for (Line segment : getLinesIterable(null)) {
                     if (!forceLines) {
-                        oldWp = null;
+                        trkPnt.clearPrevious();
                     }
-                    for (WayPoint trkPnt : segment) {
+                    trkPnt.start(segment);
+                    while (trkPnt.next()) {
                         if (!trkPnt.isLatLonKnown()) {
                             continue;
                         }
+                        TrackPosition oldWp = trkPnt.getPrevious();
                         if (oldWp != null && trkPnt.getTimeInMillis() > oldWp.getTimeInMillis()) {
                             double vel = trkPnt.greatCircleDistance(oldWp)
                                     / (trkPnt.getTime() - oldWp.getTime());
                             velocities.add(vel);
                         }
-                        oldWp = trkPnt;
+                        trkPnt.keep();
                     }
                 }
                 Collections.sort(velocities);
@@ -582,8 +640,10 @@ public class GpxDrawHelper implements SoMChangeListener, MapViewPaintable.LayerP
                     velocityScale.setRange(minval, maxval);
                 }
             } else if (colored == ColorMode.HDOP) {
+                final TrackPointCursor trkPnt = new TrackPointCursor();
                 for (Line segment : getLinesIterable(null)) {
-                    for (WayPoint trkPnt : segment) {
+                    trkPnt.start(segment);
+                    while (trkPnt.next()) {
                         Object val = trkPnt.get(GpxConstants.PT_HDOP);
                         if (val != null) {
                             double hdop = ((Float) val).doubleValue();
@@ -602,7 +662,6 @@ public class GpxDrawHelper implements SoMChangeListener, MapViewPaintable.LayerP
                     hdopScale.setRange(minval, maxval);
                 }
             }
-            oldWp = null;
         } else { // color mode not dynamic
             velocityScale.setRange(0, velocityTune);
             hdopScale.setRange(0, hdoprange);
@@ -618,17 +677,20 @@ public class GpxDrawHelper implements SoMChangeListener, MapViewPaintable.LayerP
         }
 
         // Now the colors for all the points will be assigned
+        final TrackPointCursor trkPnt = new TrackPointCursor();
         for (Line segment : getLinesIterable(null)) {
             if (!forceLines) { // don't draw lines between segments, unless forced to
-                oldWp = null;
+                trkPnt.clearPrevious();
             }
-            for (WayPoint trkPnt : segment) {
-                trkPnt.customColoring = segment.getColor();
+            trkPnt.start(segment);
+            while (trkPnt.next()) {
+                trkPnt.setCustomColoring(segment.getColor());
                 if (Double.isNaN(trkPnt.lat()) || Double.isNaN(trkPnt.lon())) {
                     continue;
                 }
                 // now we are sure some color will be assigned
                 Color color = null;
+                TrackPosition oldWp = trkPnt.getPrevious();
 
                 if (colored == ColorMode.HDOP) {
                     color = hdopScale.getColor((Float) trkPnt.get(GpxConstants.PT_HDOP));
@@ -671,20 +733,20 @@ public class GpxDrawHelper implements SoMChangeListener, MapViewPaintable.LayerP
                     default: // Do nothing
                     }
                     if (!noDraw && (!segment.isUnordered() || !data.fromServer) && (maxLineLength == -1 || dist <= maxLineLength)) {
-                        trkPnt.drawLine = true;
+                        trkPnt.setDrawLine(true);
                         double bearing = oldWp.bearing(trkPnt);
-                        trkPnt.dir = ((int) (bearing / Math.PI * 4 + 1.5)) % 8;
+                        trkPnt.setDir(((int) (bearing / Math.PI * 4 + 1.5)) % 8);
                     } else {
-                        trkPnt.drawLine = false;
+                        trkPnt.setDrawLine(false);
                     }
                 } else { // make sure we reset outdated data
-                    trkPnt.drawLine = false;
+                    trkPnt.setDrawLine(false);
                     color = segment.getColor();
                 }
                 if (color != null) {
-                    trkPnt.customColoring = color;
+                    trkPnt.setCustomColoring(color);
                 }
-                oldWp = trkPnt;
+                trkPnt.keep();
             }
         }
 
@@ -1590,4 +1652,120 @@ public class GpxDrawHelper implements SoMChangeListener, MapViewPaintable.LayerP
         layer.removeInvalidationListener(this);
         data.removeChangeListener(this);
     }
+
+    /**
+     * The position and time of a track point.
+     */
+    private static class TrackPosition implements ILatLon {
+        protected double lat;
+        protected double lon;
+        protected long timeInMillis;
+
+        @Override
+        public double lat() {
+            return lat;
+        }
+
+        @Override
+        public double lon() {
+            return lon;
+        }
+
+        long getTimeInMillis() {
+            return timeInMillis;
+        }
+
+        double getTime() {
+            return timeInMillis / 1000.;
+        }
+    }
+
+    /**
+     * Iterates over the points of a line, without creating the points of a {@link ColumnarGpxTrackSegment}.
+     * The drawing state is set on the points, or on the columnar segment. The last kept point is remembered.
+     */
+    private static final class TrackPointCursor extends TrackPosition {
+        private final TrackPosition previous = new TrackPosition();
+        private boolean hasPrevious;
+        private ColumnarGpxTrackSegment columns;
+        private int index;
+        private Iterator<WayPoint> iterator;
+        private WayPoint wpt;
+
+        void start(Line line) {
+            IGpxTrackSegment trackSegment = line.getTrackSegment();
+            if (trackSegment instanceof ColumnarGpxTrackSegment) {
+                columns = (ColumnarGpxTrackSegment) trackSegment;
+                iterator = null;
+            } else {
+                columns = null;
+                iterator = line.iterator();
+            }
+            index = -1;
+            wpt = null;
+        }
+
+        boolean next() {
+            if (columns != null) {
+                if (++index >= columns.size()) {
+                    return false;
+                }
+                lat = columns.lat(index);
+                lon = columns.lon(index);
+                timeInMillis = columns.getTimeInMillis(index);
+            } else {
+                if (!iterator.hasNext()) {
+                    return false;
+                }
+                wpt = iterator.next();
+                lat = wpt.lat();
+                lon = wpt.lon();
+                timeInMillis = wpt.getTimeInMillis();
+            }
+            return true;
+        }
+
+        TrackPosition getPrevious() {
+            return hasPrevious ? previous : null;
+        }
+
+        void keep() {
+            previous.lat = lat;
+            previous.lon = lon;
+            previous.timeInMillis = timeInMillis;
+            hasPrevious = true;
+        }
+
+        void clearPrevious() {
+            hasPrevious = false;
+        }
+
+        Object get(String key) {
+            return columns != null ? columns.get(index, key) : wpt.get(key);
+        }
+
+        void setCustomColoring(Color color) {
+            if (columns != null) {
+                columns.setCustomColoring(index, color);
+            } else {
+                wpt.customColoring = color;
+            }
+        }
+
+        void setDrawLine(boolean drawLine) {
+            if (columns != null) {
+                columns.setDrawLine(index, drawLine);
+            } else {
+                wpt.drawLine = drawLine;
+            }
+        }
+
+        void setDir(int dir) {
+            if (columns != null) {
+                columns.setDir(index, dir);
+            } else {
+                wpt.dir = dir;
+            }
+        }
+    }
 }
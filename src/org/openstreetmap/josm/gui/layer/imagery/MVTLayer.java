@@ -14,6 +14,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BooleanSupplier;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
@@ -33,6 +34,7 @@ import org.openstreetmap.josm.data.imagery.ImageryInfo;
 import org.openstreetmap.josm.data.imagery.vectortile.mapbox.Layer;
 import org.openstreetmap.josm.data.imagery.vectortile.mapbox.MVTFile;
 import org.openstreetmap.josm.data.imagery.vectortile.mapbox.MVTTile;
+import org.openstreetmap.josm.data.imagery.vectortile.mapbox.MVTTile.LayerShower;
 import org.openstreetmap.josm.data.imagery.vectortile.mapbox.MVTTile.TileListener;
 import org.openstreetmap.josm.data.imagery.vectortile.mapbox.MapboxVectorCachedTileLoader;
 import org.openstreetmap.josm.data.imagery.vectortile.mapbox.MapboxVectorTileSource;
@@ -63,11 +65,11 @@ import org.openstreetmap.josm.gui.mappaint.StyleSource;
  * @author Taylor Smock
  * @since 17862
  */
-public class MVTLayer extends AbstractCachedTileSourceLayer<MapboxVectorTileSource> implements TileListener {
+public class MVTLayer extends AbstractCachedTileSourceLayer<MapboxVectorTileSource> implements TileListener, LayerShower {
     private static final String CACHE_REGION_NAME = "MVT";
     // Just to avoid allocating a bunch of 0 length action arrays
     private static final Action[] EMPTY_ACTIONS = new Action[0];
-    private final Map<String, Boolean> layerNames = new HashMap<>();
+    private final Map<String, Boolean> layerNames = new ConcurrentHashMap<>();
     private final VectorDataSet dataSet = new VectorDataSet();
 
     /**
@@ -138,6 +140,7 @@ public class MVTLayer extends AbstractCachedTileSourceLayer<MapboxVectorTileSour
     public Tile createTile(MapboxVectorTileSource source, int x, int y, int zoom) {
         final MVTTile tile = new MVTTile(source, x, y, zoom);
         tile.addTileLoaderFinisher(this);
+        tile.setLayerShower(this);
         return tile;
     }
 
@@ -150,10 +153,15 @@ public class MVTLayer extends AbstractCachedTileSourceLayer<MapboxVectorTileSour
             for (Map.Entry<String, Boolean> layerConfig : layerNames.entrySet()) {
                 actions.add(new EnableLayerAction(layerConfig.getKey(), () -> layerNames.computeIfAbsent(layerConfig.getKey(), key -> true),
                         layer -> {
-                            layerNames.compute(layer, (key, value) -> Boolean.FALSE.equals(value));
+                            final boolean shown = layerNames.compute(layer, (key, value) -> Boolean.FALSE.equals(value));
                             this.dataSet.setInvisibleLayers(layerNames.entrySet().stream()
                                     .filter(entry -> Boolean.FALSE.equals(entry.getValue()))
                                     .map(Map.Entry::getKey).collect(Collectors.toList()));
+                            if (shown) {
+                                // Hidden layers are not decoded, so the loaded tiles have to be decoded again
+                                this.dataSet.clear();
+                                this.tileCache.clear();
+                            }
                             this.invalidate();
                         }));
             }
@@ -291,6 +299,18 @@ public class MVTLayer extends AbstractCachedTileSourceLayer<MapboxVectorTileSour
         }
     }
 
+    @Override
+    public List<String> layersToShow() {
+        return layerNames.entrySet().stream().filter(entry -> !Boolean.FALSE.equals(entry.getValue()))
+                .map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
+    @Override
+    public boolean showLayer(String name) {
+        // Layers which were not seen yet are shown
+        return !Boolean.FALSE.equals(layerNames.get(name));
+    }
+
     @Override
     public void finishedLoading(MVTTile tile) {
         for (Layer layer : tile.getLayers()) {
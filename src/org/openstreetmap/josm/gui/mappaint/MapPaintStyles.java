@@ -71,7 +71,10 @@ public final class MapPaintStyles {
         listeners.addListener(new MapPaintStylesUpdateListener() {
             @Override
             public void mapPaintStylesUpdated() {
-                SwingUtilities.invokeLater(styles::clearCached);
+                SwingUtilities.invokeLater(() -> {
+                    styles.clearCached();
+                    StyleCacheWarmer.getInstance().warmUpAll();
+                });
             }
 
             @Override
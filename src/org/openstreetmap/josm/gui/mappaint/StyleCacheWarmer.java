@@ -0,0 +1,251 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.Lock;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.BBox;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.visitor.paint.MapRendererFactory;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.gui.MainApplication;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.layer.OsmDataLayer;
+import org.openstreetmap.josm.gui.mappaint.mapcss.MapCSSStyleSource;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Computes the styles of all primitives of a data set in the background, so that they are already cached when the
+ * map view is painted.
+ * <p>
+ * This is done after a data layer has been added to the map view, and after the map paint styles changed.
+ * The primitives visible in the map view are processed first, nearest to the center first, at the current scale;
+ * the layer is then repainted, and the other primitives are processed, followed by the scales one zoom level in and
+ * out. The styles are computed in parallel, a chunk of primitives at a time, so that the data set can be edited and
+ * the map view painted in between: a chunk is processed while holding {@link StyledMapRenderer#STYLE_CACHE_LOCK}.
+ * Painting does not wait for the whole computation: it computes the styles that are still missing itself.
+ * @since 18614
+ */
+public final class StyleCacheWarmer {
+
+    /**
+     * Whether the styles are computed in the background.
+     */
+    public static final BooleanProperty PROP_ENABLED = new BooleanProperty("mappaint.style-warmer", true);
+
+    private static final StyleCacheWarmer INSTANCE = new StyleCacheWarmer();
+
+    /** Number of primitives processed while holding the locks */
+    private static final int CHUNK_SIZE = 2000;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Utils.newThreadFactory("style-cache-warmer-%d", Thread.MIN_PRIORITY));
+    private final ForkJoinPool pool = newForkJoinPool();
+    private final Map<DataSet, WarmUp> running = new ConcurrentHashMap<>();
+
+    private StyleCacheWarmer() {
+        // Hide default constructor for singleton
+    }
+
+    private static ForkJoinPool newForkJoinPool() {
+        try {
+            return Utils.newForkJoinPool("mappaint.style-warmer.numberOfThreads", "style-cache-warmer-worker-%d", Thread.MIN_PRIORITY);
+        } catch (SecurityException e) {
+            Logging.log(Logging.LEVEL_ERROR, "Unable to create new ForkJoinPool", e);
+            return null;
+        }
+    }
+
+    /**
+     * Replies the unique instance.
+     * @return the unique instance
+     */
+    public static StyleCacheWarmer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * The computation of the styles of a data set.
+     */
+    private final class WarmUp implements Runnable {
+        private final DataSet data;
+        private final NavigatableComponent nc;
+        private final ElemStyles styles;
+        private final Runnable repaint;
+        private volatile boolean cancelled;
+
+        WarmUp(DataSet data, NavigatableComponent nc, ElemStyles styles, Runnable repaint) {
+            this.data = data;
+            this.nc = nc;
+            this.styles = styles;
+            this.repaint = repaint;
+        }
+
+        @Override
+        public void run() {
+            try {
+                warmUp();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                Logging.error(e);
+            } finally {
+                running.remove(data, this);
+            }
+        }
+
+        private void warmUp() throws InterruptedException, ExecutionException {
+            if (cancelled) {
+                return;
+            }
+            // the view is read once the events pending when the warm-up was requested (e.g. the initial zoom) are processed
+            Bounds view = GuiHelper.runInEDTAndWaitAndReturn(nc::getRealBounds);
+            double circum = GuiHelper.runInEDTAndWaitAndReturn(nc::getDist100Pixel);
+            if (view == null || !(circum > 0) || Double.isInfinite(circum)) {
+                return;
+            }
+            BBox viewBBox = view.toBBox();
+            LatLon center = view.getCenter();
+
+            List<OsmPrimitive> visible = new ArrayList<>();
+            List<OsmPrimitive> others = new ArrayList<>();
+            Lock lock = data.getReadLock();
+            lock.lock();
+            try {
+                for (OsmPrimitive osm : data.allPrimitives()) {
+                    if (osm.isDrawable()) {
+                        (viewBBox.intersects(osm.getBBox()) ? visible : others).add(osm);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+            Comparator<OsmPrimitive> byDistance = Comparator.comparingDouble(osm -> center.distanceSq(osm.getBBox().getCenter()));
+            visible.sort(byDistance);
+            others.sort(byDistance);
+
+            if (warmUp(visible, circum)) {
+                GuiHelper.runInEDT(repaint);
+                List<OsmPrimitive> all = new ArrayList<>(visible);
+                all.addAll(others);
+                // one zoom level in and out
+                if (warmUp(others, circum) && warmUp(all, circum / 2)) {
+                    warmUp(all, circum * 2);
+                }
+            }
+        }
+
+        /**
+         * Computes the styles of the given primitives at the given scale, relations first.
+         * @return {@code false} if cancelled
+         */
+        private boolean warmUp(List<OsmPrimitive> primitives, double scale) throws InterruptedException, ExecutionException {
+            // relations first, so that the ways do not compute the styles of their relations in parallel,
+            // see StyledMapRenderer.computeStyleRecords
+            List<OsmPrimitive> relations = new ArrayList<>();
+            List<OsmPrimitive> others = new ArrayList<>(primitives.size());
+            for (OsmPrimitive osm : primitives) {
+                (osm instanceof Relation ? relations : others).add(osm);
+            }
+            return warmUpChunks(relations, scale) && warmUpChunks(others, scale);
+        }
+
+        private boolean warmUpChunks(List<OsmPrimitive> primitives, double scale) throws InterruptedException, ExecutionException {
+            for (int i = 0; i < primitives.size(); i += CHUNK_SIZE) {
+                if (cancelled) {
+                    return false;
+                }
+                List<OsmPrimitive> chunk = primitives.subList(i, Math.min(i + CHUNK_SIZE, primitives.size()));
+                Lock lock = data.getReadLock();
+                lock.lock();
+                // same order as StyledMapRenderer.render
+                StyledMapRenderer.STYLE_CACHE_LOCK.lock();
+                MapCSSStyleSource.STYLE_SOURCE_LOCK.readLock().lock();
+                try {
+                    if (pool != null) {
+                        pool.submit(() -> chunk.parallelStream().forEach(osm -> warmUp(osm, scale))).get();
+                    } else {
+                        chunk.forEach(osm -> warmUp(osm, scale));
+                    }
+                } finally {
+                    MapCSSStyleSource.STYLE_SOURCE_LOCK.readLock().unlock();
+                    StyledMapRenderer.STYLE_CACHE_LOCK.unlock();
+                    lock.unlock();
+                }
+            }
+            return true;
+        }
+
+        private void warmUp(OsmPrimitive osm, double scale) {
+            // the primitive may have been removed or changed since the list was made
+            if (osm.getDataSet() == data && osm.isDrawable()) {
+                styles.getStyleCacheWithRange(osm, scale, nc);
+            }
+        }
+    }
+
+    /**
+     * Computes the styles of the primitives of the given data set in the background.
+     * A computation already running for this data set is cancelled.
+     * @param data the data set
+     * @param nc the map view in which the data set is displayed
+     * @param repaint called once the styles of the visible primitives are computed
+     * @return the future of the computation
+     */
+    public Future<?> warmUp(DataSet data, NavigatableComponent nc, Runnable repaint) {
+        WarmUp warmUp = new WarmUp(data, nc, MapPaintStyles.getStyles(), repaint);
+        WarmUp previous = running.put(data, warmUp);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        FutureTask<?> task = new FutureTask<>(warmUp, null);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Computes the styles of the primitives of the given layer in the background, if enabled and needed.
+     * @param layer the data layer, displayed in the map view
+     */
+    public void warmUp(OsmDataLayer layer) {
+        if (PROP_ENABLED.get() && MainApplication.isDisplayingMapView()
+                && !MapRendererFactory.getInstance().isWireframeMapRendererActive()) {
+            warmUp(layer.getDataSet(), MainApplication.getMap().mapView, layer::invalidate);
+        }
+    }
+
+    /**
+     * Computes the styles of the primitives of all data layers in the background, if enabled and needed.
+     */
+    public void warmUpAll() {
+        MainApplication.getLayerManager().getLayersOfType(OsmDataLayer.class).forEach(this::warmUp);
+    }
+
+    /**
+     * Cancels the computation of the styles of the given data set.
+     * @param data the data set
+     */
+    public void cancel(DataSet data) {
+        WarmUp warmUp = running.remove(data);
+        if (warmUp != null) {
+            warmUp.cancelled = true;
+        }
+    }
+}
@@ -8,14 +8,20 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.text.MessageFormat;
 import java.time.DateTimeException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.EnumMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.NoSuchElementException;
 import java.util.OptionalLong;
+import java.util.Set;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.DataSource;
@@ -45,12 +51,13 @@ import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.gui.util.LruCache;
 import org.openstreetmap.josm.tools.CheckParameterUtil;
 import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.LongObjectHashMap;
 import org.openstreetmap.josm.tools.UncheckedParseException;
 import org.openstreetmap.josm.tools.Utils;
 import org.openstreetmap.josm.tools.date.DateUtils;
 
 /**
- * Abstract Reader, allowing other implementations than OsmReader (PbfReader in PBF plugin for example)
+ * Abstract Reader, allowing other implementations than OsmReader (PbfReader, OsmJsonReader for example)
  * @author Vincent
  * @since 4490
  */
@@ -93,21 +100,47 @@ public abstract class AbstractReader {
 
     protected Changeset uploadChangeset;
 
-    /** the map from external ids to read OsmPrimitives. External ids are
+    /** the maps from external ids to read OsmPrimitives, one per primitive type. External ids are
      * longs too, but in contrast to internal ids negative values are used
      * to identify primitives unknown to the OSM server
      */
-    protected final Map<PrimitiveId, OsmPrimitive> externalIdMap = new HashMap<>();
+    private final LongObjectHashMap<OsmPrimitive> externalNodes = new LongObjectHashMap<>();
+    private final LongObjectHashMap<OsmPrimitive> externalWays = new LongObjectHashMap<>();
+    private final LongObjectHashMap<OsmPrimitive> externalRelations = new LongObjectHashMap<>();
 
     /**
-     * Data structure for the remaining way objects
+     * Data structure for the remaining way objects: the external ids of their nodes, by external way id
      */
-    protected final Map<Long, Collection<Long>> ways = new HashMap<>();
+    private final LongObjectHashMap<long[]> wayNodeIds = new LongObjectHashMap<>();
 
     /**
-     * Data structure for relation objects
+     * Data structure for relation objects: their members, by external relation id
      */
-    protected final Map<Long, Collection<RelationMemberData>> relations = new HashMap<>();
+    private final LongObjectHashMap<Collection<RelationMemberData>> relationMembers = new LongObjectHashMap<>();
+
+    /**
+     * A view of the maps from external ids to read OsmPrimitives.
+     * @deprecated use {@link #buildPrimitive(PrimitiveData)}, {@link #addWay(WayData, long[])} and
+     * {@link #addRelation(RelationData, Collection)} to register the read primitives
+     */
+    @Deprecated
+    protected final Map<PrimitiveId, OsmPrimitive> externalIdMap = new ExternalIdMapView();
+
+    /**
+     * A view of the external ids of the nodes of the remaining way objects, by external way id.
+     * @deprecated use {@link #addWay(WayData, long[])}
+     */
+    @Deprecated
+    protected final Map<Long, Collection<Long>> ways = new LongKeyMapView<>(wayNodeIds,
+            LongArrayView::new, AbstractReader::toLongArray);
+
+    /**
+     * A view of the members of the relation objects, by external relation id.
+     * @deprecated use {@link #addRelation(RelationData, Collection)}
+     */
+    @Deprecated
+    protected final Map<Long, Collection<RelationMemberData>> relations = new LongKeyMapView<>(relationMembers,
+            Function.identity(), Function.identity());
 
     /**
      * Replies the parsed data set
@@ -130,17 +163,26 @@ public abstract class AbstractReader {
         }
     }
 
+    private LongObjectHashMap<OsmPrimitive> getExternalIdMap(OsmPrimitiveType type) {
+        switch (type) {
+        case NODE:
+            return externalNodes;
+        case WAY:
+            return externalWays;
+        case RELATION:
+            return externalRelations;
+        default:
+            throw new IllegalArgumentException(type.toString());
+        }
+    }
+
     /**
      * Processes the parsed nodes after parsing. Just adds them to
      * the dataset
      *
      */
     protected void processNodesAfterParsing() {
-        for (OsmPrimitive primitive: externalIdMap.values()) {
-            if (primitive instanceof Node) {
-                this.ds.addPrimitive(primitive);
-            }
-        }
+        this.ds.addPrimitives(externalNodes.values());
     }
 
     /**
@@ -150,12 +192,16 @@ public abstract class AbstractReader {
      * @throws IllegalDataException if a data integrity problem is detected
      */
     protected void processWaysAfterParsing() throws IllegalDataException {
-        for (Entry<Long, Collection<Long>> entry : ways.entrySet()) {
-            Long externalWayId = entry.getKey();
-            Way w = (Way) externalIdMap.get(new SimplePrimitiveId(externalWayId, OsmPrimitiveType.WAY));
-            List<Node> wayNodes = new ArrayList<>();
-            for (long id : entry.getValue()) {
-                Node n = (Node) externalIdMap.get(new SimplePrimitiveId(id, OsmPrimitiveType.NODE));
+        // The node references are resolved with primitive long lookups, without allocating a key per reference
+        LongObjectHashMap<long[]>.Cursor entry = wayNodeIds.cursor();
+        List<Way> parsedWays = new ArrayList<>(wayNodeIds.size());
+        while (entry.next()) {
+            long externalWayId = entry.key();
+            Way w = (Way) externalWays.get(externalWayId);
+            long[] nodeIds = entry.value();
+            List<Node> wayNodes = new ArrayList<>(nodeIds.length);
+            for (long id : nodeIds) {
+                Node n = (Node) externalNodes.get(id);
                 if (n == null) {
                     if (id <= 0)
                         throw new IllegalDataException(
@@ -163,7 +209,7 @@ public abstract class AbstractReader {
                                         Long.toString(externalWayId),
                                         Long.toString(id)));
                     // create an incomplete node if necessary
-                    n = (Node) ds.getPrimitiveById(id, OsmPrimitiveType.NODE);
+                    n = ds.getNode(id);
                     if (n == null) {
                         n = new Node(id);
                         ds.addPrimitive(n);
@@ -180,8 +226,9 @@ public abstract class AbstractReader {
                 Logging.info(tr("Way {0} with {1} nodes is incomplete because at least one node was missing in the loaded data.",
                         Long.toString(externalWayId), w.getNodesCount()));
             }
-            ds.addPrimitive(w);
+            parsedWays.add(w);
         }
+        ds.addPrimitives(parsedWays);
     }
 
     /**
@@ -193,22 +240,22 @@ public abstract class AbstractReader {
     protected void processRelationsAfterParsing() throws IllegalDataException {
 
         // First add all relations to make sure that when relation reference other relation, the referenced will be already in dataset
-        for (Long externalRelationId : relations.keySet()) {
-            Relation relation = (Relation) externalIdMap.get(
-                    new SimplePrimitiveId(externalRelationId, OsmPrimitiveType.RELATION)
-            );
-            ds.addPrimitive(relation);
-        }
-
-        for (Entry<Long, Collection<RelationMemberData>> entry : relations.entrySet()) {
-            Long externalRelationId = entry.getKey();
-            Relation relation = (Relation) externalIdMap.get(
-                    new SimplePrimitiveId(externalRelationId, OsmPrimitiveType.RELATION)
-            );
-            List<RelationMember> relationMembers = new ArrayList<>();
-            for (RelationMemberData rm : entry.getValue()) {
+        long[] externalRelationIds = relationMembers.keys();
+        List<OsmPrimitive> parsedRelations = new ArrayList<>(externalRelationIds.length);
+        for (long externalRelationId : externalRelationIds) {
+            parsedRelations.add(externalRelations.get(externalRelationId));
+        }
+        ds.addPrimitives(parsedRelations);
+
+        LongObjectHashMap<Collection<RelationMemberData>>.Cursor entry = relationMembers.cursor();
+        while (entry.next()) {
+            long externalRelationId = entry.key();
+            Relation relation = (Relation) externalRelations.get(externalRelationId);
+            List<RelationMember> members = new ArrayList<>(entry.value().size());
+            for (RelationMemberData rm : entry.value()) {
                 // lookup the member from the map of already created primitives
-                OsmPrimitive primitive = externalIdMap.get(new SimplePrimitiveId(rm.getMemberId(), rm.getMemberType()));
+                LongObjectHashMap<OsmPrimitive> externalIdMap = getExternalIdMap(rm.getMemberType());
+                OsmPrimitive primitive = externalIdMap.get(rm.getMemberId());
 
                 if (primitive == null) {
                     if (rm.getMemberId() <= 0)
@@ -237,17 +284,17 @@ public abstract class AbstractReader {
                         }
 
                         ds.addPrimitive(primitive);
-                        externalIdMap.put(new SimplePrimitiveId(rm.getMemberId(), rm.getMemberType()), primitive);
+                        externalIdMap.put(rm.getMemberId(), primitive);
                     }
                 }
                 if (primitive.isDeleted()) {
                     Logging.info(tr("Deleted member {0} is used by relation {1}",
                             Long.toString(primitive.getId()), Long.toString(relation.getId())));
                 } else {
-                    relationMembers.add(new RelationMember(rm.getRole(), primitive));
+                    members.add(new RelationMember(rm.getRole(), primitive));
                 }
             }
-            relation.setMembers(relationMembers);
+            relation.setMembers(members);
         }
     }
 
@@ -269,6 +316,7 @@ public abstract class AbstractReader {
         } finally {
             ds.endUpdate();
         }
+        ds.buildSpatialIndex();
     }
 
     protected abstract DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException;
@@ -284,8 +332,38 @@ public abstract class AbstractReader {
         void accept(InputStreamReader ir) throws IllegalDataException, IOException;
     }
 
+    @FunctionalInterface
+    protected interface BinaryParserWorker {
+        /**
+         * Effectively parses the file, for binary formats (PBF, etc.)
+         * @param in input stream
+         * @throws IllegalDataException in case of invalid data
+         * @throws IOException in case of I/O error
+         * @since 18590
+         */
+        void accept(InputStream in) throws IllegalDataException, IOException;
+    }
+
     protected final DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor, ParserWorker parserWorker)
             throws IllegalDataException {
+        return doParseBinaryDataSet(source, progressMonitor, in -> {
+            try (InputStreamReader ir = UTFInputStreamReader.create(in)) {
+                parserWorker.accept(ir);
+            }
+        });
+    }
+
+    /**
+     * Parses the given binary source, then prepares and post-processes the resulting data set.
+     * @param source input stream
+     * @param progressMonitor progress monitor, can be {@code null}
+     * @param parserWorker the worker effectively parsing the stream
+     * @return the parsed data set
+     * @throws IllegalDataException in case of invalid data
+     * @since 18590
+     */
+    protected final DataSet doParseBinaryDataSet(InputStream source, ProgressMonitor progressMonitor, BinaryParserWorker parserWorker)
+            throws IllegalDataException {
         if (progressMonitor == null) {
             progressMonitor = NullProgressMonitor.INSTANCE;
         }
@@ -296,9 +374,7 @@ public abstract class AbstractReader {
             progressMonitor.beginTask(tr("Prepare OSM data..."), 4); // read, prepare, post-process, render
             progressMonitor.indeterminateSubTask(tr("Parsing OSM data..."));
 
-            try (InputStreamReader ir = UTFInputStreamReader.create(source)) {
-                parserWorker.accept(ir);
-            }
+            parserWorker.accept(source);
             progressMonitor.worked(1);
 
             boolean readOnly = getDataSet().isLocked();
@@ -329,9 +405,8 @@ public abstract class AbstractReader {
             throw new IllegalDataException(e);
         } finally {
             for (OsmPrimitiveType dataType : OsmPrimitiveType.dataValues()) {
-                OptionalLong minId = externalIdMap.entrySet().parallelStream()
-                        .filter(e -> e.getKey().getType() == dataType)
-                        .mapToLong(e -> e.getValue().getUniqueId()).min();
+                OptionalLong minId = getExternalIdMap(dataType).values().stream()
+                        .mapToLong(OsmPrimitive::getUniqueId).min();
                 synchronized (dataType.getDataClass()) {
                     if (minId.isPresent() && minId.getAsLong() < dataType.getIdGenerator().currentUniqueId()) {
                         dataType.getIdGenerator().advanceUniqueId(minId.getAsLong());
@@ -637,7 +712,7 @@ public abstract class AbstractReader {
         }
         p.setVisible(pd.isVisible());
         p.load(pd);
-        externalIdMap.put(pd.getPrimitiveId(), p);
+        getExternalIdMap(pd.getType()).put(pd.getUniqueId(), p);
         return p;
     }
 
@@ -668,6 +743,21 @@ public abstract class AbstractReader {
 
     protected final Node parseNode(String lat, String lon, CommonReader commonReader, NodeReader nodeReader)
             throws IllegalDataException {
+        return (Node) buildPrimitive(readNode(lat, lon, commonReader, nodeReader));
+    }
+
+    /**
+     * Reads a node, without building it. See {@link #buildPrimitive(PrimitiveData)}.
+     * @param lat latitude, can be {@code null}
+     * @param lon longitude, can be {@code null}
+     * @param commonReader reader of the common attributes
+     * @param nodeReader reader of the node tags
+     * @return the node data
+     * @throws IllegalDataException in case of invalid data
+     * @since 18595
+     */
+    protected final NodeData readNode(String lat, String lon, CommonReader commonReader, NodeReader nodeReader)
+            throws IllegalDataException {
         NodeData nd = new NodeData(0);
         LatLon ll = null;
         if (areLatLonDefined(lat, lon)) {
@@ -683,7 +773,8 @@ public abstract class AbstractReader {
             throw new IllegalDataException(tr("Illegal value for attributes ''lat'', ''lon'' on node with ID {0}. Got ''{1}'', ''{2}''.",
                     Long.toString(nd.getId()), lat, lon));
         }
-        return addNode(nd, nodeReader);
+        nodeReader.accept(nd);
+        return nd;
     }
 
     protected final Way parseWay(CommonReader commonReader, WayReader wayReader) throws IllegalDataException {
@@ -692,11 +783,42 @@ public abstract class AbstractReader {
 
         Collection<Long> nodeIds = new ArrayList<>();
         wayReader.accept(wd, nodeIds);
-        if (wd.isDeleted() && !nodeIds.isEmpty()) {
+        return addWay(wd, nodeIds);
+    }
+
+    /**
+     * Adds an already parsed way, whose nodes are resolved after parsing.
+     * @param wd way data
+     * @param nodeIds the ids of the way nodes
+     * @return the new way
+     * @since 18590
+     */
+    protected final Way addWay(WayData wd, Collection<Long> nodeIds) {
+        return addWay(wd, toLongArray(nodeIds));
+    }
+
+    private static long[] toLongArray(Collection<Long> ids) {
+        long[] result = new long[ids.size()];
+        int i = 0;
+        for (Long id : ids) {
+            result[i++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Adds an already parsed way, whose nodes are resolved after parsing.
+     * @param wd way data
+     * @param nodeIds the ids of the way nodes. The array is kept, it must not be modified afterwards.
+     * @return the new way
+     * @since 18596
+     */
+    protected final Way addWay(WayData wd, long[] nodeIds) {
+        if (wd.isDeleted() && nodeIds.length > 0) {
             Logging.info(tr("Deleted way {0} contains nodes", Long.toString(wd.getUniqueId())));
-            nodeIds = new ArrayList<>();
+            nodeIds = new long[0];
         }
-        ways.put(wd.getUniqueId(), nodeIds);
+        wayNodeIds.put(wd.getUniqueId(), nodeIds);
         return (Way) buildPrimitive(wd);
     }
 
@@ -706,11 +828,22 @@ public abstract class AbstractReader {
 
         Collection<RelationMemberData> members = new ArrayList<>();
         relationReader.accept(rd, members);
+        return addRelation(rd, members);
+    }
+
+    /**
+     * Adds an already parsed relation, whose members are resolved after parsing.
+     * @param rd relation data
+     * @param members the relation members
+     * @return the new relation
+     * @since 18590
+     */
+    protected final Relation addRelation(RelationData rd, Collection<RelationMemberData> members) {
         if (rd.isDeleted() && !members.isEmpty()) {
             Logging.info(tr("Deleted relation {0} contains members", Long.toString(rd.getUniqueId())));
             members = new ArrayList<>();
         }
-        relations.put(rd.getUniqueId(), members);
+        relationMembers.put(rd.getUniqueId(), members);
         return (Relation) buildPrimitive(rd);
     }
 
@@ -742,4 +875,176 @@ public abstract class AbstractReader {
                     Long.toString(id), Long.toString(r.getUniqueId()), type), e);
         }
     }
+
+    /**
+     * A read-only list view of an array of ids.
+     */
+    private static final class LongArrayView extends AbstractList<Long> {
+        private final long[] ids;
+
+        LongArrayView(long[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        public Long get(int index) {
+            return ids[index];
+        }
+
+        @Override
+        public int size() {
+            return ids.length;
+        }
+    }
+
+    /**
+     * A {@code Map<Long, V>} view of a {@link LongObjectHashMap}, for the deprecated protected fields.
+     * @param <V> the type of the values of the view
+     * @param <T> the type of the values of the map
+     */
+    private static final class LongKeyMapView<V, T> extends AbstractMap<Long, V> {
+        private final LongObjectHashMap<T> map;
+        private final Function<T, V> toView;
+        private final Function<V, T> fromView;
+
+        LongKeyMapView(LongObjectHashMap<T> map, Function<T, V> toView, Function<V, T> fromView) {
+            this.map = map;
+            this.toView = toView;
+            this.fromView = fromView;
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof Long && map.containsKey((Long) key);
+        }
+
+        @Override
+        public V get(Object key) {
+            T value = key instanceof Long ? map.get((Long) key) : null;
+            return value != null ? toView.apply(value) : null;
+        }
+
+        @Override
+        public V put(Long key, V value) {
+            T old = map.put(key, fromView.apply(value));
+            return old != null ? toView.apply(old) : null;
+        }
+
+        @Override
+        public V remove(Object key) {
+            T old = key instanceof Long ? map.remove((Long) key) : null;
+            return old != null ? toView.apply(old) : null;
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+        @Override
+        public Set<Entry<Long, V>> entrySet() {
+            return new AbstractSet<Entry<Long, V>>() {
+                @Override
+                public Iterator<Entry<Long, V>> iterator() {
+                    LongObjectHashMap<T>.Cursor cursor = map.cursor();
+                    return new Iterator<Entry<Long, V>>() {
+                        private boolean hasNext = cursor.next();
+
+                        @Override
+                        public boolean hasNext() {
+                            return hasNext;
+                        }
+
+                        @Override
+                        public Entry<Long, V> next() {
+                            if (!hasNext) {
+                                throw new NoSuchElementException();
+                            }
+                            Entry<Long, V> entry = new SimpleImmutableEntry<>(cursor.key(), toView.apply(cursor.value()));
+                            hasNext = cursor.next();
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return map.size();
+                }
+            };
+        }
+    }
+
+    /**
+     * A {@code Map<PrimitiveId, OsmPrimitive>} view of the maps from external ids to read OsmPrimitives.
+     */
+    private final class ExternalIdMapView extends AbstractMap<PrimitiveId, OsmPrimitive> {
+        private final Map<OsmPrimitiveType, Map<Long, OsmPrimitive>> views = new EnumMap<>(OsmPrimitiveType.class);
+
+        ExternalIdMapView() {
+            for (OsmPrimitiveType type : OsmPrimitiveType.dataValues()) {
+                views.put(type, new LongKeyMapView<>(getExternalIdMap(type), Function.identity(), Function.identity()));
+            }
+        }
+
+        private Map<Long, OsmPrimitive> view(Object key) {
+            return key instanceof PrimitiveId ? views.get(((PrimitiveId) key).getType()) : null;
+        }
+
+        @Override
+        public int size() {
+            return externalNodes.size() + externalWays.size() + externalRelations.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            Map<Long, OsmPrimitive> view = view(key);
+            return view != null && view.containsKey(((PrimitiveId) key).getUniqueId());
+        }
+
+        @Override
+        public OsmPrimitive get(Object key) {
+            Map<Long, OsmPrimitive> view = view(key);
+            return view != null ? view.get(((PrimitiveId) key).getUniqueId()) : null;
+        }
+
+        @Override
+        public OsmPrimitive put(PrimitiveId key, OsmPrimitive value) {
+            return view(key).put(key.getUniqueId(), value);
+        }
+
+        @Override
+        public OsmPrimitive remove(Object key) {
+            Map<Long, OsmPrimitive> view = view(key);
+            return view != null ? view.remove(((PrimitiveId) key).getUniqueId()) : null;
+        }
+
+        @Override
+        public void clear() {
+            views.values().forEach(Map::clear);
+        }
+
+        @Override
+        public Set<Entry<PrimitiveId, OsmPrimitive>> entrySet() {
+            return new AbstractSet<Entry<PrimitiveId, OsmPrimitive>>() {
+                @Override
+                public Iterator<Entry<PrimitiveId, OsmPrimitive>> iterator() {
+                    return views.entrySet().stream()
+                            .flatMap(v -> v.getValue().entrySet().stream().<Entry<PrimitiveId, OsmPrimitive>>map(
+                                    e -> new SimpleImmutableEntry<>(new SimplePrimitiveId(e.getKey(), v.getKey()), e.getValue())))
+                            .iterator();
+                }
+
+                @Override
+                public int size() {
+                    return ExternalIdMapView.this.size();
+                }
+            };
+        }
+    }
 }
@@ -19,6 +19,8 @@ import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
 import org.apache.commons.compress.compressors.xz.XZCompressorOutputStream;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
+import org.openstreetmap.josm.spi.preferences.Config;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.Utils;
 
@@ -47,6 +49,13 @@ public enum Compression {
      */
     XZ;
 
+    /**
+     * Whether to decompress bzip2, gzip and xz data ahead of the reads, in background threads
+     * (in parallel for multi-stream bzip2 and blocked gzip files).
+     * @since 18597
+     */
+    public static final BooleanProperty READ_AHEAD = new BooleanProperty("compression.read-ahead", true);
+
     /**
      * Determines the compression type depending on the suffix of {@code name}.
      * @param name File name including extension
@@ -92,6 +101,18 @@ public enum Compression {
      * @throws IOException if any I/O error occurs
      */
     public InputStream getUncompressedInputStream(InputStream in) throws IOException {
+        if (in != null && isReadAheadEnabled()) {
+            switch (this) {
+                case BZIP2:
+                    return ReadAheadInputStream.bzip2(in);
+                case GZIP:
+                    return ReadAheadInputStream.gzip(in);
+                case XZ:
+                    return ReadAheadInputStream.sequential(getXZInputStream(in));
+                default:
+                    break;
+            }
+        }
         switch (this) {
             case BZIP2:
                 return getBZip2InputStream(in);
@@ -107,6 +128,11 @@ public enum Compression {
         }
     }
 
+    private static boolean isReadAheadEnabled() {
+        // The preferences, defining the number of threads, are not available in some early or command line uses
+        return Config.getPref() != null && READ_AHEAD.get();
+    }
+
     /**
      * Returns a XZ input stream wrapping given input stream.
      * @param in The raw input stream
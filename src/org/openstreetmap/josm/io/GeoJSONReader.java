@@ -12,16 +12,20 @@ import java.io.StringReader;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.json.Json;
 import javax.json.JsonArray;
 import javax.json.JsonNumber;
 import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
 import javax.json.JsonString;
 import javax.json.JsonValue;
 import javax.json.stream.JsonParser;
@@ -30,7 +34,6 @@ import javax.json.stream.JsonParsingException;
 
 import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.coor.LatLon;
-import org.openstreetmap.josm.data.osm.BBox;
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
@@ -55,6 +58,9 @@ import org.openstreetmap.josm.tools.Utils;
 
 /**
  * Reader that reads GeoJSON files. See <a href="https://tools.ietf.org/html/rfc7946">RFC7946</a> for more information.
+ * <p>
+ * The features of a {@code FeatureCollection} are read one at a time from the stream, so that only the current feature
+ * is kept in memory as a JSON object (since 18602).
  * @since 15424
  */
 public class GeoJSONReader extends AbstractReader {
@@ -74,7 +80,12 @@ public class GeoJSONReader extends AbstractReader {
      * GJ2008.
      */
     private static final String CRS_GEOJSON = "EPSG:4326";
+    private static final String FEATURE_COLLECTION = "FeatureCollection";
     private Projection projection = Projections.getProjectionByCode(CRS_GEOJSON); // WGS 84
+    /** The created nodes, by coordinates, to avoid multiple nodes on top of each other */
+    private final Map<LatLon, Node> nodes = new HashMap<>();
+    /** The ways created as members of multipolygons, see {@link #mergeEqualMultipolygonWays} */
+    private final List<Way> multipolygonWays = new ArrayList<>();
 
     GeoJSONReader() {
         // Restricts visibility
@@ -84,17 +95,74 @@ public class GeoJSONReader extends AbstractReader {
         while (parser.hasNext()) {
             Event event = parser.next();
             if (event == Event.START_OBJECT) {
-                parseRoot(parser.getObject());
+                parseRoot(parser);
             }
         }
         parser.close();
     }
 
+    /**
+     * Parses the root object, whose start has just been read. The features of a {@code FeatureCollection} are parsed
+     * as they are read if its type comes before them, as written by most applications. Otherwise the whole object is
+     * read before being parsed.
+     * @param parser the JSON parser
+     * @throws IllegalDataException in case of error
+     */
+    private void parseRoot(final JsonParser parser) throws IllegalDataException {
+        JsonObjectBuilder root = Json.createObjectBuilder();
+        String type = null;
+        boolean featuresParsed = false;
+        while (parser.hasNext()) {
+            Event event = parser.next();
+            if (event == Event.END_OBJECT) {
+                break;
+            }
+            String key = parser.getString();
+            event = parser.next();
+            if (FEATURES.equals(key) && FEATURE_COLLECTION.equals(type)) {
+                if (event != Event.START_ARRAY) {
+                    throw new IllegalArgumentException("features must be ARRAY, but is " + parser.getValue().getValueType());
+                }
+                parseFeatures(parser);
+                featuresParsed = true;
+            } else {
+                JsonValue value = parser.getValue();
+                if (TYPE.equals(key) && value instanceof JsonString) {
+                    type = ((JsonString) value).getString();
+                } else if (CRS.equals(key) && value instanceof JsonObject) {
+                    // the CRS applies to the features parsed afterwards
+                    parseCrs((JsonObject) value);
+                }
+                root.add(key, value);
+            }
+        }
+        if (!featuresParsed) {
+            parseRoot(root.build());
+        }
+    }
+
+    /**
+     * Parses the features of a {@code FeatureCollection} one at a time, after the start of the array has been read.
+     * @param parser the JSON parser
+     */
+    private void parseFeatures(final JsonParser parser) {
+        while (parser.hasNext()) {
+            Event event = parser.next();
+            if (event == Event.END_ARRAY) {
+                return;
+            } else if (event == Event.START_OBJECT) {
+                parseFeature(parser.getObject());
+            } else if (event == Event.START_ARRAY) {
+                parser.skipArray();
+            }
+        }
+    }
+
     private void parseRoot(final JsonObject object) throws IllegalDataException {
         parseCrs(object.getJsonObject(CRS));
         switch (Optional.ofNullable(object.getJsonString(TYPE))
                 .orElseThrow(() -> new IllegalDataException("No type")).getString()) {
-            case "FeatureCollection":
+            case FEATURE_COLLECTION:
                 JsonValue.ValueType valueType = object.get(FEATURES).getValueType();
                 CheckParameterUtil.ensureThat(valueType == JsonValue.ValueType.ARRAY, "features must be ARRAY, but is " + valueType);
                 parseFeatureCollection(object.getJsonArray(FEATURES), false);
@@ -296,13 +364,16 @@ public class GeoJSONReader extends AbstractReader {
         } else if (size > 1) {
             // create multipolygon
             final Relation multipolygon = new Relation();
+            final List<RelationMember> members = new ArrayList<>(size);
             createWay(coordinates.getJsonArray(0), true)
-                .ifPresent(way -> multipolygon.addMember(new RelationMember("outer", way)));
+                .ifPresent(way -> members.add(new RelationMember("outer", way)));
 
             for (JsonValue interiorRing : coordinates.subList(1, size)) {
                 createWay(interiorRing.asJsonArray(), true)
-                    .ifPresent(way -> multipolygon.addMember(new RelationMember("inner", way)));
+                    .ifPresent(way -> members.add(new RelationMember("inner", way)));
             }
+            members.forEach(member -> multipolygonWays.add(member.getWay()));
+            multipolygon.setMembers(members);
 
             fillTagsFromFeature(feature, multipolygon);
             multipolygon.put(TYPE, "multipolygon");
@@ -323,14 +394,12 @@ public class GeoJSONReader extends AbstractReader {
     }
 
     private Node createNode(final LatLon latlon) {
-        final List<Node> existingNodes = getDataSet().searchNodes(new BBox(latlon, latlon));
-        if (!existingNodes.isEmpty()) {
-            // reuse existing node, avoid multiple nodes on top of each other
-            return existingNodes.get(0);
-        }
-        final Node node = new Node(latlon);
-        getDataSet().addPrimitive(node);
-        return node;
+        // reuse existing node, avoid multiple nodes on top of each other
+        return nodes.computeIfAbsent(latlon, ll -> {
+            final Node node = new Node(ll);
+            getDataSet().addPrimitive(node);
+            return node;
+        });
     }
 
     private Optional<Way> createWay(final JsonArray coordinates, final boolean autoClose) {
@@ -480,13 +549,22 @@ public class GeoJSONReader extends AbstractReader {
 
     /**
      * Import may create duplicate ways were one is member of a multipolygon and untagged and the other is tagged.
-     * Try to merge them here.
+     * Try to merge them here, once all features are read. Only the ways whose first node belongs to a multipolygon
+     * are checked, since the nodes are shared between ways with the same coordinates.
      */
     private void mergeEqualMultipolygonWays() {
+        if (multipolygonWays.isEmpty())
+            return;
+        Set<Node> multipolygonNodes = new HashSet<>();
+        for (Way w : multipolygonWays) {
+            multipolygonNodes.addAll(w.getNodes());
+        }
         DuplicateWay test = new DuplicateWay();
         test.startTest(null);
         for (Way w: getDataSet().getWays()) {
-            test.visit(w);
+            if (!w.isEmpty() && multipolygonNodes.contains(w.firstNode())) {
+                test.visit(w);
+            }
         }
         test.endTest();
 
@@ -19,6 +19,7 @@ import javax.xml.parsers.ParserConfigurationException;
 
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.gpx.ColumnarGpxTrackSegment;
 import org.openstreetmap.josm.data.gpx.GpxConstants;
 import org.openstreetmap.josm.data.gpx.GpxData;
 import org.openstreetmap.josm.data.gpx.GpxData.XMLNamespace;
@@ -29,6 +30,7 @@ import org.openstreetmap.josm.data.gpx.GpxTrack;
 import org.openstreetmap.josm.data.gpx.GpxTrackSegment;
 import org.openstreetmap.josm.data.gpx.IGpxTrackSegment;
 import org.openstreetmap.josm.data.gpx.WayPoint;
+import org.openstreetmap.josm.data.preferences.IntegerProperty;
 import org.openstreetmap.josm.tools.Logging;
 import org.openstreetmap.josm.tools.UncheckedParseException;
 import org.openstreetmap.josm.tools.Utils;
@@ -50,6 +52,12 @@ import org.xml.sax.helpers.DefaultHandler;
  */
 public class GpxReader implements GpxConstants, IGpxReader {
 
+    /**
+     * Number of points from which a track segment is stored in columns, see {@link ColumnarGpxTrackSegment}
+     * @since 18604
+     */
+    public static final IntegerProperty COLUMNAR_SEGMENT_MIN_POINTS = new IntegerProperty("gpx.columnar-segment.min-points", 10_000);
+
     private enum State {
         INIT,
         GPX,
@@ -75,6 +83,8 @@ public class GpxReader implements GpxConstants, IGpxReader {
         private Collection<IGpxTrackSegment> currentTrack;
         private Map<String, Object> currentTrackAttr;
         private Collection<WayPoint> currentTrackSeg;
+        private ColumnarGpxTrackSegment.Builder currentColumnarTrackSeg;
+        private int columnarSegmentMinPoints;
         private GpxRoute currentRoute;
         private WayPoint currentWayPoint;
 
@@ -97,6 +107,7 @@ public class GpxReader implements GpxConstants, IGpxReader {
             data = new GpxData(true);
             currentExtensionCollection = new GpxExtensionCollection();
             currentTrackExtensionCollection = new GpxExtensionCollection();
+            columnarSegmentMinPoints = COLUMNAR_SEGMENT_MIN_POINTS.get();
         }
 
         @Override
@@ -241,6 +252,7 @@ public class GpxReader implements GpxConstants, IGpxReader {
                     states.push(currentState);
                     currentState = State.TRKSEG;
                     currentTrackSeg = new ArrayList<>();
+                    currentColumnarTrackSeg = null;
                     break;
                 case "link":
                     states.push(currentState);
@@ -491,7 +503,7 @@ public class GpxReader implements GpxConstants, IGpxReader {
                 case "trkpt":
                     currentState = states.pop();
                     convertUrlToLink(currentWayPoint.attr);
-                    currentTrackSeg.add(currentWayPoint);
+                    addTrackPoint(currentWayPoint);
                     break;
                 case "wpt":
                     currentState = states.pop();
@@ -506,8 +518,14 @@ public class GpxReader implements GpxConstants, IGpxReader {
             case TRKSEG:
                 if ("trkseg".equals(localName)) {
                     currentState = states.pop();
-                    if (!currentTrackSeg.isEmpty()) {
-                        GpxTrackSegment seg = new GpxTrackSegment(currentTrackSeg);
+                    IGpxTrackSegment seg = null;
+                    if (currentColumnarTrackSeg != null) {
+                        seg = currentColumnarTrackSeg.build();
+                        currentColumnarTrackSeg = null;
+                    } else if (!currentTrackSeg.isEmpty()) {
+                        seg = new GpxTrackSegment(currentTrackSeg);
+                    }
+                    if (seg != null) {
                         if (!currentExtensionCollection.isEmpty()) {
                             seg.getExtensions().addAll(currentExtensionCollection);
                         }
@@ -591,6 +609,23 @@ public class GpxReader implements GpxConstants, IGpxReader {
             gpxData = data;
         }
 
+        /**
+         * Adds a point to the current track segment, stored in columns once the segment is large enough.
+         * @param wpt the track point
+         */
+        private void addTrackPoint(WayPoint wpt) {
+            if (currentColumnarTrackSeg != null) {
+                currentColumnarTrackSeg.add(wpt);
+            } else {
+                currentTrackSeg.add(wpt);
+                if (currentTrackSeg.size() >= columnarSegmentMinPoints) {
+                    currentColumnarTrackSeg = new ColumnarGpxTrackSegment.Builder();
+                    currentTrackSeg.forEach(currentColumnarTrackSeg::add);
+                    currentTrackSeg.clear();
+                }
+            }
+        }
+
         /**
          * convert url/urlname to link element (GPX 1.0 -&gt; GPX 1.1).
          * @param attr attributes
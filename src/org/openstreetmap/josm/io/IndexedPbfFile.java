@@ -0,0 +1,114 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Objects;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.CheckParameterUtil;
+
+/**
+ * An open OSM PBF file with its block index, to read the data within many bounding boxes without reopening
+ * the file and reloading the index each time.
+ * <p>
+ * The reads can be run concurrently from several threads. The file can also be used as an {@link OsmObjectStore}
+ * (since 18599), to read objects by ID without the OSM API, see {@link OsmObjectStores}.
+ * @see PbfReader#parseDataSet(File, Bounds, ProgressMonitor)
+ * @since 18598
+ */
+public final class IndexedPbfFile implements Closeable, OsmObjectStore {
+
+    private final File file;
+    private final PbfIndex index;
+    private final FileChannel channel;
+
+    private IndexedPbfFile(File file, PbfIndex index, FileChannel channel) {
+        this.file = file;
+        this.index = index;
+        this.channel = channel;
+    }
+
+    /**
+     * Opens the given PBF file. The block index is read from the sidecar file if it is up to date, otherwise it is
+     * built and saved, see {@link PbfIndex#forFile(File)}.
+     * @param file the PBF file
+     * @return the open file
+     * @throws IOException if the file cannot be opened
+     * @throws IllegalDataException if the PBF file is invalid
+     */
+    public static IndexedPbfFile open(File file) throws IOException, IllegalDataException {
+        Objects.requireNonNull(file, "file");
+        PbfIndex index = PbfIndex.forFile(file);
+        return new IndexedPbfFile(file, index, FileChannel.open(file.toPath(), StandardOpenOption.READ));
+    }
+
+    /**
+     * Returns the PBF file.
+     * @return the PBF file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the block index of the file.
+     * @return the block index
+     */
+    public PbfIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Reads the data within the given bounds, similarly to the {@code map} call of the OSM API.
+     * Only the blocks that may contain such data are read.
+     * @param bounds the bounds of the data to read
+     * @param progressMonitor the progress monitor. If null, {@code NullProgressMonitor.INSTANCE} is assumed
+     * @return the dataset with the nodes within the bounds, the ways using them and the relations referring to them
+     * @throws IllegalDataException if an error was found while parsing the data from the file
+     */
+    public DataSet read(Bounds bounds, ProgressMonitor progressMonitor) throws IllegalDataException {
+        CheckParameterUtil.ensureParameterNotNull(bounds, "bounds");
+        return PbfReader.parseDataSet(channel, index, bounds, progressMonitor);
+    }
+
+    @Override
+    public String getName() {
+        return file.getName();
+    }
+
+    @Override
+    public DataSet getPrimitives(Collection<? extends PrimitiveId> ids, boolean full) throws OsmTransferException {
+        CheckParameterUtil.ensureParameterNotNull(ids, "ids");
+        try {
+            return PbfReader.parseDataSet(channel, index, ids, full);
+        } catch (IllegalDataException e) {
+            throw new OsmTransferException(e);
+        }
+    }
+
+    @Override
+    public DataSet getReferrers(PrimitiveId id, OsmPrimitiveType referrerType) throws OsmTransferException {
+        CheckParameterUtil.ensureParameterNotNull(id, "id");
+        CheckParameterUtil.ensureThat(referrerType == OsmPrimitiveType.WAY || referrerType == OsmPrimitiveType.RELATION,
+                "referrerType is WAY or RELATION");
+        try {
+            return PbfReader.parseReferrersDataSet(channel, index, id, referrerType);
+        } catch (IllegalDataException e) {
+            throw new OsmTransferException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -303,6 +303,11 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
      * @throws OsmTransferException if an error occurs while communicating with the API server
      */
     protected void fetchPrimitives(Set<Long> ids, OsmPrimitiveType type, ProgressMonitor progressMonitor) throws OsmTransferException {
+        OsmObjectStore store = OsmObjectStores.getStore();
+        if (store != null) {
+            fetchPrimitives(store, ids, type, progressMonitor);
+            return;
+        }
         String msg;
         final String baseUrl = getBaseUrl();
         switch (type) {
@@ -362,6 +367,32 @@ public class MultiFetchServerObjectReader extends OsmServerReader {
         exec = null;
     }
 
+    /**
+     * reads a set of ids of a given {@link OsmPrimitiveType} from a local object store
+     *
+     * @param store the object store
+     * @param ids the set of ids
+     * @param type The primitive type
+     * @param progressMonitor progress monitor
+     * @throws OsmTransferException if an error occurs while reading the store
+     */
+    private void fetchPrimitives(OsmObjectStore store, Set<Long> ids, OsmPrimitiveType type, ProgressMonitor progressMonitor)
+            throws OsmTransferException {
+        progressMonitor.subTask(tr("Reading objects from ''{0}''", store.getName()));
+        List<PrimitiveId> toFetch = ids.stream().map(id -> new SimplePrimitiveId(id, type)).collect(Collectors.toList());
+        DataSet ds = store.getPrimitives(toFetch, false);
+        for (PrimitiveId id : toFetch) {
+            OsmPrimitive p = ds.getPrimitiveById(id);
+            if (p == null || p.isIncomplete()) {
+                missingPrimitives.add(id);
+            }
+        }
+        if (!isCanceled()) {
+            rememberNodesOfIncompleteWaysToLoad(ds);
+            merge(ds);
+        }
+    }
+
     /**
      * invokes one or more Multi Gets to fetch the {@link OsmPrimitive}s and replies
      * the dataset of retrieved primitives. Note that the dataset includes non visible primitives too!
@@ -6,6 +6,7 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Collection;
+import java.util.HashMap;
 
 import org.openstreetmap.josm.data.osm.Changeset;
 import org.openstreetmap.josm.data.osm.IPrimitive;
@@ -23,6 +24,7 @@ public class OsmChangeBuilder {
     private final PrintWriter writer;
     private final StringWriter swriter;
     private final OsmWriter osmwriter;
+    private final OsmXmlEncoder encoder;
     private String apiVersion = DEFAULT_API_VERSION;
     private boolean prologWritten;
 
@@ -41,36 +43,52 @@ public class OsmChangeBuilder {
      */
     public OsmChangeBuilder(Changeset changeset, String apiVersion) {
         this.apiVersion = apiVersion == null ? DEFAULT_API_VERSION : apiVersion;
-        swriter = new StringWriter();
-        writer = new PrintWriter(swriter);
-        osmwriter = OsmWriterFactory.createOsmWriter(writer, false, apiVersion);
-        osmwriter.setChangeset(changeset);
-        osmwriter.setIsOsmChange(true);
+        if (ParallelOsmWriter.isAvailable()) {
+            // encode the primitives directly, unless a plugin substituted its own writer
+            encoder = new OsmXmlEncoder(new HashMap<>(), false, true, changeset);
+            swriter = null;
+            writer = null;
+            osmwriter = null;
+        } else {
+            encoder = null;
+            swriter = new StringWriter();
+            writer = new PrintWriter(swriter);
+            osmwriter = OsmWriterFactory.createOsmWriter(writer, false, apiVersion);
+            osmwriter.setChangeset(changeset);
+            osmwriter.setIsOsmChange(true);
+        }
     }
 
     protected void write(IPrimitive p) {
         if (p.isDeleted()) {
             switchMode("delete");
-            osmwriter.setWithBody(false);
-            p.accept(osmwriter);
         } else {
             switchMode(p.isNew() ? "create" : "modify");
-            osmwriter.setWithBody(true);
+        }
+        if (encoder != null) {
+            encoder.setWithBody(!p.isDeleted());
+            encoder.encode(p);
+        } else {
+            osmwriter.setWithBody(!p.isDeleted());
             p.accept(osmwriter);
         }
     }
 
+    private void println(String line) {
+        if (encoder != null) {
+            encoder.append(line).newline();
+        } else {
+            writer.println(line);
+        }
+    }
+
     private void switchMode(String newMode) {
         if ((newMode != null && !newMode.equals(currentMode)) || (newMode == null && currentMode != null)) {
             if (currentMode != null) {
-                writer.print("</");
-                writer.print(currentMode);
-                writer.println(">");
+                println("</" + currentMode + '>');
             }
             if (newMode != null) {
-                writer.print("<");
-                writer.print(newMode);
-                writer.println(">");
+                println('<' + newMode + '>');
             }
             currentMode = newMode;
         }
@@ -84,9 +102,7 @@ public class OsmChangeBuilder {
     public void start() {
         if (prologWritten)
             throw new IllegalStateException(tr("Prolog of OsmChange document already written. Please write only once."));
-        writer.print("<osmChange version=\"");
-        writer.print(apiVersion);
-        writer.println("\" generator=\"JOSM\">");
+        println("<osmChange version=\"" + apiVersion + "\" generator=\"JOSM\">");
         prologWritten = true;
     }
 
@@ -135,11 +151,9 @@ public class OsmChangeBuilder {
     public void finish() {
         checkProlog();
         if (currentMode != null) {
-            writer.print("</");
-            writer.print(currentMode);
-            writer.println(">");
+            println("</" + currentMode + '>');
         }
-        writer.println("</osmChange>");
+        println("</osmChange>");
     }
 
     /**
@@ -147,6 +161,6 @@ public class OsmChangeBuilder {
      * @return XML document
      */
     public String getDocument() {
-        return swriter.toString();
+        return encoder != null ? encoder.toString() : swriter.toString();
     }
 }
@@ -2,17 +2,20 @@
 package org.openstreetmap.josm.io;
 
 import static org.openstreetmap.josm.tools.I18n.tr;
+import static org.openstreetmap.josm.tools.I18n.trn;
 
 import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Map.Entry;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 import javax.json.Json;
-import javax.json.JsonArray;
-import javax.json.JsonNumber;
+import javax.json.JsonException;
 import javax.json.JsonObject;
-import javax.json.JsonString;
-import javax.json.JsonValue;
+import javax.json.JsonObjectBuilder;
 import javax.json.stream.JsonParser;
 import javax.json.stream.JsonParser.Event;
 
@@ -30,12 +33,18 @@ import org.openstreetmap.josm.tools.UncheckedParseException;
 /**
  * Parser for the Osm API (JSON output). Read from an input stream and construct a dataset out of it.
  *
- * For each json element, there is a dedicated method.
+ * For each json element, there is a dedicated method. The stream is parsed token by token: the primitives are created
+ * as the elements are read, without building the JSON tree of the whole document.
  * @since 14086
  */
 public class OsmJsonReader extends AbstractReader {
 
+    /** Number of elements between two progress updates */
+    private static final int PROGRESS_STEP = 10_000;
+
     protected JsonParser parser;
+    private ProgressMonitor progressMonitor = NullProgressMonitor.INSTANCE;
+    private int elementCount;
 
     /**
      * constructor (for private and subclasses use only)
@@ -51,117 +60,304 @@ public class OsmJsonReader extends AbstractReader {
     }
 
     protected void parse() throws IllegalDataException {
-        while (parser.hasNext()) {
-            Event event = parser.next();
-            if (event == Event.START_OBJECT) {
-                parseRoot(parser.getObject());
+        try {
+            while (parser.hasNext()) {
+                Event event = parser.next();
+                if (event == Event.START_OBJECT) {
+                    parseRoot();
+                }
             }
+        } catch (JsonException e) {
+            throw new IllegalDataException(e);
+        } finally {
+            parser.close();
         }
-        parser.close();
     }
 
-    private void parseRoot(JsonObject object) throws IllegalDataException {
-        parseVersion(object.get("version").toString());
-        parseDownloadPolicy("download", object.getString("download", null));
-        parseUploadPolicy("upload", object.getString("upload", null));
-        parseLocked(object.getString("locked", null));
-        parseElements(object.getJsonArray("elements"));
-        parseRemark(object.getString("remark", null));
+    /**
+     * Parses the root object. The elements are parsed as they are read, the root object is never fully loaded.
+     * @throws IllegalDataException if the data is invalid
+     */
+    private void parseRoot() throws IllegalDataException {
+        boolean versionParsed = false;
+        while (parser.next() == Event.KEY_NAME) {
+            switch (parser.getString()) {
+            case "version":
+                parseVersion(readString());
+                versionParsed = true;
+                break;
+            case "download":
+                parseDownloadPolicy("download", readString());
+                break;
+            case "upload":
+                parseUploadPolicy("upload", readString());
+                break;
+            case "locked":
+                parseLocked(readString());
+                break;
+            case "elements":
+                if (!versionParsed) {
+                    // the elements cannot be parsed without the API version
+                    parseVersion(null);
+                }
+                parseElements();
+                break;
+            case "remark":
+                parseRemark(readString());
+                break;
+            default:
+                skipValue(parser.next());
+            }
+        }
+        if (!versionParsed) {
+            parseVersion(null);
+        }
     }
 
     private void parseRemark(String remark) {
         ds.setRemark(remark);
     }
 
-    private void parseElements(JsonArray jsonArray) throws IllegalDataException {
-        for (JsonValue value : jsonArray) {
-            if (value instanceof JsonObject) {
-                JsonObject item = (JsonObject) value;
-                switch (item.getString("type")) {
-                case "node":
-                    parseNode(item);
+    private void parseElements() throws IllegalDataException {
+        if (parser.next() != Event.START_ARRAY) {
+            throw new IllegalDataException("Unexpected JSON item for elements: " + parser.getLocation());
+        }
+        Event event;
+        while ((event = parser.next()) != Event.END_ARRAY) {
+            if (cancel) {
+                cancel = false;
+                throw new OsmJsonParsingCanceledException(tr("Reading was canceled"));
+            }
+            if (event != Event.START_OBJECT) {
+                throw new IllegalDataException("Unexpected JSON item: " + parser.getValue());
+            }
+            JsonElement item = readElement();
+            switch (item.type != null ? item.type : "") {
+            case "node":
+                parseNode(item);
+                break;
+            case "way":
+                parseWay(item);
+                break;
+            case "relation":
+                parseRelation(item);
+                break;
+            default:
+                parseUnknown(item.toJsonObject());
+            }
+            if (++elementCount % PROGRESS_STEP == 0) {
+                progressMonitor.setExtraText(trn("{0} object", "{0} objects", elementCount, elementCount));
+            }
+        }
+    }
+
+    /**
+     * Reads the attributes of the current element, until the end of its object.
+     * @return the attributes of the element
+     * @throws IllegalDataException if the data is invalid
+     */
+    private JsonElement readElement() throws IllegalDataException {
+        JsonElement item = new JsonElement();
+        while (parser.next() == Event.KEY_NAME) {
+            String key = parser.getString();
+            Event event = parser.next();
+            switch (key) {
+            case "type":
+                item.type = toString(event);
+                break;
+            case "id":
+                item.id = readNumber(event, key).longValue();
+                break;
+            case "lat":
+                item.lat = readNumber(event, key).doubleValue();
+                break;
+            case "lon":
+                item.lon = readNumber(event, key).doubleValue();
+                break;
+            case "timestamp":
+                item.timestamp = toString(event);
+                break;
+            case "uid":
+                item.uid = readNumber(event, key).longValue();
+                break;
+            case "user":
+                item.user = toString(event);
+                break;
+            case "visible":
+                item.visible = toString(event);
+                break;
+            case "version":
+                item.version = readNumber(event, key).intValue();
+                break;
+            case "action":
+                item.action = toString(event);
+                break;
+            case "changeset":
+                item.changeset = readNumber(event, key).intValue();
+                break;
+            case "tags":
+                readTags(event, item);
+                break;
+            case "nodes":
+                readNodes(event, item);
+                break;
+            case "members":
+                readMembers(event, item);
+                break;
+            default: // bounds, geometry, center, etc.
+                skipValue(event);
+            }
+        }
+        return item;
+    }
+
+    private void readTags(Event event, JsonElement item) throws IllegalDataException {
+        if (event != Event.START_OBJECT) {
+            skipValue(event);
+            return;
+        }
+        while (parser.next() == Event.KEY_NAME) {
+            String key = parser.getString();
+            item.tags.put(key, readString());
+        }
+    }
+
+    private void readNodes(Event event, JsonElement item) throws IllegalDataException {
+        if (event != Event.START_ARRAY) {
+            skipValue(event);
+            return;
+        }
+        Event e;
+        while ((e = parser.next()) != Event.END_ARRAY) {
+            item.nodes.add(readNumber(e, "nodes").longValue());
+        }
+    }
+
+    private void readMembers(Event event, JsonElement item) throws IllegalDataException {
+        if (event != Event.START_ARRAY) {
+            skipValue(event);
+            return;
+        }
+        Event e;
+        while ((e = parser.next()) != Event.END_ARRAY) {
+            if (e != Event.START_OBJECT) {
+                throw new IllegalDataException("Unexpected JSON item for member: " + parser.getLocation());
+            }
+            JsonMember member = new JsonMember();
+            while (parser.next() == Event.KEY_NAME) {
+                String key = parser.getString();
+                Event value = parser.next();
+                switch (key) {
+                case "type":
+                    member.type = toString(value);
                     break;
-                case "way":
-                    parseWay(item);
+                case "ref":
+                    member.ref = readNumber(value, key).longValue();
                     break;
-                case "relation":
-                    parseRelation(item);
+                case "role":
+                    member.role = toString(value);
                     break;
-                default:
-                    parseUnknown(item);
+                default: // geometry, etc.
+                    skipValue(value);
                 }
-            } else {
-                throw new IllegalDataException("Unexpected JSON item: " + value);
             }
+            item.members.add(member);
+        }
+    }
+
+    private String readString() {
+        return toString(parser.next());
+    }
+
+    /**
+     * Returns the current scalar value as a string, skipping objects and arrays.
+     * @param event the current event
+     * @return the current value, or {@code null} for {@code null}, objects and arrays
+     */
+    private String toString(Event event) {
+        switch (event) {
+        case VALUE_STRING:
+        case VALUE_NUMBER:
+            return parser.getString();
+        case VALUE_TRUE:
+            return "true";
+        case VALUE_FALSE:
+            return "false";
+        default:
+            skipValue(event);
+            return null;
+        }
+    }
+
+    private BigDecimal readNumber(Event event, String key) throws IllegalDataException {
+        if (event != Event.VALUE_NUMBER) {
+            skipValue(event);
+            throw new IllegalDataException(tr("Illegal value for attribute ''{0}''. Got ''{1}''.", key, event));
+        }
+        return parser.getBigDecimal();
+    }
+
+    private void skipValue(Event event) {
+        if (event == Event.START_OBJECT) {
+            parser.skipObject();
+        } else if (event == Event.START_ARRAY) {
+            parser.skipArray();
         }
     }
 
     /**
      * Read out the common attributes and put them into current OsmPrimitive.
-     * @param item current JSON object
+     * @param item current JSON element
      * @param current primitive to update
      * @throws IllegalDataException if there is an error processing the underlying JSON source
      */
-    private void readCommon(JsonObject item, PrimitiveData current) throws IllegalDataException {
+    private void readCommon(JsonElement item, PrimitiveData current) throws IllegalDataException {
         try {
-            parseId(current, item.getJsonNumber("id").longValue());
-            parseTimestamp(current, item.getString("timestamp", null));
-            JsonNumber uid = item.getJsonNumber("uid");
-            if (uid != null) {
-                parseUser(current, item.getString("user", null), uid.longValue());
+            parseId(current, item.id);
+            parseTimestamp(current, item.timestamp);
+            if (item.uid != null) {
+                parseUser(current, item.user, item.uid);
             }
-            parseVisible(current, item.getString("visible", null));
-            JsonNumber version = item.getJsonNumber("version");
-            if (version != null) {
-                parseVersion(current, version.intValue());
+            parseVisible(current, item.visible);
+            if (item.version != null) {
+                parseVersion(current, item.version);
             }
-            parseAction(current, item.getString("action", null));
-            JsonNumber changeset = item.getJsonNumber("changeset");
-            if (changeset != null) {
-                parseChangeset(current, changeset.intValue());
+            parseAction(current, item.action);
+            if (item.changeset != null) {
+                parseChangeset(current, item.changeset);
             }
         } catch (UncheckedParseException e) {
             throw new IllegalDataException(e);
         }
     }
 
-    private static void readTags(JsonObject item, Tagged t) {
-        JsonObject tags = item.getJsonObject("tags");
-        if (tags != null) {
-            for (Entry<String, JsonValue> entry : tags.entrySet()) {
-                t.put(entry.getKey(), ((JsonString) entry.getValue()).getString());
-            }
+    private static void readTags(JsonElement item, Tagged t) {
+        if (!item.tags.isEmpty()) {
+            t.setKeys(item.tags);
         }
     }
 
-    private void parseNode(JsonObject item) throws IllegalDataException {
-        parseNode(item.getJsonNumber("lat").doubleValue(),
-                  item.getJsonNumber("lon").doubleValue(), nd -> readCommon(item, nd), n -> readTags(item, n));
+    private void parseNode(JsonElement item) throws IllegalDataException {
+        parseNode(item.lat, item.lon, nd -> readCommon(item, nd), n -> readTags(item, n));
     }
 
-    private void parseWay(JsonObject item) throws IllegalDataException {
+    private void parseWay(JsonElement item) throws IllegalDataException {
         parseWay(wd -> readCommon(item, wd), (w, nodeIds) -> readWayNodesAndTags(item, w, nodeIds));
     }
 
-    private static void readWayNodesAndTags(JsonObject item, WayData w, Collection<Long> nodeIds) {
-        for (JsonValue v : item.getJsonArray("nodes")) {
-            nodeIds.add(((JsonNumber) v).longValue());
-        }
+    private static void readWayNodesAndTags(JsonElement item, WayData w, Collection<Long> nodeIds) {
+        nodeIds.addAll(item.nodes);
         readTags(item, w);
     }
 
-    private void parseRelation(JsonObject item) throws IllegalDataException {
+    private void parseRelation(JsonElement item) throws IllegalDataException {
         parseRelation(rd -> readCommon(item, rd), (r, members) -> readRelationMembersAndTags(item, r, members));
     }
 
-    private void readRelationMembersAndTags(JsonObject item, RelationData r, Collection<RelationMemberData> members)
+    private void readRelationMembersAndTags(JsonElement item, RelationData r, Collection<RelationMemberData> members)
             throws IllegalDataException {
-        JsonArray jsonArray = item.getJsonArray("members");
-        if (jsonArray != null) {
-            for (JsonValue v : jsonArray) {
-                JsonObject o = v.asJsonObject();
-                members.add(parseRelationMember(r, ((JsonNumber) o.get("ref")).longValue(), o.getString("type"), o.getString("role")));
-            }
+        for (JsonMember m : item.members) {
+            members.add(parseRelationMember(r, m.ref, m.type, m.role));
         }
         readTags(item, r);
     }
@@ -178,12 +374,65 @@ public class OsmJsonReader extends AbstractReader {
 
     @Override
     protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        this.progressMonitor = progressMonitor != null ? progressMonitor : NullProgressMonitor.INSTANCE;
         return doParseDataSet(source, progressMonitor, ir -> {
             setParser(Json.createParser(ir));
             parse();
         });
     }
 
+    /**
+     * The attributes of an element, read before the primitive is created as they can come in any order.
+     */
+    private static final class JsonElement {
+        String type;
+        long id;
+        double lat = Double.NaN;
+        double lon = Double.NaN;
+        String timestamp;
+        Long uid;
+        String user;
+        String visible;
+        Integer version;
+        String action;
+        Integer changeset;
+        final Map<String, String> tags = new LinkedHashMap<>();
+        final List<Long> nodes = new ArrayList<>();
+        final List<JsonMember> members = new ArrayList<>();
+
+        JsonObject toJsonObject() {
+            JsonObjectBuilder builder = Json.createObjectBuilder().add("id", id);
+            if (type != null) {
+                builder.add("type", type);
+            }
+            return builder.build();
+        }
+    }
+
+    /**
+     * The attributes of a relation member.
+     */
+    private static final class JsonMember {
+        String type;
+        long ref;
+        String role;
+    }
+
+    /**
+     * Exception thrown after user cancelation.
+     */
+    private static final class OsmJsonParsingCanceledException extends IllegalDataException implements ImportCancelException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs a new {@code OsmJsonParsingCanceledException}.
+         * @param msg The error message
+         */
+        OsmJsonParsingCanceledException(String msg) {
+            super(msg);
+        }
+    }
+
     /**
      * Parse the given input source and return the dataset.
      *
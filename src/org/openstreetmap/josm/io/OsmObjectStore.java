@@ -0,0 +1,46 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.util.Collection;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+
+/**
+ * A local store of OSM objects, used instead of the OSM API to read objects by ID and their referrers.
+ * <p>
+ * The readers of the OSM API objects ({@link OsmServerObjectReader}, {@link MultiFetchServerObjectReader} and
+ * {@link OsmServerBackreferenceReader}) use the store returned by {@link OsmObjectStores#getStore()}, if any.
+ * @see OsmObjectStores
+ * @since 18599
+ */
+public interface OsmObjectStore {
+
+    /**
+     * Returns the name of this store, displayed to the user.
+     * @return the name of this store
+     */
+    String getName();
+
+    /**
+     * Reads objects by ID, similarly to the object and multi fetch calls of the OSM API.
+     * The objects not found in the store are not in the returned dataset.
+     * @param ids the IDs of the objects to read
+     * @param full if {@code true}, also reads the nodes of the ways, and the members of the relations with the nodes
+     * of the member ways, like the {@code full} calls of the OSM API
+     * @return the dataset with the objects
+     * @throws OsmTransferException if the objects cannot be read
+     */
+    DataSet getPrimitives(Collection<? extends PrimitiveId> ids, boolean full) throws OsmTransferException;
+
+    /**
+     * Reads the ways or relations referring to an object, similarly to the {@code ways} and {@code relations} calls
+     * of the OSM API.
+     * @param id the ID of the referred object
+     * @param referrerType the type of referrers to read, {@link OsmPrimitiveType#WAY} or {@link OsmPrimitiveType#RELATION}
+     * @return the dataset with the referrers
+     * @throws OsmTransferException if the referrers cannot be read
+     */
+    DataSet getReferrers(PrimitiveId id, OsmPrimitiveType referrerType) throws OsmTransferException;
+}
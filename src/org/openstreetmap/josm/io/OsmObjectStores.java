@@ -0,0 +1,80 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+import org.openstreetmap.josm.data.preferences.StringProperty;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Provides the {@link OsmObjectStore} used instead of the OSM API to read objects by ID.
+ * <p>
+ * The store is either set explicitly with {@link #setStore(OsmObjectStore)}, or is the indexed PBF file given by the
+ * {@link #LOCAL_PBF} preference.
+ * @since 18599
+ */
+public final class OsmObjectStores {
+
+    /**
+     * The path of a local PBF file used instead of the OSM API to read objects by ID. Empty to use the OSM API.
+     */
+    public static final StringProperty LOCAL_PBF = new StringProperty("osm.object-store.pbf", "");
+
+    private static OsmObjectStore store;
+    private static String pbfPath;
+    private static long pbfModified;
+    private static IndexedPbfFile pbfStore;
+
+    private OsmObjectStores() {
+        // Hide default constructor for utilities classes
+    }
+
+    /**
+     * Sets the object store, replacing the one given by the {@link #LOCAL_PBF} preference.
+     * @param store the object store, or {@code null} to use the {@link #LOCAL_PBF} preference
+     */
+    public static synchronized void setStore(OsmObjectStore store) {
+        OsmObjectStores.store = store;
+    }
+
+    /**
+     * Returns the object store to use instead of the OSM API.
+     * The PBF file is opened again when it has been modified, for instance by {@link PbfChangeApplier}.
+     * @return the object store set by {@link #setStore(OsmObjectStore)}, or the PBF file given by the {@link #LOCAL_PBF}
+     * preference, or {@code null} to use the OSM API
+     */
+    public static synchronized OsmObjectStore getStore() {
+        if (store != null) {
+            return store;
+        }
+        String path = LOCAL_PBF.get();
+        File file = Utils.isEmpty(path) ? null : new File(path);
+        if (!Objects.equals(path, pbfPath) || (file != null && file.lastModified() != pbfModified)) {
+            closePbfStore();
+            pbfPath = path;
+            if (file != null) {
+                try {
+                    pbfModified = file.lastModified();
+                    pbfStore = IndexedPbfFile.open(file);
+                } catch (IOException | IllegalDataException e) {
+                    Logging.log(Logging.LEVEL_ERROR, "Unable to open the object store " + path, e);
+                }
+            }
+        }
+        return pbfStore;
+    }
+
+    private static void closePbfStore() {
+        if (pbfStore != null) {
+            try {
+                pbfStore.close();
+            } catch (IOException e) {
+                Logging.warn(e);
+            }
+            pbfStore = null;
+        }
+    }
+}
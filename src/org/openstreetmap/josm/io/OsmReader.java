@@ -4,6 +4,7 @@ package org.openstreetmap.josm.io;
 import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -29,6 +30,7 @@ import org.openstreetmap.josm.data.osm.RelationMemberData;
 import org.openstreetmap.josm.data.osm.Tagged;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
 import org.openstreetmap.josm.tools.Logging;
@@ -60,8 +62,18 @@ public class OsmReader extends AbstractReader {
         SAVE_ORIGINAL_ID
     }
 
+    /**
+     * Whether {@link #parseDataSet} builds the primitives in a second thread, while the XML is parsed.
+     * @since 18595
+     */
+    public static final BooleanProperty PIPELINED = new BooleanProperty("osm.reader.pipelined", true);
+
     protected XMLStreamReader parser;
 
+    /** The builder thread, in pipelined mode, see {@link #PIPELINED} */
+    private PipelinedBuilder pipeline;
+    private boolean pipelined;
+
     /** The {@link OsmReader.Options} to use when parsing the xml data */
     protected final Collection<Options> options;
 
@@ -169,13 +181,25 @@ public class OsmReader extends AbstractReader {
                     parseBounds(generator);
                     break;
                 case "node":
-                    parseNode();
+                    if (pipeline != null) {
+                        queueNode();
+                    } else {
+                        parseNode();
+                    }
                     break;
                 case "way":
-                    parseWay();
+                    if (pipeline != null) {
+                        queueWay();
+                    } else {
+                        parseWay();
+                    }
                     break;
                 case "relation":
-                    parseRelation();
+                    if (pipeline != null) {
+                        queueRelation();
+                    } else {
+                        parseRelation();
+                    }
                     break;
                 case "changeset":
                     parseChangeset(uploadChangesetId);
@@ -248,6 +272,62 @@ public class OsmReader extends AbstractReader {
         return null;
     }
 
+    /**
+     * Parses a node, and queues the creation of the primitive, see {@link #PIPELINED}.
+     * @throws XMLStreamException if there is an error processing the underlying XML source
+     */
+    private void queueNode() throws XMLStreamException {
+        String lat = parser.getAttributeValue(null, "lat");
+        String lon = parser.getAttributeValue(null, "lon");
+        try {
+            NodeData nd = readNode(lat, lon, this::readCommon, this::parseNodeTags);
+            queue(() -> buildPrimitive(nd));
+        } catch (IllegalDataException e) {
+            handleIllegalDataException(e);
+        }
+    }
+
+    /**
+     * Parses a way, and queues the creation of the primitive, see {@link #PIPELINED}.
+     * @throws XMLStreamException if there is an error processing the underlying XML source
+     */
+    private void queueWay() throws XMLStreamException {
+        try {
+            WayData wd = new WayData(0);
+            readCommon(wd);
+            Collection<Long> nodeIds = new ArrayList<>();
+            parseWayNodesAndTags(wd, nodeIds);
+            queue(() -> addWay(wd, nodeIds));
+        } catch (IllegalDataException e) {
+            handleIllegalDataException(e);
+        }
+    }
+
+    /**
+     * Parses a relation, and queues the creation of the primitive, see {@link #PIPELINED}.
+     * @throws XMLStreamException if there is an error processing the underlying XML source
+     */
+    private void queueRelation() throws XMLStreamException {
+        try {
+            RelationData rd = new RelationData(0);
+            readCommon(rd);
+            Collection<RelationMemberData> members = new ArrayList<>();
+            parseRelationMembersAndTags(rd, members);
+            queue(() -> addRelation(rd, members));
+        } catch (IllegalDataException e) {
+            handleIllegalDataException(e);
+        }
+    }
+
+    private void queue(Runnable task) throws XMLStreamException {
+        try {
+            pipeline.add(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throwException(tr("Reading was interrupted"), e);
+        }
+    }
+
     private void parseNodeTags(NodeData n) throws IllegalDataException {
         try {
             while (parser.hasNext()) {
@@ -504,7 +584,11 @@ public class OsmReader extends AbstractReader {
         return doParseDataSet(source, progressMonitor, ir -> {
             try {
                 setParser(XmlUtils.newSafeXMLInputFactory().createXMLStreamReader(ir));
-                parse();
+                if (pipelined) {
+                    parsePipelined();
+                } else {
+                    parse();
+                }
             } catch (XmlStreamParsingException | UncheckedParseException e) {
                 throw new IllegalDataException(e.getMessage(), e);
             } catch (XMLStreamException e) {
@@ -523,6 +607,24 @@ public class OsmReader extends AbstractReader {
         });
     }
 
+    /**
+     * Parses the XML in this thread, while the primitives are built in another one.
+     * @throws XMLStreamException if there is an error processing the underlying XML source
+     * @throws IllegalDataException if the primitives cannot be built
+     */
+    private void parsePipelined() throws XMLStreamException, IllegalDataException {
+        try (PipelinedBuilder builder = new PipelinedBuilder()) {
+            pipeline = builder;
+            parse();
+            builder.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalDataException(e);
+        } finally {
+            pipeline = null;
+        }
+    }
+
     /**
      * Parse the given input source and return the dataset.
      *
@@ -551,6 +653,8 @@ public class OsmReader extends AbstractReader {
      */
     public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor, Options... options)
             throws IllegalDataException {
-        return new OsmReader(options).doParseDataSet(source, progressMonitor);
+        OsmReader reader = new OsmReader(options);
+        reader.pipelined = PIPELINED.get();
+        return reader.doParseDataSet(source, progressMonitor);
     }
 }
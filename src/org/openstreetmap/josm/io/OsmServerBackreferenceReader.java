@@ -14,6 +14,7 @@ import org.openstreetmap.josm.data.osm.DataSetMerger;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
 import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
 import org.openstreetmap.josm.data.osm.Way;
 import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
@@ -148,6 +149,12 @@ public class OsmServerBackreferenceReader extends OsmServerReader {
     private DataSet getReferringPrimitives(ProgressMonitor progressMonitor, String type, String message) throws OsmTransferException {
         progressMonitor.beginTask(null, 2);
         try {
+            OsmObjectStore store = OsmObjectStores.getStore();
+            if (store != null) {
+                progressMonitor.subTask(message);
+                return store.getReferrers(new SimplePrimitiveId(id, primitiveType),
+                        "/ways".equals(type) ? OsmPrimitiveType.WAY : OsmPrimitiveType.RELATION);
+            }
             progressMonitor.subTask(tr("Contacting OSM Server..."));
             StringBuilder sb = new StringBuilder();
             sb.append(primitiveType.getAPIName()).append('/').append(id).append(type);
@@ -5,7 +5,9 @@ import static org.openstreetmap.josm.tools.I18n.tr;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.text.MessageFormat;
+import java.util.Collections;
 
 import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
@@ -24,6 +26,7 @@ import org.openstreetmap.josm.tools.CheckParameterUtil;
  * It can also download a specific version of the object (however, "full" download is not possible
  * in that case).
  *
+ * The current version of the object is read from the {@link OsmObjectStores#getStore() local object store} if any.
  */
 public class OsmServerObjectReader extends OsmServerReader {
     /** the id of the object to download */
@@ -115,6 +118,10 @@ public class OsmServerObjectReader extends OsmServerReader {
         }
         progressMonitor.beginTask("", 1);
         try {
+            OsmObjectStore store = version > 0 ? null : OsmObjectStores.getStore();
+            if (store != null) {
+                return readFromStore(store);
+            }
             progressMonitor.indeterminateSubTask(tr("Downloading OSM data..."));
             StringBuilder sb = new StringBuilder();
             sb.append(id.getType().getAPIName())
@@ -142,4 +149,13 @@ public class OsmServerObjectReader extends OsmServerReader {
             activeConnection = null;
         }
     }
+
+    private DataSet readFromStore(OsmObjectStore store) throws OsmTransferException {
+        DataSet ds = store.getPrimitives(Collections.singleton(id), full);
+        if (ds.getPrimitiveById(id) == null) {
+            throw new OsmApiException(HttpURLConnection.HTTP_NOT_FOUND,
+                    tr("Object {0} not found in {1}", id, store.getName()), null);
+        }
+        return ds;
+    }
 }
@@ -1,6 +1,7 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.io;
 
+import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.util.Objects;
 
@@ -36,6 +37,30 @@ public class OsmWriterFactory {
         return theFactory.createOsmWriterImpl(out, osmConform, version);
     }
 
+    /**
+     * Creates new {@code PbfWriter}.
+     * @param out output stream
+     * @param osmConform if {@code true}, prevents JOSM specific attributes to be written
+     * @return new {@code PbfWriter}
+     * @since 18592
+     */
+    public static PbfWriter createPbfWriter(OutputStream out, boolean osmConform) {
+        if (theFactory == null) {
+            theFactory = new OsmWriterFactory();
+        }
+        return theFactory.createPbfWriterImpl(out, osmConform);
+    }
+
+    /**
+     * Determines if the writers are created by this class, and not substituted by a plugin.
+     * @return {@code true} if no other factory has been set
+     * @since 18603
+     */
+    static boolean isDefaultFactory() {
+        OsmWriterFactory factory = theFactory;
+        return factory == null || factory.getClass() == OsmWriterFactory.class;
+    }
+
     /**
      * Sets the default factory.
      * @param factory new default factory
@@ -55,4 +80,15 @@ public class OsmWriterFactory {
     protected OsmWriter createOsmWriterImpl(PrintWriter out, boolean osmConform, String version) {
         return new OsmWriter(out, osmConform, version);
     }
+
+    /**
+     * Creates new {@code PbfWriter}.
+     * @param out output stream
+     * @param osmConform if {@code true}, prevents JOSM specific attributes to be written
+     * @return new {@code PbfWriter}
+     * @since 18592
+     */
+    protected PbfWriter createPbfWriterImpl(OutputStream out, boolean osmConform) {
+        return new PbfWriter(out, osmConform);
+    }
 }
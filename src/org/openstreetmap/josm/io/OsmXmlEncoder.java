@@ -0,0 +1,345 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Changeset;
+import org.openstreetmap.josm.data.osm.INode;
+import org.openstreetmap.josm.data.osm.IPrimitive;
+import org.openstreetmap.josm.data.osm.IRelation;
+import org.openstreetmap.josm.data.osm.IWay;
+import org.openstreetmap.josm.data.osm.User;
+
+/**
+ * Encodes OSM primitives to UTF-8 XML in a growable byte buffer, with the same output as {@link OsmWriter}.
+ * <p>
+ * The escaped and encoded strings are cached, since the tag keys and most tag values are shared between primitives.
+ * The coordinates are formatted with fixed-point arithmetic, falling back to {@link LatLon#cDdHighPrecisionFormatter}
+ * only when the rounding is not certain. An encoder is not thread-safe, but several encoders can share a cache.
+ * @since 18603
+ */
+final class OsmXmlEncoder {
+
+    /** Number of fraction digits of the high precision coordinate format */
+    private static final int FRACTION_DIGITS = 11;
+    private static final double SCALE = 1e11;
+    private static final long SCALE_LONG = 100_000_000_000L;
+    /** Largest absolute coordinate formatted with fixed-point arithmetic, with an error well below a half unit */
+    private static final double MAX_FIXED_POINT = 1000;
+    /** Maximum number of cached strings */
+    private static final int MAX_CACHE_SIZE = 100_000;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, byte[]> cache;
+    private final boolean osmConform;
+    private final boolean isOsmChange;
+    private final Changeset changeset;
+    private boolean withBody = true;
+    private boolean withVisible = true;
+    private DecimalFormat coordinateFormat;
+    private byte[] buffer = new byte[8192];
+    private int size;
+
+    /**
+     * Constructs a new {@code OsmXmlEncoder}.
+     * @param cache the cache of encoded strings, thread-safe if shared between encoders used concurrently
+     * @param osmConform if {@code true}, prevents modification attributes to be written to the common part
+     * @param isOsmChange if {@code true}, the primitives are written in an OsmChange document
+     * @param changeset the changeset written for all primitives, can be {@code null}
+     */
+    OsmXmlEncoder(Map<String, byte[]> cache, boolean osmConform, boolean isOsmChange, Changeset changeset) {
+        this.cache = cache;
+        this.osmConform = osmConform;
+        this.isOsmChange = isOsmChange;
+        this.changeset = changeset;
+    }
+
+    void setWithBody(boolean withBody) {
+        this.withBody = withBody;
+    }
+
+    void setWithVisible(boolean withVisible) {
+        this.withVisible = withVisible;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(buffer, 0, size);
+    }
+
+    @Override
+    public String toString() {
+        return new String(buffer, 0, size, StandardCharsets.UTF_8);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + extra));
+        }
+    }
+
+    private void append(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    /**
+     * Appends a string without escaping.
+     * @param s the string
+     * @return this
+     */
+    OsmXmlEncoder append(String s) {
+        int length = s.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                size -= i;
+                append(s.getBytes(StandardCharsets.UTF_8));
+                return this;
+            }
+            buffer[size++] = (byte) c;
+        }
+        return this;
+    }
+
+    /**
+     * Appends a string escaped by {@link XmlWriter#encode(String)}.
+     * @param s the string, can be {@code null}
+     * @return this
+     */
+    OsmXmlEncoder appendEncoded(String s) {
+        if (s == null) {
+            return append("null");
+        }
+        byte[] bytes = cache.get(s);
+        if (bytes == null) {
+            bytes = XmlWriter.encode(s).getBytes(StandardCharsets.UTF_8);
+            if (cache.size() < MAX_CACHE_SIZE) {
+                cache.put(s, bytes);
+            }
+        }
+        append(bytes);
+        return this;
+    }
+
+    OsmXmlEncoder append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append(Long.toString(value));
+        }
+        ensureCapacity(20);
+        long v = value;
+        if (v < 0) {
+            buffer[size++] = '-';
+            v = -v;
+        }
+        int start = size;
+        do {
+            buffer[size++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v > 0);
+        reverse(start, size - 1);
+        return this;
+    }
+
+    private void reverse(int from, int to) {
+        for (int i = from, j = to; i < j; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    OsmXmlEncoder newline() {
+        append(NEWLINE);
+        return this;
+    }
+
+    /**
+     * Appends a coordinate as formatted by {@link LatLon#cDdHighPrecisionFormatter}.
+     * @param value the coordinate
+     * @return this
+     */
+    OsmXmlEncoder appendCoordinate(double value) {
+        double abs = Math.abs(value);
+        if (abs < MAX_FIXED_POINT) {
+            double scaled = abs * SCALE;
+            double rounded = Math.rint(scaled);
+            // The product is exact within 1/128, so the rounding is certain away from the midpoints
+            if (Math.abs(scaled - rounded) < 0.45 && (rounded > 0 || value > 0 || (value == 0 && 1 / value > 0))) {
+                long units = (long) rounded;
+                if (value < 0) {
+                    append('-');
+                }
+                append(units / SCALE_LONG);
+                append('.');
+                long fraction = units % SCALE_LONG;
+                if (fraction == 0) {
+                    return append('0');
+                }
+                ensureCapacity(FRACTION_DIGITS);
+                int start = size;
+                for (int i = 0; i < FRACTION_DIGITS; i++) {
+                    buffer[size++] = (byte) ('0' + fraction % 10);
+                    fraction /= 10;
+                }
+                reverse(start, size - 1);
+                while (buffer[size - 1] == '0') {
+                    size--;
+                }
+                return this;
+            }
+        }
+        if (coordinateFormat == null) {
+            coordinateFormat = (DecimalFormat) LatLon.cDdHighPrecisionFormatter.clone();
+        }
+        return append(coordinateFormat.format(value));
+    }
+
+    private OsmXmlEncoder append(char c) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) c;
+        return this;
+    }
+
+    /**
+     * Encodes a primitive, as {@link OsmWriter} visits it.
+     * @param p the primitive
+     */
+    void encode(IPrimitive p) {
+        if (p instanceof INode) {
+            encodeNode((INode) p);
+        } else if (p instanceof IWay) {
+            encodeWay((IWay<?>) p);
+        } else if (p instanceof IRelation) {
+            encodeRelation((IRelation<?>) p);
+        }
+    }
+
+    private void encodeNode(INode n) {
+        if (n.isIncomplete()) return;
+        addCommon(n, "node");
+        if (!withBody) {
+            append("/>").newline();
+        } else {
+            LatLon ll = n.getCoor();
+            if (ll != null) {
+                append(" lat='").appendCoordinate(ll.lat()).append("'");
+                append(" lon='").appendCoordinate(ll.lon()).append("'");
+            }
+            addTags(n, "node", true);
+        }
+    }
+
+    private void encodeWay(IWay<?> w) {
+        if (w.isIncomplete()) return;
+        addCommon(w, "way");
+        if (!withBody) {
+            append("/>").newline();
+        } else {
+            append(">").newline();
+            for (int i = 0; i < w.getNodesCount(); ++i) {
+                append("    <nd ref='").append(w.getNodeId(i)).append("' />").newline();
+            }
+            addTags(w, "way", false);
+        }
+    }
+
+    private void encodeRelation(IRelation<?> r) {
+        if (r.isIncomplete()) return;
+        addCommon(r, "relation");
+        if (!withBody) {
+            append("/>").newline();
+        } else {
+            append(">").newline();
+            for (int i = 0; i < r.getMembersCount(); ++i) {
+                append("    <member type='").append(r.getMemberType(i).getAPIName());
+                append("' ref='").append(r.getMemberId(i));
+                append("' role='").appendEncoded(r.getRole(i)).append("' />").newline();
+            }
+            addTags(r, "relation", false);
+        }
+    }
+
+    private void addTags(IPrimitive osm, String tagname, boolean tagOpen) {
+        if (osm.hasKeys()) {
+            if (tagOpen) {
+                append(">").newline();
+            }
+            List<Entry<String, String>> entries = new ArrayList<>(osm.getKeys().entrySet());
+            entries.sort(OsmWriter.byKeyComparator);
+            for (Entry<String, String> e : entries) {
+                append("    <tag k='").appendEncoded(e.getKey());
+                append("' v='").appendEncoded(e.getValue()).append("' />").newline();
+            }
+            append("  </").append(tagname).append(">").newline();
+        } else if (tagOpen) {
+            append(" />").newline();
+        } else {
+            append("  </").append(tagname).append(">").newline();
+        }
+    }
+
+    private void addCommon(IPrimitive osm, String tagname) {
+        append("  <").append(tagname);
+        if (osm.getUniqueId() != 0) {
+            append(" id='").append(osm.getUniqueId()).append("'");
+        } else
+            throw new IllegalStateException(tr("Unexpected id 0 for osm primitive found"));
+        if (!isOsmChange) {
+            if (!osmConform) {
+                if (osm.isDeleted()) {
+                    append(" action='delete'");
+                } else if (osm.isModified()) {
+                    append(" action='modify'");
+                }
+            }
+            if (!osm.isTimestampEmpty()) {
+                append(" timestamp='").append(String.valueOf(osm.getInstant())).append("'");
+            }
+            User user = osm.getUser();
+            if (user != null) {
+                if (user.isLocalUser()) {
+                    append(" user='").appendEncoded(user.getName()).append("'");
+                } else if (user.isOsmUser()) {
+                    append(" uid='").append(user.getId()).append("'");
+                    append(" user='").appendEncoded(user.getName()).append("'");
+                }
+            }
+            if (withVisible) {
+                append(osm.isVisible() ? " visible='true'" : " visible='false'");
+            }
+        }
+        if (osm.getVersion() != 0) {
+            append(" version='").append(osm.getVersion()).append("'");
+        }
+        if (changeset != null && changeset.getId() != 0) {
+            append(" changeset='").append(changeset.getId()).append("'");
+        } else if (osm.getChangesetId() > 0 && !osm.isNew()) {
+            append(" changeset='").append(osm.getChangesetId()).append("'");
+        }
+    }
+}
@@ -0,0 +1,182 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.conversion.DecimalDegreesCoordinateFormat;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DownloadPolicy;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.UploadPolicy;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Writes a dataset as OSM XML directly to UTF-8 bytes, with the same output as {@link OsmWriter#write(DataSet)}.
+ * <p>
+ * The sorted nodes, ways and relations are split in chunks, encoded in parallel into separate buffers, and written in
+ * order. Only a few chunks are kept in memory at once. This writer is used instead of {@link OsmWriter} unless a
+ * plugin substituted its own writer with {@link OsmWriterFactory#setDefaultFactory}, see {@link #isAvailable()}.
+ * @since 18603
+ */
+public final class ParallelOsmWriter {
+
+    /** Number of primitives encoded by a task */
+    private static final int CHUNK_SIZE = 4096;
+
+    /** Lazy holder of the thread pool encoding the chunks */
+    private static final class Workers {
+        static final ForkJoinPool POOL = newForkJoinPool();
+
+        private Workers() {
+            // Hide default constructor
+        }
+
+        private static ForkJoinPool newForkJoinPool() {
+            try {
+                return Utils.newForkJoinPool("osm.writer.numberOfThreads", "osm-writer-%d", Thread.NORM_PRIORITY);
+            } catch (SecurityException e) {
+                Logging.log(Logging.LEVEL_ERROR, "Unable to create new ForkJoinPool", e);
+                return null;
+            }
+        }
+    }
+
+    private final Map<String, byte[]> cache = new ConcurrentHashMap<>();
+    private final boolean osmConform;
+    private final String version;
+
+    /**
+     * Constructs a new {@code ParallelOsmWriter}.
+     * @param osmConform if {@code true}, prevents modification attributes to be written to the common part
+     * @param version OSM API version (0.6), can be {@code null}
+     */
+    public ParallelOsmWriter(boolean osmConform, String version) {
+        this.osmConform = osmConform;
+        this.version = version == null ? OsmWriter.DEFAULT_API_VERSION : version;
+    }
+
+    /**
+     * Determines if this writer can be used instead of the writers created by {@link OsmWriterFactory}.
+     * @return {@code true} if no plugin substituted its own writer
+     */
+    public static boolean isAvailable() {
+        return OsmWriterFactory.isDefaultFactory();
+    }
+
+    /**
+     * Writes the full OSM file for the given data set (header, data sources, osm data, footer).
+     * The caller must hold the read lock of the dataset.
+     * @param data OSM data set
+     * @param out the output stream, not closed
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(DataSet data, OutputStream out) throws IOException {
+        OsmXmlEncoder encoder = new OsmXmlEncoder(cache, osmConform, false, null);
+        writeHeader(encoder, data.getDownloadPolicy(), data.getUploadPolicy(), data.isLocked());
+        writeDataSources(encoder, data);
+        encoder.writeTo(out);
+        boolean withVisible = UploadPolicy.NORMAL == data.getUploadPolicy();
+        writePrimitives(data.getNodes(), withVisible, out);
+        writePrimitives(data.getWays(), withVisible, out);
+        writePrimitives(data.getRelations(), withVisible, out);
+        encoder.reset();
+        encoder.append("</osm>").newline();
+        encoder.writeTo(out);
+        out.flush();
+    }
+
+    private void writeHeader(OsmXmlEncoder encoder, DownloadPolicy download, UploadPolicy upload, boolean locked) {
+        encoder.append("<?xml version='1.0' encoding='UTF-8'?>").newline();
+        encoder.append("<osm version='").append(version);
+        if (download != null && download != DownloadPolicy.NORMAL) {
+            encoder.append("' download='").append(download.getXmlFlag());
+        }
+        if (upload != null && upload != UploadPolicy.NORMAL) {
+            encoder.append("' upload='").append(upload.getXmlFlag());
+        }
+        if (locked) {
+            encoder.append("' locked='true");
+        }
+        encoder.append("' generator='JOSM'>").newline();
+    }
+
+    private static void writeDataSources(OsmXmlEncoder encoder, DataSet ds) {
+        for (DataSource s : ds.getDataSources()) {
+            encoder.append("  <bounds minlat='").append(DecimalDegreesCoordinateFormat.INSTANCE.latToString(s.bounds.getMin()));
+            encoder.append("' minlon='").append(DecimalDegreesCoordinateFormat.INSTANCE.lonToString(s.bounds.getMin()));
+            encoder.append("' maxlat='").append(DecimalDegreesCoordinateFormat.INSTANCE.latToString(s.bounds.getMax()));
+            encoder.append("' maxlon='").append(DecimalDegreesCoordinateFormat.INSTANCE.lonToString(s.bounds.getMax()));
+            encoder.append("' origin='").appendEncoded(s.origin).append("' />").newline();
+        }
+    }
+
+    private <T extends OsmPrimitive> void writePrimitives(Collection<T> primitives, boolean withVisible, OutputStream out)
+            throws IOException {
+        List<T> sorted = new ArrayList<>(primitives.size());
+        for (T p : primitives) {
+            if (!p.isNewOrUndeleted() || !p.isDeleted()) {
+                sorted.add(p);
+            }
+        }
+        sorted.sort(OsmWriter.byIdComparator);
+        ForkJoinPool pool = Workers.POOL;
+        if (pool == null || sorted.size() <= CHUNK_SIZE) {
+            encodeChunk(sorted, withVisible).writeTo(out);
+            return;
+        }
+        // Encode ahead a few chunks per thread, and write them in order
+        Deque<Future<OsmXmlEncoder>> pending = new ArrayDeque<>();
+        int window = 2 * pool.getParallelism();
+        for (int start = 0; start < sorted.size(); start += CHUNK_SIZE) {
+            List<T> chunk = sorted.subList(start, Math.min(start + CHUNK_SIZE, sorted.size()));
+            pending.add(CompletableFuture.supplyAsync(() -> encodeChunk(chunk, withVisible), pool));
+            if (pending.size() >= window) {
+                write(pending.poll(), out);
+            }
+        }
+        while (!pending.isEmpty()) {
+            write(pending.poll(), out);
+        }
+    }
+
+    private OsmXmlEncoder encodeChunk(List<? extends OsmPrimitive> chunk, boolean withVisible) {
+        OsmXmlEncoder encoder = new OsmXmlEncoder(cache, osmConform, false, null);
+        encoder.setWithVisible(withVisible);
+        for (OsmPrimitive p : chunk) {
+            encoder.encode(p);
+        }
+        return encoder;
+    }
+
+    private static void write(Future<OsmXmlEncoder> chunk, OutputStream out) throws IOException {
+        try {
+            chunk.get().writeTo(out);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,205 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import org.openstreetmap.josm.data.protobuf.ProtobufParser;
+
+/**
+ * A file block of an OSM PBF file: a {@code BlobHeader} followed by its (possibly compressed) {@code Blob}.
+ * <p>
+ * Only the raw bytes are kept when reading, so that uncompressing can be done later, on any thread.
+ * @see <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>
+ * @since 18590
+ */
+final class PbfBlob {
+    /** Type of the block containing the {@code HeaderBlock} */
+    static final String OSM_HEADER = "OSMHeader";
+    /** Type of the blocks containing a {@code PrimitiveBlock} */
+    static final String OSM_DATA = "OSMData";
+
+    /** Maximal size of a {@code BlobHeader}, as defined by the specification */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+    /** Maximal size of a {@code Blob}, as defined by the specification */
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private final String type;
+    private final long offset;
+    private final int headerSize;
+    private final byte[] blob;
+
+    private PbfBlob(String type, long offset, int headerSize, byte[] blob) {
+        this.type = type;
+        this.offset = offset;
+        this.headerSize = headerSize;
+        this.blob = blob;
+    }
+
+    /**
+     * Reads the next file block.
+     * @param in input stream, positioned at the start of a file block
+     * @param offset the offset of the file block in the file
+     * @return the file block, or {@code null} if the end of the stream has been reached
+     * @throws IOException if an I/O error occurs or if the block is malformed
+     */
+    static PbfBlob read(DataInputStream in, long offset) throws IOException {
+        int first = in.read();
+        if (first == -1) {
+            return null;
+        }
+        int headerSize;
+        try {
+            headerSize = (first << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedShort());
+        } catch (EOFException e) {
+            throw new IOException(tr("Truncated PBF block at offset {0}", offset), e);
+        }
+        if (headerSize <= 0 || headerSize > MAX_HEADER_SIZE) {
+            throw new IOException(tr("Invalid PBF block header size {0} at offset {1}", headerSize, offset));
+        }
+        byte[] header = new byte[headerSize];
+        in.readFully(header);
+        String type = null;
+        int dataSize = -1;
+        try (ProtobufParser parser = new ProtobufParser(header)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1:
+                    type = parser.readString();
+                    break;
+                case 3:
+                    dataSize = parser.readVarint32();
+                    break;
+                default: // indexdata and unknown fields
+                    parser.skipField();
+                }
+            }
+        }
+        if (type == null || dataSize < 0 || dataSize > MAX_BLOB_SIZE) {
+            throw new IOException(tr("Invalid PBF block header at offset {0}", offset));
+        }
+        byte[] data = new byte[dataSize];
+        in.readFully(data);
+        return new PbfBlob(type, offset, headerSize, data);
+    }
+
+    /**
+     * Reads the file block at the given offset, as recorded in a {@link PbfIndex}.
+     * @param channel file channel, its position is not modified
+     * @param offset the offset of the file block in the file
+     * @param size the total size of the file block
+     * @return the file block
+     * @throws IOException if an I/O error occurs or if the block is malformed
+     * @since 18591
+     */
+    static PbfBlob read(FileChannel channel, long offset, int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException(tr("Truncated PBF block at offset {0}", offset));
+            }
+        }
+        PbfBlob blob = read(new DataInputStream(new ByteArrayInputStream(buffer.array())), offset);
+        if (blob == null || blob.getSize() != size) {
+            throw new IOException(tr("Invalid PBF block header at offset {0}", offset));
+        }
+        return blob;
+    }
+
+    /**
+     * Returns the block type, usually {@link #OSM_HEADER} or {@link #OSM_DATA}.
+     * @return the block type
+     */
+    String getType() {
+        return type;
+    }
+
+    /**
+     * Returns the offset of this block in the file.
+     * @return the offset of this block in the file
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the total size of this block in the file, including the header and its length.
+     * @return the total size of this block in the file
+     */
+    int getSize() {
+        return Integer.BYTES + headerSize + blob.length;
+    }
+
+    /**
+     * Uncompresses the blob.
+     * @return the uncompressed content of the blob
+     * @throws IOException if the blob is malformed or uses an unsupported compression
+     */
+    byte[] uncompress() throws IOException {
+        ByteBuffer raw = null;
+        ByteBuffer zlib = null;
+        int rawSize = -1;
+        boolean unsupported = false;
+        try (ProtobufParser parser = new ProtobufParser(blob)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1:
+                    raw = parser.readLengthDelimited();
+                    break;
+                case 2:
+                    rawSize = parser.readVarint32();
+                    break;
+                case 3:
+                    zlib = parser.readLengthDelimited();
+                    break;
+                default: // lzma, bzip2, lz4, zstd
+                    parser.skipField();
+                    unsupported = true;
+                }
+            }
+        }
+        if (raw != null) {
+            byte[] result = new byte[raw.remaining()];
+            raw.get(result);
+            return result;
+        } else if (zlib != null && rawSize >= 0 && rawSize <= MAX_BLOB_SIZE) {
+            return inflate(zlib, rawSize);
+        } else if (unsupported) {
+            throw new IOException(tr("Unsupported PBF compression at offset {0}", offset));
+        }
+        throw new IOException(tr("Invalid PBF block at offset {0}", offset));
+    }
+
+    private byte[] inflate(ByteBuffer zlib, int rawSize) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            // the blob is a heap buffer, its slices are backed by its array
+            inflater.setInput(zlib.array(), zlib.arrayOffset() + zlib.position(), zlib.remaining());
+            byte[] result = new byte[rawSize];
+            int length = 0;
+            while (length < rawSize && !inflater.finished()) {
+                int n = inflater.inflate(result, length, rawSize - length);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += n;
+            }
+            if (length != rawSize) {
+                throw new IOException(tr("Invalid PBF block size at offset {0}: expected {1} bytes, got {2}", offset, rawSize, length));
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException(tr("Invalid PBF block at offset {0}", offset), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+
+/**
+ * Reads the data within a bounding box from a local OSM PBF file, so that it can be "downloaded" like data from the OSM API.
+ * @see PbfReader#parseDataSet(File, Bounds, ProgressMonitor)
+ * @since 18591
+ */
+public class PbfBoundingBoxReader extends OsmServerReader {
+
+    private final File file;
+    private final Bounds bounds;
+
+    /**
+     * Constructs a new {@code PbfBoundingBoxReader}.
+     * @param file the PBF file
+     * @param bounds the bounding box of the data to read
+     */
+    public PbfBoundingBoxReader(File file, Bounds bounds) {
+        this.file = Objects.requireNonNull(file, "file");
+        this.bounds = Objects.requireNonNull(bounds, "bounds");
+    }
+
+    @Override
+    public DataSet parseOsm(ProgressMonitor progressMonitor) throws OsmTransferException {
+        if (progressMonitor == null) {
+            progressMonitor = NullProgressMonitor.INSTANCE;
+        }
+        try {
+            return PbfReader.parseDataSet(file, bounds, progressMonitor);
+        } catch (IOException | IllegalDataException e) {
+            if (cancel) {
+                return null;
+            }
+            throw new OsmTransferException(e);
+        }
+    }
+}
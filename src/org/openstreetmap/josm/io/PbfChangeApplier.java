@@ -0,0 +1,292 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Applies <a href="https://wiki.openstreetmap.org/wiki/OsmChange">OsmChange</a> diffs to an indexed PBF file, sorted by
+ * type then ID, to keep a local extract up to date.
+ * <p>
+ * Only the blocks containing created, modified or deleted primitives are decoded and encoded again. The other blocks are
+ * copied as they are, and their index entries are kept: the bounding boxes of the blocks of ways and relations are only
+ * extended with the new bounding boxes of the rewritten blocks they may refer to. The updated file replaces the original
+ * one once complete, so that the extract stays usable while the diff is applied.
+ * @see PbfIndex
+ * @since 18600
+ */
+public final class PbfChangeApplier {
+
+    private static final OsmPrimitiveType[] TYPES = {OsmPrimitiveType.NODE, OsmPrimitiveType.WAY, OsmPrimitiveType.RELATION};
+
+    private final File pbf;
+    private final PbfIndex index;
+    /** Changed primitives, by block to rewrite */
+    private final Map<PbfIndex.Entry, List<OsmPrimitive>> changesByEntry = new IdentityHashMap<>();
+    /** Created primitives whose type has no block in the file */
+    private final Map<OsmPrimitiveType, List<OsmPrimitive>> orphans = new EnumMap<>(OsmPrimitiveType.class);
+
+    private PbfChangeApplier(File pbf, PbfIndex index) {
+        this.pbf = pbf;
+        this.index = index;
+    }
+
+    /**
+     * Applies an OsmChange diff to an indexed PBF file.
+     * @param pbf the PBF file, sorted by type then ID
+     * @param osmChange the OsmChange diff, uncompressed
+     * @param progressMonitor the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     * @return the index of the updated file, also saved in the sidecar file
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalDataException if the PBF file or the diff is invalid
+     */
+    public static PbfIndex apply(File pbf, InputStream osmChange, ProgressMonitor progressMonitor)
+            throws IOException, IllegalDataException {
+        return apply(pbf, OsmChangeReader.parseDataSet(osmChange, null), progressMonitor);
+    }
+
+    /**
+     * Applies the changes read by {@link OsmChangeReader} to an indexed PBF file.
+     * @param pbf the PBF file, sorted by type then ID
+     * @param changes the changes: deleted primitives are removed, other complete primitives are created or replaced
+     * @param progressMonitor the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     * @return the index of the updated file, also saved in the sidecar file
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalDataException if the PBF file is invalid
+     */
+    public static PbfIndex apply(File pbf, DataSet changes, ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
+        Objects.requireNonNull(pbf, "pbf");
+        Objects.requireNonNull(changes, "changes");
+        PbfChangeApplier applier = new PbfChangeApplier(pbf, PbfIndex.forFile(pbf));
+        applier.assign(changes.allPrimitives());
+        if (applier.changesByEntry.isEmpty() && applier.orphans.isEmpty()) {
+            return applier.index;
+        }
+        return applier.rewrite(progressMonitor != null ? progressMonitor : NullProgressMonitor.INSTANCE);
+    }
+
+    /**
+     * Assigns each changed primitive to the block where it is, or where it has to be inserted to keep the file sorted:
+     * the last block of its type whose smallest ID is not greater than its ID.
+     * @param changes the changed primitives
+     */
+    private void assign(Collection<OsmPrimitive> changes) {
+        Map<OsmPrimitiveType, List<PbfIndex.Entry>> entriesByType = new EnumMap<>(OsmPrimitiveType.class);
+        for (OsmPrimitiveType type : TYPES) {
+            entriesByType.put(type, index.getEntries(type));
+        }
+        for (OsmPrimitive p : changes) {
+            if (p.isIncomplete() || p.isNew()) {
+                continue; // referenced by a changed primitive, but not changed itself
+            }
+            List<PbfIndex.Entry> entries = entriesByType.get(p.getType());
+            if (entries.isEmpty()) {
+                if (!p.isDeleted()) {
+                    orphans.computeIfAbsent(p.getType(), t -> new ArrayList<>()).add(p);
+                }
+                continue;
+            }
+            int low = 0;
+            int high = entries.size() - 1;
+            while (low < high) {
+                int mid = (low + high + 1) >>> 1;
+                if (entries.get(mid).getMinId(p.getType()) <= p.getUniqueId()) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            changesByEntry.computeIfAbsent(entries.get(low), e -> new ArrayList<>()).add(p);
+        }
+    }
+
+    private PbfIndex rewrite(ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
+        List<PbfIndex.Entry> oldEntries = index.getEntries();
+        progressMonitor.beginTask(tr("Applying changes to {0}", pbf.getName()), oldEntries.size());
+        Path target = pbf.toPath();
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), pbf.getName(), ".tmp");
+        List<PbfIndex.Entry> newEntries = new ArrayList<>(oldEntries.size());
+        try {
+            try (FileChannel in = FileChannel.open(target, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (PbfIndex.Entry e : oldEntries) {
+                    if (progressMonitor.isCanceled()) {
+                        Logging.info(tr("Canceled applying changes to {0}", pbf.getName()));
+                        return index;
+                    }
+                    if (!e.header) {
+                        writeOrphans(out, newEntries, e);
+                    }
+                    List<OsmPrimitive> changes = changesByEntry.get(e);
+                    if (changes == null) {
+                        newEntries.add(e.moveTo(out.position()));
+                        copy(in, e.offset, e.size, out);
+                    } else {
+                        for (PbfIndex.Entry n : write(out, applyChanges(PbfReader.parseBlock(in, e), changes))) {
+                            n.previousBounds = e.bounds;
+                            newEntries.add(n);
+                        }
+                    }
+                    progressMonitor.worked(1);
+                }
+                writeOrphans(out, newEntries, null);
+                out.force(false);
+            }
+            PbfIndex updated = PbfIndex.update(newEntries);
+            move(tmp, target);
+            try {
+                updated.save(PbfIndex.getIndexFile(pbf), pbf);
+            } catch (IOException e) {
+                Logging.log(Logging.LEVEL_WARN, "Unable to write PBF index " + PbfIndex.getIndexFile(pbf), e);
+            }
+            return updated;
+        } finally {
+            Files.deleteIfExists(tmp);
+            progressMonitor.finishTask();
+        }
+    }
+
+    /**
+     * Writes the created primitives whose type has no block in the file, before the first block of a later type.
+     * @param out the output file channel
+     * @param newEntries the entries of the updated file
+     * @param next the next block to be written, or {@code null} at the end of the file
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalDataException if the written blocks are invalid
+     */
+    private void writeOrphans(FileChannel out, List<PbfIndex.Entry> newEntries, PbfIndex.Entry next)
+            throws IOException, IllegalDataException {
+        for (OsmPrimitiveType type : TYPES) {
+            if (next != null && next.contains(type)) {
+                return;
+            }
+            List<OsmPrimitive> primitives = orphans.remove(type);
+            if (primitives != null) {
+                newEntries.addAll(write(out, applyChanges(new DataSet(), primitives)));
+            }
+        }
+    }
+
+    /**
+     * Returns the primitives of a block after the changes.
+     * @param block the primitives of the block
+     * @param changes the changed primitives of the block
+     * @return the primitives of the block after the changes
+     */
+    private static BlockContent applyChanges(DataSet block, List<OsmPrimitive> changes) {
+        BlockContent result = new BlockContent();
+        for (OsmPrimitive p : block.allPrimitives()) {
+            if (!p.isIncomplete()) {
+                result.put(p);
+            }
+        }
+        for (OsmPrimitive p : changes) {
+            if (p.isDeleted()) {
+                result.get(p.getType()).remove(p.getUniqueId());
+            } else {
+                result.put(p);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Encodes primitives at the current position of the output file.
+     * @param out the output file channel
+     * @param content the primitives to encode
+     * @return the index entries of the written blocks, with their references
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalDataException if the written blocks are invalid
+     */
+    private static List<PbfIndex.Entry> write(FileChannel out, BlockContent content) throws IOException, IllegalDataException {
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        new PbfWriter(blocks, true).writeData(new ArrayList<>(content.nodes.values()), new ArrayList<>(content.ways.values()),
+                new ArrayList<>(content.relations.values()));
+        byte[] bytes = blocks.toByteArray();
+        long offset = out.position();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return PbfReader.indexBlocks(bytes, offset);
+    }
+
+    private static void copy(FileChannel in, long offset, long size, FileChannel out) throws IOException {
+        long copied = 0;
+        while (copied < size) {
+            long n = in.transferTo(offset + copied, size - copied, out);
+            if (n <= 0) {
+                throw new IOException(tr("Truncated PBF block at offset {0}", offset));
+            }
+            copied += n;
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Logging.trace(e);
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * The primitives of a rewritten block, sorted by ID.
+     */
+    private static final class BlockContent {
+        final TreeMap<Long, Node> nodes = new TreeMap<>();
+        final TreeMap<Long, Way> ways = new TreeMap<>();
+        final TreeMap<Long, Relation> relations = new TreeMap<>();
+
+        void put(OsmPrimitive p) {
+            if (p instanceof Node) {
+                nodes.put(p.getUniqueId(), (Node) p);
+            } else if (p instanceof Way) {
+                ways.put(p.getUniqueId(), (Way) p);
+            } else if (p instanceof Relation) {
+                relations.put(p.getUniqueId(), (Relation) p);
+            }
+        }
+
+        TreeMap<Long, ? extends OsmPrimitive> get(OsmPrimitiveType type) {
+            switch (type) {
+            case NODE:
+                return nodes;
+            case WAY:
+                return ways;
+            default:
+                return relations;
+            }
+        }
+    }
+}
@@ -0,0 +1,476 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.tools.Logging;
+
+/**
+ * Block-level spatial index of an OSM PBF file.
+ * <p>
+ * For each {@code OSMData} block, the index records its file offset and size, the element types it contains,
+ * the ID range of each type, and a bounding box. The bounding box of a block of nodes is computed from the node
+ * coordinates. The bounding box of a block of ways or relations is the union of the bounding boxes of the blocks
+ * containing their members; it is only known if the file is sorted by ID, otherwise the block is always read.
+ * <p>
+ * The index is stored next to the PBF file in a sidecar file, see {@link #getIndexFile(File)}.
+ * The sidecar is ignored and rebuilt when the PBF file is modified.
+ * @see PbfReader#parseDataSet(File, Bounds, org.openstreetmap.josm.gui.progress.ProgressMonitor)
+ * @since 18591
+ */
+public final class PbfIndex {
+
+    /** Extension appended to the PBF file name to get the sidecar index file name */
+    public static final String EXTENSION = ".idx";
+
+    private static final String MAGIC = "JOSM-PBF-IDX";
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * An indexed file block.
+     */
+    static final class Entry {
+        final long offset;
+        final int size;
+        final boolean header;
+        private final long[] minIds = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+        private final long[] maxIds = {Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE};
+        Bounds bounds;
+        boolean boundsKnown = true;
+        /** IDs of the nodes and ways referenced by this block, only used while the index is built */
+        long[] nodeRefs;
+        long[] wayRefs;
+        /** Bounding box of a rewritten block before a change, only used while the index is updated */
+        Bounds previousBounds;
+
+        Entry(long offset, int size, boolean header) {
+            this.offset = offset;
+            this.size = size;
+            this.header = header;
+        }
+
+        /**
+         * Returns a copy of this entry, for the same block moved to another offset.
+         * @param newOffset the new offset of the block
+         * @return the moved entry
+         * @since 18600
+         */
+        Entry moveTo(long newOffset) {
+            Entry e = new Entry(newOffset, size, header);
+            System.arraycopy(minIds, 0, e.minIds, 0, minIds.length);
+            System.arraycopy(maxIds, 0, e.maxIds, 0, maxIds.length);
+            e.bounds = bounds != null ? new Bounds(bounds) : null;
+            e.boundsKnown = boundsKnown;
+            return e;
+        }
+
+        /**
+         * Returns the smallest ID of the primitives of the given type contained in this block.
+         * @param type primitive type, {@code NODE}, {@code WAY} or {@code RELATION}
+         * @return the smallest ID, or {@code Long.MAX_VALUE} if the block contains no primitive of this type
+         * @since 18600
+         */
+        long getMinId(OsmPrimitiveType type) {
+            return minIds[type.ordinal()];
+        }
+
+        /**
+         * Adds a primitive contained in this block.
+         * @param type primitive type, {@code NODE}, {@code WAY} or {@code RELATION}
+         * @param id primitive ID
+         */
+        void add(OsmPrimitiveType type, long id) {
+            int i = type.ordinal();
+            minIds[i] = Math.min(minIds[i], id);
+            maxIds[i] = Math.max(maxIds[i], id);
+        }
+
+        /**
+         * Extends the bounding box of this block.
+         * @param ll node coordinates
+         */
+        void extend(LatLon ll) {
+            if (bounds == null) {
+                bounds = new Bounds(ll);
+            } else {
+                bounds.extend(ll);
+            }
+        }
+
+        /**
+         * Extends the bounding box of this block.
+         * @param b bounds to add, can be {@code null}
+         */
+        void extend(Bounds b) {
+            if (b == null) {
+                return;
+            } else if (bounds == null) {
+                bounds = new Bounds(b);
+            } else {
+                bounds.extend(b);
+            }
+        }
+
+        boolean contains(OsmPrimitiveType type) {
+            return minIds[type.ordinal()] <= maxIds[type.ordinal()];
+        }
+
+        boolean contains(OsmPrimitiveType type, long id) {
+            return minIds[type.ordinal()] <= id && id <= maxIds[type.ordinal()];
+        }
+
+        /**
+         * Determines if this block may contain data within the given bounds.
+         * @param b bounds
+         * @return {@code true} if this block has to be read to get the data within the given bounds
+         */
+        boolean mayIntersect(Bounds b) {
+            return !boundsKnown || (bounds != null && bounds.intersects(b));
+        }
+    }
+
+    private final List<Entry> entries;
+
+    private PbfIndex(List<Entry> entries) {
+        this.entries = entries;
+    }
+
+    /**
+     * Returns the sidecar index file of the given PBF file.
+     * @param pbf PBF file
+     * @return the sidecar index file, named after the PBF file with {@link #EXTENSION} appended
+     */
+    public static File getIndexFile(File pbf) {
+        return new File(pbf.getPath() + EXTENSION);
+    }
+
+    /**
+     * Returns the index of the given PBF file. The sidecar index is used when it is up to date, otherwise the index
+     * is built by reading the whole file, then saved in the sidecar if possible.
+     * @param pbf PBF file
+     * @return the index of the PBF file
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalDataException if the PBF file is invalid
+     */
+    public static PbfIndex forFile(File pbf) throws IOException, IllegalDataException {
+        File indexFile = getIndexFile(pbf);
+        if (indexFile.isFile()) {
+            try {
+                PbfIndex index = load(indexFile, pbf);
+                if (index != null) {
+                    return index;
+                }
+                Logging.info("PBF index {0} is outdated", indexFile);
+            } catch (IOException e) {
+                Logging.log(Logging.LEVEL_WARN, "Unable to read PBF index " + indexFile, e);
+            }
+        }
+        PbfIndex index = build(pbf);
+        try {
+            index.save(indexFile, pbf);
+        } catch (IOException e) {
+            Logging.log(Logging.LEVEL_WARN, "Unable to write PBF index " + indexFile, e);
+        }
+        return index;
+    }
+
+    /**
+     * Builds the index of the given PBF file, by decoding all its blocks.
+     * @param pbf PBF file
+     * @return the index of the PBF file
+     * @throws IOException if an I/O error occurs
+     * @throws IllegalDataException if the PBF file is invalid
+     */
+    public static PbfIndex build(File pbf) throws IOException, IllegalDataException {
+        Builder builder = new Builder();
+        try (InputStream in = Files.newInputStream(pbf.toPath())) {
+            new PbfReader().index(in, builder::add);
+        }
+        return new PbfIndex(builder.entries);
+    }
+
+    /**
+     * Builds the index of a file updated by {@link PbfChangeApplier}, where only some blocks have been rewritten.
+     * <p>
+     * The entries of the rewritten blocks have their references and their {@link Entry#previousBounds}, the bounding
+     * boxes of the other blocks are kept. These bounding boxes are extended with the new bounding boxes of the rewritten
+     * blocks they may refer to, i.e. the blocks whose previous bounding box intersects theirs.
+     * @param entries the entries of the updated file, in file order
+     * @return the index of the updated file
+     * @since 18600
+     */
+    static PbfIndex update(List<Entry> entries) {
+        Builder builder = new Builder();
+        entries.forEach(builder::add);
+        for (Entry e : entries) {
+            e.previousBounds = null;
+        }
+        return new PbfIndex(builder.entries);
+    }
+
+    /**
+     * Loads the index from a sidecar file.
+     * @param indexFile sidecar index file
+     * @param pbf indexed PBF file
+     * @return the index, or {@code null} if the sidecar file does not match the current PBF file
+     * @throws IOException if an I/O error occurs or if the index file is invalid
+     */
+    static PbfIndex load(File indexFile, File pbf) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexFile.toPath())))) {
+            if (!MAGIC.equals(in.readUTF()) || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(tr("Invalid PBF index file {0}", indexFile));
+            }
+            if (in.readLong() != pbf.length() || in.readLong() != pbf.lastModified()) {
+                return null;
+            }
+            int size = in.readInt();
+            List<Entry> entries = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                Entry e = new Entry(in.readLong(), in.readInt(), in.readBoolean());
+                for (int t = 0; t < e.minIds.length; t++) {
+                    e.minIds[t] = in.readLong();
+                    e.maxIds[t] = in.readLong();
+                }
+                e.boundsKnown = in.readBoolean();
+                if (in.readBoolean()) {
+                    e.bounds = new Bounds(in.readDouble(), in.readDouble(), in.readDouble(), in.readDouble());
+                }
+                entries.add(e);
+            }
+            return new PbfIndex(entries);
+        }
+    }
+
+    /**
+     * Saves the index to a sidecar file.
+     * @param indexFile sidecar index file
+     * @param pbf indexed PBF file
+     * @throws IOException if an I/O error occurs
+     */
+    void save(File indexFile, File pbf) throws IOException {
+        try (OutputStream os = Files.newOutputStream(indexFile.toPath());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os))) {
+            out.writeUTF(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(pbf.length());
+            out.writeLong(pbf.lastModified());
+            out.writeInt(entries.size());
+            for (Entry e : entries) {
+                out.writeLong(e.offset);
+                out.writeInt(e.size);
+                out.writeBoolean(e.header);
+                for (int t = 0; t < e.minIds.length; t++) {
+                    out.writeLong(e.minIds[t]);
+                    out.writeLong(e.maxIds[t]);
+                }
+                out.writeBoolean(e.boundsKnown);
+                out.writeBoolean(e.bounds != null);
+                if (e.bounds != null) {
+                    out.writeDouble(e.bounds.getMinLat());
+                    out.writeDouble(e.bounds.getMinLon());
+                    out.writeDouble(e.bounds.getMaxLat());
+                    out.writeDouble(e.bounds.getMaxLon());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the indexed blocks, in file order.
+     * @return the indexed blocks
+     */
+    List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * Returns the data blocks containing primitives of the given type.
+     * @param type primitive type, {@code NODE}, {@code WAY} or {@code RELATION}
+     * @return the matching blocks, in file order
+     */
+    List<Entry> getEntries(OsmPrimitiveType type) {
+        return entries.stream().filter(e -> e.contains(type)).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the data blocks containing primitives of the given type that may be within the given bounds.
+     * @param type primitive type, {@code NODE}, {@code WAY} or {@code RELATION}
+     * @param bounds bounds
+     * @return the matching blocks, in file order
+     */
+    List<Entry> getEntries(OsmPrimitiveType type, Bounds bounds) {
+        return entries.stream().filter(e -> e.contains(type) && e.mayIntersect(bounds)).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the data blocks which may contain one of the given primitives.
+     * @param type primitive type, {@code NODE}, {@code WAY} or {@code RELATION}
+     * @param ids sorted primitive IDs
+     * @return the matching blocks, in file order
+     */
+    List<Entry> getEntries(OsmPrimitiveType type, long[] ids) {
+        return entries.stream().filter(e -> e.contains(type) && containsAny(e, type, ids)).collect(Collectors.toList());
+    }
+
+    private static boolean containsAny(Entry e, OsmPrimitiveType type, long[] ids) {
+        int i = Arrays.binarySearch(ids, e.minIds[type.ordinal()]);
+        return i >= 0 || (-i - 1 < ids.length && e.contains(type, ids[-i - 1]));
+    }
+
+    /**
+     * Returns the blocks containing the PBF header.
+     * @return the header blocks
+     */
+    List<Entry> getHeaderEntries() {
+        return entries.stream().filter(e -> e.header).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the bounding box of the nodes of the file.
+     * @return the bounding box of the nodes, or {@code null} if the file contains no node
+     * @since 18598
+     */
+    public Bounds getBounds() {
+        Bounds result = null;
+        for (Entry e : entries) {
+            if (e.contains(OsmPrimitiveType.NODE) && e.bounds != null) {
+                if (result == null) {
+                    result = new Bounds(e.bounds);
+                } else {
+                    result.extend(e.bounds);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of indexed blocks.
+     * @return the number of indexed blocks
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Accumulates the entries in file order, and computes the bounding boxes of the blocks of ways and relations.
+     */
+    private static final class Builder {
+        final List<Entry> entries = new ArrayList<>();
+        final List<Entry> nodeEntries = new ArrayList<>();
+        final List<Entry> wayEntries = new ArrayList<>();
+        /** Rewritten blocks of nodes or ways, and kept blocks of ways whose bounds have been extended */
+        final List<Entry> changedEntries = new ArrayList<>();
+        boolean nodesSorted = true;
+        boolean waysSorted = true;
+
+        void add(Entry e) {
+            entries.add(e);
+            if (e.contains(OsmPrimitiveType.NODE)) {
+                nodesSorted &= append(nodeEntries, e, OsmPrimitiveType.NODE);
+            }
+            if (e.contains(OsmPrimitiveType.WAY)) {
+                waysSorted &= append(wayEntries, e, OsmPrimitiveType.WAY);
+            }
+            if (e.nodeRefs != null) {
+                e.boundsKnown = nodesSorted && resolve(nodeEntries, e, OsmPrimitiveType.NODE, e.nodeRefs);
+                e.nodeRefs = null;
+            }
+            if (e.wayRefs != null) {
+                e.boundsKnown &= waysSorted && resolve(wayEntries, e, OsmPrimitiveType.WAY, e.wayRefs);
+                e.wayRefs = null;
+            }
+            if (e.previousBounds != null) {
+                changedEntries.add(e);
+            } else if (!changedEntries.isEmpty() && !e.header && e.boundsKnown && e.bounds != null
+                    && (e.contains(OsmPrimitiveType.WAY) || e.contains(OsmPrimitiveType.RELATION))) {
+                extendKept(e);
+            }
+        }
+
+        /**
+         * Extends the bounds of a kept block of ways or relations with the bounds of the rewritten blocks it may refer to.
+         * @param e the kept entry
+         */
+        private void extendKept(Entry e) {
+            Bounds before = new Bounds(e.bounds);
+            for (Entry c : changedEntries) {
+                if ((c.contains(OsmPrimitiveType.NODE) || (c.contains(OsmPrimitiveType.WAY) && e.contains(OsmPrimitiveType.RELATION)))
+                        && c.previousBounds.intersects(before)) {
+                    e.extend(c.bounds);
+                }
+            }
+            if (e.contains(OsmPrimitiveType.WAY) && !before.equals(e.bounds)) {
+                // relations referring to the ways of this block have to be extended as well
+                e.previousBounds = before;
+                changedEntries.add(e);
+            }
+        }
+
+        private static boolean append(List<Entry> list, Entry e, OsmPrimitiveType type) {
+            boolean sorted = list.isEmpty() || list.get(list.size() - 1).maxIds[type.ordinal()] < e.minIds[type.ordinal()];
+            list.add(e);
+            return sorted;
+        }
+
+        /**
+         * Extends the bounds of an entry with the bounds of the entries containing the referenced primitives.
+         * @param list entries sorted by ID, with disjoint ID ranges
+         * @param e the entry to update
+         * @param type type of referenced primitives
+         * @param refs sorted IDs of referenced primitives
+         * @return {@code true} if the bounds of all entries containing referenced primitives are known
+         */
+        private static boolean resolve(List<Entry> list, Entry e, OsmPrimitiveType type, long[] refs) {
+            int t = type.ordinal();
+            int i = -1;
+            for (long ref : refs) {
+                if (i >= 0 && i < list.size() && list.get(i).contains(type, ref)) {
+                    continue; // same block as the previous reference
+                }
+                int low = 0;
+                int high = list.size() - 1;
+                i = list.size();
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    Entry m = list.get(mid);
+                    if (m.maxIds[t] < ref) {
+                        low = mid + 1;
+                    } else if (m.minIds[t] > ref) {
+                        high = mid - 1;
+                    } else {
+                        i = mid;
+                        break;
+                    }
+                }
+                if (i < list.size()) {
+                    Entry m = list.get(i);
+                    if (!m.boundsKnown) {
+                        return false;
+                    }
+                    e.extend(m.bounds);
+                }
+                // else: referenced primitive is not in the file (clipped extract)
+            }
+            return true;
+        }
+    }
+}
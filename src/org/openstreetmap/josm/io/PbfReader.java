@@ -0,0 +1,1263 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.openstreetmap.josm.tools.I18n.tr;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.NodeData;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.PrimitiveData;
+import org.openstreetmap.josm.data.osm.PrimitiveId;
+import org.openstreetmap.josm.data.osm.RelationData;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.WayData;
+import org.openstreetmap.josm.data.protobuf.ProtobufParser;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.tools.CheckParameterUtil;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.LongObjectHashMap;
+import org.openstreetmap.josm.tools.Pair;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Parser for OSM PBF files. Read from an input stream and construct a dataset out of it.
+ * <p>
+ * The file blocks are read sequentially, then uncompressed and decoded in parallel.
+ * The decoded blocks are added to the dataset in file order.
+ * <p>
+ * The data within given bounds can also be read from a file, using a block index, see {@link PbfIndex}.
+ * <p>
+ * The JOSM specific attributes written by {@link PbfWriter} are restored.
+ * @see <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>
+ * @since 18590
+ */
+public class PbfReader extends AbstractReader {
+
+    private static final ForkJoinPool THREAD_POOL = newForkJoinPool();
+
+    private static final Set<String> SUPPORTED_FEATURES = new HashSet<>(
+            Arrays.asList("OsmSchema-V0.6", "DenseNodes", "HistoricalInformation"));
+
+    private static final String[] MEMBER_TYPES = {
+            OsmPrimitiveType.NODE.getAPIName(), OsmPrimitiveType.WAY.getAPIName(), OsmPrimitiveType.RELATION.getAPIName()};
+
+    /** Number of nanodegrees in a degree, the coordinate unit of PBF files */
+    private static final double NANO_DEGREES = 1e9;
+
+    private static ForkJoinPool newForkJoinPool() {
+        try {
+            return Utils.newForkJoinPool("pbf.reader.numberOfThreads", "pbf-reader-%d", Thread.NORM_PRIORITY);
+        } catch (SecurityException e) {
+            Logging.log(Logging.LEVEL_ERROR, "Unable to create new ForkJoinPool", e);
+            return null;
+        }
+    }
+
+    /**
+     * constructor (for private and subclasses use only)
+     *
+     * @see #parseDataSet(InputStream, ProgressMonitor)
+     */
+    protected PbfReader() {
+        // Restricts visibility
+    }
+
+    /**
+     * Parses the whole PBF stream.
+     * @param source the source input stream
+     * @throws IllegalDataException if the data is invalid
+     * @throws IOException if an I/O error occurs
+     */
+    protected void parse(InputStream source) throws IllegalDataException, IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source, 64 * 1024));
+        BlockPipeline<PrimitiveBlock> pipeline = new BlockPipeline<>(this::addPrimitiveBlock);
+        try {
+            long offset = 0;
+            PbfBlob blob;
+            while ((blob = PbfBlob.read(in, offset)) != null) {
+                checkCancel();
+                offset += blob.getSize();
+                if (PbfBlob.OSM_HEADER.equals(blob.getType())) {
+                    parseHeaderBlock(blob.uncompress(), null, true);
+                } else if (PbfBlob.OSM_DATA.equals(blob.getType())) {
+                    checkHeader(blob.getOffset());
+                    final PbfBlob dataBlob = blob;
+                    pipeline.submit(() -> parsePrimitiveBlock(dataBlob.uncompress()));
+                } else {
+                    Logging.info(tr("Skipping unknown PBF block type ''{0}'' at offset {1}", blob.getType(), blob.getOffset()));
+                }
+            }
+            pipeline.finish();
+        } finally {
+            pipeline.cancel();
+        }
+    }
+
+    /**
+     * Decodes all blocks of the PBF stream to build its block index.
+     * @param source the source input stream
+     * @param consumer the index entries consumer, called in file order
+     * @throws IllegalDataException if the data is invalid
+     * @throws IOException if an I/O error occurs
+     * @since 18591
+     */
+    void index(InputStream source, Consumer<PbfIndex.Entry> consumer) throws IllegalDataException, IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(source, 64 * 1024));
+        BlockPipeline<PbfIndex.Entry> pipeline = new BlockPipeline<>(consumer::accept);
+        try {
+            long offset = 0;
+            PbfBlob blob;
+            while ((blob = PbfBlob.read(in, offset)) != null) {
+                offset += blob.getSize();
+                if (PbfBlob.OSM_HEADER.equals(blob.getType())) {
+                    parseHeaderBlock(blob.uncompress(), null, true);
+                    final PbfIndex.Entry entry = new PbfIndex.Entry(blob.getOffset(), blob.getSize(), true);
+                    pipeline.submit(() -> entry);
+                } else if (PbfBlob.OSM_DATA.equals(blob.getType())) {
+                    checkHeader(blob.getOffset());
+                    final PbfBlob dataBlob = blob;
+                    pipeline.submit(() -> indexPrimitiveBlock(dataBlob));
+                }
+            }
+            pipeline.finish();
+        } finally {
+            pipeline.cancel();
+        }
+    }
+
+    private PbfIndex.Entry indexPrimitiveBlock(PbfBlob blob) throws IllegalDataException, IOException {
+        PrimitiveBlock block = parsePrimitiveBlock(blob.uncompress());
+        PbfIndex.Entry entry = new PbfIndex.Entry(blob.getOffset(), blob.getSize(), false);
+        for (NodeData nd : block.nodes) {
+            entry.add(OsmPrimitiveType.NODE, nd.getId());
+            if (nd.getCoor() != null) {
+                entry.extend(nd.getCoor());
+            }
+        }
+        Stream.Builder<Long> nodeRefs = Stream.builder();
+        Stream.Builder<Long> wayRefs = Stream.builder();
+        for (int i = 0; i < block.ways.size(); i++) {
+            entry.add(OsmPrimitiveType.WAY, block.ways.get(i).getId());
+            for (long ref : block.wayNodes.get(i)) {
+                nodeRefs.add(ref);
+            }
+        }
+        for (int i = 0; i < block.relations.size(); i++) {
+            entry.add(OsmPrimitiveType.RELATION, block.relations.get(i).getId());
+            for (RelationMemberData member : block.relationMembers.get(i)) {
+                if (member.getMemberType() == OsmPrimitiveType.NODE) {
+                    nodeRefs.add(member.getMemberId());
+                } else if (member.getMemberType() == OsmPrimitiveType.WAY) {
+                    wayRefs.add(member.getMemberId());
+                }
+            }
+        }
+        if (!block.ways.isEmpty() || !block.relations.isEmpty()) {
+            entry.nodeRefs = nodeRefs.build().mapToLong(Long::longValue).sorted().distinct().toArray();
+            entry.wayRefs = wayRefs.build().mapToLong(Long::longValue).sorted().distinct().toArray();
+        }
+        return entry;
+    }
+
+    /**
+     * Reads the data within the given bounds from an indexed PBF file, similarly to the {@code map} call of the OSM API:
+     * the nodes within the bounds, the ways using one of these nodes with all their nodes, and the relations
+     * referring to one of these nodes or ways. Only the blocks that may contain such primitives are read.
+     * @param channel the PBF file channel
+     * @param index the PBF file index
+     * @param bounds the bounds
+     * @throws IllegalDataException if the data is invalid
+     * @throws IOException if an I/O error occurs
+     * @since 18591
+     */
+    protected void parse(FileChannel channel, PbfIndex index, Bounds bounds) throws IllegalDataException, IOException {
+        for (PbfIndex.Entry entry : index.getHeaderEntries()) {
+            parseHeaderBlock(PbfBlob.read(channel, entry.offset, entry.size).uncompress(), bounds, true);
+        }
+        checkHeader(0);
+        // Nodes within the bounds
+        LongObjectHashMap<NodeData> nodes = new LongObjectHashMap<>();
+        readBlocks(channel, index.getEntries(OsmPrimitiveType.NODE, bounds), block -> {
+            for (NodeData nd : block.nodes) {
+                if (nd.getCoor() != null && bounds.contains(nd.getCoor())) {
+                    nodes.put(nd.getId(), nd);
+                }
+            }
+        });
+        // Ways using one of these nodes
+        LongObjectHashMap<WayData> ways = new LongObjectHashMap<>();
+        LongObjectHashMap<long[]> wayNodes = new LongObjectHashMap<>();
+        Set<Long> missingNodes = new HashSet<>();
+        readBlocks(channel, index.getEntries(OsmPrimitiveType.WAY, bounds), block -> {
+            for (int i = 0; i < block.ways.size(); i++) {
+                long[] nodeIds = block.wayNodes.get(i);
+                if (LongStream.of(nodeIds).anyMatch(nodes::containsKey)) {
+                    WayData wd = block.ways.get(i);
+                    ways.put(wd.getId(), wd);
+                    wayNodes.put(wd.getId(), nodeIds);
+                    LongStream.of(nodeIds).filter(id -> !nodes.containsKey(id)).forEach(missingNodes::add);
+                }
+            }
+        });
+        // Relations referring to one of these nodes or ways
+        readBlocks(channel, index.getEntries(OsmPrimitiveType.RELATION, bounds), block -> {
+            for (int i = 0; i < block.relations.size(); i++) {
+                Collection<RelationMemberData> members = block.relationMembers.get(i);
+                if (members.stream().anyMatch(m -> (m.getMemberType() == OsmPrimitiveType.NODE && nodes.containsKey(m.getMemberId()))
+                        || (m.getMemberType() == OsmPrimitiveType.WAY && ways.containsKey(m.getMemberId())))) {
+                    addRelation(block.relations.get(i), members);
+                }
+            }
+        });
+        // Nodes outside the bounds used by the ways
+        if (!missingNodes.isEmpty()) {
+            long[] ids = missingNodes.stream().mapToLong(Long::longValue).sorted().toArray();
+            readBlocks(channel, index.getEntries(OsmPrimitiveType.NODE, ids), block -> {
+                for (NodeData nd : block.nodes) {
+                    if (missingNodes.contains(nd.getId())) {
+                        nodes.put(nd.getId(), nd);
+                    }
+                }
+            });
+        }
+        for (NodeData nd : nodes.values()) {
+            buildPrimitive(nd);
+        }
+        ways.forEach((id, wd) -> addWay(wd, wayNodes.get(id)));
+    }
+
+    /**
+     * Reads primitives by ID from an indexed PBF file, similarly to the object calls of the OSM API.
+     * Only the blocks that may contain the primitives are read. The missing primitives are ignored.
+     * @param channel the PBF file channel
+     * @param index the PBF file index
+     * @param ids the IDs of the primitives to read
+     * @param full if {@code true}, also reads the nodes of the ways, and the members of the relations with the nodes of
+     * the member ways, like the {@code full} calls of the OSM API
+     * @throws IllegalDataException if the data is invalid
+     * @throws IOException if an I/O error occurs
+     * @since 18599
+     */
+    protected void parse(FileChannel channel, PbfIndex index, Collection<? extends PrimitiveId> ids, boolean full)
+            throws IllegalDataException, IOException {
+        parseHeaders(channel, index);
+        Set<Long> nodeIds = new HashSet<>();
+        Set<Long> wayIds = new HashSet<>();
+        Set<Long> relationIds = new HashSet<>();
+        for (PrimitiveId id : ids) {
+            getIds(id.getType(), nodeIds, wayIds, relationIds).add(id.getUniqueId());
+        }
+        // Relations, then their member relations without their members
+        Set<Long> memberWayIds = new HashSet<>();
+        Set<Long> memberRelationIds = new HashSet<>();
+        Set<Long> readRelationIds = new HashSet<>();
+        readBlocks(channel, index.getEntries(OsmPrimitiveType.RELATION, toSortedArray(relationIds)), block -> {
+            for (int i = 0; i < block.relations.size(); i++) {
+                long id = block.relations.get(i).getId();
+                if (relationIds.contains(id) && readRelationIds.add(id)) {
+                    Collection<RelationMemberData> members = block.relationMembers.get(i);
+                    addRelation(block.relations.get(i), members);
+                    if (full) {
+                        for (RelationMemberData m : members) {
+                            getIds(m.getMemberType(), nodeIds, memberWayIds, memberRelationIds).add(m.getMemberId());
+                        }
+                    }
+                }
+            }
+        });
+        memberRelationIds.removeAll(readRelationIds);
+        readBlocks(channel, index.getEntries(OsmPrimitiveType.RELATION, toSortedArray(memberRelationIds)), block -> {
+            for (int i = 0; i < block.relations.size(); i++) {
+                if (memberRelationIds.remove(block.relations.get(i).getId())) {
+                    addRelation(block.relations.get(i), block.relationMembers.get(i));
+                }
+            }
+        });
+        // Ways, with their nodes if needed
+        wayIds.addAll(memberWayIds);
+        LongObjectHashMap<WayData> ways = new LongObjectHashMap<>();
+        LongObjectHashMap<long[]> wayNodes = new LongObjectHashMap<>();
+        readBlocks(channel, index.getEntries(OsmPrimitiveType.WAY, toSortedArray(wayIds)), block -> {
+            for (int i = 0; i < block.ways.size(); i++) {
+                WayData wd = block.ways.get(i);
+                if (wayIds.contains(wd.getId()) && !ways.containsKey(wd.getId())) {
+                    ways.put(wd.getId(), wd);
+                    wayNodes.put(wd.getId(), block.wayNodes.get(i));
+                    if (full) {
+                        LongStream.of(block.wayNodes.get(i)).forEach(nodeIds::add);
+                    }
+                }
+            }
+        });
+        // Nodes
+        LongObjectHashMap<NodeData> nodes = new LongObjectHashMap<>();
+        readBlocks(channel, index.getEntries(OsmPrimitiveType.NODE, toSortedArray(nodeIds)), block -> {
+            for (NodeData nd : block.nodes) {
+                if (nodeIds.contains(nd.getId())) {
+                    nodes.put(nd.getId(), nd);
+                }
+            }
+        });
+        for (NodeData nd : nodes.values()) {
+            buildPrimitive(nd);
+        }
+        ways.forEach((id, wd) -> addWay(wd, wayNodes.get(id)));
+    }
+
+    /**
+     * Reads the ways or relations referring to a primitive from an indexed PBF file, similarly to the {@code ways} and
+     * {@code relations} calls of the OSM API. Only the blocks whose bounding box intersects the one of the block
+     * containing the primitive are read, when the bounding boxes are known.
+     * @param channel the PBF file channel
+     * @param index the PBF file index
+     * @param id the ID of the referred primitive
+     * @param referrerType the type of referrers to read, {@code WAY} or {@code RELATION}
+     * @throws IllegalDataException if the data is invalid
+     * @throws IOException if an I/O error occurs
+     * @since 18599
+     */
+    protected void parseReferrers(FileChannel channel, PbfIndex index, PrimitiveId id, OsmPrimitiveType referrerType)
+            throws IllegalDataException, IOException {
+        parseHeaders(channel, index);
+        List<PbfIndex.Entry> candidates = index.getEntries(referrerType);
+        Bounds bounds = null;
+        for (PbfIndex.Entry entry : index.getEntries(id.getType(), new long[] {id.getUniqueId()})) {
+            if (!entry.boundsKnown || entry.bounds == null || id.getType() == OsmPrimitiveType.RELATION) {
+                // The bounding boxes of the relation blocks do not include the member relations
+                bounds = null;
+                break;
+            } else if (bounds == null) {
+                bounds = new Bounds(entry.bounds);
+            } else {
+                bounds.extend(entry.bounds);
+            }
+        }
+        if (bounds != null) {
+            candidates = index.getEntries(referrerType, bounds);
+        }
+        long ref = id.getUniqueId();
+        readBlocks(channel, candidates, block -> {
+            if (referrerType == OsmPrimitiveType.WAY && id.getType() == OsmPrimitiveType.NODE) {
+                for (int i = 0; i < block.ways.size(); i++) {
+                    if (LongStream.of(block.wayNodes.get(i)).anyMatch(n -> n == ref)) {
+                        addWay(block.ways.get(i), block.wayNodes.get(i));
+                    }
+                }
+            } else if (referrerType == OsmPrimitiveType.RELATION) {
+                for (int i = 0; i < block.relations.size(); i++) {
+                    if (block.relationMembers.get(i).stream()
+                            .anyMatch(m -> m.getMemberType() == id.getType() && m.getMemberId() == ref)) {
+                        addRelation(block.relations.get(i), block.relationMembers.get(i));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Parses the header blocks without adding the data sources, as the primitives read by ID are not all the data
+     * within the bounds of the file.
+     * @param channel the PBF file channel
+     * @param index the PBF file index
+     * @throws IllegalDataException if the header is missing or invalid
+     * @throws IOException if an I/O error occurs
+     */
+    private void parseHeaders(FileChannel channel, PbfIndex index) throws IllegalDataException, IOException {
+        for (PbfIndex.Entry entry : index.getHeaderEntries()) {
+            parseHeaderBlock(PbfBlob.read(channel, entry.offset, entry.size).uncompress(), null, false);
+        }
+        checkHeader(0);
+    }
+
+    private static Set<Long> getIds(OsmPrimitiveType type, Set<Long> nodeIds, Set<Long> wayIds, Set<Long> relationIds) {
+        switch (type) {
+        case NODE:
+            return nodeIds;
+        case WAY:
+            return wayIds;
+        default:
+            return relationIds;
+        }
+    }
+
+    private static long[] toSortedArray(Set<Long> ids) {
+        return ids.stream().mapToLong(Long::longValue).sorted().toArray();
+    }
+
+    private void readBlocks(FileChannel channel, List<PbfIndex.Entry> entries, BlockConsumer<PrimitiveBlock> consumer)
+            throws IllegalDataException, IOException {
+        BlockPipeline<PrimitiveBlock> pipeline = new BlockPipeline<>(consumer);
+        try {
+            for (PbfIndex.Entry entry : entries) {
+                checkCancel();
+                pipeline.submit(() -> parsePrimitiveBlock(PbfBlob.read(channel, entry.offset, entry.size).uncompress()));
+            }
+            pipeline.finish();
+        } finally {
+            pipeline.cancel();
+        }
+    }
+
+    private void checkCancel() throws PbfParsingCanceledException {
+        if (cancel) {
+            cancel = false;
+            throw new PbfParsingCanceledException(tr("Reading was canceled"));
+        }
+    }
+
+    private void checkHeader(long offset) throws IllegalDataException {
+        if (ds.getVersion() == null) {
+            throw new IllegalDataException(tr("Missing PBF header block before data block at offset {0}", offset));
+        }
+    }
+
+    /**
+     * A block decoding task, run concurrently.
+     * @param <T> type of result
+     */
+    @FunctionalInterface
+    private interface BlockTask<T> extends Callable<T> {
+        @Override
+        T call() throws IllegalDataException, IOException;
+    }
+
+    /**
+     * A consumer of decoded blocks, called sequentially in file order.
+     * @param <T> type of decoded blocks
+     */
+    @FunctionalInterface
+    private interface BlockConsumer<T> {
+        void accept(T t) throws IllegalDataException, IOException;
+    }
+
+    /**
+     * Runs block decoding tasks on the thread pool, and passes their results to the consumer in submission order.
+     * The number of pending tasks is bounded, so that the memory used by the decoded blocks remains limited.
+     * @param <T> type of decoded blocks
+     */
+    private static final class BlockPipeline<T> {
+        private final Deque<Future<T>> pending = new ArrayDeque<>();
+        private final int maxPending = THREAD_POOL != null ? 2 * THREAD_POOL.getParallelism() : 0;
+        private final BlockConsumer<T> consumer;
+
+        BlockPipeline(BlockConsumer<T> consumer) {
+            this.consumer = consumer;
+        }
+
+        void submit(BlockTask<T> task) throws IllegalDataException, IOException {
+            if (THREAD_POOL == null) {
+                consumer.accept(task.call());
+                return;
+            }
+            pending.add(THREAD_POOL.submit(task));
+            while (pending.size() >= maxPending) {
+                consumer.accept(waitFor(pending.poll()));
+            }
+        }
+
+        void finish() throws IllegalDataException, IOException {
+            while (!pending.isEmpty()) {
+                consumer.accept(waitFor(pending.poll()));
+            }
+        }
+
+        void cancel() {
+            pending.forEach(f -> f.cancel(true));
+            pending.clear();
+        }
+    }
+
+    private static <T> T waitFor(Future<T> future) throws IllegalDataException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IllegalDataException) {
+                throw (IllegalDataException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalDataException(cause);
+        }
+    }
+
+    private void parseHeaderBlock(byte[] data, Bounds extractBounds, boolean withDataSources) throws IllegalDataException, IOException {
+        Bounds bounds = null;
+        List<DataSource> dataSources = new ArrayList<>();
+        String writingProgram = null;
+        String source = null;
+        boolean locked = false;
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1: // bbox
+                    bounds = parseBBox(parser.readLengthDelimited()).a;
+                    break;
+                case 4: // required_features
+                    String feature = parser.readString();
+                    if (!SUPPORTED_FEATURES.contains(feature)) {
+                        throw new IllegalDataException(tr("Unsupported PBF feature: {0}", feature));
+                    }
+                    break;
+                case 16:
+                    writingProgram = parser.readString();
+                    break;
+                case 17:
+                    source = parser.readString();
+                    break;
+                case PbfWriter.HEADER_DOWNLOAD_POLICY:
+                    parseDownloadPolicy("download", parser.readString());
+                    break;
+                case PbfWriter.HEADER_UPLOAD_POLICY:
+                    parseUploadPolicy("upload", parser.readString());
+                    break;
+                case PbfWriter.HEADER_LOCKED:
+                    locked = parser.readVarint32() != 0;
+                    break;
+                case PbfWriter.HEADER_DATA_SOURCE:
+                    Pair<Bounds, String> dataSource = parseBBox(parser.readLengthDelimited());
+                    dataSources.add(new DataSource(dataSource.a, dataSource.b));
+                    break;
+                default: // optional_features, replication fields
+                    parser.skipField();
+                }
+            }
+        }
+        parseVersion("0.6");
+        if (!withDataSources) {
+            return;
+        } else if (extractBounds != null) {
+            ds.addDataSource(new DataSource(extractBounds, source != null ? source : writingProgram));
+        } else if (!dataSources.isEmpty()) {
+            ds.addDataSources(dataSources);
+        } else if (bounds != null) {
+            ds.addDataSource(new DataSource(bounds, source != null ? source : writingProgram));
+        }
+        // after the data sources, which cannot be added to a read-only data set
+        parseLocked(Boolean.toString(locked));
+    }
+
+    /**
+     * Parses a {@code HeaderBBox}, with the optional origin of the JOSM data sources.
+     * @param data encoded message
+     * @return the bounds and origin
+     * @throws IOException if an I/O error occurs
+     */
+    private static Pair<Bounds, String> parseBBox(ByteBuffer data) throws IOException {
+        long left = 0;
+        long right = 0;
+        long top = 0;
+        long bottom = 0;
+        String origin = null;
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1: left = parser.readZigZag(); break;
+                case 2: right = parser.readZigZag(); break;
+                case 3: top = parser.readZigZag(); break;
+                case 4: bottom = parser.readZigZag(); break;
+                case 5: origin = parser.readString(); break;
+                default: parser.skipField();
+                }
+            }
+        }
+        Bounds bounds = new Bounds(bottom / NANO_DEGREES, left / NANO_DEGREES, top / NANO_DEGREES, right / NANO_DEGREES);
+        if (bounds.isOutOfTheWorld()) {
+            Bounds copy = new Bounds(bounds);
+            bounds.normalize();
+            Logging.info("Bbox " + copy + " is out of the world, normalized to " + bounds);
+        }
+        return new Pair<>(bounds, origin);
+    }
+
+    /**
+     * The decoding context of a {@code PrimitiveBlock}.
+     */
+    private static final class BlockContext {
+        final Map<Long, User> users = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+        long granularity = 100;
+        long latOffset;
+        long lonOffset;
+        long dateGranularity = 1000;
+
+        String getString(long index) throws IllegalDataException {
+            if (index < 0 || index >= strings.size()) {
+                throw new IllegalDataException(tr("Invalid PBF string table index: {0}", index));
+            }
+            return strings.get((int) index);
+        }
+
+        double getLat(long lat) {
+            return (latOffset + granularity * lat) / NANO_DEGREES;
+        }
+
+        double getLon(long lon) {
+            return (lonOffset + granularity * lon) / NANO_DEGREES;
+        }
+    }
+
+    /**
+     * The primitives decoded from a {@code PrimitiveBlock}, not yet added to the dataset.
+     */
+    private static final class PrimitiveBlock {
+        final List<NodeData> nodes = new ArrayList<>();
+        final List<WayData> ways = new ArrayList<>();
+        final List<long[]> wayNodes = new ArrayList<>();
+        final List<RelationData> relations = new ArrayList<>();
+        final List<Collection<RelationMemberData>> relationMembers = new ArrayList<>();
+    }
+
+    /**
+     * Decodes a {@code PrimitiveBlock}. This method is called concurrently from several threads.
+     * @param data uncompressed block
+     * @return the decoded primitives
+     * @throws IllegalDataException if the block is malformed
+     * @throws IOException if an I/O error occurs
+     */
+    private PrimitiveBlock parsePrimitiveBlock(byte[] data) throws IllegalDataException, IOException {
+        BlockContext ctx = new BlockContext();
+        List<ByteBuffer> groups = new ArrayList<>();
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1: // stringtable
+                    try (ProtobufParser stringParser = new ProtobufParser(parser.readLengthDelimited())) {
+                        while (stringParser.nextField()) {
+                            if (stringParser.getField() == 1) {
+                                ctx.strings.add(stringParser.readString());
+                            } else {
+                                stringParser.skipField();
+                            }
+                        }
+                    }
+                    break;
+                case 2: // primitivegroup, decoded once granularity and offsets are known
+                    groups.add(parser.readLengthDelimited());
+                    break;
+                case 17:
+                    ctx.granularity = parser.readVarint64();
+                    break;
+                case 18:
+                    ctx.dateGranularity = parser.readVarint64();
+                    break;
+                case 19:
+                    ctx.latOffset = parser.readVarint64();
+                    break;
+                case 20:
+                    ctx.lonOffset = parser.readVarint64();
+                    break;
+                default: // ignore
+                    parser.skipField();
+                }
+            }
+        }
+        PrimitiveBlock block = new PrimitiveBlock();
+        for (ByteBuffer group : groups) {
+            parsePrimitiveGroup(ctx, block, group);
+        }
+        return block;
+    }
+
+    private void parsePrimitiveGroup(BlockContext ctx, PrimitiveBlock block, ByteBuffer data) throws IllegalDataException, IOException {
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1:
+                    block.nodes.add(parseNode(ctx, parser.readLengthDelimited()));
+                    break;
+                case 2:
+                    parseDenseNodes(ctx, block, parser.readLengthDelimited());
+                    break;
+                case 3:
+                    parseWay(ctx, block, parser.readLengthDelimited());
+                    break;
+                case 4:
+                    parseRelation(ctx, block, parser.readLengthDelimited());
+                    break;
+                default: // changesets
+                    parser.skipField();
+                }
+            }
+        }
+    }
+
+    private NodeData parseNode(BlockContext ctx, ByteBuffer data) throws IllegalDataException, IOException {
+        NodeData nd = new NodeData(0);
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        long[] keys = null;
+        long[] vals = null;
+        ByteBuffer info = null;
+        long flags = 0;
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1:
+                    id = parser.readZigZag();
+                    break;
+                case 2:
+                    keys = parser.readPackedVarints().toArray();
+                    break;
+                case 3:
+                    vals = parser.readPackedVarints().toArray();
+                    break;
+                case 4:
+                    info = parser.readLengthDelimited();
+                    break;
+                case 8:
+                    lat = parser.readZigZag();
+                    break;
+                case 9:
+                    lon = parser.readZigZag();
+                    break;
+                case PbfWriter.FLAGS:
+                    flags = parser.readVarint64();
+                    break;
+                default: // ignore
+                    parser.skipField();
+                }
+            }
+        }
+        parseId(nd, id);
+        if (info != null) {
+            parseInfo(ctx, nd, info);
+        }
+        if ((flags & PbfWriter.FLAG_NO_COORDINATES) == 0) {
+            setCoor(nd, ctx.getLat(lat), ctx.getLon(lon));
+        }
+        parseTags(ctx, nd, keys, vals);
+        parseFlags(nd, flags);
+        return nd;
+    }
+
+    private void parseDenseNodes(BlockContext ctx, PrimitiveBlock block, ByteBuffer data) throws IllegalDataException, IOException {
+        long[] ids = null;
+        long[] lats = null;
+        long[] lons = null;
+        long[] keysVals = null;
+        ByteBuffer denseInfo = null;
+        long[] flags = null;
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1:
+                    ids = parser.readPackedZigZags().toArray();
+                    break;
+                case 5:
+                    denseInfo = parser.readLengthDelimited();
+                    break;
+                case 8:
+                    lats = parser.readPackedZigZags().toArray();
+                    break;
+                case 9:
+                    lons = parser.readPackedZigZags().toArray();
+                    break;
+                case 10:
+                    keysVals = parser.readPackedVarints().toArray();
+                    break;
+                case PbfWriter.FLAGS:
+                    flags = parser.readPackedVarints().toArray();
+                    break;
+                default: // ignore
+                    parser.skipField();
+                }
+            }
+        }
+        if (ids == null) {
+            return;
+        }
+        if (lats == null || lons == null || lats.length != ids.length || lons.length != ids.length
+                || (flags != null && flags.length != ids.length)) {
+            throw new IllegalDataException(tr("Invalid PBF dense nodes: inconsistent array sizes"));
+        }
+        DenseInfo info = denseInfo != null ? parseDenseInfo(ctx, denseInfo, ids.length) : null;
+        long id = 0;
+        long lat = 0;
+        long lon = 0;
+        int kv = 0;
+        for (int i = 0; i < ids.length; i++) {
+            id += ids[i];
+            lat += lats[i];
+            lon += lons[i];
+            NodeData nd = new NodeData(0);
+            parseId(nd, id);
+            if (info != null) {
+                info.apply(ctx, nd, i);
+            }
+            long nodeFlags = flags != null ? flags[i] : 0;
+            if ((nodeFlags & PbfWriter.FLAG_NO_COORDINATES) == 0) {
+                setCoor(nd, ctx.getLat(lat), ctx.getLon(lon));
+            }
+            if (keysVals != null) {
+                while (kv < keysVals.length && keysVals[kv] != 0) {
+                    if (kv + 1 >= keysVals.length) {
+                        throw new IllegalDataException(tr("Invalid PBF dense nodes: inconsistent array sizes"));
+                    }
+                    parseTag(nd, ctx.getString(keysVals[kv]), ctx.getString(keysVals[kv + 1]));
+                    kv += 2;
+                }
+                kv++;
+            }
+            parseFlags(nd, nodeFlags);
+            block.nodes.add(nd);
+        }
+    }
+
+    private void parseWay(BlockContext ctx, PrimitiveBlock block, ByteBuffer data) throws IllegalDataException, IOException {
+        WayData wd = new WayData(0);
+        long id = 0;
+        long[] keys = null;
+        long[] vals = null;
+        long[] refs = null;
+        ByteBuffer info = null;
+        long flags = 0;
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1:
+                    id = parser.readVarint64();
+                    break;
+                case 2:
+                    keys = parser.readPackedVarints().toArray();
+                    break;
+                case 3:
+                    vals = parser.readPackedVarints().toArray();
+                    break;
+                case 4:
+                    info = parser.readLengthDelimited();
+                    break;
+                case 8:
+                    refs = parser.readPackedZigZags().toArray();
+                    break;
+                case PbfWriter.FLAGS:
+                    flags = parser.readVarint64();
+                    break;
+                default: // ignore (including optional locations on ways)
+                    parser.skipField();
+                }
+            }
+        }
+        parseId(wd, id);
+        if (info != null) {
+            parseInfo(ctx, wd, info);
+        }
+        parseTags(ctx, wd, keys, vals);
+        parseFlags(wd, flags);
+        long[] nodeIds = refs != null ? refs : new long[0];
+        // Decode the deltas in place
+        for (int i = 1; i < nodeIds.length; i++) {
+            nodeIds[i] += nodeIds[i - 1];
+        }
+        block.ways.add(wd);
+        block.wayNodes.add(nodeIds);
+    }
+
+    private void parseRelation(BlockContext ctx, PrimitiveBlock block, ByteBuffer data) throws IllegalDataException, IOException {
+        RelationData rd = new RelationData(0);
+        long id = 0;
+        long[] keys = null;
+        long[] vals = null;
+        long[] roles = null;
+        long[] memIds = null;
+        long[] types = null;
+        ByteBuffer info = null;
+        long flags = 0;
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1:
+                    id = parser.readVarint64();
+                    break;
+                case 2:
+                    keys = parser.readPackedVarints().toArray();
+                    break;
+                case 3:
+                    vals = parser.readPackedVarints().toArray();
+                    break;
+                case 4:
+                    info = parser.readLengthDelimited();
+                    break;
+                case 8:
+                    roles = parser.readPackedVarints().toArray();
+                    break;
+                case 9:
+                    memIds = parser.readPackedZigZags().toArray();
+                    break;
+                case 10:
+                    types = parser.readPackedVarints().toArray();
+                    break;
+                case PbfWriter.FLAGS:
+                    flags = parser.readVarint64();
+                    break;
+                default: // ignore
+                    parser.skipField();
+                }
+            }
+        }
+        parseId(rd, id);
+        if (info != null) {
+            parseInfo(ctx, rd, info);
+        }
+        parseTags(ctx, rd, keys, vals);
+        parseFlags(rd, flags);
+        int size = memIds != null ? memIds.length : 0;
+        if ((roles != null ? roles.length : 0) != size || (types != null ? types.length : 0) != size) {
+            throw new IllegalDataException(tr("Invalid PBF relation {0}: inconsistent member array sizes", id));
+        }
+        List<RelationMemberData> members = new ArrayList<>(size);
+        long memId = 0;
+        for (int i = 0; i < size; i++) {
+            memId += memIds[i];
+            int type = (int) types[i];
+            String typeName = type >= 0 && type < MEMBER_TYPES.length ? MEMBER_TYPES[type] : Integer.toString(type);
+            members.add(parseRelationMember(rd, memId, typeName, ctx.getString(roles[i])));
+        }
+        block.relations.add(rd);
+        block.relationMembers.add(members);
+    }
+
+    private void parseInfo(BlockContext ctx, PrimitiveData pd, ByteBuffer data) throws IllegalDataException, IOException {
+        int version = -1;
+        long timestamp = 0;
+        long changeset = -1;
+        long uid = -1;
+        long userSid = 0;
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1: version = parser.readVarint32(); break;
+                case 2: timestamp = parser.readVarint64(); break;
+                case 3: changeset = parser.readVarint64(); break;
+                case 4: uid = parser.readVarint32(); break;
+                case 5: userSid = parser.readVarint64(); break;
+                case 6: pd.setVisible(parser.readVarint64() != 0); break;
+                default: parser.skipField();
+                }
+            }
+        }
+        parseInfo(ctx, pd, version, timestamp, changeset, uid, userSid);
+    }
+
+    private void parseInfo(BlockContext ctx, PrimitiveData pd, int version, long timestamp, long changeset, long uid, long userSid)
+            throws IllegalDataException {
+        if (version >= 0) {
+            parseVersion(pd, version);
+        }
+        if (timestamp != 0) {
+            pd.setRawTimestamp((int) (timestamp * ctx.dateGranularity / 1000));
+        }
+        if (changeset > 0) {
+            parseChangeset(pd, (int) changeset);
+        }
+        String name = userSid == 0 && ctx.strings.isEmpty() ? "" : ctx.getString(userSid);
+        if (uid > 0) {
+            pd.setUser(ctx.users.computeIfAbsent(uid, k -> User.createOsmUser(k, name.isEmpty() ? null : name)));
+        } else if (!name.isEmpty()) {
+            pd.setUser(User.createLocalUser(name));
+        }
+    }
+
+    /**
+     * The decoded {@code DenseInfo} arrays, still delta-coded.
+     */
+    private final class DenseInfo {
+        long[] versions;
+        long[] timestamps;
+        long[] changesets;
+        long[] uids;
+        long[] userSids;
+        long[] visibles;
+        long timestamp;
+        long changeset;
+        long uid;
+        long userSid;
+
+        void apply(BlockContext ctx, PrimitiveData pd, int i) throws IllegalDataException {
+            timestamp += get(timestamps, i, 0);
+            changeset += get(changesets, i, 0);
+            uid += get(uids, i, 0);
+            userSid += get(userSids, i, 0);
+            if (visibles != null) {
+                pd.setVisible(get(visibles, i, 1) != 0);
+            }
+            parseInfo(ctx, pd, (int) get(versions, i, -1), timestamp, changesets != null ? changeset : -1,
+                    uids != null ? uid : -1, userSid);
+        }
+
+        private long get(long[] array, int i, long def) {
+            return array != null && i < array.length ? array[i] : def;
+        }
+    }
+
+    private DenseInfo parseDenseInfo(BlockContext ctx, ByteBuffer data, int size) throws IllegalDataException, IOException {
+        DenseInfo info = new DenseInfo();
+        try (ProtobufParser parser = new ProtobufParser(data)) {
+            while (parser.nextField()) {
+                switch (parser.getField()) {
+                case 1:
+                    info.versions = parser.readPackedVarints().toArray();
+                    break;
+                case 2:
+                    info.timestamps = parser.readPackedZigZags().toArray();
+                    break;
+                case 3:
+                    info.changesets = parser.readPackedZigZags().toArray();
+                    break;
+                case 4:
+                    info.uids = parser.readPackedZigZags().toArray();
+                    break;
+                case 5:
+                    info.userSids = parser.readPackedZigZags().toArray();
+                    break;
+                case 6:
+                    info.visibles = parser.readPackedVarints().toArray();
+                    break;
+                default: // ignore
+                    parser.skipField();
+                }
+            }
+        }
+        for (long[] array : Arrays.asList(info.versions, info.timestamps, info.changesets, info.uids, info.userSids, info.visibles)) {
+            if (array != null && array.length != size) {
+                throw new IllegalDataException(tr("Invalid PBF dense nodes: inconsistent array sizes"));
+            }
+        }
+        return info;
+    }
+
+    private void parseTags(BlockContext ctx, PrimitiveData pd, long[] keys, long[] vals) throws IllegalDataException {
+        int size = keys != null ? keys.length : 0;
+        if ((vals != null ? vals.length : 0) != size) {
+            throw new IllegalDataException(tr("Invalid PBF tags on object with ID {0}: inconsistent array sizes", pd.getUniqueId()));
+        }
+        for (int i = 0; i < size; i++) {
+            parseTag(pd, ctx.getString(keys[i]), ctx.getString(vals[i]));
+        }
+    }
+
+    /**
+     * Applies the JOSM flags, see {@link PbfWriter}.
+     * @param pd primitive
+     * @param flags JOSM flags
+     */
+    private void parseFlags(PrimitiveData pd, long flags) {
+        if ((flags & PbfWriter.FLAG_DELETED) != 0) {
+            parseAction(pd, "delete");
+        } else if ((flags & PbfWriter.FLAG_MODIFIED) != 0) {
+            parseAction(pd, "modify");
+        }
+    }
+
+    private static void setCoor(NodeData nd, double lat, double lon) throws IllegalDataException {
+        if (!nd.isVisible()) {
+            // Deleted nodes of history files have no meaningful coordinates
+            return;
+        }
+        LatLon ll = new LatLon(lat, lon);
+        if (!ll.isValid()) {
+            throw new IllegalDataException(tr("Illegal value for attributes ''lat'', ''lon'' on node with ID {0}. Got ''{1}'', ''{2}''.",
+                    Long.toString(nd.getId()), lat, lon));
+        }
+        nd.setCoor(ll);
+    }
+
+    /**
+     * Adds the primitives decoded from a {@code PrimitiveBlock} to the dataset, in file order.
+     * @param block the decoded block
+     */
+    private void addPrimitiveBlock(PrimitiveBlock block) {
+        for (NodeData nd : block.nodes) {
+            buildPrimitive(nd);
+        }
+        for (int i = 0; i < block.ways.size(); i++) {
+            addWay(block.ways.get(i), block.wayNodes.get(i));
+        }
+        for (int i = 0; i < block.relations.size(); i++) {
+            addRelation(block.relations.get(i), block.relationMembers.get(i));
+        }
+    }
+
+    @Override
+    protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return doParseBinaryDataSet(source, progressMonitor, this::parse);
+    }
+
+    /**
+     * Parse the given input source and return the dataset.
+     *
+     * @param source the source input stream. Must not be null.
+     * @param progressMonitor the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     *
+     * @return the dataset with the parsed data
+     * @throws IllegalDataException if an error was found while parsing the data from the source
+     * @throws IllegalArgumentException if source is null
+     */
+    public static DataSet parseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+        return new PbfReader().doParseDataSet(source, progressMonitor);
+    }
+
+    /**
+     * Reads the data within the given bounds from an indexed PBF file.
+     * <p>
+     * The block index is read from the sidecar file if it is up to date, otherwise it is built and saved, see
+     * {@link PbfIndex#forFile(File)}. Only the blocks that may contain data within the bounds are then read, so the time
+     * needed to read a small area does not depend on the size of the file.
+     *
+     * @param file the PBF file. Must not be null.
+     * @param bounds the bounds of the data to read. Must not be null.
+     * @param progressMonitor the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     *
+     * @return the dataset with the nodes within the bounds, the ways using them and the relations referring to them
+     * @throws IOException if the file cannot be opened
+     * @throws IllegalDataException if an error was found while parsing the data from the file
+     * @since 18591
+     */
+    public static DataSet parseDataSet(File file, Bounds bounds, ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
+        CheckParameterUtil.ensureParameterNotNull(bounds, "bounds");
+        try (IndexedPbfFile pbf = IndexedPbfFile.open(file)) {
+            return pbf.read(bounds, progressMonitor);
+        }
+    }
+
+    /**
+     * Reads the data within the given bounds from an indexed PBF file.
+     * @param channel the PBF file channel, left open
+     * @param index the PBF file index
+     * @param bounds the bounds of the data to read
+     * @param progressMonitor the progress monitor. If null, {@link NullProgressMonitor#INSTANCE} is assumed
+     * @return the dataset with the nodes within the bounds, the ways using them and the relations referring to them
+     * @throws IllegalDataException if an error was found while parsing the data from the file
+     * @since 18598
+     */
+    static DataSet parseDataSet(FileChannel channel, PbfIndex index, Bounds bounds, ProgressMonitor progressMonitor)
+            throws IllegalDataException {
+        PbfReader reader = new PbfReader();
+        // The source stream is not read, the blocks are read from the channel at the offsets given by the index
+        return reader.doParseBinaryDataSet(new ByteArrayInputStream(new byte[0]), progressMonitor,
+                ignored -> reader.parse(channel, index, bounds));
+    }
+
+    /**
+     * Reads primitives by ID from an indexed PBF file.
+     * @param channel the PBF file channel, left open
+     * @param index the PBF file index
+     * @param ids the IDs of the primitives to read
+     * @param full if {@code true}, also reads the nodes of the ways, and the members of the relations
+     * @return the dataset with the primitives found in the file
+     * @throws IllegalDataException if an error was found while parsing the data from the file
+     * @since 18599
+     */
+    static DataSet parseDataSet(FileChannel channel, PbfIndex index, Collection<? extends PrimitiveId> ids, boolean full)
+            throws IllegalDataException {
+        PbfReader reader = new PbfReader();
+        return reader.doParseBinaryDataSet(new ByteArrayInputStream(new byte[0]), null,
+                ignored -> reader.parse(channel, index, ids, full));
+    }
+
+    /**
+     * Reads the ways or relations referring to a primitive from an indexed PBF file.
+     * @param channel the PBF file channel, left open
+     * @param index the PBF file index
+     * @param id the ID of the referred primitive
+     * @param referrerType the type of referrers to read, {@code WAY} or {@code RELATION}
+     * @return the dataset with the referrers
+     * @throws IllegalDataException if an error was found while parsing the data from the file
+     * @since 18599
+     */
+    static DataSet parseReferrersDataSet(FileChannel channel, PbfIndex index, PrimitiveId id, OsmPrimitiveType referrerType)
+            throws IllegalDataException {
+        PbfReader reader = new PbfReader();
+        return reader.doParseBinaryDataSet(new ByteArrayInputStream(new byte[0]), null,
+                ignored -> reader.parseReferrers(channel, index, id, referrerType));
+    }
+
+    /**
+     * Decodes a data block of an indexed PBF file.
+     * @param channel the PBF file channel, left open
+     * @param entry the index entry of the block
+     * @return the dataset with the primitives of the block
+     * @throws IllegalDataException if an error was found while parsing the data from the file
+     * @since 18600
+     */
+    static DataSet parseBlock(FileChannel channel, PbfIndex.Entry entry) throws IllegalDataException {
+        PbfReader reader = new PbfReader();
+        return reader.doParseBinaryDataSet(new ByteArrayInputStream(new byte[0]), null, ignored -> {
+            reader.parseVersion("0.6");
+            reader.addPrimitiveBlock(reader.parsePrimitiveBlock(PbfBlob.read(channel, entry.offset, entry.size).uncompress()));
+        });
+    }
+
+    /**
+     * Builds the index entries of data blocks, without resolving their bounds.
+     * @param blocks the data blocks
+     * @param offset the offset of the first block in the file
+     * @return the index entries of the blocks, in file order
+     * @throws IllegalDataException if the data is invalid
+     * @throws IOException if an I/O error occurs
+     * @since 18600
+     */
+    static List<PbfIndex.Entry> indexBlocks(byte[] blocks, long offset) throws IllegalDataException, IOException {
+        PbfReader reader = new PbfReader();
+        reader.parseVersion("0.6");
+        List<PbfIndex.Entry> entries = new ArrayList<>();
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(blocks));
+        PbfBlob blob;
+        long position = offset;
+        while ((blob = PbfBlob.read(in, position)) != null) {
+            position += blob.getSize();
+            entries.add(reader.indexPrimitiveBlock(blob));
+        }
+        return entries;
+    }
+
+    /**
+     * Exception thrown after user cancelation.
+     */
+    private static final class PbfParsingCanceledException extends IllegalDataException implements ImportCancelException {
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Constructs a new {@code PbfParsingCanceledException}.
+         * @param msg The error message
+         */
+        PbfParsingCanceledException(String msg) {
+            super(msg);
+        }
+    }
+}
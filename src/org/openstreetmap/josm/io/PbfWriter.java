@@ -0,0 +1,660 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DownloadPolicy;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.UploadPolicy;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Save the dataset into a stream in OSM PBF format.
+ * Do not call the constructor directly. Use {@link OsmWriterFactory#createPbfWriter} instead.
+ * <p>
+ * Nodes are written as {@code DenseNodes}. Primitives are sorted by type then ID, and written in blocks of
+ * {@value #BLOCK_SIZE} primitives, each with its own deduplicated string table (most frequent strings first).
+ * IDs, coordinates, node references and metadata are delta coded. Blocks are encoded and zlib compressed in parallel.
+ * <p>
+ * Unless the writer is OSM conform, the JOSM specific attributes are stored in fields unknown to the PBF
+ * specification, which are ignored by other PBF readers:
+ * <ul>
+ * <li>{@code HeaderBlock} field 100 (string): download policy, as the XML {@code download} attribute, if not normal</li>
+ * <li>{@code HeaderBlock} field 101 (string): upload policy, as the XML {@code upload} attribute, if not normal</li>
+ * <li>{@code HeaderBlock} field 102 (bool): {@code true} if the data set is locked</li>
+ * <li>{@code HeaderBlock} field 103 (repeated message): data sources, with the {@code HeaderBBox} fields 1 to 4
+ * and the origin as field 5 (string). They replace the header bounding box when reading.</li>
+ * <li>{@code Node}, {@code Way} and {@code Relation} field 100 (uint32), {@code DenseNodes} field 100 (packed uint32,
+ * one value per node): flags, see {@link #FLAG_MODIFIED}, {@link #FLAG_DELETED} and {@link #FLAG_NO_COORDINATES}</li>
+ * </ul>
+ * The header then lists the {@value #JOSM_FEATURE} optional feature.
+ * Negative IDs of new primitives are written as is, and the {@code visible} flag uses the standard
+ * {@code Info.visible} field, with the {@code HistoricalInformation} required feature.
+ * @see <a href="https://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>
+ * @since 18592
+ */
+public class PbfWriter implements Closeable {
+
+    /** Maximal number of primitives per block */
+    public static final int BLOCK_SIZE = 8000;
+    /** Optional feature listed in the header when JOSM specific attributes are written */
+    public static final String JOSM_FEATURE = "JOSM-Attributes-V1";
+    /** Flag of primitives with the {@code action=modify} XML attribute */
+    public static final int FLAG_MODIFIED = 1;
+    /** Flag of primitives with the {@code action=delete} XML attribute */
+    public static final int FLAG_DELETED = 2;
+    /** Flag of nodes without coordinates (PBF requires coordinates for all nodes) */
+    public static final int FLAG_NO_COORDINATES = 4;
+
+    /** Field number of the JOSM download policy in the {@code HeaderBlock} */
+    static final int HEADER_DOWNLOAD_POLICY = 100;
+    /** Field number of the JOSM upload policy in the {@code HeaderBlock} */
+    static final int HEADER_UPLOAD_POLICY = 101;
+    /** Field number of the JOSM locked flag in the {@code HeaderBlock} */
+    static final int HEADER_LOCKED = 102;
+    /** Field number of the JOSM data sources in the {@code HeaderBlock} */
+    static final int HEADER_DATA_SOURCE = 103;
+    /** Field number of the JOSM flags in {@code Node}, {@code Way}, {@code Relation} and {@code DenseNodes} */
+    static final int FLAGS = 100;
+
+    /** Number of nanodegrees in a degree, the coordinate unit of PBF files */
+    private static final double NANO_DEGREES = 1e9;
+    /** Coordinate granularity, in nanodegrees: coordinates are written with the OSM precision (7 decimals) */
+    private static final int GRANULARITY = 100;
+
+    private static final ForkJoinPool THREAD_POOL = newForkJoinPool();
+
+    private final OutputStream out;
+    private final boolean osmConform;
+    private boolean withVisible;
+
+    private static ForkJoinPool newForkJoinPool() {
+        try {
+            return Utils.newForkJoinPool("pbf.writer.numberOfThreads", "pbf-writer-%d", Thread.NORM_PRIORITY);
+        } catch (SecurityException e) {
+            Logging.log(Logging.LEVEL_ERROR, "Unable to create new ForkJoinPool", e);
+            return null;
+        }
+    }
+
+    /**
+     * Constructs a new {@code PbfWriter}.
+     * Do not call this directly. Use {@link OsmWriterFactory} instead.
+     * @param out output stream
+     * @param osmConform if {@code true}, prevents JOSM specific attributes to be written
+     */
+    protected PbfWriter(OutputStream out, boolean osmConform) {
+        this.out = out;
+        this.osmConform = osmConform;
+    }
+
+    /**
+     * Writes the full PBF file for the given data set (header, data sources, osm data).
+     * <p>
+     * The caller must hold the read lock of the data set: blocks are encoded concurrently.
+     * @param data OSM data set
+     * @throws IOException if an I/O error occurs
+     */
+    public void write(DataSet data) throws IOException {
+        List<Node> nodes = sort(data.getNodes());
+        List<Way> ways = sort(data.getWays());
+        List<Relation> relations = sort(data.getRelations());
+        withVisible = data.allPrimitives().stream().anyMatch(p -> !p.isVisible());
+        writeBlob(PbfBlob.OSM_HEADER, compress(encodeHeader(data)));
+        writeData(nodes, ways, relations);
+    }
+
+    /**
+     * Writes the data blocks of the given primitives, without header.
+     * @param nodes nodes, sorted by ID
+     * @param ways ways, sorted by ID
+     * @param relations relations, sorted by ID
+     * @throws IOException if an I/O error occurs
+     * @since 18600
+     */
+    void writeData(List<Node> nodes, List<Way> ways, List<Relation> relations) throws IOException {
+        Deque<Future<byte[]>> pending = new ArrayDeque<>();
+        int maxPending = THREAD_POOL != null ? 2 * THREAD_POOL.getParallelism() : 0;
+        try {
+            List<Callable<byte[]>> tasks = new ArrayList<>();
+            for (int i = 0; i < nodes.size(); i += BLOCK_SIZE) {
+                List<Node> block = nodes.subList(i, Math.min(nodes.size(), i + BLOCK_SIZE));
+                tasks.add(() -> compress(encodeNodes(block)));
+            }
+            for (int i = 0; i < ways.size(); i += BLOCK_SIZE) {
+                List<Way> block = ways.subList(i, Math.min(ways.size(), i + BLOCK_SIZE));
+                tasks.add(() -> compress(encodeWays(block)));
+            }
+            for (int i = 0; i < relations.size(); i += BLOCK_SIZE) {
+                List<Relation> block = relations.subList(i, Math.min(relations.size(), i + BLOCK_SIZE));
+                tasks.add(() -> compress(encodeRelations(block)));
+            }
+            for (Callable<byte[]> task : tasks) {
+                if (THREAD_POOL == null) {
+                    writeBlob(PbfBlob.OSM_DATA, call(task));
+                    continue;
+                }
+                pending.add(THREAD_POOL.submit(task));
+                while (pending.size() >= maxPending) {
+                    writeBlob(PbfBlob.OSM_DATA, waitFor(pending.poll()));
+                }
+            }
+            while (!pending.isEmpty()) {
+                writeBlob(PbfBlob.OSM_DATA, waitFor(pending.poll()));
+            }
+            out.flush();
+        } finally {
+            pending.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private static <T extends OsmPrimitive> List<T> sort(Collection<T> primitives) {
+        return primitives.stream()
+                .filter(p -> !p.isIncomplete() && (!p.isNewOrUndeleted() || !p.isDeleted()))
+                .sorted(Comparator.comparingLong(OsmPrimitive::getUniqueId))
+                .collect(Collectors.toList());
+    }
+
+    private static byte[] call(Callable<byte[]> task) throws IOException {
+        try {
+            return task.call();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static byte[] waitFor(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void writeBlob(String type, byte[] blob) throws IOException {
+        ProtobufOutput header = new ProtobufOutput();
+        header.writeString(1, type);
+        header.writeVarInt(3, blob.length);
+        byte[] headerBytes = header.toByteArray();
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(headerBytes.length);
+        dos.write(headerBytes);
+        dos.write(blob);
+    }
+
+    private static byte[] compress(byte[] data) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream zlib = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                zlib.write(buffer, 0, deflater.deflate(buffer));
+            }
+            ProtobufOutput blob = new ProtobufOutput();
+            blob.writeVarInt(2, data.length);
+            blob.writeBytes(3, zlib.toByteArray());
+            return blob.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private byte[] encodeHeader(DataSet data) {
+        ProtobufOutput header = new ProtobufOutput();
+        Bounds bounds = null;
+        for (Bounds b : data.getDataSourceBounds()) {
+            if (bounds == null) {
+                bounds = new Bounds(b);
+            } else {
+                bounds.extend(b);
+            }
+        }
+        if (bounds != null) {
+            header.writeBytes(1, encodeBBox(bounds, null));
+        }
+        header.writeString(4, "OsmSchema-V0.6");
+        header.writeString(4, "DenseNodes");
+        if (withVisible) {
+            header.writeString(4, "HistoricalInformation");
+        }
+        header.writeString(5, "Sort.Type_then_ID");
+        if (!osmConform) {
+            header.writeString(5, JOSM_FEATURE);
+        }
+        header.writeString(16, "JOSM");
+        if (data.getDataSources().size() == 1 && data.getDataSources().iterator().next().origin != null) {
+            header.writeString(17, data.getDataSources().iterator().next().origin);
+        }
+        if (!osmConform) {
+            if (data.getDownloadPolicy() != null && data.getDownloadPolicy() != DownloadPolicy.NORMAL) {
+                header.writeString(HEADER_DOWNLOAD_POLICY, data.getDownloadPolicy().getXmlFlag());
+            }
+            if (data.getUploadPolicy() != null && data.getUploadPolicy() != UploadPolicy.NORMAL) {
+                header.writeString(HEADER_UPLOAD_POLICY, data.getUploadPolicy().getXmlFlag());
+            }
+            if (data.isLocked()) {
+                header.writeVarInt(HEADER_LOCKED, 1);
+            }
+            for (DataSource source : data.getDataSources()) {
+                header.writeBytes(HEADER_DATA_SOURCE, encodeBBox(source.bounds, source.origin));
+            }
+        }
+        return header.toByteArray();
+    }
+
+    private static byte[] encodeBBox(Bounds bounds, String origin) {
+        ProtobufOutput bbox = new ProtobufOutput();
+        bbox.writeSInt(1, Math.round(bounds.getMinLon() * NANO_DEGREES));
+        bbox.writeSInt(2, Math.round(bounds.getMaxLon() * NANO_DEGREES));
+        bbox.writeSInt(3, Math.round(bounds.getMaxLat() * NANO_DEGREES));
+        bbox.writeSInt(4, Math.round(bounds.getMinLat() * NANO_DEGREES));
+        if (origin != null) {
+            bbox.writeString(5, origin);
+        }
+        return bbox.toByteArray();
+    }
+
+    /**
+     * The string table of a block. Strings are sorted by decreasing frequency, so that the most used ones get the smallest indexes.
+     */
+    private static final class StringTable {
+        private final Map<String, Integer> counts = new HashMap<>();
+        private Map<String, Integer> indexes;
+
+        void add(String s) {
+            counts.merge(s, 1, Integer::sum);
+        }
+
+        void addCommon(OsmPrimitive p) {
+            p.visitKeys((primitive, key, value) -> {
+                add(key);
+                add(value);
+            });
+            String name = userName(p.getUser());
+            if (!name.isEmpty()) {
+                add(name);
+            }
+        }
+
+        byte[] encode() {
+            counts.remove("");
+            List<String> strings = counts.entrySet().stream()
+                    .sorted(Entry.<String, Integer>comparingByValue().reversed().thenComparing(Entry.comparingByKey()))
+                    .map(Entry::getKey).collect(Collectors.toList());
+            indexes = new HashMap<>(strings.size() * 4 / 3 + 1);
+            ProtobufOutput table = new ProtobufOutput();
+            table.writeString(1, ""); // index 0 is reserved as a delimiter
+            for (int i = 0; i < strings.size(); i++) {
+                indexes.put(strings.get(i), i + 1);
+                table.writeString(1, strings.get(i));
+            }
+            return table.toByteArray();
+        }
+
+        int get(String s) {
+            return s.isEmpty() ? 0 : indexes.get(s);
+        }
+    }
+
+    private static String userName(User user) {
+        return user != null && (user.isOsmUser() || user.isLocalUser()) ? user.getName() : "";
+    }
+
+    private static long userId(User user) {
+        return user != null && user.isOsmUser() ? user.getId() : 0;
+    }
+
+    private static long timestamp(OsmPrimitive p) {
+        return p.isTimestampEmpty() ? 0 : Integer.toUnsignedLong(p.getRawTimestamp());
+    }
+
+    private static long changeset(OsmPrimitive p) {
+        return !p.isNew() && p.getChangesetId() > 0 ? p.getChangesetId() : 0;
+    }
+
+    private static boolean hasInfo(OsmPrimitive p) {
+        return p.getVersion() != 0 || !p.isTimestampEmpty() || changeset(p) != 0 || !userName(p.getUser()).isEmpty() || !p.isVisible();
+    }
+
+    private int flags(OsmPrimitive p) {
+        int flags = 0;
+        if (!osmConform) {
+            if (p.isDeleted()) {
+                flags |= FLAG_DELETED;
+            } else if (p.isModified()) {
+                flags |= FLAG_MODIFIED;
+            }
+        }
+        if (p instanceof Node && !((Node) p).isLatLonKnown()) {
+            flags |= FLAG_NO_COORDINATES;
+        }
+        return flags;
+    }
+
+    private static byte[] primitiveBlock(byte[] stringTable, int groupField, List<byte[]> primitives) {
+        ProtobufOutput group = new ProtobufOutput();
+        for (byte[] primitive : primitives) {
+            group.writeBytes(groupField, primitive);
+        }
+        ProtobufOutput block = new ProtobufOutput();
+        block.writeBytes(1, stringTable);
+        block.writeBytes(2, group.toByteArray());
+        block.writeVarInt(17, GRANULARITY);
+        return block.toByteArray();
+    }
+
+    private byte[] encodeNodes(List<Node> nodes) {
+        StringTable strings = new StringTable();
+        nodes.forEach(strings::addCommon);
+        byte[] stringTable = strings.encode();
+        int size = nodes.size();
+        long[] ids = new long[size];
+        long[] lats = new long[size];
+        long[] lons = new long[size];
+        long[] versions = new long[size];
+        long[] timestamps = new long[size];
+        long[] changesets = new long[size];
+        long[] uids = new long[size];
+        long[] userSids = new long[size];
+        long[] visibles = new long[size];
+        long[] flags = new long[size];
+        LongList keysVals = new LongList();
+        boolean withInfo = false;
+        boolean withTags = false;
+        boolean withFlags = false;
+        long lastId = 0;
+        long lastLat = 0;
+        long lastLon = 0;
+        long lastTimestamp = 0;
+        long lastChangeset = 0;
+        long lastUid = 0;
+        long lastUserSid = 0;
+        for (int i = 0; i < size; i++) {
+            Node n = nodes.get(i);
+            long id = n.getUniqueId();
+            long lat = n.isLatLonKnown() ? Math.round(n.lat() * NANO_DEGREES / GRANULARITY) : 0;
+            long lon = n.isLatLonKnown() ? Math.round(n.lon() * NANO_DEGREES / GRANULARITY) : 0;
+            ids[i] = id - lastId;
+            lats[i] = lat - lastLat;
+            lons[i] = lon - lastLon;
+            lastId = id;
+            lastLat = lat;
+            lastLon = lon;
+            withInfo |= hasInfo(n);
+            // -1 is the "unknown" version, for the nodes without info of a block with info
+            versions[i] = n.getVersion() > 0 ? n.getVersion() : -1;
+            long timestamp = timestamp(n);
+            long changeset = changeset(n);
+            long uid = userId(n.getUser());
+            long userSid = strings.get(userName(n.getUser()));
+            timestamps[i] = timestamp - lastTimestamp;
+            changesets[i] = changeset - lastChangeset;
+            uids[i] = uid - lastUid;
+            userSids[i] = userSid - lastUserSid;
+            lastTimestamp = timestamp;
+            lastChangeset = changeset;
+            lastUid = uid;
+            lastUserSid = userSid;
+            visibles[i] = n.isVisible() ? 1 : 0;
+            flags[i] = flags(n);
+            withFlags |= flags[i] != 0;
+            if (n.hasKeys()) {
+                withTags = true;
+                n.visitKeys((p, key, value) -> {
+                    keysVals.add(strings.get(key));
+                    keysVals.add(strings.get(value));
+                });
+            }
+            keysVals.add(0);
+        }
+        ProtobufOutput dense = new ProtobufOutput();
+        dense.writePacked(1, ids, true);
+        if (withInfo) {
+            ProtobufOutput info = new ProtobufOutput();
+            info.writePacked(1, versions, false);
+            info.writePacked(2, timestamps, true);
+            info.writePacked(3, changesets, true);
+            info.writePacked(4, uids, true);
+            info.writePacked(5, userSids, true);
+            if (withVisible) {
+                info.writePacked(6, visibles, false);
+            }
+            dense.writeBytes(5, info.toByteArray());
+        }
+        dense.writePacked(8, lats, true);
+        dense.writePacked(9, lons, true);
+        if (withTags) {
+            dense.writePacked(10, keysVals.toArray(), false);
+        }
+        if (withFlags) {
+            dense.writePacked(FLAGS, flags, false);
+        }
+        return primitiveBlock(stringTable, 2, Collections.singletonList(dense.toByteArray()));
+    }
+
+    private void encodeCommon(ProtobufOutput message, StringTable strings, OsmPrimitive p) {
+        message.writeVarInt(1, p.getUniqueId());
+        LongList keys = new LongList();
+        LongList vals = new LongList();
+        p.visitKeys((primitive, key, value) -> {
+            keys.add(strings.get(key));
+            vals.add(strings.get(value));
+        });
+        message.writePacked(2, keys.toArray(), false);
+        message.writePacked(3, vals.toArray(), false);
+        if (hasInfo(p)) {
+            ProtobufOutput info = new ProtobufOutput();
+            if (p.getVersion() > 0) {
+                info.writeVarInt(1, p.getVersion());
+            }
+            if (!p.isTimestampEmpty()) {
+                info.writeVarInt(2, timestamp(p));
+            }
+            if (changeset(p) != 0) {
+                info.writeVarInt(3, changeset(p));
+            }
+            User user = p.getUser();
+            if (!userName(user).isEmpty()) {
+                info.writeVarInt(4, userId(user));
+                info.writeVarInt(5, strings.get(userName(user)));
+            }
+            if (withVisible) {
+                info.writeVarInt(6, p.isVisible() ? 1 : 0);
+            }
+            message.writeBytes(4, info.toByteArray());
+        }
+    }
+
+    private byte[] encodeWays(List<Way> ways) {
+        StringTable strings = new StringTable();
+        ways.forEach(strings::addCommon);
+        byte[] stringTable = strings.encode();
+        List<byte[]> messages = new ArrayList<>(ways.size());
+        for (Way w : ways) {
+            ProtobufOutput way = new ProtobufOutput();
+            encodeCommon(way, strings, w);
+            long[] refs = new long[w.getNodesCount()];
+            long last = 0;
+            for (int i = 0; i < refs.length; i++) {
+                long ref = w.getNodeId(i);
+                refs[i] = ref - last;
+                last = ref;
+            }
+            way.writePacked(8, refs, true);
+            int flags = flags(w);
+            if (flags != 0) {
+                way.writeVarInt(FLAGS, flags);
+            }
+            messages.add(way.toByteArray());
+        }
+        return primitiveBlock(stringTable, 3, messages);
+    }
+
+    private byte[] encodeRelations(List<Relation> relations) {
+        StringTable strings = new StringTable();
+        for (Relation r : relations) {
+            strings.addCommon(r);
+            for (int i = 0; i < r.getMembersCount(); i++) {
+                strings.add(r.getRole(i));
+            }
+        }
+        byte[] stringTable = strings.encode();
+        List<byte[]> messages = new ArrayList<>(relations.size());
+        for (Relation r : relations) {
+            ProtobufOutput relation = new ProtobufOutput();
+            encodeCommon(relation, strings, r);
+            int size = r.getMembersCount();
+            long[] roles = new long[size];
+            long[] memIds = new long[size];
+            long[] types = new long[size];
+            long last = 0;
+            for (int i = 0; i < size; i++) {
+                roles[i] = strings.get(r.getRole(i));
+                long memId = r.getMemberId(i);
+                memIds[i] = memId - last;
+                last = memId;
+                types[i] = memberType(r.getMemberType(i));
+            }
+            relation.writePacked(8, roles, false);
+            relation.writePacked(9, memIds, true);
+            relation.writePacked(10, types, false);
+            int flags = flags(r);
+            if (flags != 0) {
+                relation.writeVarInt(FLAGS, flags);
+            }
+            messages.add(relation.toByteArray());
+        }
+        return primitiveBlock(stringTable, 4, messages);
+    }
+
+    private static int memberType(OsmPrimitiveType type) {
+        switch (type) {
+        case NODE:
+            return 0;
+        case WAY:
+        case CLOSEDWAY:
+            return 1;
+        default:
+            return 2;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * A growable array of longs.
+     */
+    private static final class LongList {
+        private long[] values = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * A protobuf message being encoded.
+     */
+    private static final class ProtobufOutput {
+        private final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        private void varInt(long value) {
+            while ((value & ~0x7FL) != 0) {
+                baos.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            baos.write((int) value);
+        }
+
+        private void key(int field, int wireType) {
+            varInt(((long) field << 3) | wireType);
+        }
+
+        void writeVarInt(int field, long value) {
+            key(field, 0);
+            varInt(value);
+        }
+
+        void writeSInt(int field, long value) {
+            writeVarInt(field, zigZag(value));
+        }
+
+        void writeBytes(int field, byte[] bytes) {
+            key(field, 2);
+            varInt(bytes.length);
+            baos.write(bytes, 0, bytes.length);
+        }
+
+        void writeString(int field, String s) {
+            writeBytes(field, s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        void writePacked(int field, long[] values, boolean zigZag) {
+            if (values.length == 0) {
+                return;
+            }
+            ProtobufOutput packed = new ProtobufOutput();
+            for (long value : values) {
+                packed.varInt(zigZag ? zigZag(value) : value);
+            }
+            writeBytes(field, packed.toByteArray());
+        }
+
+        byte[] toByteArray() {
+            return baos.toByteArray();
+        }
+
+        private static long zigZag(long value) {
+            return (value << 1) ^ (value >> 63);
+        }
+    }
+}
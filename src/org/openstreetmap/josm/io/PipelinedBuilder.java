@@ -0,0 +1,132 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Runs the second stage of a reader in another thread: the parser queues build tasks (typically building a primitive
+ * from its {@code PrimitiveData}), which are run in order by a single builder thread.
+ * <p>
+ * The tasks are queued by batches, in a bounded queue: the parser blocks when the builder falls behind.
+ * All the tasks have been run once {@link #finish()} returns, so the parser can then post-process the built primitives.
+ * @since 18595
+ */
+final class PipelinedBuilder implements AutoCloseable {
+
+    /** The number of tasks queued at once */
+    static final int BATCH_SIZE = 1024;
+    /** The maximum number of batches waiting to be built */
+    static final int QUEUE_SIZE = 32;
+
+    private static final ExecutorService EXECUTOR =
+            Executors.newCachedThreadPool(Utils.newThreadFactory("osm-reader-builder-%d", Thread.NORM_PRIORITY));
+    /** Marks the end of the queue */
+    private static final List<Runnable> END = Collections.emptyList();
+
+    private final BlockingQueue<List<Runnable>> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Future<?> builder;
+    private List<Runnable> batch = new ArrayList<>(BATCH_SIZE);
+    private volatile boolean aborted;
+    private boolean finished;
+
+    /**
+     * Constructs a new {@code PipelinedBuilder} and starts its builder thread.
+     */
+    PipelinedBuilder() {
+        this.builder = EXECUTOR.submit(() -> {
+            build();
+            return null;
+        });
+    }
+
+    private void build() throws InterruptedException {
+        RuntimeException failure = null;
+        for (List<Runnable> tasks = queue.take(); tasks != END; tasks = queue.take()) {
+            // Keep on draining the queue after a failure, so that the parser is never blocked
+            if (failure == null && !aborted) {
+                try {
+                    for (Runnable task : tasks) {
+                        task.run();
+                    }
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Queues a build task. Blocks if the builder is too far behind.
+     * @param task the task to run in the builder thread
+     * @throws InterruptedException if interrupted while waiting for the builder
+     */
+    void add(Runnable task) throws InterruptedException {
+        batch.add(task);
+        if (batch.size() >= BATCH_SIZE) {
+            queue.put(batch);
+            batch = new ArrayList<>(BATCH_SIZE);
+        }
+    }
+
+    /**
+     * Waits until all the queued tasks have been run.
+     * @throws IllegalDataException if a task failed with a checked exception
+     * @throws InterruptedException if interrupted while waiting for the builder
+     */
+    void finish() throws IllegalDataException, InterruptedException {
+        if (!batch.isEmpty()) {
+            queue.put(batch);
+            batch = new ArrayList<>(0);
+        }
+        queue.put(END);
+        finished = true;
+        try {
+            builder.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new IllegalDataException(e.getCause());
+        }
+    }
+
+    /**
+     * Stops the builder if the parsing did not finish, and waits for it, so that the built data is not modified anymore.
+     */
+    @Override
+    public void close() {
+        if (finished) {
+            return;
+        }
+        aborted = true;
+        queue.clear();
+        if (!queue.offer(END)) {
+            builder.cancel(true);
+        }
+        try {
+            builder.get();
+        } catch (ExecutionException | RuntimeException e) {
+            Logging.trace(e);
+        } catch (InterruptedException e) {
+            Logging.trace(e);
+            builder.cancel(true);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
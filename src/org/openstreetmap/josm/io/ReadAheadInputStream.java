@@ -0,0 +1,416 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.openstreetmap.josm.tools.Logging;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * An input stream decompressing its source ahead of the reads, in a background thread.
+ * <p>
+ * The decompressed data is passed to the reader in large chunks, through a bounded queue. Files made of several
+ * independent compressed streams are decompressed in parallel:
+ * <ul>
+ * <li>bzip2 files written by {@code pbzip2} (or by concatenating bzip2 files) are split at the stream boundaries;</li>
+ * <li>gzip files made of blocked members ({@code bgzip}, BGZF format) are split at the member boundaries.</li>
+ * </ul>
+ * Other files are decompressed sequentially, but still in the background thread.
+ * @since 18597
+ */
+final class ReadAheadInputStream extends InputStream {
+
+    /** Size of the decompressed chunks, when decompressing sequentially */
+    private static final int CHUNK_SIZE = 1 << 20;
+    /** Maximum size of a compressed bzip2 stream decompressed in parallel. Larger streams are decompressed sequentially. */
+    private static final int MAX_SEGMENT_SIZE = 16 << 20;
+
+    private static final ExecutorService READERS = Executors.newCachedThreadPool(r -> {
+        Thread thread = Utils.newThreadFactory("decompression-reader-%d", Thread.NORM_PRIORITY).newThread(r);
+        // Do not keep the application alive if a stream is not closed
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Marks the end of the data */
+    private static final Future<byte[]> END = CompletableFuture.completedFuture(new byte[0]);
+
+    /** Lazy holder of the thread pool decompressing the independent streams */
+    private static final class Workers {
+        static final ForkJoinPool POOL = newForkJoinPool();
+
+        private Workers() {
+            // Hide default constructor
+        }
+
+        private static ForkJoinPool newForkJoinPool() {
+            try {
+                return Utils.newForkJoinPool("compression.numberOfThreads", "decompression-%d", Thread.NORM_PRIORITY);
+            } catch (SecurityException e) {
+                Logging.log(Logging.LEVEL_ERROR, "Unable to create new ForkJoinPool", e);
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Produces the decompressed data, in order.
+     */
+    @FunctionalInterface
+    private interface Producer {
+        /**
+         * Produces the decompressed data.
+         * @param stream the stream to pass the decompressed chunks to
+         * @throws IOException if an I/O error occurs
+         * @throws InterruptedException if the stream has been closed
+         */
+        void produce(ReadAheadInputStream stream) throws IOException, InterruptedException;
+    }
+
+    private final InputStream source;
+    private final BlockingQueue<Future<byte[]>> queue;
+    private final Future<?> reader;
+    private byte[] chunk = new byte[0];
+    private int position;
+    private boolean eof;
+    private volatile boolean closed;
+
+    private ReadAheadInputStream(InputStream source, int queueSize, Producer producer) {
+        this.source = source;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.reader = READERS.submit(() -> {
+            try {
+                producer.produce(this);
+                queue.put(END);
+            } catch (IOException | RuntimeException | Error e) {
+                // Passed to the reading thread, which would otherwise wait forever
+                CompletableFuture<byte[]> failure = new CompletableFuture<>();
+                failure.completeExceptionally(e);
+                queue.put(failure);
+            } finally {
+                Utils.close(source);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Returns a stream decompressing the given stream in a background thread.
+     * @param decompressed the decompressing stream
+     * @return the read-ahead stream
+     */
+    static InputStream sequential(InputStream decompressed) {
+        return new ReadAheadInputStream(decompressed, 4, s -> s.copy(decompressed));
+    }
+
+    /**
+     * Returns a stream decompressing the given bzip2 data, in parallel if it is made of several streams.
+     * @param in the bzip2 data
+     * @return the decompressed stream
+     * @throws IOException if the data does not start with a bzip2 header
+     */
+    static InputStream bzip2(InputStream in) throws IOException {
+        PushbackInputStream pin = new PushbackInputStream(in, 4);
+        byte[] header = readHeader(pin, 4);
+        if (header.length < 4 || !isBZip2Header(header, 0)) {
+            throw new IOException("Stream is not in the BZip2 format");
+        }
+        pin.unread(header);
+        if (Workers.POOL == null) {
+            return new ReadAheadInputStream(pin, 4, s -> s.copy(new BZip2CompressorInputStream(pin, true)));
+        }
+        return new ReadAheadInputStream(pin, 2 * Workers.POOL.getParallelism(), s -> s.produceBZip2(pin));
+    }
+
+    /**
+     * Returns a stream decompressing the given gzip data, in parallel if it is made of blocked members (BGZF).
+     * @param in the gzip data
+     * @return the decompressed stream
+     * @throws IOException if the data does not start with a gzip header
+     */
+    static InputStream gzip(InputStream in) throws IOException {
+        PushbackInputStream pin = new PushbackInputStream(in, 2);
+        byte[] header = readHeader(pin, 2);
+        if (header.length < 2) {
+            throw new EOFException();
+        } else if ((header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b) {
+            throw new ZipException("Not in GZIP format");
+        }
+        pin.unread(header);
+        if (Workers.POOL == null) {
+            return new ReadAheadInputStream(pin, 4, s -> s.copy(new GZIPInputStream(pin, 1 << 16)));
+        }
+        return new ReadAheadInputStream(pin, 2 * Workers.POOL.getParallelism(), s -> s.produceGZip(pin));
+    }
+
+    private static byte[] readHeader(InputStream in, int length) throws IOException {
+        byte[] header = new byte[length];
+        int n = readFully(in, header, 0, length);
+        return n < length ? Arrays.copyOf(header, n) : header;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int offset, int length) throws IOException {
+        int n = 0;
+        while (n < length) {
+            int read = in.read(buffer, offset + n, length - n);
+            if (read < 0) {
+                break;
+            }
+            n += read;
+        }
+        return n;
+    }
+
+    private void put(Future<byte[]> data) throws InterruptedException {
+        queue.put(data);
+    }
+
+    /**
+     * Copies the given decompressing stream in chunks.
+     * @param in the decompressing stream
+     * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if this stream has been closed
+     */
+    private void copy(InputStream in) throws IOException, InterruptedException {
+        while (true) {
+            byte[] buffer = new byte[CHUNK_SIZE];
+            int n = readFully(in, buffer, 0, buffer.length);
+            if (n > 0) {
+                put(CompletableFuture.completedFuture(n < buffer.length ? Arrays.copyOf(buffer, n) : buffer));
+            }
+            if (n < buffer.length) {
+                return;
+            }
+        }
+    }
+
+    private void submit(byte[] compressed, int length, boolean bzip2) throws InterruptedException {
+        put(Workers.POOL.submit(() -> {
+            InputStream raw = new ByteArrayInputStream(compressed, 0, length);
+            try (InputStream in = bzip2 ? new BZip2CompressorInputStream(raw, true) : new GZIPInputStream(raw)) {
+                return Utils.readBytesFromStream(in);
+            }
+        }));
+    }
+
+    // ------------------------------------------------------------------------------------------------------------------
+    // bzip2
+
+    private static boolean isBZip2Header(byte[] b, int i) {
+        return b[i] == 'B' && b[i + 1] == 'Z' && b[i + 2] == 'h' && b[i + 3] >= '1' && b[i + 3] <= '9';
+    }
+
+    /** The magic number starting a bzip2 block, {@code 0x314159265359} */
+    private static final byte[] BLOCK_MAGIC = {0x31, 0x41, 0x59, 0x26, 0x53, 0x59};
+    /** The magic number ending a bzip2 stream, followed by the stream CRC and padded to a byte boundary */
+    private static final long END_OF_STREAM_MAGIC = 0x177245385090L;
+
+    /**
+     * Determines if a new bzip2 stream starts at the given offset. Besides the stream header, the end of the previous
+     * stream is checked, so that the random data of a compressed block is not mistaken for a stream start.
+     * @param b the compressed data
+     * @param i the offset, at least 11, with at least 10 bytes after it
+     * @return {@code true} if a stream starts at the offset
+     */
+    private static boolean isBZip2StreamStart(byte[] b, int i) {
+        if (!isBZip2Header(b, i)) {
+            return false;
+        }
+        for (int k = 0; k < BLOCK_MAGIC.length; k++) {
+            if (b[i + 4 + k] != BLOCK_MAGIC[k]) {
+                return false;
+            }
+        }
+        // The previous stream ends with the 48 bits magic and the 32 bits CRC, followed by 0 to 7 zero padding bits
+        long endBit = 8L * i;
+        for (int padding = 0; padding < 8; padding++) {
+            if (getBits(b, endBit - padding, padding) == 0
+                    && getBits(b, endBit - padding - 80, 48) == END_OF_STREAM_MAGIC) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long getBits(byte[] b, long bitOffset, int count) {
+        long result = 0;
+        for (long bit = bitOffset; bit < bitOffset + count; bit++) {
+            result = (result << 1) | ((b[(int) (bit >> 3)] >> (7 - (bit & 7))) & 1);
+        }
+        return result;
+    }
+
+    /**
+     * Splits the bzip2 data in streams, decompressed in parallel.
+     * @param in the bzip2 data, starting with a stream header
+     * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if this stream has been closed
+     */
+    private void produceBZip2(InputStream in) throws IOException, InterruptedException {
+        byte[] buffer = new byte[1 << 20];
+        int length = 0;
+        // Offset from which to look for the next stream start
+        int scan = 11;
+        while (true) {
+            if (length == buffer.length) {
+                if (length >= MAX_SEGMENT_SIZE) {
+                    // A large single stream, such as written by bzip2: the rest is decompressed sequentially
+                    copy(new BZip2CompressorInputStream(
+                            new SequenceInputStream(new ByteArrayInputStream(buffer, 0, length), in), true));
+                    return;
+                }
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                if (length > 0) {
+                    submit(buffer, length, true);
+                }
+                return;
+            }
+            length += read;
+            for (; scan + 10 <= length; scan++) {
+                if (isBZip2StreamStart(buffer, scan)) {
+                    // Submit the complete stream, and keep the beginning of the next one
+                    byte[] next = new byte[Math.max(buffer.length, 1 << 20)];
+                    System.arraycopy(buffer, scan, next, 0, length - scan);
+                    submit(buffer, scan, true);
+                    buffer = next;
+                    length -= scan;
+                    scan = 11;
+                }
+            }
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------------------------
+    // gzip
+
+    /** Length of the fixed part of a gzip member header, followed by the length of the extra field */
+    private static final int GZIP_HEADER = 12;
+
+    /**
+     * Returns the total size of a BGZF member, from its header.
+     * @param h the first 18 bytes of the member
+     * @return the member size, or {@code -1} if the member is not a BGZF member
+     */
+    private static int getBgzfMemberSize(byte[] h) {
+        // Magic, deflate method, FEXTRA flag, extra field of 6 bytes with the 'BC' sub-field of 2 bytes
+        if ((h[0] & 0xff) != 0x1f || (h[1] & 0xff) != 0x8b || h[2] != 8 || (h[3] & 4) == 0
+                || h[10] != 6 || h[11] != 0 || h[12] != 'B' || h[13] != 'C' || h[14] != 2 || h[15] != 0) {
+            return -1;
+        }
+        return ((h[16] & 0xff) | (h[17] & 0xff) << 8) + 1;
+    }
+
+    /**
+     * Splits the BGZF data in members, decompressed in parallel. Other gzip data is decompressed sequentially.
+     * @param in the gzip data
+     * @throws IOException if an I/O error occurs
+     * @throws InterruptedException if this stream has been closed
+     */
+    private void produceGZip(InputStream in) throws IOException, InterruptedException {
+        byte[] header = new byte[GZIP_HEADER + 6];
+        while (true) {
+            int n = readFully(in, header, 0, header.length);
+            if (n == 0) {
+                return;
+            }
+            int size = n == header.length ? getBgzfMemberSize(header) : -1;
+            if (size < header.length) {
+                // Not a blocked file, or a truncated one: the rest is decompressed sequentially
+                copy(new GZIPInputStream(new SequenceInputStream(new ByteArrayInputStream(header, 0, n), in), 1 << 16));
+                return;
+            }
+            byte[] member = Arrays.copyOf(header, size);
+            if (readFully(in, member, header.length, size - header.length) < size - header.length) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            submit(member, size, false);
+        }
+    }
+
+    // ------------------------------------------------------------------------------------------------------------------
+    // InputStream
+
+    private boolean nextChunk() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        while (!eof && position == chunk.length) {
+            try {
+                Future<byte[]> next = queue.take();
+                if (next == END) {
+                    eof = true;
+                } else {
+                    chunk = next.get();
+                    position = 0;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                throw new IOException(e.getCause());
+            }
+        }
+        return !eof;
+    }
+
+    @Override
+    public int read() throws IOException {
+        return nextChunk() ? chunk[position++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextChunk()) {
+            return -1;
+        }
+        int n = Math.min(len, chunk.length - position);
+        System.arraycopy(chunk, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return chunk.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            reader.cancel(true);
+            for (Future<byte[]> pending : queue) {
+                pending.cancel(true);
+            }
+            queue.clear();
+            source.close();
+        }
+    }
+}
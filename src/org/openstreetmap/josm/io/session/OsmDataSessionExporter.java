@@ -1,6 +1,7 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.io.session;
 
+import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
@@ -8,9 +9,11 @@ import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 
 import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.preferences.BooleanProperty;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.io.OsmWriter;
 import org.openstreetmap.josm.io.OsmWriterFactory;
+import org.openstreetmap.josm.io.PbfWriter;
 
 /**
  * Session exporter for {@link OsmDataLayer}.
@@ -18,17 +21,34 @@ import org.openstreetmap.josm.io.OsmWriterFactory;
  */
 public class OsmDataSessionExporter extends GenericSessionExporter<OsmDataLayer> {
 
+    /**
+     * Determines if the data included in session files is written in PBF format rather than XML.
+     * @since 18592
+     */
+    public static final BooleanProperty PBF_FORMAT = new BooleanProperty("session.osm-data.pbf", false);
+
+    private final boolean pbf;
+
     /**
      * Constructs a new {@code OsmDataSessionExporter}.
      * @param layer Data layer to export
      */
     public OsmDataSessionExporter(OsmDataLayer layer) { // NO_UCD (test only)
-        super(layer, "osm-data", "0.1", "osm");
+        this(layer, PBF_FORMAT.get());
+    }
+
+    private OsmDataSessionExporter(OsmDataLayer layer, boolean pbf) {
+        super(layer, "osm-data", "0.1", pbf ? "osm.pbf" : "osm");
+        this.pbf = pbf;
     }
 
     @Override
-    protected void addDataFile(OutputStream out) {
-        exportData(layer.data, out);
+    protected void addDataFile(OutputStream out) throws IOException {
+        if (pbf) {
+            exportPbfData(layer.data, out);
+        } else {
+            exportData(layer.data, out);
+        }
     }
 
     /**
@@ -48,4 +68,21 @@ public class OsmDataSessionExporter extends GenericSessionExporter<OsmDataLayer>
             data.getReadLock().unlock();
         }
     }
+
+    /**
+     * Exports OSM data to the given output stream, in PBF format.
+     * @param data data set
+     * @param out output stream, not closed
+     * @throws IOException if an I/O error occurs
+     * @since 18592
+     */
+    public static void exportPbfData(DataSet data, OutputStream out) throws IOException {
+        PbfWriter w = OsmWriterFactory.createPbfWriter(out, false);
+        data.getReadLock().lock();
+        try {
+            w.write(data);
+        } finally {
+            data.getReadLock().unlock();
+        }
+    }
 }
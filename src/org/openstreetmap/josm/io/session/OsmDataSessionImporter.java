@@ -13,6 +13,7 @@ import javax.xml.xpath.XPathExpressionException;
 import javax.xml.xpath.XPathFactory;
 
 import org.openstreetmap.josm.gui.io.importexport.OsmImporter;
+import org.openstreetmap.josm.gui.io.importexport.PbfImporter;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.gui.layer.OsmDataLayer;
 import org.openstreetmap.josm.gui.progress.ProgressMonitor;
@@ -31,7 +32,8 @@ public class OsmDataSessionImporter implements SessionLayerImporter {
     public Layer load(Element elem, ImportSupport support, ProgressMonitor progressMonitor) throws IOException, IllegalDataException {
         checkMetaVersion(elem);
         String fileStr = extractFileName(elem, support);
-        return importData(new OsmImporter(), support, fileStr, progressMonitor);
+        OsmImporter importer = PbfImporter.FILE_FILTER.acceptName(fileStr) ? new PbfImporter() : new OsmImporter();
+        return importData(importer, support, fileStr, progressMonitor);
     }
 
     /**
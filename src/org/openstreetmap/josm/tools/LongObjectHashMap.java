@@ -0,0 +1,368 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.tools;
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.function.LongFunction;
+
+/**
+ * A hash map from primitive {@code long} keys to objects.
+ * <p>
+ * Compared to a {@code HashMap<Long, V>}, the keys are not boxed and there are no entry objects: the keys and values are
+ * stored in two arrays, using open addressing with linear probing. This takes several times less memory for the large
+ * id maps built when reading OSM data.
+ * <p>
+ * {@code null} values are not supported. The iteration order is unspecified. This class is not thread-safe.
+ *
+ * @param <V> the type of the values
+ * @since 18596
+ */
+public class LongObjectHashMap<V> {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    /** Number of entries */
+    private int size;
+    /** {@code values.length - 1}, the capacity is a power of two */
+    private int mask;
+    /** Number of entries triggering a resize */
+    private int threshold;
+    /** Incremented at each structural modification */
+    private int modCount;
+
+    /**
+     * A consumer of map entries.
+     * @param <V> the type of the values
+     */
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        /**
+         * Consumes a map entry.
+         * @param key the key
+         * @param value the value
+         */
+        void accept(long key, V value);
+    }
+
+    /**
+     * Constructs a new, empty {@code LongObjectHashMap}.
+     */
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Constructs a new, empty {@code LongObjectHashMap}, able to hold the given number of entries without resizing.
+     * @param expectedSize the expected number of entries
+     */
+    public LongObjectHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        // Keep the load factor at or below 2/3, probe sequences get long above that
+        long capacity = Math.max(MIN_CAPACITY, (long) expectedSize * 3 / 2 + 1);
+        if (capacity > 1 << 30) {
+            return 1 << 30;
+        }
+        return Integer.highestOneBit((int) capacity - 1) << 1;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        threshold = capacity / 3 * 2;
+    }
+
+    private int slot(long key) {
+        // Ids are often consecutive, so spread them over the table (Fibonacci hashing)
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Returns the index of the slot containing the key, or {@code -1}.
+     * @param key the key
+     * @return the slot index, or {@code -1}
+     */
+    private int find(long key) {
+        for (int i = slot(key); values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Determines if the map is empty.
+     * @return {@code true} if the map contains no entry
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Determines if the map contains the given key.
+     * @param key the key
+     * @return {@code true} if the map contains the key
+     */
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Returns the value mapped to the given key.
+     * @param key the key
+     * @return the value, or {@code null} if the map does not contain the key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int i = find(key);
+        return i >= 0 ? (V) values[i] : null;
+    }
+
+    /**
+     * Maps the given key to the given value.
+     * @param key the key
+     * @param value the value, must not be {@code null}
+     * @return the previous value, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value, "value");
+        int i = slot(key);
+        for (; values[i] != null; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = key;
+        values[i] = value;
+        modCount++;
+        if (++size > threshold) {
+            resize(values.length * 2);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value mapped to the given key, computing and adding it if needed.
+     * @param key the key
+     * @param mappingFunction the function computing the value, must not return {@code null}
+     * @return the current or computed value
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Removes the given key.
+     * @param key the key
+     * @return the removed value, or {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int i = find(key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) values[i];
+        // Shift back the following entries of the probe sequence, instead of leaving a tombstone
+        int hole = i;
+        for (int j = (hole + 1) & mask; values[j] != null; j = (j + 1) & mask) {
+            int home = slot(keys[j]);
+            // Move the entry if its home slot is not between the hole (exclusive) and its current slot (inclusive)
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        values[hole] = null;
+        size--;
+        modCount++;
+        return old;
+    }
+
+    /**
+     * Removes all the entries.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+        modCount++;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] != null) {
+                int i = slot(oldKeys[j]);
+                while (values[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    /**
+     * Performs the given action for each entry.
+     * @param action the action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> action) {
+        int expectedModCount = modCount;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                action.accept(keys[i], (V) values[i]);
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a cursor over the entries, for loops which cannot use {@link #forEach}.
+     * @return a new cursor, positioned before the first entry
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * A cursor over the map entries. The map must not be structurally modified while it is used.
+     */
+    public final class Cursor {
+        private final int expectedModCount = modCount;
+        private int index = -1;
+
+        private Cursor() {
+            // Use LongObjectHashMap#cursor
+        }
+
+        /**
+         * Moves to the next entry.
+         * @return {@code true} if there is a next entry, {@code false} if all entries have been visited
+         */
+        public boolean next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            do {
+                index++;
+            } while (index < values.length && values[index] == null);
+            return index < values.length;
+        }
+
+        /**
+         * Returns the key of the current entry.
+         * @return the key
+         */
+        public long key() {
+            return keys[index];
+        }
+
+        /**
+         * Returns the value of the current entry.
+         * @return the value
+         */
+        @SuppressWarnings("unchecked")
+        public V value() {
+            return (V) values[index];
+        }
+    }
+
+    /**
+     * Returns the keys.
+     * @return a new array containing the keys
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns a read-only view of the values.
+     * @return the values
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private final class ValueIterator implements Iterator<V> {
+        private final int expectedModCount = modCount;
+        private int next = advance(0);
+
+        private int advance(int from) {
+            int i = from;
+            while (i < values.length && values[i] == null) {
+                i++;
+            }
+            return i;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < values.length;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) values[next];
+            next = advance(next + 1);
+            return value;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.openstreetmap.josm.PerformanceTestUtils;
+import org.openstreetmap.josm.data.IQuadBucketType;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * This test compares the performance of {@link QuadBuckets} and {@link PackedRTree}.
+ */
+@Timeout(value = 15*60, unit = TimeUnit.SECONDS)
+class SpatialIndexPerformanceTest {
+    private static final int SEARCH_RUNS = 20000;
+
+    private static List<Node> nodes;
+    private static List<Way> ways;
+    private static List<BBox> searches;
+
+    /**
+     * Prepare the test.
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().projection();
+
+    /**
+     * Load the test data and create the search boxes.
+     * @throws Exception if an error occurs
+     */
+    @BeforeAll
+    public static void load() throws Exception {
+        DataSet ds = PerformanceTestUtils.getNeubrandenburgDataSet();
+        nodes = new ArrayList<>(ds.getNodes());
+        ways = new ArrayList<>(ds.getWays());
+        BBox bounds = new BBox();
+        nodes.stream().filter(Node::isLatLonKnown).forEach(n -> bounds.add(n.lon(), n.lat()));
+        Random random = new Random(42);
+        searches = new ArrayList<>(SEARCH_RUNS);
+        for (int i = 0; i < SEARCH_RUNS; i++) {
+            // from a few meters to a few kilometers
+            double size = Math.pow(10, -4 + 2.5 * random.nextDouble());
+            double lon = bounds.getMinLon() + random.nextDouble() * bounds.getWidth();
+            double lat = bounds.getMinLat() + random.nextDouble() * bounds.getHeight();
+            searches.add(new BBox(lon, lat, lon + size, lat + size));
+        }
+    }
+
+    private static <T extends IQuadBucketType> void fill(SpatialIndex<T> index, List<T> content) {
+        index.addAll(content);
+        if (index instanceof PackedRTree) {
+            ((PackedRTree<T>) index).pack();
+        }
+    }
+
+    private static <T extends IQuadBucketType> void measure(String name, Supplier<SpatialIndex<T>> factory, List<T> content) {
+        PerformanceTestUtils.runPerformanceTest(name + " fill", () -> fill(factory.get(), content));
+        SpatialIndex<T> index = factory.get();
+        fill(index, content);
+        PerformanceTestUtils.runPerformanceTest(name + " search", () -> {
+            for (BBox bbox : searches) {
+                index.search(bbox);
+            }
+        });
+    }
+
+    /**
+     * Measures filling and searching nodes.
+     */
+    @Test
+    void testNodes() {
+        measure("QuadBuckets nodes", QuadBuckets::new, nodes);
+        measure("PackedRTree nodes", PackedRTree::new, nodes);
+        assertSameResults(nodes);
+    }
+
+    /**
+     * Measures filling and searching ways.
+     */
+    @Test
+    void testWays() {
+        measure("QuadBuckets ways", QuadBuckets::new, ways);
+        measure("PackedRTree ways", PackedRTree::new, ways);
+        assertSameResults(ways);
+    }
+
+    private static <T extends IQuadBucketType> void assertSameResults(List<T> content) {
+        SpatialIndex<T> expected = new QuadBuckets<>();
+        SpatialIndex<T> actual = new PackedRTree<>();
+        fill(expected, content);
+        fill(actual, content);
+        for (BBox bbox : searches) {
+            assertEquals(expected.search(bbox).size(), actual.search(bbox).size());
+        }
+    }
+}
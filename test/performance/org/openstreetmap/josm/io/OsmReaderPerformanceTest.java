@@ -56,6 +56,20 @@ class OsmReaderPerformanceTest {
         runTest(".osm-file", true);
     }
 
+    /**
+     * Simulates a plain read of a .osm file (from memory), building the primitives in the parsing thread
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testPlainSequential() throws Exception {
+        OsmReader.PIPELINED.put(false);
+        try {
+            runTest(".osm-file (sequential)", true);
+        } finally {
+            OsmReader.PIPELINED.remove();
+        }
+    }
+
     private void runTest(String what, boolean decompressBeforeRead) throws IllegalDataException, IOException {
         InputStream is = loadFile(decompressBeforeRead);
         PerformanceTestTimer timer = PerformanceTestUtils.startTimer("load " + what + " " + TIMES + " times");
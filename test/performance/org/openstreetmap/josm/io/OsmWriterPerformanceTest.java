@@ -1,6 +1,8 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.io;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -10,8 +12,11 @@ import org.openstreetmap.josm.PerformanceTestUtils;
 import org.openstreetmap.josm.PerformanceTestUtils.PerformanceTestTimer;
 import org.openstreetmap.josm.data.osm.DataSet;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -57,4 +62,26 @@ class OsmWriterPerformanceTest {
         timer.done();
     }
 
+    /**
+     * Tests writing OSM data with {@link ParallelOsmWriter}, and checks that the output is the same as with {@link OsmWriter}
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testParallelWriter() throws Exception {
+        PerformanceTestTimer timer = PerformanceTestUtils.startTimer("write .osm-file in parallel " + TIMES + " times");
+        byte[] bytes = null;
+        for (int i = 0; i < TIMES; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new ParallelOsmWriter(true, OsmWriter.DEFAULT_API_VERSION).write(neubrandenburgDataSet, out);
+            bytes = out.toByteArray();
+        }
+        timer.done();
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        try (OsmWriter osmWriter = OsmWriterFactory.createOsmWriter(
+                new PrintWriter(new OutputStreamWriter(expected, StandardCharsets.UTF_8)), true, OsmWriter.DEFAULT_API_VERSION)) {
+            osmWriter.write(neubrandenburgDataSet);
+        }
+        assertArrayEquals(expected.toByteArray(), bytes);
+    }
 }
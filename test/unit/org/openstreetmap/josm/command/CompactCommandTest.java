@@ -0,0 +1,225 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.command;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.openstreetmap.josm.command.CommandTest.CommandTestDataWithRelation;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link CompactCommand} class.
+ */
+class CompactCommandTest {
+    /**
+     * We need prefs for nodes.
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().i18n().projection();
+    private CommandTestDataWithRelation testData;
+
+    /**
+     * Set up the test data.
+     */
+    @BeforeEach
+    public void createTestData() {
+        testData = new CommandTestDataWithRelation();
+    }
+
+    private static List<Object> getState(OsmPrimitive... primitives) {
+        List<Object> state = new ArrayList<>();
+        for (OsmPrimitive osm : primitives) {
+            state.add(osm.getKeys());
+            state.add(osm.isModified());
+            if (osm instanceof Node) {
+                state.add(((Node) osm).getCoor());
+            } else if (osm instanceof Way) {
+                state.add(((Way) osm).getNodes());
+            } else {
+                state.add(((Relation) osm).getMembers());
+            }
+        }
+        return state;
+    }
+
+    private static CompactCommand executeAndCompact(Command command, OsmPrimitive... primitives) {
+        List<Object> before = getState(primitives);
+        command.executeCommand();
+        List<Object> after = getState(primitives);
+        CompactCommand compact = CompactCommand.compact(command);
+        assertNotNull(compact);
+        assertEquals(command.getDescriptionText(), compact.getDescriptionText());
+        assertEquals(new HashSet<>(command.getParticipatingPrimitives()), new HashSet<>(compact.getParticipatingPrimitives()));
+        compact.undoCommand();
+        assertEquals(before, getState(primitives));
+        compact.executeCommand();
+        assertEquals(after, getState(primitives));
+        compact.undoCommand();
+        assertEquals(before, getState(primitives));
+        compact.executeCommand();
+        return compact;
+    }
+
+    /**
+     * Test compacting tag changes.
+     */
+    @Test
+    void testChangeTags() {
+        Map<String, String> tags = new HashMap<>();
+        tags.put("existing", null);
+        tags.put("new", "value");
+        executeAndCompact(new ChangePropertyCommand(Arrays.asList(testData.existingNode, testData.existingWay), tags),
+                testData.existingNode, testData.existingWay);
+        executeAndCompact(new ChangePropertyKeyCommand(Arrays.asList(testData.existingNode, testData.existingWay), "new", "other"),
+                testData.existingNode, testData.existingWay);
+    }
+
+    /**
+     * Test compacting a sequence of changes of way nodes and relation members.
+     */
+    @Test
+    void testSequence() {
+        Node node = testData.createNode(7);
+        Way way = testData.existingWay;
+        Relation relation = testData.existingRelation;
+        SequenceCommand sequence = new SequenceCommand("sequence",
+                new ChangeNodesCommand(way, Arrays.asList(testData.existingNode, node, testData.existingNode2)),
+                new ChangeMembersCommand(relation, Arrays.asList(new RelationMember("", node))),
+                new RemoveNodesCommand(way, new HashSet<>(Arrays.asList(testData.existingNode))));
+        CompactCommand compact = executeAndCompact(sequence, way, relation);
+        assertEquals(3, compact.getChildren().size());
+    }
+
+    /**
+     * Test compacting node moves, including the changes done after the command has been created.
+     */
+    @Test
+    void testMove() {
+        MoveCommand move = new MoveCommand(testData.existingNode, 1, 1);
+        List<Object> before = getState(testData.existingNode);
+        move.executeCommand();
+        move.moveAgain(1, 2);
+        List<Object> after = getState(testData.existingNode);
+        CompactCommand compact = CompactCommand.compact(move);
+        compact.undoCommand();
+        assertEquals(before, getState(testData.existingNode));
+        compact.executeCommand();
+        assertEquals(after, getState(testData.existingNode));
+    }
+
+    /**
+     * Test compacting {@link ChangeCommand}, which can only be done if it only changes tags and geometry.
+     */
+    @Test
+    void testChangeCommand() {
+        Node changed = new Node(testData.existingNode);
+        changed.setCoor(new LatLon(10, 20));
+        changed.put("name", "test");
+        executeAndCompact(new ChangeCommand(testData.existingNode, changed), testData.existingNode);
+
+        Node otherVersion = new Node(testData.existingNode);
+        otherVersion.setOsmId(otherVersion.getId(), 5);
+        ChangeCommand change = new ChangeCommand(testData.existingNode, otherVersion);
+        change.executeCommand();
+        assertNull(CompactCommand.compact(change));
+    }
+
+    /**
+     * Test that other commands are not compacted.
+     */
+    @Test
+    void testNotCompactable() {
+        Node node = new Node(LatLon.ZERO);
+        AddCommand add = new AddCommand(testData.layer.getDataSet(), node);
+        add.executeCommand();
+        assertNull(CompactCommand.compact(add));
+        SequenceCommand sequence = new SequenceCommand("sequence",
+                new ChangePropertyCommand(node, "name", "test"), new DeleteCommand(node));
+        sequence.executeCommand();
+        assertNull(CompactCommand.compact(sequence));
+    }
+
+    /**
+     * Test spilling the state of a command to the log.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testSpill() throws Exception {
+        Way way = testData.existingWay;
+        List<Object> before = getState(way);
+        CompactCommand compact = executeAndCompact(new ChangeNodesCommand(way, Arrays.asList(testData.existingNode2,
+                testData.existingNode, testData.existingNode2)), way);
+        List<Object> after = getState(way);
+        long size = compact.getEstimatedSize();
+        try (UndoLog log = new UndoLog()) {
+            compact.spill(log);
+            assertTrue(compact.isSpilled());
+            assertTrue(compact.getEstimatedSize() < size);
+            assertTrue(log.getLiveBytes() > 0);
+            assertEquals(Arrays.asList(way), new ArrayList<>(compact.getParticipatingPrimitives()));
+
+            compact.undoCommand();
+            assertFalse(compact.isSpilled());
+            assertEquals(0, log.getLiveBytes());
+            assertEquals(before, getState(way));
+            compact.spill(log);
+            compact.executeCommand();
+            assertEquals(after, getState(way));
+
+            compact.spill(log);
+            compact.release();
+            assertEquals(0, log.getLiveBytes());
+        }
+    }
+
+    /**
+     * Test undoing after the new primitives referred to by a command have got their ids from an upload.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testUndoAfterUpload() throws Exception {
+        Way way = testData.existingWay;
+        Node node = new Node(LatLon.ZERO);
+        Node other = new Node(LatLon.NORTH_POLE);
+        testData.layer.getDataSet().addPrimitive(node);
+        testData.layer.getDataSet().addPrimitive(other);
+        List<Node> nodes = Arrays.asList(testData.existingNode, node, testData.existingNode2);
+        executeAndCompact(new ChangeNodesCommand(way, nodes), way);
+        CompactCommand inMemory = executeAndCompact(new ChangeNodesCommand(way, Arrays.asList(testData.existingNode, other)), way);
+        CompactCommand spilled = executeAndCompact(new ChangeNodesCommand(way, Arrays.asList(testData.existingNode)), way);
+        node.setOsmId(100, 1);
+        other.setOsmId(101, 1);
+        try (UndoLog log = new UndoLog()) {
+            spilled.spill(log);
+            spilled.undoCommand();
+            assertEquals(Arrays.asList(testData.existingNode, other), way.getNodes());
+            inMemory.undoCommand();
+            assertEquals(nodes, way.getNodes());
+            inMemory.executeCommand();
+            spilled.executeCommand();
+            assertEquals(Arrays.asList(testData.existingNode), way.getNodes());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.openstreetmap.josm.command.ChangePropertyCommand;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.command.CompactCommand;
+import org.openstreetmap.josm.command.MoveCommand;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link UndoRedoHandler} class.
+ */
+class UndoRedoHandlerTest {
+
+    /**
+     * Setup test.
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().projection();
+
+    /**
+     * Test that the commands exceeding the memory budget are compacted and spilled, and can still be undone and redone.
+     */
+    @Test
+    void testMemoryBudget() {
+        UndoRedoHandler handler = UndoRedoHandler.getInstance();
+        handler.clean();
+        UndoRedoHandler.MEMORY_BUDGET.put(0);
+        try {
+            DataSet ds = new DataSet();
+            Node node = new Node(LatLon.ZERO);
+            ds.addPrimitive(node);
+            for (int i = 0; i < 5; i++) {
+                handler.add(new ChangePropertyCommand(node, "name", Integer.toString(i)));
+            }
+            handler.add(new MoveCommand(node, 1, 1));
+
+            List<Command> commands = handler.getUndoCommands();
+            assertEquals(6, commands.size());
+            for (int i = 0; i < 5; i++) {
+                assertTrue(commands.get(i) instanceof CompactCommand);
+                assertTrue(((CompactCommand) commands.get(i)).isSpilled());
+            }
+            assertTrue(handler.getLastCommand() instanceof MoveCommand);
+            LatLon moved = node.getCoor();
+
+            handler.undo(6);
+            assertNull(node.get("name"));
+            assertEquals(LatLon.ZERO, node.getCoor());
+            assertFalse(node.isModified());
+
+            handler.redo(6);
+            assertEquals("4", node.get("name"));
+            assertEquals(moved, node.getCoor());
+            assertTrue(node.isModified());
+
+            handler.undo(2);
+            assertEquals("3", node.get("name"));
+            handler.add(new ChangePropertyCommand(node, "name", "new"));
+            assertEquals(5, handler.getUndoCommands().size());
+            assertFalse(handler.hasRedoCommands());
+        } finally {
+            handler.clean();
+            UndoRedoHandler.MEMORY_BUDGET.remove();
+        }
+    }
+}
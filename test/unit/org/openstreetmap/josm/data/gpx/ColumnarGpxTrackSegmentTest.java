@@ -0,0 +1,220 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.gpx;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.projection.Projecting;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.io.GpxReader;
+import org.openstreetmap.josm.io.GpxReaderTest;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link ColumnarGpxTrackSegment} class.
+ */
+class ColumnarGpxTrackSegmentTest {
+
+    /**
+     * Setup test.
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().projection();
+
+    private static List<WayPoint> createWayPoints() {
+        List<WayPoint> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            WayPoint wpt = new WayPoint(new LatLon(47 + i * 1e-4, 8 - i * 1e-4));
+            if (i % 2 == 0) {
+                wpt.setInstant(Instant.ofEpochMilli(1_451_822_400_000L + i * 1000L));
+            }
+            if (i % 3 == 0) {
+                wpt.put(GpxConstants.PT_ELE, Integer.toString(400 + i % 10));
+            }
+            if (i == 10) {
+                wpt.put(GpxConstants.GPX_NAME, "named");
+            }
+            if (i == 11) {
+                wpt.setInstant(Instant.ofEpochSecond(1_451_822_400L, 123_456_789));
+            }
+            points.add(wpt);
+        }
+        return points;
+    }
+
+    private static ColumnarGpxTrackSegment build(Collection<WayPoint> points) {
+        ColumnarGpxTrackSegment.Builder builder = new ColumnarGpxTrackSegment.Builder();
+        points.forEach(builder::add);
+        assertEquals(points.size(), builder.size());
+        return builder.build();
+    }
+
+    /**
+     * Test that a columnar segment has the same points, bounds and length as a {@link GpxTrackSegment}.
+     */
+    @Test
+    void testSameAsTrackSegment() {
+        List<WayPoint> points = createWayPoints();
+        GpxTrackSegment expected = new GpxTrackSegment(points);
+        ColumnarGpxTrackSegment segment = build(points);
+
+        assertEquals(points.size(), segment.size());
+        assertEquals(expected.getBounds(), segment.getBounds());
+        assertEquals(expected.length(), segment.length(), 1e-6);
+        assertEquals(points, new ArrayList<>(segment.getWayPoints()));
+        for (int i = 0; i < points.size(); i++) {
+            assertEquals(points.get(i).getInstant(), segment.getWayPoint(i).getInstant());
+            assertEquals(points.get(i).getString(GpxConstants.PT_ELE), segment.getWayPoint(i).getString(GpxConstants.PT_ELE));
+        }
+        // the points with other attributes are kept as they are
+        assertSame(points.get(10), segment.getWayPoint(10));
+        assertSame(points.get(11), segment.getWayPoint(11));
+        assertEquals(segment, build(points));
+        assertEquals(segment.hashCode(), build(points).hashCode());
+    }
+
+    /**
+     * Test that the points are views which are not kept, and that their attributes are stored in the segment.
+     */
+    @Test
+    void testPointAttributes() {
+        ColumnarGpxTrackSegment segment = build(createWayPoints());
+        WayPoint wpt = segment.getWayPoint(0);
+        assertNotSame(wpt, segment.getWayPoint(0));
+        assertEquals(wpt, segment.getWayPoints().iterator().next());
+        assertEquals(2, wpt.attr.size());
+
+        wpt.setInstant(Instant.ofEpochMilli(1000));
+        assertEquals(Instant.ofEpochMilli(1000), segment.getWayPoint(0).getInstant());
+        assertEquals(1000, segment.getTimeInMillis(0));
+        wpt.setInstant(Instant.ofEpochSecond(1, 5));
+        assertEquals(Instant.ofEpochSecond(1, 5), segment.getWayPoint(0).getInstant());
+        assertEquals(1000, segment.getTimeInMillis(0));
+        assertEquals(2, wpt.attr.size());
+
+        wpt.put(GpxConstants.GPX_NAME, "name");
+        assertEquals("name", segment.getWayPoint(0).get(GpxConstants.GPX_NAME));
+        assertEquals("name", segment.get(0, GpxConstants.GPX_NAME));
+        assertEquals(3, segment.getWayPoint(0).attr.size());
+
+        wpt.attr.remove(GpxConstants.PT_TIME);
+        assertFalse(segment.getWayPoint(0).hasDate());
+        assertEquals(0, segment.getTimeInMillis(0));
+        wpt.attr.entrySet().removeIf(e -> GpxConstants.PT_ELE.equals(e.getKey()));
+        assertNull(segment.getWayPoint(0).get(GpxConstants.PT_ELE));
+        assertEquals(1, segment.getWayPoint(0).attr.size());
+        assertTrue(segment.getWayPoint(0).attr.containsKey(GpxConstants.GPX_NAME));
+
+        // the other points are not changed
+        assertEquals(Instant.ofEpochMilli(1_451_822_402_000L), segment.getWayPoint(2).getInstant());
+        assertEquals(1_451_822_402_000L, segment.getTimeInMillis(2));
+        assertNull(segment.getWayPoint(1).get(GpxConstants.PT_ELE));
+        assertTrue(segment.hasTimes());
+    }
+
+    /**
+     * Test that the drawing state and the projected coordinates are stored in the segment.
+     */
+    @Test
+    void testDrawingState() {
+        ColumnarGpxTrackSegment segment = build(createWayPoints());
+        assertNull(segment.getWayPoint(1).customColoring);
+        assertFalse(segment.getWayPoint(1).drawLine);
+
+        segment.setCustomColoring(1, Color.RED);
+        segment.setDrawLine(1, true);
+        segment.setDir(1, 5);
+        segment.setDir(2, 7);
+        assertEquals(Color.RED, segment.getWayPoint(1).customColoring);
+        assertTrue(segment.getWayPoint(1).drawLine);
+        assertEquals(5, segment.getWayPoint(1).dir);
+        assertFalse(segment.isDrawLine(2));
+        assertEquals(7, segment.getDir(2));
+        segment.setDrawLine(1, false);
+        assertFalse(segment.isDrawLine(1));
+        assertEquals(5, segment.getDir(1));
+
+        // the points kept as they are hold their drawing state
+        segment.setCustomColoring(10, Color.BLUE);
+        segment.setDrawLine(10, true);
+        assertEquals(Color.BLUE, segment.getWayPoint(10).customColoring);
+        assertTrue(segment.getWayPoint(10).drawLine);
+
+        Projecting projecting = ProjectionRegistry.getProjection();
+        EastNorth expected = projecting.latlon2eastNorth(new LatLon(47 + 1e-4, 8 - 1e-4));
+        assertEquals(expected, segment.getEastNorth(1, projecting));
+        assertEquals(expected, segment.getEastNorth(1, projecting));
+        assertEquals(expected, segment.getWayPoint(1, projecting).getEastNorth(projecting));
+        segment.invalidateEastNorthCache();
+        assertEquals(expected, segment.getEastNorth(1, projecting));
+    }
+
+    /**
+     * Test the times of the tracks with columnar segments, and their lines.
+     */
+    @Test
+    void testTimes() {
+        List<WayPoint> points = createWayPoints();
+        GpxData expected = new GpxData();
+        expected.addTrack(new GpxTrack(Collections.singletonList(new GpxTrackSegment(points)), Collections.emptyMap()));
+        GpxData data = new GpxData();
+        IGpxTrack track = new GpxTrack(Collections.singletonList(build(points)), Collections.emptyMap());
+        data.addTrack(track);
+        assertEquals(GpxData.getMinMaxTimeForTrack(expected.getTracks().iterator().next()), GpxData.getMinMaxTimeForTrack(track));
+        assertEquals(expected.getMinMaxTimeForAllTracks(), data.getMinMaxTimeForAllTracks());
+        assertFalse(new Line(track.getSegments().iterator().next(), track.getAttributes(), null).isUnordered());
+
+        List<WayPoint> untimed = new ArrayList<>();
+        points.forEach(p -> untimed.add(new WayPoint(p.getCoor())));
+        IGpxTrackSegment segment = build(untimed);
+        assertFalse(((ColumnarGpxTrackSegment) segment).hasTimes());
+        assertTrue(new Line(segment, Collections.emptyMap(), null).isUnordered());
+        assertSame(segment, new Line(segment, Collections.emptyMap(), null).getTrackSegment());
+    }
+
+    /**
+     * Test that {@link GpxReader} reads large segments in columns.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testGpxReader() throws Exception {
+        String file = TestUtils.getTestDataRoot() + "tracks/tracks.gpx";
+        GpxData expected = GpxReaderTest.parseGpxData(file);
+        GpxData data;
+        GpxReader.COLUMNAR_SEGMENT_MIN_POINTS.put(10);
+        try {
+            data = GpxReaderTest.parseGpxData(file);
+        } finally {
+            GpxReader.COLUMNAR_SEGMENT_MIN_POINTS.remove();
+        }
+        IGpxTrackSegment segment = data.tracks.iterator().next().getSegments().iterator().next();
+        assertTrue(segment instanceof ColumnarGpxTrackSegment);
+        assertEquals(128, segment.getWayPoints().size());
+        assertEquals(expected.length(), data.length(), 1e-6);
+        assertEquals(expected.recalculateBounds(), data.recalculateBounds());
+        List<WayPoint> expectedPoints = new ArrayList<>();
+        expected.getTrackPoints().forEach(expectedPoints::add);
+        List<WayPoint> points = new ArrayList<>();
+        data.getTrackPoints().forEach(points::add);
+        assertEquals(expectedPoints, points);
+    }
+}
@@ -7,6 +7,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -132,4 +133,18 @@ public class LayerTest {
         Exception unknownField = assertThrows(IllegalArgumentException.class, () -> getLayer(copyByte));
         assertEquals("Unknown field in vector tile layer value (15)", unknownField.getMessage());
     }
+
+    @Test
+    void testLayerFromBuffer() throws IOException {
+        byte[] copyByte = getSimpleFeatureLayerBytes();
+        // Skip the layer tag and length, the buffer must not be modified
+        ByteBuffer buffer = ByteBuffer.wrap(copyByte, 2, copyByte.length - 2);
+        assertEquals("t", Layer.getName(buffer));
+        Layer layer = new Layer(buffer);
+        assertEquals(2, buffer.position());
+        assertEquals(2, layer.getVersion());
+        assertEquals(Layer.DEFAULT_EXTENT, layer.getExtent());
+        assertEquals(1, layer.getFeatures().size());
+        assertEquals("true", layer.getFeatures().iterator().next().getTags().get("a"));
+    }
 }
@@ -3,6 +3,10 @@ package org.openstreetmap.josm.data.osm;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.ArrayList;
@@ -17,6 +21,8 @@ import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.DataSource;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.event.AbstractDatasetChangedEvent;
+import org.openstreetmap.josm.data.osm.event.DataSetListenerAdapter;
 import org.openstreetmap.josm.data.osm.event.DataSourceAddedEvent;
 import org.openstreetmap.josm.data.osm.event.DataSourceRemovedEvent;
 import org.openstreetmap.josm.testutils.JOSMTestRules;
@@ -364,4 +370,141 @@ class DataSetTest {
         assertEquals(4, copy.allPrimitives().size());
         assertTrue(copy.isLocked());
     }
+
+    /**
+     * Unit test for {@link DataSet#getPrimitiveById} and the typed lookups.
+     */
+    @Test
+    void testGetPrimitiveById() {
+        DataSet ds = new DataSet();
+        Node n = new Node(1);
+        Way w = new Way(1);
+        Relation r = new Relation(1);
+        Node newNode = new Node(LatLon.ZERO);
+        ds.addPrimitive(n);
+        ds.addPrimitive(w);
+        ds.addPrimitive(r);
+        ds.addPrimitive(newNode);
+
+        assertSame(n, ds.getNode(1));
+        assertSame(w, ds.getWay(1));
+        assertSame(r, ds.getRelation(1));
+        assertSame(newNode, ds.getNode(newNode.getUniqueId()));
+        assertSame(n, ds.getPrimitiveById(1, OsmPrimitiveType.NODE));
+        assertSame(w, ds.getPrimitiveById(new SimplePrimitiveId(1, OsmPrimitiveType.WAY)));
+        assertSame(r, ds.getPrimitiveById(new SimplePrimitiveId(1, OsmPrimitiveType.RELATION)));
+        assertNull(ds.getPrimitiveById(1, OsmPrimitiveType.CLOSEDWAY));
+        assertNull(ds.getNode(2));
+        assertNull(ds.getPrimitiveById(null));
+
+        // a new primitive is indexed again once uploaded
+        long newId = newNode.getUniqueId();
+        newNode.setOsmId(2, 1);
+        assertNull(ds.getNode(newId));
+        assertSame(newNode, ds.getNode(2));
+
+        ds.removePrimitive(n);
+        assertNull(ds.getNode(1));
+        assertSame(w, ds.getWay(1));
+
+        ds.clear();
+        assertNull(ds.getWay(1));
+        assertNull(ds.getRelation(1));
+        assertNull(ds.getNode(2));
+    }
+
+    /**
+     * Unit test for {@link DataSet#snapshot}.
+     */
+    @Test
+    void testSnapshot() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(1, 1));
+        Node n2 = new Node(new LatLon(2, 2));
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        Way w = new Way();
+        w.setNodes(Arrays.asList(n1, n2));
+        ds.addPrimitive(w);
+        w.put("highway", "road");
+
+        DataSet snapshot = ds.snapshot();
+        assertTrue(snapshot.isSnapshot());
+        assertFalse(ds.isSnapshot());
+        assertEquals(3, snapshot.allPrimitives().size());
+        Way copy = (Way) snapshot.getPrimitiveById(w);
+        assertNotSame(w, copy);
+        assertEquals("road", copy.get("highway"));
+        assertSame(snapshot.getPrimitiveById(n1), copy.firstNode());
+
+        // the snapshot cannot be modified
+        assertThrows(IllegalStateException.class, () -> snapshot.addPrimitive(new Node(LatLon.ZERO)));
+        assertThrows(DataIntegrityProblemException.class, () -> copy.put("highway", "residential"));
+
+        // the same snapshot is returned until the data set is modified
+        assertSame(snapshot, ds.snapshot());
+        w.put("highway", "residential");
+        DataSet snapshot2 = ds.snapshot();
+        assertNotSame(snapshot, snapshot2);
+        assertEquals("road", copy.get("highway"));
+        assertEquals("residential", snapshot2.getPrimitiveById(w).get("highway"));
+        assertSame(snapshot2, ds.snapshot());
+        ds.removePrimitive(w);
+        assertEquals(3, snapshot2.allPrimitives().size());
+        assertNotSame(snapshot2, ds.snapshot());
+        assertEquals(2, ds.snapshot().allPrimitives().size());
+    }
+
+    /**
+     * Unit test for {@link DataSet#addPrimitives} and {@link DataSetBulkInsert}.
+     */
+    @Test
+    void testAddPrimitives() {
+        DataSet ds = new DataSet();
+        List<AbstractDatasetChangedEvent> events = new ArrayList<>();
+        ds.addDataSetListener(new DataSetListenerAdapter(events::add));
+
+        Node n1 = new Node(new LatLon(1, 1));
+        Node n2 = new Node(new LatLon(2, 2));
+        Way w = new Way();
+        w.setNodes(Arrays.asList(n1, n2));
+        Relation r = new Relation();
+        DataSetBulkInsert insert = new DataSetBulkInsert(ds);
+        // the ways are added after their nodes, whatever the order
+        insert.addAll(Arrays.asList(r, w));
+        insert.add(n1);
+        insert.add(n2);
+        assertEquals(4, insert.size());
+        assertTrue(ds.isEmpty());
+        insert.commit();
+        assertEquals(0, insert.size());
+
+        assertEquals(4, ds.allPrimitives().size());
+        assertSame(w, ds.getPrimitiveById(w));
+        assertSame(ds, n1.getDataSet());
+        assertEquals(Arrays.asList(w), ds.searchWays(new BBox(0, 0, 3, 3)));
+        assertEquals(new HashSet<>(Arrays.asList(n1, n2)), new HashSet<>(ds.searchNodes(new BBox(0, 0, 3, 3))));
+        assertEquals(1, events.size());
+        assertEquals(new HashSet<>(Arrays.asList(n1, n2, w, r)), new HashSet<>(events.get(0).getPrimitives()));
+
+        r.setMembers(Arrays.asList(new RelationMember("", w)));
+        assertTrue(w.getReferrers().contains(r));
+
+        // a primitive cannot be added twice
+        Node n3 = new Node(new LatLon(3, 3));
+        assertThrows(DataIntegrityProblemException.class, () -> ds.addPrimitives(Arrays.asList(n3, n1)));
+        assertNull(n3.getDataSet());
+        // nor twice in the same batch, which leaves the dataset unchanged
+        Node n4 = new Node(n3);
+        assertThrows(DataIntegrityProblemException.class, () -> ds.addPrimitives(Arrays.asList(n3, n4)));
+        assertNull(n3.getDataSet());
+        assertNull(n4.getDataSet());
+        assertNull(ds.getPrimitiveById(n3));
+        assertEquals(4, ds.allPrimitives().size());
+        ds.addPrimitives(Arrays.asList(n3));
+        assertSame(n3, ds.getPrimitiveById(n3));
+        ds.lock();
+        Node n5 = new Node(new LatLon(5, 5));
+        assertThrows(IllegalStateException.class, () -> ds.addPrimitives(Arrays.asList(n5)));
+    }
 }
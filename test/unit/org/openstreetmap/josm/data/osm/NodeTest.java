@@ -14,6 +14,9 @@ import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.DataSource;
 import org.openstreetmap.josm.data.coor.EastNorth;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.data.projection.ProjectionRegistry;
+import org.openstreetmap.josm.data.projection.Projections;
 import org.openstreetmap.josm.testutils.JOSMTestRules;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
@@ -130,6 +133,92 @@ class NodeTest {
         assertTrue(n.isOutSideWorld());
     }
 
+    /**
+     * Test that the coordinates are kept exactly, whether they are stored as fixed-point numbers or not.
+     */
+    @Test
+    void testCompactCoordinates() {
+        DataSet ds = new DataSet();
+        double[][] coordinates = {
+            {52.1234567, 13.7654321}, {-0.0, 1e-12}, {90, 180}, {-90, -180}, {45.123456789012, 7.000000000001},
+            {0.00000005, -0.00000015}, {95, 200}, {-214.7483648, 214.7483647}
+        };
+        for (double[] ll : coordinates) {
+            Node n = new Node(new LatLon(ll[0], ll[1]));
+            assertCoordinates(ll, n);
+            ds.addPrimitive(n);
+            assertCoordinates(ll, n);
+            n.setCoor(new LatLon(ll[1] / 2, ll[0] / 2));
+            assertCoordinates(new double[] {ll[1] / 2, ll[0] / 2}, n);
+            ds.removePrimitive(n);
+            assertCoordinates(new double[] {ll[1] / 2, ll[0] / 2}, n);
+        }
+        Node n = new Node(new LatLon(1, 2));
+        n.setCoor(null);
+        assertFalse(n.isLatLonKnown());
+        assertNull(n.getCoor());
+        assertNull(n.getEastNorth());
+    }
+
+    private static void assertCoordinates(double[] expected, Node n) {
+        assertEquals(Double.doubleToRawLongBits(expected[0]), Double.doubleToRawLongBits(n.lat()));
+        assertEquals(Double.doubleToRawLongBits(expected[1]), Double.doubleToRawLongBits(n.lon()));
+        assertEquals(new LatLon(expected[0], expected[1]), n.getCoor());
+    }
+
+    /**
+     * Test the projected coordinates cached by the dataset.
+     */
+    @Test
+    void testEastNorthCache() {
+        Projection projection = ProjectionRegistry.getProjection();
+        DataSet ds = new DataSet();
+        EastNorth en = new EastNorth(1_000_000.123456789, 6_000_000.987654321);
+        Node n1 = new Node(en);
+        Node n2 = new Node(new LatLon(47.1, 8.2));
+        assertEquals(en, n1.getEastNorth());
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        // the projected coordinates given to the node are kept, not computed again
+        assertEquals(en, n1.getEastNorth());
+        assertEquals(projection.latlon2eastNorth(n2), n2.getEastNorth());
+
+        EastNorth moved = new EastNorth(1_000_100.000000001, 6_000_100.000000001);
+        n2.setEastNorth(moved);
+        assertEquals(moved, n2.getEastNorth());
+        n2.setCoor(new LatLon(47.3, 8.4));
+        assertEquals(projection.latlon2eastNorth(n2), n2.getEastNorth());
+
+        ds.invalidateEastNorthCache();
+        assertEquals(projection.latlon2eastNorth(n1), n1.getEastNorth());
+        ds.rebuildEastNorthCache();
+        assertEquals(projection.latlon2eastNorth(n1), n1.getEastNorth());
+        assertEquals(projection.latlon2eastNorth(n2), n2.getEastNorth());
+
+        // other projections are not cached
+        Projection other = Projections.getProjectionByCode("EPSG:4326");
+        assertEquals(other.latlon2eastNorth(n2), n2.getEastNorth(other));
+        assertEquals(projection.latlon2eastNorth(n2), n2.getEastNorth());
+
+        // the index of a removed node is reused
+        ds.removePrimitive(n1);
+        assertEquals(projection.latlon2eastNorth(n1), n1.getEastNorth());
+        Node n3 = new Node(new LatLon(-33.9, 18.4));
+        ds.addPrimitive(n3);
+        assertEquals(projection.latlon2eastNorth(n3), n3.getEastNorth());
+        assertEquals(projection.latlon2eastNorth(n2), n2.getEastNorth());
+
+        // the cache in use is rebuilt for the new projection
+        try {
+            ProjectionRegistry.setProjection(other);
+            assertEquals(other.latlon2eastNorth(n2), n2.getEastNorth());
+            assertEquals(other.latlon2eastNorth(n3), n3.getEastNorth());
+        } finally {
+            ProjectionRegistry.setProjection(projection);
+        }
+        assertEquals(projection.latlon2eastNorth(n3), n3.getEastNorth());
+    }
+
     /**
      * Test that {@link Node#hasDirectionKeys} is not set.
      */
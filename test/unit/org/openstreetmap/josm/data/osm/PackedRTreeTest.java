@@ -0,0 +1,167 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.io.OsmReader;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link PackedRTree}.
+ */
+class PackedRTreeTest {
+
+    /**
+     * Setup test.
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().projection();
+
+    private static void assertSameSearch(QuadBuckets<Way> expected, PackedRTree<Way> actual, Random random) {
+        for (int i = 0; i < 200; i++) {
+            double lat = random.nextDouble() * 2 - 1;
+            double lon = random.nextDouble() * 2 - 1;
+            double size = random.nextDouble() * random.nextDouble() * 0.5;
+            BBox bbox = new BBox(lon, lat, lon + size, lat + size);
+            assertEquals(new HashSet<>(expected.search(bbox)), new HashSet<>(actual.search(bbox)), bbox::toString);
+        }
+    }
+
+    /**
+     * Test that the searches return the same ways as {@link QuadBuckets}, while ways are added and removed.
+     */
+    @Test
+    void testSearch() {
+        Random random = new Random(42);
+        QuadBuckets<Way> expected = new QuadBuckets<>();
+        PackedRTree<Way> actual = new PackedRTree<>();
+        List<Way> ways = new ArrayList<>();
+        for (int i = 1; i <= 5000; i++) {
+            List<Node> nodes = new ArrayList<>();
+            LatLon start = new LatLon(random.nextDouble() * 2 - 1, random.nextDouble() * 2 - 1);
+            for (int j = random.nextInt(4); j >= 0; j--) {
+                nodes.add(new Node(new LatLon(start.lat() + random.nextDouble() * 0.01, start.lon() + random.nextDouble() * 0.01)));
+            }
+            Way w = new Way(i);
+            w.setNodes(nodes);
+            ways.add(w);
+            expected.add(w);
+            actual.add(w);
+        }
+        actual.pack();
+        assertSameSearch(expected, actual, random);
+
+        // removed ways and pending ways
+        for (int i = 0; i < 1000; i++) {
+            Way w = ways.remove(random.nextInt(ways.size()));
+            assertTrue(actual.contains(w));
+            assertTrue(expected.remove(w));
+            assertTrue(actual.remove(w));
+            assertFalse(actual.contains(w));
+        }
+        for (int i = 0; i < 100; i++) {
+            Way w = new Way(10_000 + i);
+            w.setNodes(Arrays.asList(new Node(new LatLon(random.nextDouble(), random.nextDouble())),
+                    new Node(new LatLon(-random.nextDouble(), -random.nextDouble()))));
+            expected.add(w);
+            actual.add(w);
+            assertTrue(actual.contains(w));
+        }
+        assertEquals(expected.size(), actual.size());
+        assertSameSearch(expected, actual, random);
+        assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+
+        // enough changes to build the tree again
+        for (int i = 0; i < 2000; i++) {
+            Way w = ways.remove(random.nextInt(ways.size()));
+            expected.remove(w);
+            actual.remove(w);
+        }
+        assertSameSearch(expected, actual, random);
+        assertEquals(expected.size(), actual.size());
+    }
+
+    /**
+     * Test handling of objects with invalid bbox, and removal with the iterator.
+     */
+    @Test
+    void testSpecialBBox() {
+        PackedRTree<Node> nodes = new PackedRTree<>();
+        Node n1 = new Node(1);
+        Node n2 = new Node(new LatLon(10, 20));
+        Node n3 = new Node(new LatLon(20, 30));
+        nodes.addAll(Arrays.asList(n1, n2));
+        nodes.pack();
+        nodes.add(n3);
+        assertEquals(3, nodes.size());
+        assertTrue(nodes.contains(n1));
+        assertTrue(nodes.contains(n2));
+        assertTrue(nodes.contains(n3));
+        assertEquals(Arrays.asList(n2), nodes.search(new BBox(19, 9, 21, 11)));
+        assertEquals(new HashSet<>(Arrays.asList(n2, n3)), new HashSet<>(nodes.search(new BBox(0, 0, 40, 40))));
+
+        int count = 3;
+        for (Iterator<Node> it = nodes.iterator(); it.hasNext();) {
+            Node n = it.next();
+            assertTrue(it.hasNext() || n == n1);
+            it.remove();
+            assertFalse(nodes.contains(n));
+            assertEquals(--count, nodes.size());
+        }
+        assertTrue(nodes.isEmpty());
+        assertTrue(nodes.search(new BBox(0, 0, 40, 40)).isEmpty());
+    }
+
+    /**
+     * Test a dataset using packed R-trees, with nodes moved and removed.
+     * @throws Exception never
+     */
+    @Test
+    void testDataSet() throws Exception {
+        QuadBucketPrimitiveStore.PACKED_RTREE.put(true);
+        try (InputStream fis = Files.newInputStream(Paths.get("nodist/data/restriction.osm"))) {
+            DataSet ds = OsmReader.parseDataSet(fis, NullProgressMonitor.INSTANCE);
+            BBox all = new BBox(-180, -90, 180, 90);
+            assertEquals(ds.getNodes().size(), ds.searchNodes(all).size());
+            assertEquals(ds.getWays().size(), ds.searchWays(all).size());
+
+            Node moved = ds.getNodes().iterator().next();
+            moved.setCoor(new LatLon(10, 10));
+            assertEquals(Arrays.asList(moved), ds.searchNodes(new BBox(9.9, 9.9, 10.1, 10.1)));
+            assertTrue(ds.searchWays(new BBox(9.9, 9.9, 10.1, 10.1)).containsAll(moved.getParentWays()));
+
+            for (Relation r : new ArrayList<>(ds.getRelations())) {
+                ds.removePrimitive(r);
+            }
+            for (Way w : new ArrayList<>(ds.getWays())) {
+                ds.removePrimitive(w);
+            }
+            for (Node n : new ArrayList<>(ds.getNodes())) {
+                ds.removePrimitive(n);
+            }
+            assertTrue(ds.searchNodes(all).isEmpty());
+            assertTrue(ds.searchWays(all).isEmpty());
+        } finally {
+            QuadBucketPrimitiveStore.PACKED_RTREE.remove();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link TagArrayPool} class.
+ */
+@BasicPreferences
+class TagArrayPoolTest {
+
+    private static Node createNode(String... tags) {
+        Node n = new Node(LatLon.ZERO);
+        TagMap map = new TagMap(tags);
+        n.setKeys(map);
+        return n;
+    }
+
+    /**
+     * Test that equal tags are shared, from the second primitive having them.
+     */
+    @Test
+    void testCanonicalize() {
+        TagArrayPool.Statistics before = TagArrayPool.getStatistics();
+        Node n1 = createNode("building", "yes", "test", "testCanonicalize");
+        Node n2 = createNode("building", "yes", "test", "testCanonicalize");
+        Node n3 = createNode("building", "yes", "test", "testCanonicalize");
+        Node n4 = new Node(LatLon.ZERO);
+        n4.setKeys((Map<String, String>) new TagMap("building", "yes", "test", "testCanonicalize"));
+        Node other = createNode("test", "testCanonicalize", "building", "yes");
+
+        // the first array is usually kept out of the pool, unless an array with the same hash code was seen before
+        assertSame(n2.keys, n3.keys);
+        assertSame(n2.keys, n4.keys);
+        assertNotSame(n2.keys, other.keys);
+        assertEquals(n1.getKeys(), other.getKeys());
+
+        TagArrayPool.Statistics after = TagArrayPool.getStatistics();
+        assertEquals(5, after.getRequests() - before.getRequests());
+        assertTrue(after.getShared() - before.getShared() >= 2);
+        assertTrue(after.getSavedBytes() > before.getSavedBytes());
+        assertTrue(after.getSize() > 0);
+        assertTrue(after.toString().contains("shared"));
+    }
+
+    /**
+     * Test that changing the tags of a primitive does not change the other primitives.
+     */
+    @Test
+    void testCopyOnWrite() {
+        Node n1 = createNode("highway", "crossing", "test", "testCopyOnWrite");
+        Node n2 = createNode("highway", "crossing", "test", "testCopyOnWrite");
+        Node n3 = createNode("highway", "crossing", "test", "testCopyOnWrite");
+        Node n4 = createNode("highway", "crossing", "test", "testCopyOnWrite");
+        assertSame(n2.keys, n3.keys);
+        assertSame(n2.keys, n4.keys);
+
+        n2.put("highway", "traffic_signals");
+        Map<String, String> tags = new HashMap<>();
+        tags.put("highway", "stop");
+        n3.putAll(tags);
+        n4.remove("test");
+        n1.putAll(Collections.singletonMap("crossing", "zebra"));
+
+        assertEquals("traffic_signals", n2.get("highway"));
+        assertEquals("stop", n3.get("highway"));
+        assertNull(n4.get("test"));
+        assertEquals("zebra", n1.get("crossing"));
+        Node n5 = createNode("highway", "crossing", "test", "testCopyOnWrite");
+        assertEquals("crossing", n5.get("highway"));
+        assertEquals("testCopyOnWrite", n5.get("test"));
+        assertEquals(2, n5.getNumKeys());
+    }
+}
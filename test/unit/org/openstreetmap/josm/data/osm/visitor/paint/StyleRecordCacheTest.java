@@ -0,0 +1,167 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.osm.visitor.paint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer.StyleRecord;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link StyleRecordCache} class.
+ */
+class StyleRecordCacheTest {
+
+    /**
+     * Setup test.
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().projection().mapStyles();
+
+    private static final int IMG_WIDTH = 800;
+    private static final int IMG_HEIGHT = 600;
+
+    private final StyleRecordCache cache = StyleRecordCache.getInstance();
+    private DataSet ds;
+    private List<Node> nodes;
+    private List<Way> ways;
+    private NavigatableComponent nc;
+    private StyledMapRenderer renderer;
+
+    /**
+     * Create a dataset with random nodes and ways, and a renderer.
+     */
+    @BeforeEach
+    public void setUp() {
+        Random random = new Random(42);
+        ds = new DataSet();
+        nodes = new ArrayList<>();
+        ways = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Node n = new Node(new LatLon(random.nextDouble() * 0.1, random.nextDouble() * 0.1));
+            if (i % 5 == 0) {
+                n.put("amenity", i % 10 == 0 ? "restaurant" : "bench");
+            }
+            ds.addPrimitive(n);
+            nodes.add(n);
+        }
+        for (int i = 0; i < 300; i++) {
+            Way w = new Way();
+            int first = random.nextInt(nodes.size() - 5);
+            w.setNodes(nodes.subList(first, first + 2 + random.nextInt(3)));
+            w.put("highway", i % 3 == 0 ? "primary" : "residential");
+            ds.addPrimitive(w);
+            ways.add(w);
+        }
+        ds.addDataSetListener(cache);
+        ds.addSelectionListener(cache);
+
+        BufferedImage img = new BufferedImage(IMG_WIDTH, IMG_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = (Graphics2D) img.getGraphics();
+        g.setClip(0, 0, IMG_WIDTH, IMG_HEIGHT);
+        nc = new NavigatableComponent() {
+            {
+                setBounds(0, 0, IMG_WIDTH, IMG_HEIGHT);
+                updateLocationState();
+            }
+
+            @Override
+            protected boolean isVisibleOnScreen() {
+                return true;
+            }
+
+            @Override
+            public Point getLocationOnScreen() {
+                return new Point(0, 0);
+            }
+        };
+        renderer = new StyledMapRenderer(g, nc, false);
+        renderer.setStyleRecordCache(cache);
+    }
+
+    /**
+     * Unregister the cache.
+     */
+    @AfterEach
+    public void tearDown() {
+        ds.removeDataSetListener(cache);
+        ds.removeSelectionListener(cache);
+        cache.clear(ds);
+    }
+
+    private void assertSameRecords(Bounds bounds) {
+        nc.zoomTo(bounds);
+        renderer.render(ds, false, bounds);
+        List<StyleRecord> expected = new ArrayList<>();
+        renderer.computeStyleRecords(ds, bounds.toBBox(), expected);
+        StyleRecord[] sorted = expected.toArray(new StyleRecord[0]);
+        Arrays.sort(sorted);
+        assertEquals(Arrays.asList(sorted), Arrays.asList(cache.getStyleRecords(renderer, ds, bounds.toBBox())));
+    }
+
+    /**
+     * Test that the cached records are the same as the computed ones when panning, zooming and editing.
+     */
+    @Test
+    void testStyleRecords() {
+        Bounds bounds = new Bounds(0.02, 0.02, 0.05, 0.06);
+        assertSameRecords(bounds);
+        int tiles = cache.getTileCount(ds);
+        assertTrue(tiles > 0);
+
+        // pan: the tiles are kept
+        assertSameRecords(new Bounds(0.025, 0.03, 0.055, 0.07));
+        assertTrue(cache.getTileCount(ds) >= tiles);
+
+        // edit
+        Node node = nodes.get(10);
+        node.setCoor(new LatLon(0.03, 0.04));
+        assertSameRecords(bounds);
+        nodes.get(20).put("amenity", "bench");
+        ways.get(5).put("highway", "footway");
+        assertSameRecords(bounds);
+        ds.setSelected(ways.get(7));
+        assertSameRecords(bounds);
+        ds.clearSelection();
+        assertSameRecords(bounds);
+        Way way = ways.get(8);
+        way.setNodes(Arrays.asList(nodes.get(1), nodes.get(2)));
+        assertSameRecords(bounds);
+        ds.removePrimitive(way);
+        assertSameRecords(bounds);
+
+        // zoom
+        assertSameRecords(new Bounds(0, 0, 0.1, 0.1));
+        assertSameRecords(new Bounds(0.03, 0.03, 0.035, 0.035));
+
+        // global changes drop the cache
+        ds.setSelected(node);
+        assertSameRecords(bounds);
+        cache.dataChanged(new DataChangedEvent(ds));
+        assertEquals(0, cache.getTileCount(ds));
+        assertSameRecords(bounds);
+        assertTrue(cache.getTileCount(ds) > 0);
+    }
+}
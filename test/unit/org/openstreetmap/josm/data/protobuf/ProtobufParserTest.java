@@ -1,7 +1,16 @@
 // License: GPL. For details, see LICENSE file.
 package org.openstreetmap.josm.data.protobuf;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 import org.junit.jupiter.api.Test;
 
@@ -48,4 +57,125 @@ class ProtobufParserTest {
         assertEquals(4_294_967_296L, ProtobufParser.encodeZigZag(Integer.MAX_VALUE + 1L).longValue());
         assertEquals(4_294_967_297L, ProtobufParser.encodeZigZag(Integer.MIN_VALUE - 1L).longValue());
     }
+
+    /**
+     * Check the cursor API: field numbers, wire types and primitive values
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testCursor() throws IOException {
+        ProtobufParser parser = new ProtobufParser(ProtobufTest.toByteArray(new int[] {
+                0x08, 0x96, 0x01, // 1: varint 150
+                0x10, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0x01, // 2: int64 -1
+                0x18, 0x03, // 3: sint -2
+                0x25, 0x00, 0x00, 0x80, 0x3f, // 4: float 1
+                0x29, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0xf0, 0x3f, // 5: double 1
+                0x32, 0x02, 0x68, 0x69, // 6: "hi"
+                0x3a, 0x01, 0x00, // 7: unknown, skipped
+                0x40, 0x01 // 8: varint 1
+        }));
+        assertTrue(parser.nextField());
+        assertEquals(1, parser.getField());
+        assertEquals(WireType.VARINT, parser.getWireType());
+        assertEquals(150, parser.readVarint32());
+        assertTrue(parser.nextField());
+        assertEquals(-1L, parser.readVarint64());
+        assertTrue(parser.nextField());
+        assertEquals(-2L, parser.readZigZag());
+        assertTrue(parser.nextField());
+        assertEquals(WireType.THIRTY_TWO_BIT, parser.getWireType());
+        assertEquals(1f, parser.readFloat());
+        assertTrue(parser.nextField());
+        assertEquals(WireType.SIXTY_FOUR_BIT, parser.getWireType());
+        assertEquals(1d, parser.readDouble());
+        assertTrue(parser.nextField());
+        assertEquals(WireType.LENGTH_DELIMITED, parser.getWireType());
+        assertEquals("hi", parser.readString());
+        assertTrue(parser.nextField());
+        parser.skipField();
+        assertTrue(parser.nextField());
+        assertEquals(8, parser.getField());
+        assertEquals(1, parser.readVarint32());
+        assertFalse(parser.nextField());
+    }
+
+    /**
+     * Check that length delimited fields are slices of the parsed buffer, which can be parsed in turn
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testSlices() throws IOException {
+        ByteBuffer direct = ByteBuffer.allocateDirect(8);
+        direct.put(ProtobufTest.toByteArray(new int[] {0xff, 0x0a, 0x04, 0x08, 0x01, 0x10, 0x02, 0xff}));
+        direct.position(1).limit(7);
+        ProtobufParser parser = new ProtobufParser(direct);
+        assertTrue(parser.nextField());
+        ByteBuffer message = parser.readLengthDelimited();
+        assertEquals(4, message.remaining());
+        assertFalse(parser.nextField());
+        ProtobufParser nested = new ProtobufParser(message);
+        assertTrue(nested.nextField());
+        assertEquals(1, nested.readVarint32());
+        assertTrue(nested.nextField());
+        assertEquals(2, nested.readVarint32());
+        assertFalse(nested.nextField());
+        assertEquals(1, direct.position());
+    }
+
+    /**
+     * Check the packed field iterators
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testPacked() throws IOException {
+        ProtobufParser parser = new ProtobufParser(ProtobufTest.toByteArray(new int[] {
+                0x0a, 0x04, 0x03, 0x8e, 0x02, 0x00, // varints 3, 270, 0
+                0x12, 0x03, 0x03, 0x04, 0x01, // zig-zags -2, 2, -1
+                0x1a, 0x08, 0x01, 0x00, 0x00, 0x00, 0xff, 0xff, 0xff, 0xff // fixed32 1, -1
+        }));
+        parser.nextField();
+        ProtobufParser.PackedIterator varints = parser.readPackedVarints();
+        assertEquals(3, varints.remaining());
+        assertArrayEquals(new long[] {3, 270, 0}, varints.toArray());
+        assertFalse(varints.hasNext());
+        parser.nextField();
+        assertArrayEquals(new long[] {-2, 2, -1}, parser.readPackedZigZags().toArray());
+        parser.nextField();
+        assertArrayEquals(new long[] {1, -1}, parser.readPackedFixed32().toArray());
+    }
+
+    /**
+     * Check that truncated data is reported
+     */
+    @Test
+    void testTruncated() {
+        ProtobufParser parser = new ProtobufParser(ProtobufTest.toByteArray(new int[] {0x0a, 0x05, 0x00}));
+        assertThrows(EOFException.class, () -> {
+            parser.nextField();
+            parser.readLengthDelimited();
+        });
+        assertThrows(EOFException.class, () -> new ProtobufParser(ProtobufTest.toByteArray(new int[] {0x96, 0x81})).readVarint64());
+    }
+
+    /**
+     * Check that malformed data is reported with checked exceptions
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testMalformed() throws IOException {
+        int[] tooLong = new int[11];
+        Arrays.fill(tooLong, 0x80);
+        tooLong[10] = 0x01;
+        IOException e = assertThrows(IOException.class, () -> new ProtobufParser(ProtobufTest.toByteArray(tooLong)).readVarint64());
+        assertFalse(e instanceof EOFException);
+
+        ProtobufParser parser = new ProtobufParser(ProtobufTest.toByteArray(new int[] {
+                0x0a, 0x02, 0x03, 0x8e, // truncated varint
+                0x12, 0x03, 0x01, 0x00, 0x00 // truncated fixed32
+        }));
+        parser.nextField();
+        assertThrows(EOFException.class, parser::readPackedVarints);
+        parser.nextField();
+        assertThrows(EOFException.class, parser::readPackedFixed32);
+    }
 }
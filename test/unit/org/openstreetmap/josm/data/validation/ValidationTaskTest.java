@@ -0,0 +1,137 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.data.validation;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.openstreetmap.josm.command.ChangePropertyCommand;
+import org.openstreetmap.josm.command.Command;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.validation.tests.DuplicateNode;
+import org.openstreetmap.josm.data.validation.tests.DuplicatedWayNodes;
+import org.openstreetmap.josm.data.validation.tests.Highways;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests for class {@link ValidationTask}.
+ */
+class ValidationTaskTest {
+
+    /**
+     * Setup test.
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().projection();
+
+    /**
+     * Checks that the errors found in a snapshot of the data set refer to the validated primitives, and can be fixed.
+     */
+    @Test
+    void testErrorsOfSnapshot() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(1, 1));
+        Node n2 = new Node(new LatLon(2, 2));
+        Node sign = new Node(new LatLon(3, 3));
+        ds.addPrimitive(n1);
+        ds.addPrimitive(n2);
+        ds.addPrimitive(sign);
+        sign.put("source:maxspeed", "UK:urban");
+        Way w = new Way();
+        w.setNodes(Arrays.asList(n1, n1, n2));
+        ds.addPrimitive(w);
+
+        Collection<org.openstreetmap.josm.data.validation.Test> tests = Arrays.asList(new Highways(), new DuplicatedWayNodes());
+        ValidationTask task = new ValidationTask(NullProgressMonitor.INSTANCE, tests, ds.allPrimitives(), null);
+        task.realRun();
+        List<TestError> errors = task.getErrors();
+        assertEquals(2, errors.size());
+
+        TestError signError = errors.get(0);
+        assertEquals(Arrays.asList(sign), new ArrayList<>(signError.getPrimitives()));
+        assertTrue(signError.isFixable());
+        Command fix = signError.getFix();
+        assertSame(ds, fix.getAffectedDataSet());
+        assertEquals(Arrays.asList(sign), new ArrayList<>(((ChangePropertyCommand) fix).getObjects()));
+        fix.executeCommand();
+        assertEquals("GB:urban", sign.get("source:maxspeed"));
+
+        TestError wayError = errors.get(1);
+        assertEquals(Arrays.asList(w), new ArrayList<>(wayError.getPrimitives()));
+        wayError.getFix().executeCommand();
+        assertEquals(Arrays.asList(n1, n2), w.getNodes());
+    }
+
+    /**
+     * Checks that the fixes of the errors found in a snapshot are built when fixing, from the edited data set.
+     */
+    @Test
+    void testFixOfSnapshotIsLazy() {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(1, 1));
+        Node n2 = new Node(new LatLon(2, 2));
+        Node n3 = new Node(new LatLon(2, 2));
+        Way w = new Way();
+        Arrays.asList(n1, n2, n3).forEach(ds::addPrimitive);
+        w.setNodes(Arrays.asList(n1, n2, n3));
+        w.put("highway", "residential");
+        ds.addPrimitive(w);
+
+        Collection<org.openstreetmap.josm.data.validation.Test> tests = Arrays.asList(new DuplicateNode());
+        ValidationTask task = new ValidationTask(NullProgressMonitor.INSTANCE, tests, ds.allPrimitives(), null);
+        task.realRun();
+        List<TestError> errors = task.getErrors();
+        assertEquals(1, errors.size());
+        TestError error = errors.get(0);
+        assertEquals(new HashSet<>(Arrays.asList(n2, n3)), new HashSet<>(error.getPrimitives()));
+
+        // the data is edited after the validation
+        Node n4 = new Node(new LatLon(3, 3));
+        ds.addPrimitive(n4);
+        w.addNode(n4);
+        assertTrue(error.isFixable());
+        Command fix = error.getFix();
+        assertSame(ds, fix.getAffectedDataSet());
+        fix.executeCommand();
+        assertEquals(3, w.getNodesCount());
+        assertSame(n4, w.lastNode());
+    }
+
+    /**
+     * Checks that a selection is validated in place.
+     */
+    @Test
+    void testSelection() {
+        DataSet ds = new DataSet();
+        Node sign = new Node(new LatLon(3, 3));
+        sign.put("source:maxspeed", "UK:urban");
+        ds.addPrimitive(sign);
+        ds.addPrimitive(new Node(new LatLon(4, 4)));
+
+        Collection<org.openstreetmap.josm.data.validation.Test> tests = Arrays.asList(new Highways());
+        List<OsmPrimitive> selection = Arrays.asList(sign);
+        ValidationTask task = new ValidationTask(NullProgressMonitor.INSTANCE, tests, selection, selection);
+        task.realRun();
+        List<TestError> errors = task.getErrors();
+        assertEquals(1, errors.size());
+        assertSame(sign, errors.get(0).getPrimitives().iterator().next());
+        errors.get(0).getFix().executeCommand();
+        assertEquals("GB:urban", sign.get("source:maxspeed"));
+    }
+}
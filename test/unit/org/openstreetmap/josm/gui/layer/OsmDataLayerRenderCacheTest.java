@@ -0,0 +1,249 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSelectionListener;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.event.DataChangedEvent;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link OsmDataLayerRenderCache} class.
+ */
+class OsmDataLayerRenderCacheTest {
+
+    /**
+     * Setup test.
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().projection().mapStyles();
+
+    private static final int IMG_WIDTH = 800;
+    private static final int IMG_HEIGHT = 600;
+
+    private DataSet ds;
+    private List<Node> nodes;
+    private List<Way> ways;
+    private NavigatableComponent nc;
+    private OsmDataLayerRenderCache cache;
+    private DataSelectionListener selectionListener;
+
+    /**
+     * Create a dataset with random nodes and ways, and a view.
+     */
+    @BeforeEach
+    public void setUp() {
+        Random random = new Random(42);
+        ds = new DataSet();
+        nodes = new ArrayList<>();
+        ways = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            Node n = new Node(new LatLon(random.nextDouble() * 0.01, random.nextDouble() * 0.01));
+            if (i % 5 == 0) {
+                n.put("amenity", "bench");
+            }
+            ds.addPrimitive(n);
+            nodes.add(n);
+        }
+        for (int i = 0; i < 100; i++) {
+            Way w = new Way();
+            int first = random.nextInt(nodes.size() - 5);
+            w.setNodes(nodes.subList(first, first + 2 + random.nextInt(3)));
+            w.put("highway", i % 3 == 0 ? "primary" : "residential");
+            ds.addPrimitive(w);
+            ways.add(w);
+        }
+        nc = new NavigatableComponent() {
+            {
+                setBounds(0, 0, IMG_WIDTH, IMG_HEIGHT);
+                updateLocationState();
+            }
+
+            @Override
+            protected boolean isVisibleOnScreen() {
+                return true;
+            }
+
+            @Override
+            public Point getLocationOnScreen() {
+                return new Point(0, 0);
+            }
+        };
+        nc.zoomTo(new Bounds(0.002, 0.002, 0.008, 0.008));
+        cache = new OsmDataLayerRenderCache(ds, () -> { });
+        selectionListener = cache::selectionChanged;
+        ds.addSelectionListener(selectionListener);
+    }
+
+    /**
+     * Stop the rendering.
+     */
+    @AfterEach
+    public void tearDown() {
+        ds.removeSelectionListener(selectionListener);
+        cache.dispose();
+    }
+
+    private static BufferedImage newImage() {
+        return new BufferedImage(IMG_WIDTH, IMG_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    private static Graphics2D createGraphics(BufferedImage image) {
+        Graphics2D g = image.createGraphics();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, IMG_WIDTH, IMG_HEIGHT);
+        // the normalization of strokes depends on the clip, which is not the same for tiles
+        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+        g.setClip(0, 0, IMG_WIDTH, IMG_HEIGHT);
+        return g;
+    }
+
+    private Bounds getBounds() {
+        return nc.getLatLonBounds(new Rectangle(0, 0, IMG_WIDTH, IMG_HEIGHT));
+    }
+
+    private BufferedImage paintCached() {
+        BufferedImage image = newImage();
+        Graphics2D g = createGraphics(image);
+        assertTrue(cache.paint(g, nc, getBounds(), new StyledMapRenderer(g, nc, false), false, false));
+        g.dispose();
+        return image;
+    }
+
+    private BufferedImage paintDirectly() {
+        BufferedImage image = newImage();
+        Graphics2D g = createGraphics(image);
+        new StyledMapRenderer(g, nc, false).render(ds, false, getBounds());
+        g.dispose();
+        return image;
+    }
+
+    private static int countDifferentPixels(BufferedImage a, BufferedImage b) {
+        int count = 0;
+        for (int x = 0; x < IMG_WIDTH; x++) {
+            for (int y = 0; y < IMG_HEIGHT; y++) {
+                int rgbA = a.getRGB(x, y);
+                int rgbB = b.getRGB(x, y);
+                // compositing the antialiased pixels of the tiles gives slightly different values
+                for (int shift = 0; shift < 24; shift += 8) {
+                    if (Math.abs(((rgbA >>> shift) & 0xff) - ((rgbB >>> shift) & 0xff)) > 8) {
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private void assertSameRendering() {
+        // antialiasing may differ at the tile borders
+        int different = countDifferentPixels(paintCached(), paintDirectly());
+        assertTrue(different < IMG_WIDTH * IMG_HEIGHT / 100, different + " different pixels");
+    }
+
+    /**
+     * Test that the cached rendering is the same as the direct one, and that only the tiles of the changed primitives
+     * are rendered again.
+     * @throws Exception if the rendering fails
+     */
+    @Test
+    void testRenderCache() throws Exception {
+        paintCached();
+        int tiles = cache.getTileCount();
+        assertTrue(tiles > 1);
+        assertEquals(tiles, cache.getOutdatedTileCount());
+        cache.waitForRendering();
+        assertEquals(0, cache.getOutdatedTileCount());
+        assertSameRendering();
+        assertEquals(tiles, cache.getTileCount());
+
+        // editing a node
+        Node node = nodes.get(10);
+        node.setCoor(new LatLon(0.005, 0.005));
+        int outdated = cache.getOutdatedTileCount();
+        assertTrue(outdated > 0 && outdated < tiles, Integer.toString(outdated));
+        paintCached();
+        cache.waitForRendering();
+        assertEquals(0, cache.getOutdatedTileCount());
+        assertSameRendering();
+
+        // selected primitives are painted over the tiles, before and after these are rendered again
+        ds.setSelected(ways.get(5), nodes.get(20));
+        assertSameRendering();
+        cache.waitForRendering();
+        assertSameRendering();
+        ds.clearSelection();
+        assertSameRendering();
+        cache.waitForRendering();
+        assertEquals(0, cache.getOutdatedTileCount());
+        assertSameRendering();
+
+        // highlighted primitives
+        ways.get(6).setHighlighted(true);
+        assertSameRendering();
+        cache.waitForRendering();
+        ways.get(6).setHighlighted(false);
+        assertSameRendering();
+        cache.waitForRendering();
+        assertEquals(0, cache.getOutdatedTileCount());
+
+        // global changes
+        cache.dataChanged(new DataChangedEvent(ds));
+        assertEquals(tiles, cache.getOutdatedTileCount());
+        paintCached();
+        cache.waitForRendering();
+        assertEquals(0, cache.getOutdatedTileCount());
+        assertSameRendering();
+    }
+
+    /**
+     * Test that the tiles are not rendered while the map view is painted.
+     * @throws Exception if the rendering fails
+     */
+    @Test
+    void testRenderingWaitsForPainting() throws Exception {
+        ReentrantLock lock = (ReentrantLock) StyledMapRenderer.STYLE_CACHE_LOCK;
+        lock.lock();
+        try {
+            paintCached();
+            int tiles = cache.getTileCount();
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!lock.hasQueuedThreads() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(lock.hasQueuedThreads());
+            assertEquals(tiles, cache.getOutdatedTileCount());
+        } finally {
+            lock.unlock();
+        }
+        cache.waitForRendering();
+        assertEquals(0, cache.getOutdatedTileCount());
+    }
+}
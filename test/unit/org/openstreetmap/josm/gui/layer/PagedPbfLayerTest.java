@@ -0,0 +1,156 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.layer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.io.IllegalDataException;
+import org.openstreetmap.josm.io.IndexedPbfFile;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link PagedPbfLayer} class.
+ */
+class PagedPbfLayerTest {
+
+    /**
+     * Setup tests
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().projection();
+
+    /** Bounds within the first page, around the nodes of the first node block */
+    private static final Bounds PAGE_A = new Bounds(50.001, 8.001, 50.1, 8.1);
+    /** Bounds within another page, around the nodes of the second node block */
+    private static final Bounds PAGE_B = new Bounds(51.001, 9.001, 51.1, 9.1);
+
+    private static PagedPbfLayer createLayer(Path tempDir, long budget) throws Exception {
+        Path file = tempDir.resolve("blocks.osm.pbf");
+        Files.copy(Paths.get(TestUtils.getTestDataRoot(), "pbf", "osm", "blocks.osm.pbf"), file);
+        return new PagedPbfLayer(IndexedPbfFile.open(file.toFile()), "blocks", 0.5, budget);
+    }
+
+    private static void requestPages(PagedPbfLayer layer, Bounds view) throws Exception {
+        GuiHelper.runInEDTAndWaitAndReturn(() -> layer.requestPages(view)).get();
+    }
+
+    private static List<Long> ids(Collection<? extends OsmPrimitive> primitives) {
+        return primitives.stream().filter(p -> !p.isIncomplete()).map(OsmPrimitive::getId).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Test that the pages covering the view are loaded, and that the dataset is read-only.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testLoadPages(@TempDir Path tempDir) throws Exception {
+        PagedPbfLayer layer = createLayer(tempDir, Long.MAX_VALUE);
+        try {
+            DataSet ds = layer.getDataSet();
+            assertTrue(ds.isLocked());
+            assertFalse(layer.isUploadable());
+            assertFalse(layer.isSavable());
+            assertEquals(new Bounds(50.01, 8.01, 51.03, 9.03), layer.getPbfFile().getIndex().getBounds());
+
+            requestPages(layer, PAGE_A);
+            assertEquals(1, layer.getLoadedPageCount());
+            assertEquals(Arrays.asList(1L, 2L, 3L, 4L), ids(ds.getNodes()));
+            assertEquals(Arrays.asList(10L, 11L), ids(ds.getWays()));
+            assertTrue(ds.getWays().stream().noneMatch(Way::hasIncompleteNodes));
+            assertEquals(Arrays.asList(21L), ids(ds.getRelations()));
+
+            requestPages(layer, PAGE_B);
+            assertEquals(2, layer.getLoadedPageCount());
+            assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L), ids(ds.getNodes()));
+            assertEquals(Arrays.asList(10L, 11L, 12L), ids(ds.getWays()));
+            assertEquals(Arrays.asList(20L, 21L), ids(ds.getRelations()));
+
+            // Loaded pages are not read again
+            requestPages(layer, PAGE_A);
+            assertEquals(2, layer.getLoadedPageCount());
+            assertThrows(IllegalStateException.class, () -> ds.removePrimitive(ds.getPrimitiveById(10, OsmPrimitiveType.WAY)));
+        } finally {
+            layer.destroy();
+        }
+    }
+
+    /**
+     * Test that the least recently viewed pages are removed when the memory budget is exceeded.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testEviction(@TempDir Path tempDir) throws Exception {
+        PagedPbfLayer layer = createLayer(tempDir, 0);
+        try {
+            DataSet ds = layer.getDataSet();
+            assertEquals(0, layer.getMemoryBudget());
+            requestPages(layer, PAGE_A);
+            assertEquals(1, layer.getLoadedPageCount());
+            assertNotNull(ds.getPrimitiveById(10, OsmPrimitiveType.WAY));
+
+            // Only the visible page is kept
+            requestPages(layer, PAGE_B);
+            assertEquals(1, layer.getLoadedPageCount());
+            assertEquals(Arrays.asList(3L, 4L, 5L, 6L), ids(ds.getNodes()));
+            assertEquals(Arrays.asList(11L, 12L), ids(ds.getWays()));
+            assertEquals(Arrays.asList(20L), ids(ds.getRelations()));
+            assertNull(ds.getPrimitiveById(1, OsmPrimitiveType.NODE));
+            assertNull(ds.getPrimitiveById(10, OsmPrimitiveType.WAY));
+            assertTrue(ds.getWays().stream().noneMatch(Way::hasIncompleteNodes));
+
+            // Nothing is loaded when zoomed out too far
+            requestPages(layer, new Bounds(0, 0, 60, 60));
+            assertEquals(1, layer.getLoadedPageCount());
+        } finally {
+            layer.destroy();
+        }
+    }
+
+    /**
+     * Test that the file is closed after the pending loads when the layer is destroyed, and that they are dropped.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testDestroy(@TempDir Path tempDir) throws Exception {
+        PagedPbfLayer layer = createLayer(tempDir, Long.MAX_VALUE);
+        GuiHelper.runInEDTAndWait(() -> {
+            layer.requestPages(PAGE_A);
+            layer.requestPages(PAGE_B);
+            layer.destroy();
+        });
+        assertTrue(layer.awaitClosed(10, TimeUnit.SECONDS));
+        GuiHelper.runInEDTAndWait(() -> { });
+        assertEquals(0, layer.getLoadedPageCount());
+        assertTrue(layer.getDataSet().allPrimitives().isEmpty());
+        assertThrows(IllegalDataException.class, () -> layer.getPbfFile().read(PAGE_A, null));
+    }
+}
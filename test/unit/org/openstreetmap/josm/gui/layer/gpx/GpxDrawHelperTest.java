@@ -2,9 +2,12 @@
 package org.openstreetmap.josm.gui.layer.gpx;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -14,9 +17,13 @@ import java.util.stream.Collectors;
 import org.junit.jupiter.api.extension.RegisterExtension;
 import org.junit.jupiter.api.Test;
 import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.gpx.ColumnarGpxTrackSegment;
 import org.openstreetmap.josm.data.gpx.GpxData;
+import org.openstreetmap.josm.data.gpx.WayPoint;
 import org.openstreetmap.josm.gui.layer.GpxLayer;
 import org.openstreetmap.josm.gui.layer.gpx.GpxDrawHelper.ColorMode;
+import org.openstreetmap.josm.io.GpxReader;
 import org.openstreetmap.josm.io.GpxReaderTest;
 import org.openstreetmap.josm.testutils.JOSMTestRules;
 import org.openstreetmap.josm.tools.ColorHelper;
@@ -34,7 +41,7 @@ class GpxDrawHelperTest {
      */
     @RegisterExtension
     @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
-    public JOSMTestRules test = new JOSMTestRules();
+    public JOSMTestRules test = new JOSMTestRules().projection();
 
     /**
      * Non-regression test for ticket <a href="https://josm.openstreetmap.de/ticket/12312">#12312</a>.
@@ -119,6 +126,49 @@ class GpxDrawHelperTest {
         assertEquals("[#000000, #FF0000, #FF0000, #FF0500, #FF0500, #FF0A00, #FF0A00, #FF1F00, #FF2E00, #FF3300]", colors.toString());
     }
 
+    /**
+     * Tests that the points of columnar segments get the same colors and are listed the same way, without keeping them.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testColumnarSegments() throws Exception {
+        final Map<String, String> prefs = Collections.singletonMap("colormode", Integer.toString(ColorMode.VELOCITY.toIndex()));
+        final GpxData expected = GpxReaderTest.parseGpxData("nodist/data/2094047.gpx");
+        final GpxData data;
+        GpxReader.COLUMNAR_SEGMENT_MIN_POINTS.put(10);
+        try {
+            data = GpxReaderTest.parseGpxData("nodist/data/2094047.gpx");
+        } finally {
+            GpxReader.COLUMNAR_SEGMENT_MIN_POINTS.remove();
+        }
+        assertTrue(data.getTracks().iterator().next().getSegments().iterator().next() instanceof ColumnarGpxTrackSegment);
+
+        final Bounds box = new Bounds(expected.getTrackPoints().skip(100).findFirst().get().getCoor());
+        box.extend(expected.getTrackPoints().skip(200).findFirst().get().getCoor());
+        final List<WayPoint> visible = listVisibleSegments(data, prefs, box);
+        assertFalse(visible.isEmpty());
+        assertEquals(toString(listVisibleSegments(expected, prefs, box)), toString(visible));
+        assertEquals(toString(expected.getTrackPoints().collect(Collectors.toList())),
+                toString(data.getTrackPoints().collect(Collectors.toList())));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<WayPoint> listVisibleSegments(GpxData data, Map<String, String> layerPrefs, Bounds box)
+            throws ReflectiveOperationException {
+        data.getLayerPrefs().putAll(layerPrefs);
+        final GpxDrawHelper gdh = new GpxDrawHelper(new GpxLayer(data));
+        gdh.readPreferences();
+        gdh.calculateColors();
+        Method listVisibleSegments = GpxDrawHelper.class.getDeclaredMethod("listVisibleSegments", Bounds.class);
+        listVisibleSegments.setAccessible(true);
+        return (List<WayPoint>) listVisibleSegments.invoke(gdh, box);
+    }
+
+    private static String toString(List<WayPoint> points) {
+        return points.stream().map(p -> p.getCoor() + " " + p.drawLine + " " + p.dir + " " + ColorHelper.color2html(p.customColoring))
+                .collect(Collectors.toList()).toString();
+    }
+
     /**
      *
      * @param fileName the GPX filename to parse
@@ -0,0 +1,170 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.gui.mappaint;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.awt.Point;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.data.osm.visitor.paint.StyledMapRenderer;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.gui.util.GuiHelper;
+import org.openstreetmap.josm.testutils.JOSMTestRules;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * Unit tests of {@link StyleCacheWarmer} class.
+ */
+class StyleCacheWarmerTest {
+
+    /**
+     * Setup test.
+     */
+    @RegisterExtension
+    @SuppressFBWarnings(value = "URF_UNREAD_PUBLIC_OR_PROTECTED_FIELD")
+    public JOSMTestRules test = new JOSMTestRules().preferences().projection().mapStyles();
+
+    private static DataSet createDataSet() {
+        Random random = new Random(42);
+        DataSet ds = new DataSet();
+        Node[] nodes = new Node[5000];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = new Node(new LatLon(random.nextDouble() * 0.1, random.nextDouble() * 0.1));
+            if (i % 5 == 0) {
+                nodes[i].put("amenity", "bench");
+            }
+            ds.addPrimitive(nodes[i]);
+        }
+        for (int i = 0; i < 1000; i++) {
+            Way w = new Way();
+            int first = random.nextInt(nodes.length - 5);
+            for (int j = 0; j < 2 + random.nextInt(3); j++) {
+                w.addNode(nodes[first + j]);
+            }
+            w.put("highway", i % 3 == 0 ? "primary" : "residential");
+            ds.addPrimitive(w);
+        }
+        for (int i = 0; i < 100; i++) {
+            Way outer = new Way();
+            int first = random.nextInt(nodes.length - 5);
+            for (int j = 0; j < 4; j++) {
+                outer.addNode(nodes[first + j]);
+            }
+            outer.addNode(nodes[first]);
+            ds.addPrimitive(outer);
+            Relation r = new Relation();
+            r.addMember(new RelationMember("outer", outer));
+            r.put("type", "multipolygon");
+            r.put("landuse", "forest");
+            ds.addPrimitive(r);
+        }
+        return ds;
+    }
+
+    private static NavigatableComponent createNavigatableComponent() {
+        NavigatableComponent nc = new NavigatableComponent() {
+            {
+                setBounds(0, 0, 800, 600);
+                updateLocationState();
+            }
+
+            @Override
+            protected boolean isVisibleOnScreen() {
+                return true;
+            }
+
+            @Override
+            public Point getLocationOnScreen() {
+                return new Point(0, 0);
+            }
+        };
+        nc.zoomTo(new Bounds(0.02, 0.02, 0.03, 0.03));
+        return nc;
+    }
+
+    /**
+     * Test that the styles of all primitives are computed at the current scale and one zoom level in and out.
+     * @throws Exception if the computation fails
+     */
+    @Test
+    void testWarmUp() throws Exception {
+        DataSet ds = createDataSet();
+        NavigatableComponent nc = createNavigatableComponent();
+        AtomicInteger repaints = new AtomicInteger();
+        StyleCacheWarmer.getInstance().warmUp(ds, nc, repaints::incrementAndGet).get();
+        GuiHelper.runInEDTAndWait(() -> { });
+        assertEquals(1, repaints.get());
+
+        double circum = nc.getDist100Pixel();
+        for (OsmPrimitive osm : ds.allPrimitives()) {
+            assertTrue(osm.isCachedStyleUpToDate(), osm::toString);
+            for (double scale : new double[] {circum, circum / 2, circum * 2}) {
+                assertNotNull(osm.getCachedStyle().getWithRange(scale, false).a, osm::toString);
+            }
+        }
+    }
+
+    /**
+     * Test that the styles are not computed while the map view is painted.
+     * @throws Exception if the computation fails
+     */
+    @Test
+    void testWaitsForPainting() throws Exception {
+        DataSet ds = createDataSet();
+        NavigatableComponent nc = createNavigatableComponent();
+        ReentrantLock lock = (ReentrantLock) StyledMapRenderer.STYLE_CACHE_LOCK;
+        Future<?> future;
+        lock.lock();
+        try {
+            future = StyleCacheWarmer.getInstance().warmUp(ds, nc, () -> { });
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!lock.hasQueuedThreads() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertTrue(lock.hasQueuedThreads());
+            assertFalse(ds.allPrimitives().stream().anyMatch(OsmPrimitive::isCachedStyleUpToDate));
+        } finally {
+            lock.unlock();
+        }
+        future.get();
+        assertTrue(ds.allPrimitives().stream().allMatch(OsmPrimitive::isCachedStyleUpToDate));
+    }
+
+    /**
+     * Test that a computation can be cancelled, and is cancelled when another one starts for the same data set.
+     * @throws Exception if the computation fails
+     */
+    @Test
+    void testCancel() throws Exception {
+        DataSet ds = createDataSet();
+        NavigatableComponent nc = createNavigatableComponent();
+        AtomicInteger repaints = new AtomicInteger();
+        Future<?> first = StyleCacheWarmer.getInstance().warmUp(ds, nc, repaints::incrementAndGet);
+        Future<?> second = StyleCacheWarmer.getInstance().warmUp(ds, nc, repaints::incrementAndGet);
+        Future<?> third = StyleCacheWarmer.getInstance().warmUp(ds, nc, repaints::incrementAndGet);
+        StyleCacheWarmer.getInstance().cancel(ds);
+        first.get();
+        second.get();
+        third.get();
+        GuiHelper.runInEDTAndWait(() -> { });
+        // at most the first one may have processed the visible primitives before being cancelled
+        assertTrue(repaints.get() <= 1, Integer.toString(repaints.get()));
+    }
+}
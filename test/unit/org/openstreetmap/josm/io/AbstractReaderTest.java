@@ -0,0 +1,71 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMemberData;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.gui.progress.ProgressMonitor;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link AbstractReader} class.
+ */
+@BasicPreferences
+class AbstractReaderTest {
+
+    /**
+     * A reader filling the deprecated protected maps, like readers of plugins do.
+     */
+    @SuppressWarnings("deprecation")
+    private static final class LegacyReader extends AbstractReader {
+        @Override
+        protected DataSet doParseDataSet(InputStream source, ProgressMonitor progressMonitor) throws IllegalDataException {
+            return doParseDataSet(source, progressMonitor, ir -> {
+                for (long id = 1; id <= 3; id++) {
+                    Node n = new Node(id, 1);
+                    n.setCoor(new LatLon(id, id));
+                    externalIdMap.put(new SimplePrimitiveId(id, OsmPrimitiveType.NODE), n);
+                }
+                externalIdMap.put(new SimplePrimitiveId(10, OsmPrimitiveType.WAY), new Way(10, 1));
+                ways.put(10L, Arrays.asList(1L, 2L, 3L));
+                externalIdMap.put(new SimplePrimitiveId(20, OsmPrimitiveType.RELATION), new Relation(20, 1));
+                relations.put(20L, Collections.singletonList(new RelationMemberData("outer", OsmPrimitiveType.WAY, 10)));
+
+                assertEquals(5, externalIdMap.size());
+                assertTrue(externalIdMap.containsKey(new SimplePrimitiveId(2, OsmPrimitiveType.NODE)));
+                assertEquals(Arrays.asList(1L, 2L, 3L), ways.get(10L));
+                assertEquals(1, relations.size());
+            });
+        }
+    }
+
+    /**
+     * Test that the deprecated protected maps still work for readers of plugins.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testLegacyMaps() throws Exception {
+        DataSet ds = new LegacyReader().doParseDataSet(new ByteArrayInputStream(new byte[0]), NullProgressMonitor.INSTANCE);
+        Way w = (Way) ds.getPrimitiveById(10, OsmPrimitiveType.WAY);
+        assertEquals(3, w.getNodesCount());
+        assertSame(ds.getPrimitiveById(2, OsmPrimitiveType.NODE), w.getNode(1));
+        Relation r = (Relation) ds.getPrimitiveById(20, OsmPrimitiveType.RELATION);
+        assertSame(w, r.getMember(0).getMember());
+    }
+}
@@ -20,6 +20,7 @@ import java.util.stream.IntStream;
 
 import org.openstreetmap.josm.TestUtils;
 import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
 import org.openstreetmap.josm.data.osm.Node;
 import org.openstreetmap.josm.data.osm.OsmPrimitive;
 import org.openstreetmap.josm.data.osm.Relation;
@@ -241,4 +242,36 @@ class GeoJSONReaderTest {
             assertEquals("java.lang.IllegalArgumentException: features must be ARRAY, but is OBJECT", exception.getMessage());
         }
     }
+
+    /**
+     * Test that the features read one at a time share their nodes, and that the multipolygon ways are merged with
+     * the equal tagged ways read afterwards.
+     * @throws Exception in case of error
+     */
+    @Test
+    void testStreamedFeatureCollection() throws Exception {
+        String outer = "[[0,0],[0,10],[10,10],[10,0],[0,0]]";
+        String inner = "[[2,2],[2,4],[4,4],[4,2],[2,2]]";
+        String featureCollection = "{\"type\": \"FeatureCollection\", \"features\": ["
+                + "{\"type\": \"Feature\", \"properties\": {\"landuse\": \"forest\"},"
+                + " \"geometry\": {\"type\": \"Polygon\", \"coordinates\": [" + outer + "," + inner + "]}},"
+                + "{\"type\": \"Feature\", \"properties\": {\"building\": \"yes\"},"
+                + " \"geometry\": {\"type\": \"Polygon\", \"coordinates\": [" + inner + "]}},"
+                + "{\"type\": \"Feature\", \"properties\": {\"highway\": \"track\"},"
+                + " \"geometry\": {\"type\": \"LineString\", \"coordinates\": [[0,0],[2,2]]}}"
+                + "], \"name\": \"test\"}";
+        try (InputStream in = new ByteArrayInputStream(featureCollection.getBytes(StandardCharsets.UTF_8))) {
+            DataSet ds = new GeoJSONReader().doParseDataSet(in, null);
+            assertEquals(8, ds.getNodes().size());
+            assertEquals(3, ds.getWays().size());
+            Relation multipolygon = ds.getRelations().iterator().next();
+            assertTrue(multipolygon.isMultipolygon());
+            assertEquals("forest", multipolygon.get("landuse"));
+            Way building = ds.getWays().stream().filter(w -> w.hasKey("building")).findFirst().get();
+            assertEquals(building, multipolygon.getMember(1).getMember());
+            Way track = ds.getWays().stream().filter(w -> w.hasKey("highway")).findFirst().get();
+            assertEquals(multipolygon.getMember(0).getWay().firstNode(), track.firstNode());
+            assertEquals(building.firstNode(), track.lastNode());
+        }
+    }
 }
@@ -0,0 +1,143 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.HttpURLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.SimplePrimitiveId;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link IndexedPbfFile} class, used as an {@link OsmObjectStore}.
+ * <p>
+ * The test file contains the nodes 1 to 6, the ways 10 (nodes 1, 2, 3), 11 (nodes 3, 4) and 12 (nodes 5, 6),
+ * and the relations 20 (way 12), 21 (node 1) and 22 (relation 20).
+ */
+@BasicPreferences
+class IndexedPbfFileTest {
+
+    private static IndexedPbfFile open(Path tempDir) throws Exception {
+        Path file = tempDir.resolve("blocks.osm.pbf");
+        Files.copy(Paths.get(TestUtils.getTestDataRoot(), "pbf", "osm", "blocks.osm.pbf"), file);
+        return IndexedPbfFile.open(file.toFile());
+    }
+
+    private static List<Long> ids(Collection<? extends OsmPrimitive> primitives) {
+        return primitives.stream().filter(p -> !p.isIncomplete()).map(OsmPrimitive::getId).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Reset the object store.
+     */
+    @AfterEach
+    void tearDown() {
+        OsmObjectStores.setStore(null);
+    }
+
+    /**
+     * Test reading objects by ID.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testGetPrimitives(@TempDir Path tempDir) throws Exception {
+        try (IndexedPbfFile pbf = open(tempDir)) {
+            DataSet ds = pbf.getPrimitives(Arrays.asList(
+                    new SimplePrimitiveId(11, OsmPrimitiveType.WAY),
+                    new SimplePrimitiveId(5, OsmPrimitiveType.NODE),
+                    new SimplePrimitiveId(99, OsmPrimitiveType.NODE)), false);
+            assertEquals(Collections.singletonList(5L), ids(ds.getNodes()));
+            assertEquals(Collections.singletonList(11L), ids(ds.getWays()));
+            assertTrue(((Way) ds.getPrimitiveById(11, OsmPrimitiveType.WAY)).hasIncompleteNodes());
+            assertTrue(ds.getDataSources().isEmpty());
+
+            // ways with their nodes
+            ds = pbf.getPrimitives(Collections.singleton(new SimplePrimitiveId(11, OsmPrimitiveType.WAY)), true);
+            assertEquals(Arrays.asList(3L, 4L), ids(ds.getNodes()));
+            assertFalse(((Way) ds.getPrimitiveById(11, OsmPrimitiveType.WAY)).hasIncompleteNodes());
+
+            // relations with their members, and the nodes of the member ways
+            ds = pbf.getPrimitives(Collections.singleton(new SimplePrimitiveId(20, OsmPrimitiveType.RELATION)), true);
+            assertEquals(Arrays.asList(5L, 6L), ids(ds.getNodes()));
+            assertEquals(Collections.singletonList(12L), ids(ds.getWays()));
+
+            // member relations without their members
+            ds = pbf.getPrimitives(Collections.singleton(new SimplePrimitiveId(22, OsmPrimitiveType.RELATION)), true);
+            assertEquals(Arrays.asList(20L, 22L), ids(ds.getRelations()));
+            assertTrue(((Relation) ds.getPrimitiveById(20, OsmPrimitiveType.RELATION)).hasIncompleteMembers());
+            assertTrue(ids(ds.getWays()).isEmpty());
+        }
+    }
+
+    /**
+     * Test reading the referrers of objects.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testGetReferrers(@TempDir Path tempDir) throws Exception {
+        try (IndexedPbfFile pbf = open(tempDir)) {
+            assertEquals(Arrays.asList(10L, 11L), ids(pbf.getReferrers(new SimplePrimitiveId(3, OsmPrimitiveType.NODE),
+                    OsmPrimitiveType.WAY).getWays()));
+            assertEquals(Collections.singletonList(21L), ids(pbf.getReferrers(new SimplePrimitiveId(1, OsmPrimitiveType.NODE),
+                    OsmPrimitiveType.RELATION).getRelations()));
+            assertEquals(Collections.singletonList(20L), ids(pbf.getReferrers(new SimplePrimitiveId(12, OsmPrimitiveType.WAY),
+                    OsmPrimitiveType.RELATION).getRelations()));
+            assertEquals(Collections.singletonList(22L), ids(pbf.getReferrers(new SimplePrimitiveId(20, OsmPrimitiveType.RELATION),
+                    OsmPrimitiveType.RELATION).getRelations()));
+            assertTrue(pbf.getReferrers(new SimplePrimitiveId(6, OsmPrimitiveType.NODE),
+                    OsmPrimitiveType.RELATION).allPrimitives().isEmpty());
+        }
+    }
+
+    /**
+     * Test that the OSM API readers use the object store.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testServerReaders(@TempDir Path tempDir) throws Exception {
+        try (IndexedPbfFile pbf = open(tempDir)) {
+            OsmObjectStores.setStore(pbf);
+            DataSet ds = new OsmServerObjectReader(10, OsmPrimitiveType.WAY, true).parseOsm(NullProgressMonitor.INSTANCE);
+            assertEquals(Arrays.asList(1L, 2L, 3L), ids(ds.getNodes()));
+            OsmApiException e = assertThrows(OsmApiException.class,
+                    () -> new OsmServerObjectReader(99, OsmPrimitiveType.WAY, false).parseOsm(NullProgressMonitor.INSTANCE));
+            assertEquals(HttpURLConnection.HTTP_NOT_FOUND, e.getResponseCode());
+
+            MultiFetchServerObjectReader reader = MultiFetchServerObjectReader.create(false);
+            reader.append(new SimplePrimitiveId(12, OsmPrimitiveType.WAY));
+            reader.append(new SimplePrimitiveId(99, OsmPrimitiveType.NODE));
+            ds = reader.parseOsm(NullProgressMonitor.INSTANCE);
+            assertEquals(Arrays.asList(5L, 6L), ids(ds.getNodes()));
+            assertEquals(Collections.singletonList(12L), ids(ds.getWays()));
+            assertEquals(Collections.singleton(new SimplePrimitiveId(99, OsmPrimitiveType.NODE)), reader.getMissingPrimitives());
+
+            ds = new OsmServerBackreferenceReader(4, OsmPrimitiveType.NODE).parseOsm(NullProgressMonitor.INSTANCE);
+            assertEquals(Collections.singletonList(11L), ids(ds.getWays()));
+            assertEquals(Arrays.asList(3L, 4L), ids(ds.getNodes()));
+        }
+    }
+}
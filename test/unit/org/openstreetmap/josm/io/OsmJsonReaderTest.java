@@ -3,6 +3,7 @@ package org.openstreetmap.josm.io;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.io.ByteArrayInputStream;
@@ -246,4 +247,41 @@ class OsmJsonReaderTest {
                 "  \"remark\": \"runtime error: Query ran out of memory in \\\"query\\\" at line 5.\"\n");
         assertEquals("runtime error: Query ran out of memory in \"query\" at line 5.", ds.getRemark());
     }
+
+    /**
+     * Test that the Overpass geometry attributes are skipped, and that the attributes can come in any order.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testOverpassGeometry() throws Exception {
+        DataSet ds = parse("{\n" +
+                "  \"id\": 2,\n" +
+                "  \"bounds\": {\"minlat\": 50.0, \"minlon\": 8.0, \"maxlat\": 50.1, \"maxlon\": 8.1},\n" +
+                "  \"geometry\": [{\"lat\": 50.0, \"lon\": 8.0}, {\"lat\": 50.1, \"lon\": 8.1}],\n" +
+                "  \"nodes\": [10, 11],\n" +
+                "  \"type\": \"way\"\n" +
+                "}, {\n" +
+                "  \"type\": \"relation\",\n" +
+                "  \"id\": 3,\n" +
+                "  \"members\": [{\"type\": \"way\", \"ref\": 2, \"role\": \"outer\", \"geometry\": [null]}]\n" +
+                "}");
+        Way w = ds.getWays().iterator().next();
+        assertEquals(2, w.getUniqueId());
+        assertEquals(2, w.getNodesCount());
+        Relation r = ds.getRelations().iterator().next();
+        assertEquals(w, r.getMember(0).getMember());
+        assertEquals("outer", r.getMember(0).getRole());
+    }
+
+    /**
+     * Test invalid documents.
+     */
+    @Test
+    void testInvalid() {
+        assertThrows(IllegalDataException.class, () -> parse("{\"type\": \"node\", \"id\": 1, \"lat\": 5"));
+        assertThrows(IllegalDataException.class, () -> parse("{\"type\": \"node\", \"id\": \"one\"}"));
+        assertThrows(IllegalDataException.class, () -> parse("42"));
+        assertThrows(IllegalDataException.class, () -> OsmJsonReader.parseDataSet(new ByteArrayInputStream(
+                "{\"elements\": []}".getBytes(StandardCharsets.UTF_8)), null));
+    }
 }
@@ -158,6 +158,41 @@ class OsmReaderTest {
         }
     }
 
+    private static String generateLargeData(boolean valid) {
+        StringBuilder sb = new StringBuilder("<osm version='0.6'>");
+        int count = PipelinedBuilder.BATCH_SIZE * (PipelinedBuilder.QUEUE_SIZE + 2);
+        for (int i = 1; i <= count; i++) {
+            sb.append("<node id='").append(i).append("' version='1' lat='").append(i * 1e-5).append("' lon='1'><tag k='n' v='")
+              .append(i).append("'/></node>");
+        }
+        sb.append("<way id='1' version='1'><nd ref='1'/><nd ref='").append(count).append("'/></way>");
+        sb.append("<relation id='1' version='1'><member type='way' ref='1' role='outer'/></relation>");
+        if (!valid) {
+            sb.append("<node id='0'/>");
+        }
+        return sb.append("</osm>").toString();
+    }
+
+    /**
+     * Test that the pipelined and sequential modes read the same data, over many batches.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testPipelined() throws Exception {
+        String osm = generateLargeData(true);
+        OsmReader.PIPELINED.put(false);
+        DataSet sequential = testValidData(osm, null);
+        OsmReader.PIPELINED.put(true);
+        DataSet pipelined = testValidData(osm, null);
+        assertEquals(sequential.getNodes().size(), pipelined.getNodes().size());
+        Way way = pipelined.getWays().iterator().next();
+        assertEquals(2, way.getNodesCount());
+        assertEquals(sequential.getWays().iterator().next().lastNode().getCoor(), way.lastNode().getCoor());
+        assertEquals("1", way.firstNode().get("n"));
+        assertEquals(way, pipelined.getRelations().iterator().next().getMember(0).getMember());
+        assertTrue(testInvalidData(generateLargeData(false)).getMessage().startsWith("Illegal object with ID=0."));
+    }
+
     /**
      * Test invalid UID.
      * @throws Exception if any error occurs
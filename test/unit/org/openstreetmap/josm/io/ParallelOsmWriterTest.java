@@ -0,0 +1,151 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.Changeset;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DownloadPolicy;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.UploadPolicy;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link ParallelOsmWriter} class.
+ */
+@BasicPreferences
+class ParallelOsmWriterTest {
+
+    private static final String[] VALUES = {"residential", "Müllerstraße", "a < b & c > 'd' \"e\"", "line\nbreak\ttab\r", "東京", "😀"};
+
+    private static double coordinate(Random random, double max) {
+        switch (random.nextInt(5)) {
+        case 0:
+            // near the rounding midpoints of the 11 fraction digits
+            return Math.round(random.nextDouble() * max * 1e11) / 1e11 + 0.5e-11;
+        case 1:
+            return Math.round(random.nextDouble() * max * 1e7) / 1e7;
+        case 2:
+            return (random.nextDouble() - 0.5) * 1e-10;
+        default:
+            return (random.nextDouble() * 2 - 1) * max;
+        }
+    }
+
+    private static DataSet createDataSet(int nodeCount) {
+        Random random = new Random(42);
+        DataSet ds = new DataSet();
+        User user = User.createOsmUser(1, "Ünïcode & <user>");
+        List<Node> nodes = new ArrayList<>();
+        for (int i = 1; i <= nodeCount; i++) {
+            Node n = i % 3 == 0 ? new Node(new LatLon(0, 0)) : new Node(i, 1 + i % 4);
+            n.setCoor(new LatLon(coordinate(random, 90), coordinate(random, 180)));
+            if (i % 5 == 0) {
+                n.put("highway", VALUES[i % VALUES.length]);
+                n.put("name", VALUES[(i / 5) % VALUES.length]);
+            }
+            if (!n.isNew()) {
+                n.setUser(i % 2 == 0 ? user : User.createLocalUser("local"));
+                n.setInstant(Instant.ofEpochSecond(1_500_000_000L + i));
+                n.setChangesetId(i);
+                n.setModified(i % 7 == 0);
+            }
+            ds.addPrimitive(n);
+            nodes.add(n);
+        }
+        nodes.get(nodes.size() - 1).setCoor(new LatLon(-0.0, 1e-12));
+        for (int i = 0; i + 1 < nodes.size(); i += 3) {
+            Way w = new Way();
+            w.setNodes(Arrays.asList(nodes.get(i), nodes.get(i + 1)));
+            w.put("highway", VALUES[i % VALUES.length]);
+            ds.addPrimitive(w);
+            if (i % 9 == 0) {
+                Relation r = new Relation();
+                r.setMembers(Arrays.asList(new RelationMember(VALUES[i % VALUES.length], w),
+                        new RelationMember("", nodes.get(i + 1))));
+                ds.addPrimitive(r);
+            }
+        }
+        nodes.get(1).setDeleted(true);
+        ds.addDataSource(new DataSource(new Bounds(-1.5, -2.25, 3.125, 4), "origin & <test>"));
+        return ds;
+    }
+
+    private static byte[] writeWithOsmWriter(DataSet ds, boolean osmConform) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OsmWriter writer = OsmWriterFactory.createOsmWriter(
+                new PrintWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8)), osmConform, null)) {
+            writer.write(ds);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] writeInParallel(DataSet ds, boolean osmConform) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new ParallelOsmWriter(osmConform, null).write(ds, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Test that the output is the same as the one of {@link OsmWriter}, with several chunks of primitives.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    void testSameOutput() throws Exception {
+        assertTrue(ParallelOsmWriter.isAvailable());
+        DataSet ds = createDataSet(20_000);
+        assertArrayEquals(writeWithOsmWriter(ds, false), writeInParallel(ds, false));
+        assertArrayEquals(writeWithOsmWriter(ds, true), writeInParallel(ds, true));
+
+        ds.setUploadPolicy(UploadPolicy.BLOCKED);
+        ds.setDownloadPolicy(DownloadPolicy.BLOCKED);
+        ds.lock();
+        assertArrayEquals(writeWithOsmWriter(ds, false), writeInParallel(ds, false));
+    }
+
+    /**
+     * Test that {@link OsmChangeBuilder} writes the same document as with {@link OsmWriter}.
+     */
+    @Test
+    void testOsmChange() {
+        DataSet ds = createDataSet(100);
+        Changeset changeset = new Changeset(12);
+        OsmChangeBuilder builder = new OsmChangeBuilder(changeset);
+        builder.start();
+        builder.append(ds.allPrimitives());
+        builder.finish();
+
+        StringBuilder expected = new StringBuilder();
+        OsmWriterFactory.setDefaultFactory(new OsmWriterFactory() { });
+        try {
+            OsmChangeBuilder reference = new OsmChangeBuilder(changeset);
+            reference.start();
+            reference.append(ds.allPrimitives());
+            reference.finish();
+            expected.append(reference.getDocument());
+        } finally {
+            OsmWriterFactory.setDefaultFactory(new OsmWriterFactory());
+        }
+        assertEquals(expected.toString(), builder.getDocument());
+    }
+}
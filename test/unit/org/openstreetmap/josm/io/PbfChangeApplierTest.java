@@ -0,0 +1,160 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link PbfChangeApplier} class.
+ * <p>
+ * The test file contains the nodes 1 to 3 and 4 to 6 in two blocks, the ways 10 (nodes 1, 2, 3), 11 (nodes 3, 4)
+ * and 12 (nodes 5, 6) in one block, and the relations 20 (way 12), 21 (node 1) and 22 (relation 20) in one block.
+ */
+@BasicPreferences
+class PbfChangeApplierTest {
+
+    private static File copyBlocks(Path tempDir) throws Exception {
+        Path file = tempDir.resolve("blocks.osm.pbf");
+        Files.copy(Paths.get(TestUtils.getTestDataRoot(), "pbf", "osm", "blocks.osm.pbf"), file);
+        return file.toFile();
+    }
+
+    private static InputStream osmChange(String changes) {
+        return new ByteArrayInputStream(("<osmChange version='0.6' generator='test'>" + changes + "</osmChange>")
+                .getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static byte[] readBlock(File file, PbfIndex.Entry entry) throws Exception {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        return Arrays.copyOfRange(bytes, (int) entry.offset, (int) entry.offset + entry.size);
+    }
+
+    private static DataSet readAll(File pbf) throws Exception {
+        try (InputStream in = Files.newInputStream(pbf.toPath())) {
+            return PbfReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+    }
+
+    private static List<Long> ids(Collection<? extends OsmPrimitive> primitives) {
+        return primitives.stream().filter(p -> !p.isIncomplete()).map(OsmPrimitive::getId).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Test creating, modifying and deleting primitives.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testApply(@TempDir Path tempDir) throws Exception {
+        File pbf = copyBlocks(tempDir);
+        PbfIndex before = PbfIndex.forFile(pbf);
+        byte[] header = readBlock(pbf, before.getEntries().get(0));
+
+        PbfIndex index = PbfChangeApplier.apply(pbf, osmChange(
+                "<create><node id='7' version='1' lat='50.015' lon='8.015'/></create>"
+              + "<modify><node id='1' version='2' lat='52.0' lon='10.0'><tag k='name' v='moved'/></node>"
+              + "<way id='10' version='2'><nd ref='1'/><nd ref='2'/><nd ref='3'/><nd ref='7'/></way></modify>"
+              + "<delete><relation id='21' version='2'/></delete>"), NullProgressMonitor.INSTANCE);
+
+        // node 7 goes to the last block of nodes, all data blocks are rewritten, the header block is copied
+        assertEquals(5, index.size());
+        assertArrayEquals(header, readBlock(pbf, index.getEntries().get(0)));
+        assertTrue(index.getEntries().get(2).contains(OsmPrimitiveType.NODE, 7));
+        assertNotNull(PbfIndex.load(PbfIndex.getIndexFile(pbf), pbf));
+
+        DataSet ds = readAll(pbf);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L), ids(ds.getNodes()));
+        Node n1 = (Node) ds.getPrimitiveById(1, OsmPrimitiveType.NODE);
+        assertEquals(new LatLon(52, 10), n1.getCoor());
+        assertEquals("moved", n1.get("name"));
+        assertEquals(2, n1.getVersion());
+        assertEquals(Arrays.asList(1L, 2L, 3L, 7L),
+                ((Way) ds.getPrimitiveById(10, OsmPrimitiveType.WAY)).getNodes().stream().map(Node::getId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(20L, 22L), ids(ds.getRelations()));
+
+        // the updated index finds the moved node and the way using it
+        DataSet moved = PbfReader.parseDataSet(pbf, new Bounds(51.9, 9.9, 52.1, 10.1), NullProgressMonitor.INSTANCE);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 7L), ids(moved.getNodes()));
+        assertEquals(Collections.singletonList(10L), ids(moved.getWays()));
+        assertTrue(moved.getRelations().isEmpty());
+    }
+
+    /**
+     * Test that the bounds of the copied blocks of ways and relations are extended when their nodes move.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testKeptBlockBounds(@TempDir Path tempDir) throws Exception {
+        File pbf = copyBlocks(tempDir);
+        PbfIndex before = PbfIndex.forFile(pbf);
+        byte[] ways = readBlock(pbf, before.getEntries().get(3));
+        byte[] relations = readBlock(pbf, before.getEntries().get(4));
+
+        PbfIndex index = PbfChangeApplier.apply(pbf, osmChange(
+                "<modify><node id='6' version='2' lat='53.0' lon='11.0'/></modify>"), null);
+        assertArrayEquals(ways, readBlock(pbf, index.getEntries().get(3)));
+        assertArrayEquals(relations, readBlock(pbf, index.getEntries().get(4)));
+        assertTrue(index.getEntries().get(3).bounds.contains(new LatLon(53, 11)));
+        assertTrue(index.getEntries().get(4).bounds.contains(new LatLon(53, 11)));
+
+        DataSet ds = PbfReader.parseDataSet(pbf, new Bounds(52.9, 10.9, 53.1, 11.1), NullProgressMonitor.INSTANCE);
+        assertEquals(Arrays.asList(5L, 6L), ids(ds.getNodes()));
+        assertEquals(Collections.singletonList(12L), ids(ds.getWays()));
+        assertEquals(Collections.singletonList(20L), ids(ds.getRelations()));
+    }
+
+    /**
+     * Test deleting all the primitives of a block, and applying an empty diff.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testDeleteBlock(@TempDir Path tempDir) throws Exception {
+        File pbf = copyBlocks(tempDir);
+        PbfIndex before = PbfIndex.forFile(pbf);
+        long modified = pbf.lastModified();
+        assertEquals(before.size(), PbfChangeApplier.apply(pbf, osmChange(""), null).size());
+        assertEquals(modified, pbf.lastModified());
+
+        PbfIndex index = PbfChangeApplier.apply(pbf, osmChange("<delete>"
+              + "<relation id='20' version='2'/><relation id='21' version='2'/><relation id='22' version='2'/>"
+              + "</delete>"), null);
+        assertEquals(4, index.size());
+        assertFalse(index.getEntries().stream().anyMatch(e -> e.contains(OsmPrimitiveType.RELATION)));
+        DataSet ds = readAll(pbf);
+        assertTrue(ds.getRelations().isEmpty());
+        assertNull(ds.getPrimitiveById(20, OsmPrimitiveType.RELATION));
+        assertEquals(3, ds.getWays().size());
+    }
+}
@@ -0,0 +1,100 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link PbfIndex} class.
+ */
+@BasicPreferences
+class PbfIndexTest {
+
+    private static File copyBlocks(Path tempDir) throws Exception {
+        Path file = tempDir.resolve("blocks.osm.pbf");
+        Files.copy(Paths.get(TestUtils.getTestDataRoot(), "pbf", "osm", "blocks.osm.pbf"), file);
+        return file.toFile();
+    }
+
+    /**
+     * Test the entries of the index.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testBuild(@TempDir Path tempDir) throws Exception {
+        PbfIndex index = PbfIndex.build(copyBlocks(tempDir));
+        List<PbfIndex.Entry> entries = index.getEntries();
+        assertEquals(5, entries.size());
+        assertTrue(entries.get(0).header);
+        assertEquals(0, entries.get(0).offset);
+        for (int i = 1; i < entries.size(); i++) {
+            assertEquals(entries.get(i - 1).offset + entries.get(i - 1).size, entries.get(i).offset);
+        }
+        PbfIndex.Entry a = entries.get(1);
+        assertTrue(a.contains(OsmPrimitiveType.NODE, 3));
+        assertFalse(a.contains(OsmPrimitiveType.NODE, 4));
+        assertFalse(a.contains(OsmPrimitiveType.WAY));
+        assertEquals(new Bounds(50.01, 8.01, 50.03, 8.03), a.bounds);
+        // ways block spans both node blocks
+        assertEquals(new Bounds(50.01, 8.01, 51.03, 9.03), entries.get(3).bounds);
+        // relations block: way 12 (second node block) and node 1 (first node block)
+        assertEquals(new Bounds(50.01, 8.01, 51.03, 9.03), entries.get(4).bounds);
+
+        Bounds b = new Bounds(49.9, 7.9, 50.1, 8.1);
+        assertEquals(1, index.getEntries(OsmPrimitiveType.NODE, b).size());
+        assertEquals(1, index.getEntries(OsmPrimitiveType.WAY, b).size());
+        assertEquals(2, index.getEntries(OsmPrimitiveType.NODE, new long[] {3, 4}).size());
+        assertEquals(0, index.getEntries(OsmPrimitiveType.NODE, new Bounds(10, 10, 11, 11)).size());
+    }
+
+    /**
+     * Test the sidecar file.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testSidecar(@TempDir Path tempDir) throws Exception {
+        File pbf = copyBlocks(tempDir);
+        File idx = PbfIndex.getIndexFile(pbf);
+        assertEquals("blocks.osm.pbf.idx", idx.getName());
+        assertFalse(idx.exists());
+        PbfIndex index = PbfIndex.forFile(pbf);
+        assertTrue(idx.isFile());
+        PbfIndex loaded = PbfIndex.load(idx, pbf);
+        assertNotNull(loaded);
+        assertEquals(index.size(), loaded.size());
+        for (int i = 0; i < index.size(); i++) {
+            PbfIndex.Entry e1 = index.getEntries().get(i);
+            PbfIndex.Entry e2 = loaded.getEntries().get(i);
+            assertEquals(e1.offset, e2.offset);
+            assertEquals(e1.size, e2.size);
+            assertEquals(e1.bounds, e2.bounds);
+            assertEquals(e1.boundsKnown, e2.boundsKnown);
+            for (OsmPrimitiveType type : OsmPrimitiveType.dataValues()) {
+                assertEquals(e1.contains(type), e2.contains(type));
+            }
+        }
+        // Outdated sidecar
+        assertTrue(pbf.setLastModified(pbf.lastModified() - 10_000));
+        assertNull(PbfIndex.load(idx, pbf));
+        assertEquals(index.size(), PbfIndex.forFile(pbf).size());
+        assertNotNull(PbfIndex.load(idx, pbf));
+    }
+}
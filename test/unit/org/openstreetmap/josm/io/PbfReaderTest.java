@@ -0,0 +1,184 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openstreetmap.josm.TestUtils;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitive;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link PbfReader} class.
+ */
+@BasicPreferences
+class PbfReaderTest {
+
+    private static DataSet parseSample() throws Exception {
+        try (InputStream in = Files.newInputStream(Paths.get(TestUtils.getTestDataRoot(), "pbf", "osm", "sample.osm.pbf"))) {
+            return PbfReader.parseDataSet(in, NullProgressMonitor.INSTANCE);
+        }
+    }
+
+    /**
+     * Test the header block.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testHeader() throws Exception {
+        DataSet ds = parseSample();
+        assertEquals("0.6", ds.getVersion());
+        assertEquals(1, ds.getDataSources().size());
+        assertEquals("test", ds.getDataSources().iterator().next().origin);
+        assertEquals(new Bounds(50, 8, 50.1, 8.1), ds.getDataSourceBounds().get(0));
+    }
+
+    /**
+     * Test dense nodes, with delta-coded coordinates, metadata and tags.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testDenseNodes() throws Exception {
+        DataSet ds = parseSample();
+        Node n1 = (Node) ds.getPrimitiveById(1, OsmPrimitiveType.NODE);
+        assertNotNull(n1);
+        assertEquals(new LatLon(50.01, 8.01), n1.getCoor());
+        assertEquals(1, n1.getVersion());
+        assertEquals(100, n1.getChangesetId());
+        assertEquals(Instant.ofEpochSecond(1600000000), n1.getInstant());
+        assertEquals("alice", n1.getUser().getName());
+        assertEquals("cafe", n1.get("amenity"));
+        assertEquals("Café", n1.get("name"));
+
+        Node n4 = (Node) ds.getPrimitiveById(4, OsmPrimitiveType.NODE);
+        assertEquals(new LatLon(50.01, 8.03), n4.getCoor());
+        assertEquals(1, n4.getVersion());
+        assertEquals(102, n4.getChangesetId());
+        assertEquals(Instant.ofEpochSecond(1600000180), n4.getInstant());
+        assertEquals("bob", n4.getUser().getName());
+        assertFalse(n4.hasKeys());
+    }
+
+    /**
+     * Test non-dense nodes, in an uncompressed block.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testNode() throws Exception {
+        Node n5 = (Node) parseSample().getPrimitiveById(5, OsmPrimitiveType.NODE);
+        assertNotNull(n5);
+        assertEquals(new LatLon(50.05, 8.05), n5.getCoor());
+        assertEquals("Bakery", n5.get("name"));
+        assertEquals(105, n5.getChangesetId());
+    }
+
+    /**
+     * Test ways, with delta-coded node references.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testWays() throws Exception {
+        DataSet ds = parseSample();
+        Way w10 = (Way) ds.getPrimitiveById(10, OsmPrimitiveType.WAY);
+        assertEquals(Arrays.asList(1L, 2L, 3L, 1L), Arrays.asList(w10.getNodes().stream().map(Node::getId).toArray(Long[]::new)));
+        assertTrue(w10.isClosed());
+        assertEquals("residential", w10.get("highway"));
+        assertEquals(3, w10.getVersion());
+        assertEquals("bob", w10.getUser().getName());
+
+        Way w11 = (Way) ds.getPrimitiveById(11, OsmPrimitiveType.WAY);
+        assertEquals(3, w11.getNodesCount());
+        assertTrue(w11.hasIncompleteNodes());
+        assertTrue(w11.getNode(2).isIncomplete());
+    }
+
+    /**
+     * Test relations, with delta-coded member ids.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testRelations() throws Exception {
+        DataSet ds = parseSample();
+        Relation r = (Relation) ds.getPrimitiveById(100, OsmPrimitiveType.RELATION);
+        assertEquals("multipolygon", r.get("type"));
+        assertEquals(3, r.getMembersCount());
+        assertEquals("outer", r.getMember(0).getRole());
+        assertEquals(ds.getPrimitiveById(10, OsmPrimitiveType.WAY), r.getMember(0).getMember());
+        assertEquals("inner", r.getMember(1).getRole());
+        assertEquals(ds.getPrimitiveById(4, OsmPrimitiveType.NODE), r.getMember(1).getMember());
+        assertEquals("", r.getMember(2).getRole());
+        assertTrue(r.getMember(2).getMember().isIncomplete());
+        assertEquals(101, r.getMember(2).getMember().getId());
+    }
+
+    /**
+     * Test reading the data within bounds from an indexed file made of several blocks.
+     * @param tempDir temporary directory
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testBounds(@TempDir Path tempDir) throws Exception {
+        Path file = tempDir.resolve("blocks.osm.pbf");
+        Files.copy(Paths.get(TestUtils.getTestDataRoot(), "pbf", "osm", "blocks.osm.pbf"), file);
+        Bounds bounds = new Bounds(49.9, 7.9, 50.1, 8.1);
+        DataSet ds = PbfReader.parseDataSet(file.toFile(), bounds, NullProgressMonitor.INSTANCE);
+        assertTrue(PbfIndex.getIndexFile(file.toFile()).isFile());
+        assertEquals(Collections.singletonList(bounds), ds.getDataSourceBounds());
+        // nodes within bounds, plus node 4 used by way 11
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L), ids(ds.getNodes()));
+        assertEquals(new LatLon(51.01, 9.01), ((Node) ds.getPrimitiveById(4, OsmPrimitiveType.NODE)).getCoor());
+        // ways using them, complete
+        assertEquals(Arrays.asList(10L, 11L), ids(ds.getWays()));
+        assertTrue(ds.getWays().stream().noneMatch(Way::hasIncompleteNodes));
+        // relations referring to them
+        assertEquals(Collections.singletonList(21L), ids(ds.getRelations()));
+
+        // the second read uses the sidecar index
+        DataSet ds2 = PbfReader.parseDataSet(file.toFile(), new Bounds(51, 9, 51.1, 9.1), NullProgressMonitor.INSTANCE);
+        assertEquals(Arrays.asList(3L, 4L, 5L, 6L), ids(ds2.getNodes()));
+        assertEquals(Arrays.asList(11L, 12L), ids(ds2.getWays()));
+        assertEquals(Collections.singletonList(20L), ids(ds2.getRelations()));
+
+        assertTrue(PbfReader.parseDataSet(file.toFile(), new Bounds(10, 10, 11, 11), NullProgressMonitor.INSTANCE).allPrimitives().isEmpty());
+    }
+
+    private static List<Long> ids(Collection<? extends OsmPrimitive> primitives) {
+        return primitives.stream().map(OsmPrimitive::getId).sorted().collect(Collectors.toList());
+    }
+
+    /**
+     * Test invalid data.
+     */
+    @Test
+    void testInvalidData() {
+        assertThrows(IllegalDataException.class, () -> PbfReader.parseDataSet(
+                new ByteArrayInputStream(new byte[] {0, 0, 0, 1, 0}), NullProgressMonitor.INSTANCE));
+        assertThrows(IllegalDataException.class, () -> PbfReader.parseDataSet(
+                new ByteArrayInputStream(new byte[] {0, 0, 0}), NullProgressMonitor.INSTANCE));
+    }
+}
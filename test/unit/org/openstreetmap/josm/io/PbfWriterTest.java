@@ -0,0 +1,162 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.data.Bounds;
+import org.openstreetmap.josm.data.DataSource;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.osm.DataSet;
+import org.openstreetmap.josm.data.osm.DownloadPolicy;
+import org.openstreetmap.josm.data.osm.Node;
+import org.openstreetmap.josm.data.osm.OsmPrimitiveType;
+import org.openstreetmap.josm.data.osm.Relation;
+import org.openstreetmap.josm.data.osm.RelationMember;
+import org.openstreetmap.josm.data.osm.UploadPolicy;
+import org.openstreetmap.josm.data.osm.User;
+import org.openstreetmap.josm.data.osm.Way;
+import org.openstreetmap.josm.gui.progress.NullProgressMonitor;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+
+/**
+ * Unit tests of {@link PbfWriter} class.
+ */
+@BasicPreferences
+class PbfWriterTest {
+
+    private static DataSet roundTrip(DataSet ds, boolean osmConform) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PbfWriter writer = OsmWriterFactory.createPbfWriter(out, osmConform)) {
+            writer.write(ds);
+        }
+        return PbfReader.parseDataSet(new ByteArrayInputStream(out.toByteArray()), NullProgressMonitor.INSTANCE);
+    }
+
+    /**
+     * Test that uploaded data, with metadata and tags, is written and read back unchanged, over several blocks.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testRoundTrip() throws Exception {
+        DataSet ds = new DataSet();
+        User alice = User.createOsmUser(42, "alice");
+        int count = PbfWriter.BLOCK_SIZE * 2 + 10;
+        for (int i = 1; i <= count; i++) {
+            Node n = new Node(i, 3);
+            n.setCoor(new LatLon(50 + i * 1e-5, 8 - i * 1e-5));
+            n.setChangesetId(1000 + i);
+            n.setInstant(Instant.ofEpochSecond(1600000000 + i));
+            n.setUser(alice);
+            if (i % 3 == 0) {
+                n.put("name", "n" + i);
+            }
+            ds.addPrimitive(n);
+        }
+        Way w = new Way(5, 2);
+        w.setNodes(Arrays.asList((Node) ds.getPrimitiveById(1, OsmPrimitiveType.NODE),
+                (Node) ds.getPrimitiveById(count, OsmPrimitiveType.NODE)));
+        w.put("highway", "residential");
+        ds.addPrimitive(w);
+        Relation r = new Relation(7, 1);
+        ds.addPrimitive(r);
+        r.setMembers(Arrays.asList(new RelationMember("outer", w), new RelationMember("", ds.getPrimitiveById(2, OsmPrimitiveType.NODE))));
+        r.put("type", "multipolygon");
+        ds.addDataSource(new DataSource(new Bounds(49, 7, 51, 9), "test"));
+
+        DataSet read = roundTrip(ds, true);
+        assertEquals(count + 2, read.allPrimitives().size());
+        for (int i = 1; i <= count; i++) {
+            Node n = (Node) read.getPrimitiveById(i, OsmPrimitiveType.NODE);
+            assertNotNull(n, Integer.toString(i));
+            assertEquals(3, n.getVersion());
+            assertEquals(1000 + i, n.getChangesetId());
+            assertEquals(Instant.ofEpochSecond(1600000000 + i), n.getInstant());
+            assertEquals("alice", n.getUser().getName());
+            assertEquals(50 + i * 1e-5, n.lat(), 1e-7);
+            assertEquals(8 - i * 1e-5, n.lon(), 1e-7);
+            assertEquals(i % 3 == 0 ? "n" + i : null, n.get("name"));
+        }
+        Way rw = (Way) read.getPrimitiveById(5, OsmPrimitiveType.WAY);
+        assertEquals(2, rw.getVersion());
+        assertEquals("residential", rw.get("highway"));
+        assertEquals(1, rw.firstNode().getId());
+        assertEquals(count, rw.lastNode().getId());
+        Relation rr = (Relation) read.getPrimitiveById(7, OsmPrimitiveType.RELATION);
+        assertEquals(2, rr.getMembersCount());
+        assertEquals("outer", rr.getMember(0).getRole());
+        assertEquals(rw, rr.getMember(0).getMember());
+        assertEquals(2, rr.getMember(1).getMember().getId());
+        assertEquals("test", read.getDataSources().iterator().next().origin);
+        assertEquals(new Bounds(49, 7, 51, 9), read.getDataSourceBounds().get(0));
+    }
+
+    /**
+     * Test that the JOSM specific attributes (new, modified, deleted objects, layer policies) are kept.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testJosmAttributes() throws Exception {
+        DataSet ds = new DataSet();
+        Node n1 = new Node(new LatLon(1, 2));
+        n1.put("name", "new");
+        ds.addPrimitive(n1);
+        Node n2 = new Node(10, 1);
+        n2.setCoor(new LatLon(3, 4));
+        ds.addPrimitive(n2);
+        n2.setModified(true);
+        Node n3 = new Node(11, 1);
+        n3.setCoor(new LatLon(5, 6));
+        ds.addPrimitive(n3);
+        n3.setDeleted(true);
+        Way w = new Way();
+        w.setNodes(Arrays.asList(n1, n2));
+        ds.addPrimitive(w);
+        ds.setDownloadPolicy(DownloadPolicy.BLOCKED);
+        ds.setUploadPolicy(UploadPolicy.DISCOURAGED);
+        ds.lock();
+
+        DataSet read = roundTrip(ds, false);
+        assertEquals(DownloadPolicy.BLOCKED, read.getDownloadPolicy());
+        assertEquals(UploadPolicy.DISCOURAGED, read.getUploadPolicy());
+        assertTrue(read.isLocked());
+        Node r1 = read.getNodes().stream().filter(n -> n.hasTag("name", "new")).findFirst().orElse(null);
+        assertNotNull(r1);
+        assertTrue(r1.isNew());
+        Node r2 = (Node) read.getPrimitiveById(10, OsmPrimitiveType.NODE);
+        assertTrue(r2.isModified());
+        assertFalse(r2.isDeleted());
+        Node r3 = (Node) read.getPrimitiveById(11, OsmPrimitiveType.NODE);
+        assertTrue(r3.isDeleted());
+        assertEquals(1, read.getWays().size());
+        Way rw = read.getWays().iterator().next();
+        assertTrue(rw.isNew());
+        assertEquals(Arrays.asList(r1, r2), rw.getNodes());
+    }
+
+    /**
+     * Test that an OSM conform file leaves out the JOSM specific attributes.
+     * @throws Exception if any error occurs
+     */
+    @Test
+    void testOsmConform() throws Exception {
+        DataSet ds = new DataSet();
+        Node n = new Node(10, 1);
+        n.setCoor(new LatLon(3, 4));
+        ds.addPrimitive(n);
+        n.setModified(true);
+        ds.setUploadPolicy(UploadPolicy.BLOCKED);
+
+        DataSet read = roundTrip(ds, true);
+        assertEquals(UploadPolicy.NORMAL, read.getUploadPolicy());
+        assertFalse(read.getPrimitiveById(10, OsmPrimitiveType.NODE).isModified());
+    }
+}
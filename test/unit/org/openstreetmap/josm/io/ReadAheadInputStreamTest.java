@@ -0,0 +1,172 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.josm.testutils.annotations.BasicPreferences;
+import org.openstreetmap.josm.tools.Utils;
+
+/**
+ * Unit tests of {@link ReadAheadInputStream} class.
+ */
+@BasicPreferences
+class ReadAheadInputStreamTest {
+
+    /**
+     * Returns compressible test data, looking like OSM XML.
+     * @param seed the random seed
+     * @param lines the number of lines
+     * @return the test data
+     */
+    private static byte[] generateData(long seed, int lines) {
+        Random random = new Random(seed);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) {
+            sb.append("  <node id='").append(i).append("' lat='").append(random.nextDouble())
+              .append("' lon='").append(random.nextDouble()).append("' />\n");
+        }
+        return sb.toString().getBytes();
+    }
+
+    private static byte[] bzip2(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream bzip2 = new BZip2CompressorOutputStream(out, 1)) {
+            bzip2.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns a BGZF member, a gzip member with the compressed size in its header.
+     * @param data the data to compress
+     * @return the BGZF member
+     * @throws IOException never
+     */
+    private static byte[] bgzf(byte[] data) throws IOException {
+        byte[] gzip = gzip(data);
+        // Insert the extra field, after the 10 bytes of the fixed header
+        byte[] member = new byte[gzip.length + 8];
+        System.arraycopy(gzip, 0, member, 0, 10);
+        member[3] |= 4;
+        int size = member.length - 1;
+        byte[] extra = {6, 0, 'B', 'C', 2, 0, (byte) size, (byte) (size >> 8)};
+        System.arraycopy(extra, 0, member, 10, extra.length);
+        System.arraycopy(gzip, 10, member, 18, gzip.length - 10);
+        return member;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.write(part, 0, part.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            return Utils.readBytesFromStream(stream);
+        }
+    }
+
+    /**
+     * Test decompressing bzip2 data, made of one or several streams.
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testBZip2() throws IOException {
+        byte[] part1 = generateData(1, 20_000);
+        byte[] part2 = generateData(2, 5);
+        byte[] part3 = generateData(3, 30_000);
+        byte[] expected = concat(part1, part2, part3);
+        assertArrayEquals(part1, readAll(ReadAheadInputStream.bzip2(new ByteArrayInputStream(bzip2(part1)))));
+        assertArrayEquals(expected, readAll(ReadAheadInputStream.bzip2(
+                new ByteArrayInputStream(concat(bzip2(part1), bzip2(part2), bzip2(part3))))));
+        assertArrayEquals(expected, readAll(Compression.BZIP2.getUncompressedInputStream(
+                new ByteArrayInputStream(concat(bzip2(part1), bzip2(part2), bzip2(part3))))));
+    }
+
+    /**
+     * Test decompressing gzip data, made of plain or blocked (BGZF) members.
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testGZip() throws IOException {
+        byte[] part1 = generateData(1, 1_000);
+        byte[] part2 = generateData(2, 2_000);
+        byte[] expected = concat(part1, part2);
+        assertArrayEquals(part1, readAll(ReadAheadInputStream.gzip(new ByteArrayInputStream(gzip(part1)))));
+        assertArrayEquals(expected, readAll(ReadAheadInputStream.gzip(new ByteArrayInputStream(concat(gzip(part1), gzip(part2))))));
+        assertArrayEquals(expected, readAll(ReadAheadInputStream.gzip(new ByteArrayInputStream(concat(bgzf(part1), bgzf(part2))))));
+        // BGZF members followed by a plain member
+        assertArrayEquals(concat(expected, part1), readAll(ReadAheadInputStream.gzip(
+                new ByteArrayInputStream(concat(bgzf(part1), bgzf(part2), gzip(part1))))));
+    }
+
+    /**
+     * Test sequential read-ahead, with several chunks.
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testSequential() throws IOException {
+        byte[] data = generateData(4, 40_000);
+        try (InputStream in = ReadAheadInputStream.sequential(new ByteArrayInputStream(data))) {
+            assertEquals(data[0] & 0xff, in.read());
+            byte[] rest = Utils.readBytesFromStream(in);
+            assertArrayEquals(Arrays.copyOfRange(data, 1, data.length), rest);
+        }
+    }
+
+    /**
+     * Test invalid and corrupted data.
+     */
+    @Test
+    void testInvalidData() {
+        assertThrows(IOException.class, () -> ReadAheadInputStream.bzip2(new ByteArrayInputStream(new byte[] {'B', 'Z'})));
+        assertThrows(ZipException.class, () -> ReadAheadInputStream.gzip(new ByteArrayInputStream(new byte[] {'B', 'Z', 'h'})));
+        assertThrows(IOException.class, () -> {
+            byte[] data = bzip2(generateData(5, 1_000));
+            data[data.length / 2] ^= 0x55;
+            readAll(ReadAheadInputStream.bzip2(new ByteArrayInputStream(data)));
+        });
+        assertThrows(IOException.class, () -> {
+            byte[] data = gzip(generateData(5, 1_000));
+            readAll(ReadAheadInputStream.gzip(new ByteArrayInputStream(Arrays.copyOf(data, data.length / 2))));
+        });
+    }
+
+    /**
+     * Test closing a stream before reading all the data.
+     * @throws IOException if an error occurs
+     */
+    @Test
+    void testClose() throws IOException {
+        byte[] data = generateData(6, 100_000);
+        InputStream in = ReadAheadInputStream.sequential(new ByteArrayInputStream(data));
+        assertEquals(100, in.read(new byte[100]));
+        in.close();
+        assertThrows(IOException.class, in::read);
+    }
+}
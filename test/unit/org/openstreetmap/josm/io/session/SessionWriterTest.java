@@ -2,6 +2,7 @@
 package org.openstreetmap.josm.io.session;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.awt.Color;
@@ -252,6 +253,22 @@ public class SessionWriterTest {
         testWrite(Collections.<Layer>singletonList(createOsmLayer()), true);
     }
 
+    /**
+     * Tests to write a .joz file containing OSM data in PBF format.
+     * @throws IOException if an I/O error occurs
+     */
+    @Test
+    void testWriteOsmPbfJoz() throws IOException {
+        OsmDataSessionExporter.PBF_FORMAT.put(true);
+        try {
+            Map<String, byte[]> bytes = testWrite(Collections.<Layer>singletonList(createOsmLayer()), true);
+            assertTrue(bytes.containsKey("layers/01/data.osm.pbf"));
+            assertTrue(new String(bytes.get("session.jos"), StandardCharsets.UTF_8).contains("layers/01/data.osm.pbf"));
+        } finally {
+            OsmDataSessionExporter.PBF_FORMAT.remove();
+        }
+    }
+
     /**
      * Tests to write a .jos file containing GPX data.
      * @throws IOException if an I/O error occurs
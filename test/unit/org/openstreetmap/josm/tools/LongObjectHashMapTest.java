@@ -0,0 +1,103 @@
+// License: GPL. For details, see LICENSE file.
+package org.openstreetmap.josm.tools;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests of {@link LongObjectHashMap} class.
+ */
+class LongObjectHashMapTest {
+
+    /**
+     * Various test of {@link LongObjectHashMap}.
+     */
+    @Test
+    void testLongObjectHashMap() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.put(-1, "a"));
+        assertNull(map.put(0, "b"));
+        assertNull(map.put(Long.MAX_VALUE, "c"));
+        assertEquals("a", map.put(-1, "d"));
+        assertEquals(3, map.size());
+        assertEquals("d", map.get(-1));
+        assertEquals("b", map.get(0));
+        assertTrue(map.containsKey(Long.MAX_VALUE));
+        assertFalse(map.containsKey(1));
+        assertNull(map.get(1));
+        assertEquals("1", map.computeIfAbsent(1, Long::toString));
+        assertEquals("1", map.computeIfAbsent(1, id -> "x"));
+        assertEquals("b", map.remove(0));
+        assertNull(map.remove(0));
+        assertArrayEquals(new long[] {-1, 1, Long.MAX_VALUE}, Arrays.stream(map.keys()).sorted().toArray());
+        assertThrows(NullPointerException.class, () -> map.put(2, null));
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(-1));
+    }
+
+    /**
+     * Compares {@link LongObjectHashMap} with {@link HashMap}, with many resizes and removals.
+     */
+    @Test
+    void testAgainstHashMap() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(0);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            // Consecutive ids, like in OSM data, and random ones
+            long key = i % 2 == 0 ? random.nextInt(20_000) : random.nextLong();
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                assertEquals(expected.put(key, (long) i), map.put(key, (long) i));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            assertEquals(e.getValue(), map.get(e.getKey()));
+        }
+        List<Long> values = new ArrayList<>(map.values());
+        assertEquals(expected.size(), values.size());
+        int[] count = {0};
+        map.forEach((key, value) -> {
+            assertEquals(expected.get(key), value);
+            count[0]++;
+        });
+        LongObjectHashMap<Long>.Cursor cursor = map.cursor();
+        while (cursor.next()) {
+            assertEquals(expected.get(cursor.key()), cursor.value());
+            count[0]++;
+        }
+        assertEquals(2 * expected.size(), count[0]);
+    }
+
+    /**
+     * Test that a modification during an iteration is detected.
+     */
+    @Test
+    void testConcurrentModification() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        map.put(1, "a");
+        map.put(2, "b");
+        assertThrows(ConcurrentModificationException.class, () -> map.forEach((key, value) -> map.put(key + 10, value)));
+        LongObjectHashMap<String>.Cursor cursor = map.cursor();
+        map.remove(1);
+        assertThrows(ConcurrentModificationException.class, cursor::next);
+    }
+}